@@ -0,0 +1,111 @@
+package ru.f13.ikt.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.f13.ikt.logic.Company;
+import ru.f13.ikt.logic.Document;
+import ru.f13.ikt.logic.LimitOverrides;
+import ru.f13.ikt.logic.Settings;
+import ru.f13.ikt.logic.SystemWorkflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер добавления документов в систему документооборота в одном потоке.
+ * Параметр limits включает все ограничения, ни одного или одно из них, что позволяет
+ * оценить стоимость каждой проверки как разницу с NONE, а параметр metrics - стоимость учета метрик.
+ * Параметр overrides задает количество индивидуальных значений ограничений: значения компаний замера
+ * совпадают с общими, остальные относятся к компаниям, которых нет в замере
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdmissionBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int repositorySize;
+
+    @Param({"HASH", "COLUMNAR"})
+    private String repository;
+
+    @Param({"ALL", "NONE", "LIMITED_TIME", "COMPANY_WORKFLOW", "COMPANY_CREATE_DOCUMENT", "WORKFLOW"})
+    private String limits;
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    @Param({"0", "300000"})
+    private int overrides;
+
+    private SystemWorkflow systemWorkflow;
+    private Company[][] pairs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        systemWorkflow = new SystemWorkflow(WorkflowFixture.createRepository(repository, false));
+        systemWorkflow.setSettings(WorkflowFixture.createSettings(limits));
+        if (metrics) {
+            systemWorkflow.enableMetrics();
+        }
+
+        pairs = WorkflowFixture.createPairs(WorkflowFixture.PAIRS);
+        WorkflowFixture.populate(systemWorkflow, pairs, repositorySize);
+
+        if (overrides > 0) {
+            systemWorkflow.setSettings(createOverrides(systemWorkflow.getSettings()));
+        }
+
+    }
+
+    /**
+     * Создать настройки с индивидуальными значениями ограничений
+     * @param settings общие настройки
+     * @return настройки с индивидуальными значениями
+     */
+    private Settings createOverrides(Settings settings) {
+
+        LimitOverrides values = new LimitOverrides();
+        for (Company[] pair : pairs) {
+            for (Company company : pair) {
+                values.companyWorkflowLimit(company.getId(), settings.getCompanyWorkflowLimitValue());
+                values.companyCreateDocumentLimit(company.getId(), settings.getCompanyCreateDocumentLimitValue());
+            }
+            values.workflowLimit(pair[0].getId(), pair[1].getId(), settings.getWorkflowLimitValue());
+        }
+
+        for (int id = Integer.MAX_VALUE; values.size() < overrides; id--) {
+            values.companyWorkflowLimit(id, settings.getCompanyWorkflowLimitValue());
+        }
+
+        return settings.withOverrides(values);
+    }
+
+    @Benchmark
+    public boolean addDocument() {
+        Company[] pair = pairs[next++ & (WorkflowFixture.PAIRS - 1)];
+        return systemWorkflow.addDocument1(pair[0].createDocument(pair[1]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public byte[] addDocuments() {
+
+        List<Document> documents = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Company[] pair = pairs[(next + i / 8) & (WorkflowFixture.PAIRS - 1)];
+            documents.add(pair[0].createDocument(pair[1]));
+        }
+        next += BATCH_SIZE / 8;
+
+        return systemWorkflow.addDocuments(documents);
+    }
+
+}
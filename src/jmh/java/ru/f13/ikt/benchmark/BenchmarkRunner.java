@@ -0,0 +1,42 @@
+package ru.f13.ikt.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск замеров системы документооборота.
+ * Принимает те же аргументы, что и JMH, и всегда подключает профилировщик GC, поэтому
+ * кроме пропускной способности публикуется объем памяти, выделяемой на операцию (gc.alloc.rate.norm).
+ * Если формат результатов не задан, результаты сохраняются в jmh-result.json.
+ * Аргументы справки и списков (-h, -l, -lp, -lprof, -lrf) выполняются JMH без запуска замеров
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON).result("jmh-result.json");
+        }
+
+        new Runner(options.build()).run();
+
+    }
+
+}
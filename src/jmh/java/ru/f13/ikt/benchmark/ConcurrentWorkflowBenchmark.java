@@ -0,0 +1,87 @@
+package ru.f13.ikt.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.f13.ikt.logic.Company;
+import ru.f13.ikt.logic.Document;
+import ru.f13.ikt.logic.SystemWorkflow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер добавления, подписания и передачи документов в параллельном режиме системы документооборота.
+ * Каждый поток работает со своими парами компаний
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ConcurrentWorkflowBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int repositorySize;
+
+    @Param({"HASH", "COLUMNAR"})
+    private String repository;
+
+    private SystemWorkflow systemWorkflow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        systemWorkflow = SystemWorkflow.createConcurrentSystemWorkflow(
+                Runtime.getRuntime().availableProcessors() * 16, WorkflowFixture.createRepository(repository, true));
+        systemWorkflow.setSettings(WorkflowFixture.createSettings("ALL"));
+
+        WorkflowFixture.populate(systemWorkflow, WorkflowFixture.createPairs(WorkflowFixture.PAIRS), repositorySize);
+
+    }
+
+    /**
+     * Пары компаний и документ потока
+     */
+    @State(Scope.Thread)
+    public static class ThreadCompanies {
+
+        private Company[][] pairs;
+        private Document document;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentWorkflowBenchmark benchmark) {
+
+            pairs = WorkflowFixture.createPairs(64);
+
+            document = pairs[0][0].createDocument(pairs[0][1]);
+            benchmark.systemWorkflow.addDocument1(document);
+            pairs[0][0].addDocument(document);
+
+        }
+
+    }
+
+    @Benchmark
+    public boolean addDocument(ThreadCompanies companies) {
+        Company[] pair = companies.pairs[companies.next++ & 63];
+        return systemWorkflow.addDocument1(pair[0].createDocument(pair[1]));
+    }
+
+    @Benchmark
+    public boolean signingDocument(ThreadCompanies companies) {
+        Company[] pair = companies.pairs[0];
+        companies.document.resetSigning();
+        systemWorkflow.signingDocument(companies.document, pair[0]);
+        return systemWorkflow.signingDocument(companies.document, pair[1]);
+    }
+
+    @Benchmark
+    public Document transferDocument(ThreadCompanies companies) {
+        Company[] pair = companies.pairs[0];
+        pair[1].transferDocument(companies.document, pair[0]);
+        pair[0].transferDocument(companies.document, pair[1]);
+        return companies.document;
+    }
+
+}
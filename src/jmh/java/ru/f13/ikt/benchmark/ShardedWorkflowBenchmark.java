@@ -0,0 +1,70 @@
+package ru.f13.ikt.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.f13.ikt.logic.Company;
+import ru.f13.ikt.logic.ShardedSystemWorkflow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер добавления документов в системе документооборота, разделенной на шарды.
+ * Каждый поток добавляет пачку документов своих пар компаний, не дожидаясь результата каждого документа
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ShardedWorkflowBenchmark {
+
+    private static final int BATCH = 64;
+
+    @Param({"1", "2", "4", "8"})
+    private int shards;
+
+    private ShardedSystemWorkflow systemWorkflow;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        systemWorkflow = new ShardedSystemWorkflow(shards);
+        systemWorkflow.setSettings(WorkflowFixture.createSettings("ALL"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        systemWorkflow.close();
+    }
+
+    /**
+     * Пары компаний потока
+     */
+    @State(Scope.Thread)
+    public static class ThreadCompanies {
+
+        private Company[][] pairs;
+        private final CompletableFuture<?>[] results = new CompletableFuture<?>[BATCH];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pairs = WorkflowFixture.createPairs(BATCH);
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Void addDocuments(ThreadCompanies companies) {
+
+        CompletableFuture<?>[] results = companies.results;
+        for (int i = 0; i < BATCH; i++) {
+            Company[] pair = companies.pairs[i];
+            results[i] = systemWorkflow.addDocumentAsync(pair[0].createDocument(pair[1]));
+        }
+
+        return CompletableFuture.allOf(results).join();
+    }
+
+}
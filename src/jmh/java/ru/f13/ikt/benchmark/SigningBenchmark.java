@@ -0,0 +1,71 @@
+package ru.f13.ikt.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.f13.ikt.logic.Company;
+import ru.f13.ikt.logic.Document;
+import ru.f13.ikt.logic.SystemWorkflow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер подписания и передачи документов в одном потоке
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int repositorySize;
+
+    @Param({"HASH", "COLUMNAR"})
+    private String repository;
+
+    private SystemWorkflow systemWorkflow;
+    private Company company1;
+    private Company company2;
+    private Document document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        systemWorkflow = new SystemWorkflow(WorkflowFixture.createRepository(repository, false));
+        systemWorkflow.setSettings(WorkflowFixture.createSettings("ALL"));
+
+        Company[][] pairs = WorkflowFixture.createPairs(WorkflowFixture.PAIRS);
+        WorkflowFixture.populate(systemWorkflow, pairs, repositorySize);
+
+        company1 = pairs[0][0];
+        company2 = pairs[0][1];
+        document = company1.createDocument(company2);
+        systemWorkflow.addDocument1(document);
+
+        //документ должен быть в наличии у обеих компаний, чтобы обе могли его подписать
+        company1.addDocument(document);
+
+    }
+
+    /**
+     * Сбросить подписания и подписать документ обеими сторонами
+     */
+    @Benchmark
+    public boolean signingDocument() {
+        document.resetSigning();
+        systemWorkflow.signingDocument(document, company1);
+        return systemWorkflow.signingDocument(document, company2);
+    }
+
+    /**
+     * Передать документ второй стороне и вернуть его обратно
+     */
+    @Benchmark
+    public Document transferDocument() {
+        company2.transferDocument(document, company1);
+        company1.transferDocument(document, company2);
+        return document;
+    }
+
+}
@@ -0,0 +1,87 @@
+package ru.f13.ikt.benchmark;
+
+import ru.f13.ikt.logic.ColumnarDocumentRepository;
+import ru.f13.ikt.logic.Company;
+import ru.f13.ikt.logic.Company1;
+import ru.f13.ikt.logic.Company2;
+import ru.f13.ikt.logic.DocumentRepository;
+import ru.f13.ikt.logic.HashDocumentRepository;
+import ru.f13.ikt.logic.Settings;
+import ru.f13.ikt.logic.SystemWorkflow;
+
+/**
+ * Класс описывает подготовку системы документооборота для замеров
+ */
+final class WorkflowFixture {
+
+    /**
+     * Количество пар компаний, между которыми распределяются документы
+     */
+    static final int PAIRS = 1024;
+
+    private WorkflowFixture() {
+    }
+
+    /**
+     * Создать настройки, в которых включены указанные ограничения.
+     * Значения ограничений выбраны так, чтобы проверки выполнялись, но не отклоняли документы
+     * @param limits ALL, NONE, LIMITED_TIME, COMPANY_WORKFLOW, COMPANY_CREATE_DOCUMENT или WORKFLOW
+     * @return объект настроек {@link Settings}
+     */
+    static Settings createSettings(String limits) {
+
+        boolean all = "ALL".equals(limits);
+
+        return Settings.createCustomSettings(
+                all || "LIMITED_TIME".equals(limits), "00:00", "00:00",
+                all || "COMPANY_WORKFLOW".equals(limits), Integer.MAX_VALUE,
+                all || "COMPANY_CREATE_DOCUMENT".equals(limits), 64, 0,
+                all || "WORKFLOW".equals(limits), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Создать хранилище документов
+     * @param repository HASH или COLUMNAR
+     * @param concurrent true - хранилище для одновременной работы потоков
+     * @return хранилище документов
+     */
+    static DocumentRepository createRepository(String repository, boolean concurrent) {
+        return "COLUMNAR".equals(repository) ? new ColumnarDocumentRepository() : new HashDocumentRepository(concurrent);
+    }
+
+    /**
+     * Создать пары компаний
+     * @param count количество пар
+     * @return пары компаний, [i][0] - первая сторона, [i][1] - вторая сторона
+     */
+    static Company[][] createPairs(int count) {
+
+        Company[][] pairs = new Company[count][];
+        for (int i = 0; i < count; i++) {
+            pairs[i] = new Company[]{new Company1(), new Company2()};
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Заполнить систему подписанными документами, равномерно распределенными по парам компаний
+     * @param systemWorkflow система документооборота
+     * @param pairs пары компаний
+     * @param size количество документов
+     */
+    static void populate(SystemWorkflow systemWorkflow, Company[][] pairs, int size) {
+
+        Settings settings = systemWorkflow.getSettings();
+        systemWorkflow.setSettings(createSettings("NONE"));
+
+        for (int i = 0; i < size; i++) {
+            Company[] pair = pairs[i % pairs.length];
+            systemWorkflow.addDocument1(pair[0].createDocument(pair[1]));
+        }
+
+        systemWorkflow.setSettings(settings);
+
+    }
+
+}
@@ -1,20 +1,25 @@
 package ru.f13.ikt.app;
 
-import ru.f13.ikt.logic.Company;
-import ru.f13.ikt.logic.Company1;
-import ru.f13.ikt.logic.Company2;
-import ru.f13.ikt.logic.SystemWorkflow;
-
+/**
+ * Запуск нагрузки на систему документооборота {@link WorkloadSimulator}.
+ * Параметры нагрузки - аргументы вида {@code --имя=значение}, см. {@link WorkloadOptions#parse(String...)}
+ */
 public class App {
-    public static void main( String[] args ) {
-        System.out.println( "Hello this is genDoc!" );
-//        SystemWorkflow systemWorkflow = new SystemWorkflow();
-//
-//        Company1 company1 = new Company1();
-//        Company2 company2 = new Company2();
-//
-//        System.out.println( "workflow1 result : " + systemWorkflow.workflow1(company1, company2));
-//        System.out.println( "workflow2 result : " + systemWorkflow.workflow2(company1, company2));
+
+    public static void main(String[] args) throws InterruptedException {
+
+        WorkloadOptions options;
+        try {
+            options = WorkloadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(WorkloadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        new WorkloadSimulator(options).run().print(System.out);
+
     }
 
 }
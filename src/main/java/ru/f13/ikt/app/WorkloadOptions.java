@@ -0,0 +1,391 @@
+package ru.f13.ikt.app;
+
+import ru.f13.ikt.logic.Settings;
+
+/**
+ * Класс описывает параметры нагрузки для {@link WorkloadSimulator}.
+ * Параметры задаются аргументами командной строки вида {@code --имя=значение}
+ */
+public final class WorkloadOptions {
+
+    /**
+     * Равномерный выбор компаний
+     */
+    public static final byte DISTRIBUTION_UNIFORM = 0;
+
+    /**
+     * Выбор компаний по закону Ципфа: небольшое количество компаний участвует в большинстве документов
+     */
+    public static final byte DISTRIBUTION_ZIPF = 1;
+
+    /**
+     * Документы поступают через равные промежутки времени
+     */
+    public static final byte ARRIVAL_UNIFORM = 0;
+
+    /**
+     * Документы поступают пуассоновским потоком (промежутки распределены экспоненциально)
+     */
+    public static final byte ARRIVAL_POISSON = 1;
+
+    static final String USAGE = "options:\n"
+            + "  --companies=N        количество компаний (половина создает документы, половина получает), 100\n"
+            + "  --threads=N          количество потоков нагрузки, по числу процессоров\n"
+            + "  --duration=S         длительность замера в секундах, 10\n"
+            + "  --warmup=S           длительность прогрева в секундах, 2\n"
+            + "  --rate=R             документов в секунду всеми потоками, 0 - без ограничения, 0\n"
+            + "  --arrival=A          uniform | poisson, uniform\n"
+            + "  --distribution=D     uniform | zipf, uniform\n"
+            + "  --zipf=S             показатель распределения Ципфа, 1.1\n"
+            + "  --counter-offers=P   доля документов со встречными предложениями от 0 до 1, 0.2\n"
+            + "  --rounds=N           количество встречных предложений в документе, 1\n"
+            + "  --limits=L           off | default - ограничения Settings.createDefaultSettings(), off\n"
+            + "  --retain=B           оставлять обработанные документы в системе, false\n";
+
+    private int companies = 100;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long durationMillis = 10_000L;
+    private long warmupMillis = 2_000L;
+    private double rate;
+    private byte arrival = ARRIVAL_UNIFORM;
+    private byte distribution = DISTRIBUTION_UNIFORM;
+    private double zipfExponent = 1.1;
+    private double counterOfferRatio = 0.2;
+    private int counterOfferRounds = 1;
+    private boolean limits;
+    private boolean retain;
+
+    /**
+     * Разобрать аргументы командной строки
+     * @param args аргументы вида {@code --имя=значение}
+     * @return параметры нагрузки
+     * @throws IllegalArgumentException неизвестный аргумент или недопустимое значение
+     */
+    public static WorkloadOptions parse(String... args) {
+
+        WorkloadOptions options = new WorkloadOptions();
+
+        for (String arg : args) {
+
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("invalid argument " + arg);
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+
+            switch (name) {
+                case "companies":
+                    options.companies(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    options.threads(Integer.parseInt(value));
+                    break;
+                case "duration":
+                    options.durationMillis(Math.round(Double.parseDouble(value) * 1000.0));
+                    break;
+                case "warmup":
+                    options.warmupMillis(Math.round(Double.parseDouble(value) * 1000.0));
+                    break;
+                case "rate":
+                    options.rate(Double.parseDouble(value));
+                    break;
+                case "arrival":
+                    options.arrival(choice(name, value, "uniform", "poisson"));
+                    break;
+                case "distribution":
+                    options.distribution(choice(name, value, "uniform", "zipf"));
+                    break;
+                case "zipf":
+                    options.zipfExponent(Double.parseDouble(value));
+                    break;
+                case "counter-offers":
+                    options.counterOfferRatio(Double.parseDouble(value));
+                    break;
+                case "rounds":
+                    options.counterOfferRounds(Integer.parseInt(value));
+                    break;
+                case "limits":
+                    options.limits(choice(name, value, "off", "default") == 1);
+                    break;
+                case "retain":
+                    options.retain(Boolean.parseBoolean(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + name);
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * Выбрать значение из списка
+     * @param name имя параметра
+     * @param value значение
+     * @param choices допустимые значения
+     * @return номер значения в списке
+     */
+    private static byte choice(String name, String value, String... choices) {
+
+        for (byte i = 0; i < choices.length; i++) {
+            if (choices[i].equals(value)) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("invalid " + name + " " + value);
+    }
+
+    /**
+     * Проверить условие значения параметра
+     * @param valid условие
+     * @param message описание ошибки
+     */
+    private static void check(boolean valid, String message) {
+        if (!valid) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Установить количество компаний
+     * @param companies количество компаний (не меньше 2)
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions companies(int companies) {
+        check(companies >= 2, "companies must be at least 2");
+        this.companies = companies;
+        return this;
+    }
+
+    /**
+     * Установить количество потоков нагрузки
+     * @param threads количество потоков
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions threads(int threads) {
+        check(threads >= 1, "threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Установить длительность замера
+     * @param durationMillis длительность в миллисекундах
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions durationMillis(long durationMillis) {
+        check(durationMillis > 0L, "duration must be positive");
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    /**
+     * Установить длительность прогрева, результаты которого не учитываются
+     * @param warmupMillis длительность в миллисекундах
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions warmupMillis(long warmupMillis) {
+        check(warmupMillis >= 0L, "warmup must not be negative");
+        this.warmupMillis = warmupMillis;
+        return this;
+    }
+
+    /**
+     * Установить интенсивность поступления документов всеми потоками
+     * @param rate документов в секунду, 0 - без ограничения
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions rate(double rate) {
+        check(rate >= 0.0, "rate must not be negative");
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * Установить распределение промежутков между поступлениями документов
+     * @param arrival значение {@link #ARRIVAL_UNIFORM}, {@link #ARRIVAL_POISSON}
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions arrival(byte arrival) {
+        this.arrival = arrival;
+        return this;
+    }
+
+    /**
+     * Установить распределение выбора компаний документа
+     * @param distribution значение {@link #DISTRIBUTION_UNIFORM}, {@link #DISTRIBUTION_ZIPF}
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions distribution(byte distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * Установить показатель распределения Ципфа
+     * @param zipfExponent показатель, чем больше - тем сильнее выделяются популярные компании
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions zipfExponent(double zipfExponent) {
+        check(zipfExponent > 0.0, "zipf exponent must be positive");
+        this.zipfExponent = zipfExponent;
+        return this;
+    }
+
+    /**
+     * Установить долю документов со встречными предложениями
+     * @param counterOfferRatio доля от 0 до 1
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions counterOfferRatio(double counterOfferRatio) {
+        check(counterOfferRatio >= 0.0 && counterOfferRatio <= 1.0, "counter-offers must be between 0 and 1");
+        this.counterOfferRatio = counterOfferRatio;
+        return this;
+    }
+
+    /**
+     * Установить количество встречных предложений в документе
+     * @param counterOfferRounds количество встречных предложений
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions counterOfferRounds(int counterOfferRounds) {
+        check(counterOfferRounds >= 1, "rounds must be positive");
+        this.counterOfferRounds = counterOfferRounds;
+        return this;
+    }
+
+    /**
+     * Установить проверку ограничений
+     * @param limits true - ограничения по умолчанию, false - ограничения выключены
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions limits(boolean limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    /**
+     * Установить оставлять ли обработанные документы в системе
+     * @param retain true - документы остаются, false - документы удаляются после обработки
+     * @return параметры нагрузки
+     */
+    public WorkloadOptions retain(boolean retain) {
+        this.retain = retain;
+        return this;
+    }
+
+    /**
+     * Получить количество компаний
+     * @return количество компаний
+     */
+    public int getCompanies() {
+        return companies;
+    }
+
+    /**
+     * Получить количество потоков нагрузки
+     * @return количество потоков нагрузки
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Получить длительность замера в миллисекундах
+     * @return длительность замера в миллисекундах
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Получить длительность прогрева в миллисекундах
+     * @return длительность прогрева в миллисекундах
+     */
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    /**
+     * Получить интенсивность поступления документов в секунду, 0 - без ограничения
+     * @return интенсивность поступления документов в секунду
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Получить распределение промежутков между поступлениями документов
+     * @return значение {@link #ARRIVAL_UNIFORM}, {@link #ARRIVAL_POISSON}
+     */
+    public byte getArrival() {
+        return arrival;
+    }
+
+    /**
+     * Получить распределение выбора компаний документа
+     * @return значение {@link #DISTRIBUTION_UNIFORM}, {@link #DISTRIBUTION_ZIPF}
+     */
+    public byte getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Получить показатель распределения Ципфа
+     * @return показатель распределения Ципфа
+     */
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    /**
+     * Получить долю документов со встречными предложениями
+     * @return долю документов со встречными предложениями
+     */
+    public double getCounterOfferRatio() {
+        return counterOfferRatio;
+    }
+
+    /**
+     * Получить количество встречных предложений в документе
+     * @return количество встречных предложений в документе
+     */
+    public int getCounterOfferRounds() {
+        return counterOfferRounds;
+    }
+
+    /**
+     * Проверить оставлять ли обработанные документы в системе
+     * @return true - документы остаются, false - документы удаляются
+     */
+    public boolean isRetain() {
+        return retain;
+    }
+
+    /**
+     * Получить настройки ограничений системы документооборота
+     * @return настройки по умолчанию или настройки с выключенными ограничениями
+     */
+    public Settings getSettings() {
+        return limits ? Settings.createDefaultSettings() : Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 10,
+                false, 10, 1,
+                false, 10);
+    }
+
+    @Override
+    public String toString() {
+        return "companies=" + companies + " threads=" + threads
+                + " duration=" + durationMillis + "ms warmup=" + warmupMillis + "ms"
+                + " rate=" + (rate == 0.0 ? "unbounded" : rate + "/s")
+                + " arrival=" + (arrival == ARRIVAL_POISSON ? "poisson" : "uniform")
+                + " distribution=" + (distribution == DISTRIBUTION_ZIPF ? "zipf(" + zipfExponent + ")" : "uniform")
+                + " counter-offers=" + counterOfferRatio + " rounds=" + counterOfferRounds
+                + " limits=" + (limits ? "default" : "off") + " retain=" + retain;
+    }
+
+}
@@ -0,0 +1,199 @@
+package ru.f13.ikt.app;
+
+import ru.f13.ikt.logic.AdmissionStatus;
+import ru.f13.ikt.logic.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Класс описывает результаты замера нагрузки {@link WorkloadSimulator}: пропускную способность,
+ * процентили задержек сценариев и доли результатов добавления документов
+ */
+public final class WorkloadReport {
+
+    static final String[] STATUS_NAMES = {
+            "signed", "added", "rejected_invalid_document", "rejected_company_workflow_limit",
+            "rejected_company_create_document_limit", "rejected_workflow_limit"
+    };
+
+    static final int STATUS_COUNT = STATUS_NAMES.length;
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final WorkloadOptions options;
+    private final long elapsedNanos;
+    private final long directFlows;
+    private final long counterOfferFlows;
+    private final long signedFlows;
+    private final LatencyHistogram.Snapshot directLatency;
+    private final LatencyHistogram.Snapshot counterOfferLatency;
+    private final long[] admissions;
+
+    /**
+     * Конструктор для объекта результатов
+     * @param options параметры нагрузки
+     * @param elapsedNanos длительность замера в наносекундах
+     * @param directFlows количество сценариев прямого подписания
+     * @param counterOfferFlows количество сценариев со встречными предложениями
+     * @param signedFlows количество сценариев, завершившихся подписанием документа
+     * @param directLatency задержки сценариев прямого подписания
+     * @param counterOfferLatency задержки сценариев со встречными предложениями
+     * @param admissions количество добавлений по результатам {@link AdmissionStatus}
+     */
+    WorkloadReport(WorkloadOptions options, long elapsedNanos, long directFlows, long counterOfferFlows,
+                   long signedFlows, LatencyHistogram.Snapshot directLatency,
+                   LatencyHistogram.Snapshot counterOfferLatency, long[] admissions) {
+        this.options = options;
+        this.elapsedNanos = elapsedNanos;
+        this.directFlows = directFlows;
+        this.counterOfferFlows = counterOfferFlows;
+        this.signedFlows = signedFlows;
+        this.directLatency = directLatency;
+        this.counterOfferLatency = counterOfferLatency;
+        this.admissions = admissions;
+    }
+
+    /**
+     * Получить количество выполненных сценариев
+     * @return количество сценариев
+     */
+    public long getFlowCount() {
+        return directFlows + counterOfferFlows;
+    }
+
+    /**
+     * Получить количество сценариев прямого подписания
+     * @return количество сценариев
+     */
+    public long getDirectFlowCount() {
+        return directFlows;
+    }
+
+    /**
+     * Получить количество сценариев со встречными предложениями
+     * @return количество сценариев
+     */
+    public long getCounterOfferFlowCount() {
+        return counterOfferFlows;
+    }
+
+    /**
+     * Получить количество сценариев, завершившихся подписанием документа обеими сторонами
+     * @return количество сценариев
+     */
+    public long getSignedFlowCount() {
+        return signedFlows;
+    }
+
+    /**
+     * Получить пропускную способность
+     * @return сценариев в секунду
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0L ? 0.0 : getFlowCount() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Получить задержки сценариев прямого подписания
+     * @return снимок гистограммы задержек
+     */
+    public LatencyHistogram.Snapshot getDirectLatency() {
+        return directLatency;
+    }
+
+    /**
+     * Получить задержки сценариев со встречными предложениями
+     * @return снимок гистограммы задержек
+     */
+    public LatencyHistogram.Snapshot getCounterOfferLatency() {
+        return counterOfferLatency;
+    }
+
+    /**
+     * Получить количество добавлений документов с указанным результатом
+     * @param status результат добавления {@link AdmissionStatus}
+     * @return количество добавлений
+     */
+    public long getAdmissionCount(byte status) {
+        return admissions[status];
+    }
+
+    /**
+     * Получить долю отказов в добавлении документов
+     * @return доля отказов от 0 до 1
+     */
+    public double getRejectionRate() {
+
+        long total = 0L;
+        long rejected = 0L;
+        for (byte status = 0; status < admissions.length; status++) {
+            total += admissions[status];
+            if (!AdmissionStatus.isAdded(status)) {
+                rejected += admissions[status];
+            }
+        }
+
+        return total == 0L ? 0.0 : (double) rejected / total;
+    }
+
+    /**
+     * Вывести результаты в текстовом виде
+     * @param out получатель текста
+     */
+    public void print(PrintStream out) {
+
+        out.printf(Locale.ROOT, "options: %s%n", options);
+        out.printf(Locale.ROOT, "elapsed: %.3f s%n", elapsedNanos / 1e9);
+        out.printf(Locale.ROOT, "flows: %d (direct %d, counter-offer %d), signed %d%n",
+                getFlowCount(), directFlows, counterOfferFlows, signedFlows);
+        out.printf(Locale.ROOT, "throughput: %.1f flows/s%n", getThroughput());
+
+        printLatency(out, "direct", directLatency);
+        printLatency(out, "counter-offer", counterOfferLatency);
+
+        long total = 0L;
+        for (long count : admissions) {
+            total += count;
+        }
+        out.printf(Locale.ROOT, "admissions: %d, rejection rate %.4f%n", total, getRejectionRate());
+        for (int i = 0; i < admissions.length; i++) {
+            if (admissions[i] != 0L) {
+                out.printf(Locale.ROOT, "  %-40s %12d %8.4f%n", STATUS_NAMES[i], admissions[i],
+                        (double) admissions[i] / total);
+            }
+        }
+
+    }
+
+    /**
+     * Вывести процентили задержек сценария
+     * @param out получатель текста
+     * @param name название сценария
+     * @param latency снимок гистограммы задержек
+     */
+    private static void printLatency(PrintStream out, String name, LatencyHistogram.Snapshot latency) {
+
+        if (latency.getCount() == 0L) {
+            return;
+        }
+
+        out.printf(Locale.ROOT, "%s latency, us: mean %.1f", name, latency.getMean() / 1e3);
+        for (double quantile : QUANTILES) {
+            out.printf(Locale.ROOT, " p%s %.1f", percentile(quantile), latency.getPercentile(quantile) / 1e3);
+        }
+        out.printf(Locale.ROOT, " max %.1f%n", latency.getMax() / 1e3);
+
+    }
+
+    /**
+     * Получить обозначение процентиля
+     * @param quantile доля значений, например 0.999
+     * @return обозначение, например 99.9
+     */
+    private static String percentile(double quantile) {
+        String value = String.format(Locale.ROOT, "%.1f", quantile * 100.0);
+        return value.endsWith(".0") ? value.substring(0, value.length() - 2) : value;
+    }
+
+}
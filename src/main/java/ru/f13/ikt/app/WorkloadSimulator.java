@@ -0,0 +1,310 @@
+package ru.f13.ikt.app;
+
+import ru.f13.ikt.logic.Company;
+import ru.f13.ikt.logic.Company1;
+import ru.f13.ikt.logic.Company2;
+import ru.f13.ikt.logic.Document;
+import ru.f13.ikt.logic.LatencyHistogram;
+import ru.f13.ikt.logic.SystemWorkflow;
+import ru.f13.ikt.logic.WorkflowMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Класс описывает нагрузку на систему документооборота: компании обмениваются документами в нескольких потоках.
+ * Каждый документ проходит один из сценариев:
+ * <ul>
+ * <li>прямое подписание - компания создает документ и добавляет его в систему, которая подписывает его обеими сторонами;</li>
+ * <li>встречные предложения - после добавления стороны по очереди изменяют документ {@link Company#changeDocument(Document)},
+ * подписывают его и передают другой стороне.</li>
+ * </ul>
+ * При заданной интенсивности документы поступают по расписанию, и задержка сценария отсчитывается от запланированного
+ * времени поступления, поэтому задержки, вызванные отставанием от расписания, не теряются.
+ * Результаты добавления учитываются метриками системы {@link WorkflowMetrics}
+ */
+public class WorkloadSimulator {
+
+    private final WorkloadOptions options;
+    private final SystemWorkflow workflow;
+    private final Company1[] initiators;
+    private final Company2[] recipients;
+    private final CompanySampler initiatorSampler;
+    private final CompanySampler recipientSampler;
+
+    private final LatencyHistogram directLatency = new LatencyHistogram();
+    private final LatencyHistogram counterOfferLatency = new LatencyHistogram();
+    private final LongAdder directFlows = new LongAdder();
+    private final LongAdder counterOfferFlows = new LongAdder();
+    private final LongAdder signedFlows = new LongAdder();
+
+    private volatile boolean running;
+    private volatile boolean measuring;
+
+    /**
+     * Конструктор для объекта нагрузки
+     * @param options параметры нагрузки
+     */
+    public WorkloadSimulator(WorkloadOptions options) {
+
+        this.options = options;
+
+        workflow = options.getThreads() > 1 ? SystemWorkflow.createConcurrentSystemWorkflow() : new SystemWorkflow();
+        workflow.setSettings(options.getSettings());
+
+        initiators = new Company1[(options.getCompanies() + 1) / 2];
+        for (int i = 0; i < initiators.length; i++) {
+            initiators[i] = new Company1();
+        }
+        recipients = new Company2[options.getCompanies() / 2];
+        for (int i = 0; i < recipients.length; i++) {
+            recipients[i] = new Company2();
+        }
+
+        boolean zipf = options.getDistribution() == WorkloadOptions.DISTRIBUTION_ZIPF;
+        initiatorSampler = new CompanySampler(initiators.length, zipf, options.getZipfExponent());
+        recipientSampler = new CompanySampler(recipients.length, zipf, options.getZipfExponent());
+
+    }
+
+    /**
+     * Получить систему документооборота, на которую подается нагрузка
+     * @return система документооборота
+     */
+    public SystemWorkflow getWorkflow() {
+        return workflow;
+    }
+
+    /**
+     * Подать нагрузку: прогрев, затем замер
+     * @return результаты замера
+     * @throws InterruptedException поток прерван во время замера
+     */
+    public WorkloadReport run() throws InterruptedException {
+
+        WorkflowMetrics metrics = workflow.enableMetrics();
+
+        running = true;
+        Thread[] threads = new Thread[options.getThreads()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(this::generate, "workload-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        long elapsed;
+        WorkflowMetrics.Snapshot before;
+        WorkflowMetrics.Snapshot after;
+        try {
+
+            TimeUnit.MILLISECONDS.sleep(options.getWarmupMillis());
+
+            before = metrics.snapshot();
+            long start = System.nanoTime();
+            measuring = true;
+
+            TimeUnit.MILLISECONDS.sleep(options.getDurationMillis());
+
+            measuring = false;
+            elapsed = System.nanoTime() - start;
+            after = metrics.snapshot();
+
+        } finally {
+            measuring = false;
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        long[] admissions = new long[WorkloadReport.STATUS_COUNT];
+        for (byte status = 0; status < admissions.length; status++) {
+            admissions[status] = after.getAdmissionCount(status) - before.getAdmissionCount(status);
+        }
+
+        return new WorkloadReport(options, elapsed, directFlows.sum(), counterOfferFlows.sum(), signedFlows.sum(),
+                directLatency.snapshot(), counterOfferLatency.snapshot(), admissions);
+    }
+
+    /**
+     * Подавать документы в потоке нагрузки, пока нагрузка не остановлена
+     */
+    private void generate() {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        //промежуток между документами одного потока в наносекундах, 0 - без ограничения интенсивности
+        double interval = options.getRate() == 0.0 ? 0.0 : options.getThreads() * 1e9 / options.getRate();
+        boolean poisson = options.getArrival() == WorkloadOptions.ARRIVAL_POISSON;
+        double next = System.nanoTime();
+
+        while (running) {
+
+            long scheduled;
+            if (interval > 0.0) {
+
+                next += poisson ? -Math.log(1.0 - random.nextDouble()) * interval : interval;
+                scheduled = (long) next;
+
+                long delay;
+                while (running && (delay = scheduled - System.nanoTime()) > 0L) {
+                    LockSupport.parkNanos(delay);
+                }
+                if (!running) {
+                    break;
+                }
+
+            } else {
+                scheduled = System.nanoTime();
+            }
+
+            Company1 initiator = initiators[initiatorSampler.next(random)];
+            Company2 recipient = recipients[recipientSampler.next(random)];
+
+            boolean counterOffer = random.nextDouble() < options.getCounterOfferRatio();
+            boolean signed = counterOffer ? counterOfferFlow(initiator, recipient) : directFlow(initiator, recipient);
+            long latency = System.nanoTime() - scheduled;
+
+            if (measuring) {
+                if (counterOffer) {
+                    counterOfferLatency.record(latency);
+                    counterOfferFlows.increment();
+                } else {
+                    directLatency.record(latency);
+                    directFlows.increment();
+                }
+                if (signed) {
+                    signedFlows.increment();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Сценарий прямого подписания
+     * @param initiator компания, создающая документ
+     * @param recipient компания 2 стороны
+     * @return true - документ подписан обеими сторонами
+     */
+    private boolean directFlow(Company initiator, Company recipient) {
+
+        Document document = initiator.createDocument(recipient);
+        boolean signed = workflow.addDocument1(document);
+
+        complete(document, initiator, recipient);
+
+        return signed;
+    }
+
+    /**
+     * Сценарий встречных предложений: сторона, у которой документ, делает встречное предложение и подписывает его,
+     * затем передает документ другой стороне, которая его подписывает
+     * @param initiator компания, создающая документ
+     * @param recipient компания 2 стороны
+     * @return true - документ подписан обеими сторонами
+     */
+    private boolean counterOfferFlow(Company initiator, Company recipient) {
+
+        Document document = initiator.createDocument(recipient);
+        workflow.addDocument1(document);
+
+        boolean signed = false;
+        if (workflow.isContainsDocument(document)) {
+
+            //после добавления документ у 2 стороны
+            Company proposer = recipient;
+            Company other = initiator;
+            for (int i = 0; i < options.getCounterOfferRounds(); i++) {
+
+                proposer.changeDocument(document);
+                workflow.signingDocument(document, proposer);
+                proposer.transferDocument(document, other);
+                workflow.signingDocument(document, other);
+
+                Company swap = proposer;
+                proposer = other;
+                other = swap;
+            }
+
+            signed = document.isSigning();
+        }
+
+        complete(document, initiator, recipient);
+
+        return signed;
+    }
+
+    /**
+     * Убрать обработанный документ из наличия компаний и из системы, если документы не требуется оставлять
+     * @param document документ
+     * @param company1 компания документа
+     * @param company2 компания документа
+     */
+    private void complete(Document document, Company company1, Company company2) {
+
+        if (options.isRetain()) {
+            return;
+        }
+
+        company1.removeDocument(document);
+        company2.removeDocument(document);
+        workflow.removeDocument(document);
+
+    }
+
+    /**
+     * Класс описывает выбор номера компании с равномерным распределением или распределением Ципфа
+     */
+    private static final class CompanySampler {
+
+        private final int count;
+        private final double[] cumulative;
+
+        /**
+         * Конструктор для объекта выбора
+         * @param count количество компаний
+         * @param zipf true - распределение Ципфа, false - равномерное распределение
+         * @param exponent показатель распределения Ципфа
+         */
+        private CompanySampler(int count, boolean zipf, double exponent) {
+
+            this.count = count;
+
+            if (zipf) {
+                cumulative = new double[count];
+                double sum = 0.0;
+                for (int i = 0; i < count; i++) {
+                    sum += 1.0 / Math.pow(i + 1, exponent);
+                    cumulative[i] = sum;
+                }
+                for (int i = 0; i < count; i++) {
+                    cumulative[i] /= sum;
+                }
+            } else {
+                cumulative = null;
+            }
+
+        }
+
+        /**
+         * Выбрать номер компании
+         * @param random генератор случайных чисел
+         * @return номер компании от 0, при распределении Ципфа компании с меньшими номерами выбираются чаще
+         */
+        private int next(ThreadLocalRandom random) {
+
+            if (cumulative == null) {
+                return random.nextInt(count);
+            }
+
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(count - 1, index < 0 ? -index - 1 : index);
+        }
+
+    }
+
+}
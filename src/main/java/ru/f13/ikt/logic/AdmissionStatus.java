@@ -0,0 +1,50 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Класс описывает результаты добавления документа в систему документооборота
+ */
+public final class AdmissionStatus {
+
+    /**
+     * Документ добавлен и подписан обеими сторонами
+     */
+    public static final byte SIGNED = 0;
+
+    /**
+     * Документ добавлен, но не подписан (например, из-за ограниченного времени)
+     */
+    public static final byte ADDED = 1;
+
+    /**
+     * Документ не добавлен: документ отсутствует или зарегистрирован в другой системе
+     */
+    public static final byte REJECTED_INVALID_DOCUMENT = 2;
+
+    /**
+     * Документ не добавлен: превышено ограничение по документообороту компании
+     */
+    public static final byte REJECTED_COMPANY_WORKFLOW_LIMIT = 3;
+
+    /**
+     * Документ не добавлен: превышено ограничение по созданию документов компанией
+     */
+    public static final byte REJECTED_COMPANY_CREATE_DOCUMENT_LIMIT = 4;
+
+    /**
+     * Документ не добавлен: превышено ограничение по документообороту между компаниями
+     */
+    public static final byte REJECTED_WORKFLOW_LIMIT = 5;
+
+    private AdmissionStatus() {
+    }
+
+    /**
+     * Проверить добавлен ли документ в систему
+     * @param status результат добавления
+     * @return true - документ добавлен, false - документ отклонен
+     */
+    public static boolean isAdded(byte status) {
+        return status == SIGNED || status == ADDED;
+    }
+
+}
@@ -0,0 +1,68 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс описывает часы с низким разрешением: фоновый поток с заданным интервалом читает системное время
+ * и сохраняет его в поле, поэтому чтение времени на каждой операции - это чтение одного поля
+ * без обращения к системным часам. Время отстает от системного не больше чем на интервал обновления
+ */
+public final class CachedClock extends WorkflowClock implements Closeable {
+
+    private final ScheduledExecutorService executor;
+    private volatile long millis = System.currentTimeMillis();
+
+    /**
+     * Конструктор для часов в системном часовом поясе
+     * @param tickMillis интервал обновления времени в миллисекундах
+     */
+    public CachedClock(long tickMillis) {
+        this(tickMillis, ZoneId.systemDefault());
+    }
+
+    /**
+     * Конструктор для часов
+     * @param tickMillis интервал обновления времени в миллисекундах
+     * @param zone часовой пояс
+     */
+    public CachedClock(long tickMillis, ZoneId zone) {
+
+        super(zone);
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workflow-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * Остановить обновление времени
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Обновить время, не уменьшая его при переводе системных часов назад
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        if (now > millis) {
+            millis = now;
+        }
+    }
+
+}
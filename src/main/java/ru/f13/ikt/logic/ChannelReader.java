@@ -0,0 +1,81 @@
+package ru.f13.ikt.logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Класс описывает последовательное чтение части файла через буфер фиксированного размера.
+ * Размер читаемой части не ограничен размером буфера и размером отображения файла в память.
+ * Чтение не защищено от одновременной работы потоков
+ */
+final class ChannelReader {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long limit;
+    private long position;
+
+    /**
+     * Конструктор для объекта чтения
+     * @param channel файл
+     * @param from позиция начала чтения
+     * @param to позиция конца чтения
+     * @param bufferSize размер буфера, не меньше наибольшей читаемой записи
+     */
+    ChannelReader(FileChannel channel, long from, long to, int bufferSize) {
+
+        this.channel = channel;
+        this.limit = to;
+        this.position = from;
+
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.limit(0);
+
+    }
+
+    /**
+     * Дочитать в буфер непрочитанные байты, чтобы их было не меньше заданного количества
+     * @param count количество байт
+     * @return true - байты доступны в буфере, false - часть файла закончилась раньше
+     * @throws IOException ошибка чтения файла
+     */
+    boolean request(int count) throws IOException {
+
+        if (buffer.remaining() >= count) {
+            return true;
+        }
+
+        buffer.compact();
+        while (buffer.position() < count && position < limit) {
+            if (limit - position < buffer.remaining()) {
+                buffer.limit(buffer.position() + (int) (limit - position));
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+
+        return buffer.remaining() >= count;
+    }
+
+    /**
+     * Получить буфер с непрочитанными байтами для чтения относительными операциями
+     * @return буфер
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Получить позицию файла, с которой начинаются непрочитанные байты
+     * @return позиция файла
+     */
+    long offset() {
+        return position - buffer.remaining();
+    }
+
+}
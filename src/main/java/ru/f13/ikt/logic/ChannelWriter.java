@@ -0,0 +1,67 @@
+package ru.f13.ikt.logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Класс описывает последовательную запись в файл частями через буфер фиксированного размера.
+ * Размер записываемых данных не ограничен размером буфера и размером отображения файла в память.
+ * Запись не защищена от одновременной работы потоков
+ */
+final class ChannelWriter {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long position;
+
+    /**
+     * Конструктор для объекта записи
+     * @param channel файл
+     * @param position позиция начала записи
+     * @param bufferSize размер буфера, не меньше наибольшей записываемой записи
+     */
+    ChannelWriter(FileChannel channel, long position, int bufferSize) {
+        this.channel = channel;
+        this.position = position;
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Освободить в буфере место для заданного количества байт, записав накопленные байты в файл
+     * @param count количество байт
+     * @return буфер для записи относительными операциями
+     * @throws IOException ошибка записи файла
+     */
+    ByteBuffer reserve(int count) throws IOException {
+
+        if (buffer.remaining() < count) {
+            flush();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Записать накопленные байты в файл
+     * @throws IOException ошибка записи файла
+     */
+    void flush() throws IOException {
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+
+    }
+
+    /**
+     * Получить позицию файла после последнего записанного в буфер байта
+     * @return позиция файла
+     */
+    long position() {
+        return position + buffer.position();
+    }
+
+}
@@ -0,0 +1,549 @@
+package ru.f13.ikt.logic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Класс описывает хранилище документов по столбцам.
+ * Документы хранятся в массивах примитивов (идентификаторы, идентификаторы компаний, время создания,
+ * подписи), разбитых на блоки фиксированного размера, а объекты {@link Document} являются представлениями
+ * строк хранилища. Хранилище не держит ссылок на документы, поэтому на документ приходится несколько десятков
+ * байт в массивах вместо нескольких объектов в куче. Представление, строка которого удалена через другое
+ * представление того же документа, отсоединяется от хранилища при следующем обращении.
+ * Дополнительные стороны документов редки, поэтому строка хранит
+ * только их количество, а сами компании хранятся в отдельной таблице по идентификатору документа.
+ * Хранилище допускает одновременную работу потоков: строки документа изменяются под блокировками компаний
+ * документа, а выделение строк и индекс идентификаторов синхронизированы отдельно
+ */
+public class ColumnarDocumentRepository implements DocumentRepository {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final Company[] NO_PARTIES = new Company[0];
+
+    private final SlotIndex index = new SlotIndex();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<Long, Company[]> additionalParties = new ConcurrentHashMap<>();
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile Company[] companies = new Company[16];
+
+    private int nextSlot;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    @Override
+    public boolean add(Document document) {
+
+        if (index.get(document.getId()) >= 0) {
+            return false;
+        }
+
+        Company company1 = document.getCompany1();
+        Company company2 = document.getCompany2();
+        Company creator = document.getCreator();
+        Company[] parties = document.getAdditionalParties();
+
+        registerCompany(company1);
+        registerCompany(company2);
+        registerCompany(creator);
+        if (parties.length > 0) {
+            additionalParties.put(document.getId(), parties);
+        }
+
+        int slot = allocateSlot();
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        int i = slot & CHUNK_MASK;
+
+        chunk.company1Ids[i] = companyId(company1);
+        chunk.company2Ids[i] = companyId(company2);
+        chunk.creatorIds[i] = companyId(creator);
+        chunk.createdMillis[i] = document.getCreatedMillis();
+        chunk.signatures[i] = document.getSignatures();
+        chunk.additionalCounts[i] = (byte) parties.length;
+        chunk.ids[i] = document.getId();
+
+        index.put(document.getId(), slot);
+        size.incrementAndGet();
+
+        document.attach(this, slot);
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(Document document) {
+
+        int slot = slot(document);
+        if (slot < 0) {
+            return false;
+        }
+
+        //вернуть состояние в поля объекта, чтобы документ остался пригодным после удаления
+        document.detach(getCompany1(document), getCompany2(document), getAdditionalParties(document),
+                getSignatures(document), getCreatedMillis(document), getCreator(document));
+
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        if (chunk.additionalCounts[slot & CHUNK_MASK] != 0) {
+            chunk.additionalCounts[slot & CHUNK_MASK] = 0;
+            additionalParties.remove(document.getId());
+        }
+        chunk.ids[slot & CHUNK_MASK] = 0L;
+        index.remove(document.getId());
+        size.decrementAndGet();
+        releaseSlot(slot);
+
+        return true;
+    }
+
+    @Override
+    public boolean contains(Document document) {
+        return index.get(document.getId()) >= 0;
+    }
+
+    @Override
+    public Document get(long id) {
+        int slot = index.get(id);
+        return slot < 0 ? null : view(slot, id);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Document> action) {
+
+        Chunk[] chunks = this.chunks;
+        for (int c = 0; c < chunks.length; c++) {
+            long[] ids = chunks[c].ids;
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                long id = ids[i];
+                if (id != 0L) {
+                    action.accept(view((c << CHUNK_BITS) | i, id));
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Создать представление строки хранилища с состоянием строки в полях объекта
+     * @param slot номер строки
+     * @param id идентификатор документа
+     * @return представление строки
+     */
+    private Document view(int slot, long id) {
+
+        Document document = new Document(this, slot, id);
+
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        int i = slot & CHUNK_MASK;
+        Company[] parties = chunk.additionalCounts[i] == 0 ? null : additionalParties.get(id);
+        document.load(company(chunk.company1Ids[i]), company(chunk.company2Ids[i]),
+                parties == null ? NO_PARTIES : parties, chunk.signatures[i], chunk.createdMillis[i],
+                company(chunk.creatorIds[i]));
+
+        return document;
+    }
+
+    /**
+     * Получить компанию 1 стороны документа
+     * @param document представление строки хранилища
+     * @return компания 1 стороны
+     */
+    Company getCompany1(Document document) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return document.getCompany1();
+        }
+        return company(chunks[slot >>> CHUNK_BITS].company1Ids[slot & CHUNK_MASK]);
+    }
+
+    /**
+     * Установить компанию 1 стороны документа
+     * @param document представление строки хранилища
+     * @param company компания 1 стороны
+     */
+    void setCompany1(Document document, Company company) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return;
+        }
+        registerCompany(company);
+        chunks[slot >>> CHUNK_BITS].company1Ids[slot & CHUNK_MASK] = companyId(company);
+    }
+
+    /**
+     * Получить компанию 2 стороны документа
+     * @param document представление строки хранилища
+     * @return компания 2 стороны
+     */
+    Company getCompany2(Document document) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return document.getCompany2();
+        }
+        return company(chunks[slot >>> CHUNK_BITS].company2Ids[slot & CHUNK_MASK]);
+    }
+
+    /**
+     * Установить компанию 2 стороны документа
+     * @param document представление строки хранилища
+     * @param company компания 2 стороны
+     */
+    void setCompany2(Document document, Company company) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return;
+        }
+        registerCompany(company);
+        chunks[slot >>> CHUNK_BITS].company2Ids[slot & CHUNK_MASK] = companyId(company);
+    }
+
+    /**
+     * Получить компанию, создавшую документ
+     * @param document представление строки хранилища
+     * @return компания-создатель
+     */
+    Company getCreator(Document document) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return document.getCreator();
+        }
+        return company(chunks[slot >>> CHUNK_BITS].creatorIds[slot & CHUNK_MASK]);
+    }
+
+    /**
+     * Получить компании дополнительных сторон документа
+     * @param document представление строки хранилища
+     * @return компании сторон начиная с 3 стороны
+     */
+    Company[] getAdditionalParties(Document document) {
+
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return document.getAdditionalParties();
+        }
+        if (chunks[slot >>> CHUNK_BITS].additionalCounts[slot & CHUNK_MASK] == 0) {
+            return NO_PARTIES;
+        }
+
+        Company[] parties = additionalParties.get(document.getId());
+
+        return parties == null ? NO_PARTIES : parties;
+    }
+
+    /**
+     * Получить подписи документа
+     * @param document представление строки хранилища
+     * @return битовая маска подписей
+     */
+    byte getSignatures(Document document) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return document.getSignatures();
+        }
+        return chunks[slot >>> CHUNK_BITS].signatures[slot & CHUNK_MASK];
+    }
+
+    /**
+     * Установить подписи документа
+     * @param document представление строки хранилища
+     * @param signatures битовая маска подписей
+     */
+    void setSignatures(Document document, byte signatures) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return;
+        }
+        chunks[slot >>> CHUNK_BITS].signatures[slot & CHUNK_MASK] = signatures;
+    }
+
+    /**
+     * Получить время создания документа
+     * @param document представление строки хранилища
+     * @return время в миллисекундах от начала эпохи
+     */
+    long getCreatedMillis(Document document) {
+        int slot = slot(document);
+        if (slot < 0) {
+            document.detachRemoved();
+            return document.getCreatedMillis();
+        }
+        return chunks[slot >>> CHUNK_BITS].createdMillis[slot & CHUNK_MASK];
+    }
+
+    /**
+     * Получить номер строки документа, обновив его в представлении, если строка переместилась
+     * @param document представление строки хранилища
+     * @return номер строки или -1, если документа нет в хранилище
+     */
+    private int slot(Document document) {
+
+        int slot = document.getSlot();
+        Chunk[] chunks = this.chunks;
+        int chunk = slot >>> CHUNK_BITS;
+
+        if (chunk < chunks.length && chunks[chunk].ids[slot & CHUNK_MASK] == document.getId()) {
+            return slot;
+        }
+
+        slot = index.get(document.getId());
+        if (slot >= 0) {
+            document.setSlot(slot);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Выделить строку хранилища
+     * @return номер строки
+     */
+    private synchronized int allocateSlot() {
+
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+
+        int slot = nextSlot++;
+        int chunk = slot >>> CHUNK_BITS;
+
+        if (chunk == chunks.length) {
+            Chunk[] grown = new Chunk[chunk + 1];
+            System.arraycopy(chunks, 0, grown, 0, chunk);
+            grown[chunk] = new Chunk();
+            chunks = grown;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Освободить строку хранилища
+     * @param slot номер строки
+     */
+    private synchronized void releaseSlot(int slot) {
+
+        if (freeCount == freeSlots.length) {
+            int[] grown = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+            freeSlots = grown;
+        }
+
+        freeSlots[freeCount++] = slot;
+
+    }
+
+    /**
+     * Запомнить компанию по идентификатору
+     * @param company компания (может быть null)
+     */
+    private void registerCompany(Company company) {
+
+        if (company == null) {
+            return;
+        }
+
+        int id = company.getId();
+        Company[] companies = this.companies;
+        if (id < companies.length && companies[id] == company) {
+            return;
+        }
+
+        synchronized (this) {
+            companies = this.companies;
+            if (id >= companies.length) {
+                Company[] grown = new Company[Math.max(id + 1, companies.length * 2)];
+                System.arraycopy(companies, 0, grown, 0, companies.length);
+                companies = grown;
+            }
+            companies[id] = company;
+            this.companies = companies;
+        }
+
+    }
+
+    /**
+     * Получить компанию по идентификатору
+     * @param id идентификатор компании, 0 - компания отсутствует
+     * @return компания или null
+     */
+    private Company company(int id) {
+        Company[] companies = this.companies;
+        return id <= 0 || id >= companies.length ? null : companies[id];
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @param company компания (может быть null)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    private static int companyId(Company company) {
+        return company == null ? 0 : company.getId();
+    }
+
+    /**
+     * Класс описывает блок строк хранилища
+     */
+    private static final class Chunk {
+
+        private final long[] ids = new long[CHUNK_SIZE];
+        private final int[] company1Ids = new int[CHUNK_SIZE];
+        private final int[] company2Ids = new int[CHUNK_SIZE];
+        private final int[] creatorIds = new int[CHUNK_SIZE];
+        private final long[] createdMillis = new long[CHUNK_SIZE];
+        private final byte[] signatures = new byte[CHUNK_SIZE];
+        private final byte[] additionalCounts = new byte[CHUNK_SIZE];
+
+    }
+
+    /**
+     * Класс описывает индекс строк по идентификатору документа:
+     * хеш-таблицы с открытой адресацией, разбитые на сегменты со своей блокировкой
+     */
+    private static final class SlotIndex {
+
+        private static final int SEGMENTS = 64;
+
+        private final Segment[] segments = new Segment[SEGMENTS];
+
+        private SlotIndex() {
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment();
+            }
+        }
+
+        private int get(long id) {
+            return segment(id).get(id);
+        }
+
+        private void put(long id, int slot) {
+            segment(id).put(id, slot);
+        }
+
+        private void remove(long id) {
+            segment(id).remove(id);
+        }
+
+        private Segment segment(long id) {
+            return segments[(int) (mix(id) >>> 58)];
+        }
+
+        private static long mix(long id) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return hash ^ (hash >>> 32);
+        }
+
+        /**
+         * Сегмент индекса: ключ 0 означает пустую ячейку
+         */
+        private static final class Segment {
+
+            private long[] keys = new long[16];
+            private int[] values = new int[16];
+            private int count;
+
+            private synchronized int get(long id) {
+
+                int mask = keys.length - 1;
+                for (int i = (int) mix(id) & mask; ; i = (i + 1) & mask) {
+                    long key = keys[i];
+                    if (key == id) {
+                        return values[i];
+                    }
+                    if (key == 0L) {
+                        return -1;
+                    }
+                }
+
+            }
+
+            private synchronized void put(long id, int slot) {
+
+                if ((count + 1) * 4 > keys.length * 3) {
+                    resize();
+                }
+
+                int mask = keys.length - 1;
+                int i = (int) mix(id) & mask;
+                while (keys[i] != 0L && keys[i] != id) {
+                    i = (i + 1) & mask;
+                }
+
+                if (keys[i] == 0L) {
+                    count++;
+                }
+                keys[i] = id;
+                values[i] = slot;
+
+            }
+
+            private synchronized void remove(long id) {
+
+                int mask = keys.length - 1;
+                int i = (int) mix(id) & mask;
+                while (keys[i] != id) {
+                    if (keys[i] == 0L) {
+                        return;
+                    }
+                    i = (i + 1) & mask;
+                }
+
+                //сдвинуть следующие ключи цепочки на освободившееся место
+                int gap = i;
+                for (int j = (gap + 1) & mask; keys[j] != 0L; j = (j + 1) & mask) {
+                    int home = (int) mix(keys[j]) & mask;
+                    if (((j - home) & mask) >= ((j - gap) & mask)) {
+                        keys[gap] = keys[j];
+                        values[gap] = values[j];
+                        gap = j;
+                    }
+                }
+                keys[gap] = 0L;
+                count--;
+
+            }
+
+            private void resize() {
+
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                count = 0;
+
+                int mask = keys.length - 1;
+                for (int j = 0; j < oldKeys.length; j++) {
+                    if (oldKeys[j] != 0L) {
+                        int i = (int) mix(oldKeys[j]) & mask;
+                        while (keys[i] != 0L) {
+                            i = (i + 1) & mask;
+                        }
+                        keys[i] = oldKeys[j];
+                        values[i] = oldValues[j];
+                        count++;
+                    }
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -1,17 +1,52 @@
 package ru.f13.ikt.logic;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Класс описывает компанию
  */
 public abstract class Company {
 
-    private List<Document> documents;
+    private static final AtomicInteger ID_SEQUENCE = new AtomicInteger();
+    private static final int CREATE_DOCUMENT_LIMITER_CAPACITY = 16;
+
+    private final int id;
+    private final CreateDocumentLimiter createDocumentLimiter;
+    private final ReentrantLock documentsLock = new ReentrantLock();
+    private DocumentHoldings documents;
+    private List<Document> documentsView;
 
     public Company() {
-        documents = new ArrayList<>(0);
+        this(ID_SEQUENCE.incrementAndGet());
+    }
+
+    /**
+     * Конструктор компании с заданным идентификатором, например при восстановлении системы документооборота
+     * @param id идентификатор компании
+     */
+    protected Company(int id) {
+
+        //новые компании должны получать идентификаторы больше заданного
+        int current = ID_SEQUENCE.get();
+        while (current < id && !ID_SEQUENCE.compareAndSet(current, id)) {
+            current = ID_SEQUENCE.get();
+        }
+
+        this.id = id;
+        createDocumentLimiter = new CreateDocumentLimiter(CREATE_DOCUMENT_LIMITER_CAPACITY);
+        documents = new DocumentHoldings();
+        documentsView = Collections.unmodifiableList(documents);
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @return уникальный идентификатор компании
+     */
+    public int getId() {
+        return id;
     }
 
     /**
@@ -22,6 +57,25 @@ public abstract class Company {
     public Document createDocument(Company otherCompany) {
 
         Document document = new Document(this, otherCompany);
+        document.setCreator(this);
+        createDocumentLimiter.record(document.getCreatedMillis());
+        addDocument(document);
+
+        return document;
+    }
+
+    /**
+     * Создать документ текущей компанией с дополнительными сторонами
+     * @param otherCompany другая компания (для 2 стороны)
+     * @param additionalParties компании дополнительных сторон, начиная с 3 стороны
+     * @return документ
+     * @throws IllegalArgumentException сторон больше {@link Document#MAX_PARTIES}
+     */
+    public Document createDocument(Company otherCompany, Company... additionalParties) {
+
+        Document document = new Document(this, otherCompany, additionalParties);
+        document.setCreator(this);
+        createDocumentLimiter.record(document.getCreatedMillis());
         addDocument(document);
 
         return document;
@@ -37,13 +91,20 @@ public abstract class Company {
             return null;
         }
 
-        //если текущий объект документа не является компанией создавшей документ
-        if (!document.getCompany1().equals(this)) {
-            document.setCompany2(document.getCompany1());
-            document.setCompany1(this);
-            document.resetSigning();
+        SystemWorkflow workflow = document.getWorkflow();
+        long lock = workflow == null ? 0L : workflow.lockDocument(document, this);
+        try {
 
-            addDocument(document);
+            //если текущий объект документа не является компанией создавшей документ
+            if (!document.getCompany1().equals(this)) {
+                document.counterOffer(this);
+                store(document);
+            }
+
+        } finally {
+            if (workflow != null) {
+                workflow.unlock(lock);
+            }
         }
 
         return document;
@@ -54,9 +115,22 @@ public abstract class Company {
      * @param document документ
      */
     public void addDocument(Document document) {
-        if (documents != null) {
-            documents.add(document);
+
+        SystemWorkflow workflow = document == null ? null : document.getWorkflow();
+        if (workflow == null) {
+            store(document);
+            return;
         }
+
+        long lock = workflow.lock(this, null);
+        try {
+            if (store(document)) {
+                workflow.fireDocumentHeld(document, this);
+            }
+        } finally {
+            workflow.unlock(lock);
+        }
+
     }
 
     /**
@@ -64,8 +138,51 @@ public abstract class Company {
      * @param document удаляемый документ
      */
     public void removeDocument(Document document) {
-        if (documents != null) {
-            documents.remove(document);
+
+        SystemWorkflow workflow = document == null ? null : document.getWorkflow();
+        if (workflow == null) {
+            release(document);
+            return;
+        }
+
+        long lock = workflow.lock(this, null);
+        try {
+            if (release(document)) {
+                workflow.fireDocumentReleased(document, this);
+            }
+        } finally {
+            workflow.unlock(lock);
+        }
+
+    }
+
+    /**
+     * Поместить документ в наличие компании без уведомления системы документооборота
+     * @param document документ
+     * @return true - документ помещен, false - документ уже был в наличии
+     */
+    boolean store(Document document) {
+
+        documentsLock.lock();
+        try {
+            return documents != null && documents.add(document);
+        } finally {
+            documentsLock.unlock();
+        }
+    }
+
+    /**
+     * Убрать документ из наличия компании без уведомления системы документооборота
+     * @param document документ
+     * @return true - документ убран, false - документа не было в наличии
+     */
+    boolean release(Document document) {
+
+        documentsLock.lock();
+        try {
+            return documents != null && documents.remove(document);
+        } finally {
+            documentsLock.unlock();
         }
     }
 
@@ -79,7 +196,12 @@ public abstract class Company {
             return false;
         }
 
-        return documents.stream().anyMatch(document -> document.equals(document1));
+        documentsLock.lock();
+        try {
+            return documents.contains(document1);
+        } finally {
+            documentsLock.unlock();
+        }
 
     }
 
@@ -89,15 +211,60 @@ public abstract class Company {
      * @param company компания, которой передается документ
      */
     public void transferDocument(Document document, Company company) {
-        company.addDocument(document);
-        removeDocument(document);
+
+        SystemWorkflow workflow = document.getWorkflow();
+        if (workflow == null) {
+            company.store(document);
+            release(document);
+            return;
+        }
+
+        long lock = workflow.lock(this, company);
+        try {
+            company.store(document);
+            release(document);
+            workflow.fireDocumentTransferred(document, this, company);
+        } finally {
+            workflow.unlock(lock);
+        }
+
     }
 
     /**
-     * Получить список документов компании
-     * @return список документов компании
+     * Получить документы компании в порядке их получения.
+     * Возвращается представление только для чтения, которое не защищено от одновременного изменения:
+     * в параллельном режиме системы документооборота его следует читать, только когда с компанией
+     * не выполняются операции
+     * @return документы компании
      */
     public List<Document> getDocuments() {
-        return documents;
+        return documentsView;
+    }
+
+    /**
+     * Получить идентификаторы документов в наличии компании в порядке их получения
+     * @return идентификаторы документов
+     */
+    long[] getDocumentIds() {
+
+        documentsLock.lock();
+        try {
+            long[] ids = new long[documents.size()];
+            int i = 0;
+            for (Document document : documents) {
+                ids[i++] = document.getId();
+            }
+            return ids;
+        } finally {
+            documentsLock.unlock();
+        }
+    }
+
+    /**
+     * Получить скользящее окно документов, созданных компанией
+     * @return объект {@link CreateDocumentLimiter}
+     */
+    CreateDocumentLimiter getCreateDocumentLimiter() {
+        return createDocumentLimiter;
     }
 }
@@ -5,4 +5,15 @@ package ru.f13.ikt.logic;
  */
 public class Company1 extends Company {
 
+    public Company1() {
+    }
+
+    /**
+     * Конструктор компании с заданным идентификатором, например при восстановлении системы документооборота
+     * @param id идентификатор компании
+     */
+    public Company1(int id) {
+        super(id);
+    }
+
 }
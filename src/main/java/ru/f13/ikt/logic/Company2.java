@@ -5,4 +5,15 @@ package ru.f13.ikt.logic;
  */
 public class Company2 extends Company{
 
+    public Company2() {
+    }
+
+    /**
+     * Конструктор компании с заданным идентификатором, например при восстановлении системы документооборота
+     * @param id идентификатор компании
+     */
+    public Company2(int id) {
+        super(id);
+    }
+
 }
@@ -0,0 +1,216 @@
+package ru.f13.ikt.logic;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Класс описывает набор блокировок компаний, разбитых на полосы.
+ * Компания блокируется блокировкой своей полосы, поэтому операции над несвязанными
+ * компаниями выполняются параллельно. Блокировки захватываются по возрастанию номера полосы,
+ * что исключает взаимную блокировку потоков.
+ * Признак блокировки вмещает три полосы; если компаний документа с дополнительными сторонами больше,
+ * захваченные полосы запоминаются в потоке, а признак указывает на них
+ */
+class CompanyLockStripes {
+
+    private static final int STRIPE_BITS = 21;
+    private static final long STRIPE_MASK = (1L << STRIPE_BITS) - 1L;
+    static final int MAX_STRIPES = 1 << (STRIPE_BITS - 1);
+    private static final long WIDE_TOKEN = Long.MIN_VALUE;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final ThreadLocal<ArrayDeque<int[]>> wideLocks = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Конструктор для объекта блокировок
+     * @param stripes количество полос (округляется до степени двойки)
+     */
+    CompanyLockStripes(int stripes) {
+
+        int size = stripeCount(stripes);
+
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+
+    }
+
+    /**
+     * Получить количество полос, округленное до степени двойки
+     * @param stripes требуемое количество полос
+     * @return количество полос
+     */
+    static int stripeCount(int stripes) {
+
+        if (stripes <= 1) {
+            return 1;
+        }
+
+        if (stripes >= MAX_STRIPES) {
+            return MAX_STRIPES;
+        }
+
+        return Integer.highestOneBit(stripes - 1) << 1;
+    }
+
+    /**
+     * Получить номер полосы компании
+     * @param companyId идентификатор компании
+     * @param mask маска полос
+     * @return номер полосы
+     */
+    static int stripeOf(int companyId, int mask) {
+        int hash = companyId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Получить маску полос
+     * @return маска полос
+     */
+    int getMask() {
+        return mask;
+    }
+
+    /**
+     * Заблокировать компании
+     * @param company1 первая компания (может быть null)
+     * @param company2 вторая компания (может быть null)
+     * @param company3 третья компания (может быть null)
+     * @return признак захваченных полос для {@link #unlock(long)}
+     */
+    long lock(Company company1, Company company2, Company company3) {
+
+        int a = company1 == null ? -1 : stripeOf(company1.getId(), mask);
+        int b = company2 == null ? -1 : stripeOf(company2.getId(), mask);
+        int c = company3 == null ? -1 : stripeOf(company3.getId(), mask);
+
+        //упорядочить полосы по возрастанию
+        int t;
+        if (a > b) {
+            t = a; a = b; b = t;
+        }
+        if (b > c) {
+            t = b; b = c; c = t;
+        }
+        if (a > b) {
+            t = a; a = b; b = t;
+        }
+
+        if (a == b) {
+            a = -1;
+        }
+        if (b == c) {
+            b = -1;
+        }
+
+        long token = 0L;
+        if (a >= 0) {
+            stripes[a].lock();
+            token = a + 1L;
+        }
+        if (b >= 0) {
+            stripes[b].lock();
+            token |= (b + 1L) << STRIPE_BITS;
+        }
+        if (c >= 0) {
+            stripes[c].lock();
+            token |= (c + 1L) << (STRIPE_BITS * 2);
+        }
+
+        return token;
+    }
+
+    /**
+     * Заблокировать компании вместе с компаниями дополнительных сторон документа
+     * @param company1 первая компания (может быть null)
+     * @param company2 вторая компания (может быть null)
+     * @param company3 третья компания (может быть null)
+     * @param others компании дополнительных сторон (элементы могут быть null)
+     * @return признак захваченных полос для {@link #unlock(long)}
+     */
+    long lock(Company company1, Company company2, Company company3, Company[] others) {
+
+        if (others.length == 0) {
+            return lock(company1, company2, company3);
+        }
+
+        int[] order = new int[others.length + 3];
+        int count = addStripe(order, 0, company1);
+        count = addStripe(order, count, company2);
+        count = addStripe(order, count, company3);
+        for (Company company : others) {
+            count = addStripe(order, count, company);
+        }
+
+        //упорядочить полосы по возрастанию без повторов
+        Arrays.sort(order, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || order[distinct - 1] != order[i]) {
+                order[distinct++] = order[i];
+            }
+        }
+
+        for (int i = 0; i < distinct; i++) {
+            stripes[order[i]].lock();
+        }
+
+        if (distinct > 3) {
+            wideLocks.get().push(Arrays.copyOf(order, distinct));
+            return WIDE_TOKEN;
+        }
+
+        long token = 0L;
+        for (int i = 0; i < distinct; i++) {
+            token |= (order[i] + 1L) << (STRIPE_BITS * i);
+        }
+
+        return token;
+    }
+
+    /**
+     * Добавить полосу компании
+     * @param order номера полос
+     * @param count количество полос
+     * @param company компания (может быть null)
+     * @return количество полос
+     */
+    private int addStripe(int[] order, int count, Company company) {
+
+        if (company != null) {
+            order[count++] = stripeOf(company.getId(), mask);
+        }
+
+        return count;
+    }
+
+    /**
+     * Разблокировать полосы, захваченные {@link #lock(Company, Company, Company)}
+     * или {@link #lock(Company, Company, Company, Company[])}
+     * @param token признак захваченных полос
+     */
+    void unlock(long token) {
+
+        if (token == WIDE_TOKEN) {
+            int[] order = wideLocks.get().pop();
+            for (int i = order.length - 1; i >= 0; i--) {
+                stripes[order[i]].unlock();
+            }
+            return;
+        }
+
+        for (int shift = STRIPE_BITS * 2; shift >= 0; shift -= STRIPE_BITS) {
+            int stripe = (int) ((token >>> shift) & STRIPE_MASK) - 1;
+            if (stripe >= 0) {
+                stripes[stripe].unlock();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,203 @@
+package ru.f13.ikt.logic;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Класс описывает скользящее окно созданных компанией документов.
+ * Хранит в кольцевом буфере время создания последних документов, чего достаточно,
+ * чтобы за постоянное время проверить ограничение на создание документов компанией.
+ * Буфер расширяется в 2 раза, пока самая старая отметка времени может попасть в окно последней проверки,
+ * но не больше наибольшего значения ограничения плюс 1 - для проверки больше отметок не требуется,
+ * поэтому память окна не зависит от количества созданных документов. Наибольшее значение ограничения
+ * устанавливается {@link #setMaxLimit(int)} при изменении настроек, буферы приводятся к нему при следующей записи.
+ * Обращения к окну защищены {@link ReentrantLock}, поэтому ожидающий виртуальный поток не занимает поток платформы
+ */
+class CreateDocumentLimiter {
+
+    private static final int DEFAULT_MAX_CAPACITY = 16;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static volatile int maxCapacity = DEFAULT_MAX_CAPACITY;
+
+    private long[] timestamps;
+    private int head;
+    private int size;
+    private long horizon = Long.MIN_VALUE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Конструктор для объекта скользящего окна
+     * @param capacity количество хранимых последних отметок времени
+     */
+    CreateDocumentLimiter(int capacity) {
+        this.timestamps = new long[Math.max(1, Math.min(capacity, maxCapacity))];
+    }
+
+    /**
+     * Установить наибольшее значение ограничения на создание документов компанией.
+     * Буферы всех окон хранят не больше limit + 1 последних отметок времени
+     * @param limit наибольшее значение ограничения
+     */
+    static void setMaxLimit(int limit) {
+        maxCapacity = limit >= MAX_ARRAY_LENGTH ? MAX_ARRAY_LENGTH : Math.max(1, limit + 1);
+    }
+
+    /**
+     * Учесть созданный документ
+     * @param millis время создания документа в миллисекундах
+     */
+    void record(long millis) {
+        lock.lock();
+        try {
+            insert(millis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Вставить отметку времени по возрастанию
+     * @param millis время создания документа в миллисекундах
+     */
+    private void insert(long millis) {
+
+        int bound = maxCapacity;
+        if (timestamps.length > bound) {
+            resize(bound);
+        }
+
+        //самая старая отметка еще может попасть в окно проверки - вытеснять ее можно только из буфера наибольшего размера
+        if (size == timestamps.length && timestamps.length < bound && timestamps[head] >= horizon) {
+            resize((int) Math.min(bound, (long) timestamps.length << 1));
+        }
+
+        int length = timestamps.length;
+
+        //отметка старше самой старой хранимой и начала окна не влияет на проверку заполненного окна
+        if (size == length && timestamps[head] > millis) {
+            return;
+        }
+
+        //отметки хранятся по возрастанию, запоздавшая отметка вставляется на свое место
+        int index = head;
+        for (int i = 0; i < size; i++) {
+            int previous = (index - 1 + length) % length;
+            if (timestamps[previous] <= millis || (size == length && previous == head)) {
+                break;
+            }
+            timestamps[index] = timestamps[previous];
+            index = previous;
+        }
+
+        timestamps[index] = millis;
+        head = (head + 1) % length;
+
+        if (size < length) {
+            size++;
+        }
+
+    }
+
+    /**
+     * Проверить создано ли не менее заданного количества документов начиная с указанного времени.
+     * Отметки старше начала окна после проверки могут вытесняться из буфера
+     * @param count количество документов
+     * @param since начало окна в миллисекундах
+     * @return true - создано не менее count документов, false - создано меньше
+     */
+    boolean hasAtLeast(int count, long since) {
+
+        lock.lock();
+        try {
+
+            if (since > horizon) {
+                horizon = since;
+            }
+
+            if (count <= 0) {
+                return true;
+            }
+
+            if (count > size) {
+                return false;
+            }
+
+            //отметки записываются по возрастанию, достаточно проверить count-ю с конца
+            int index = (head - count + timestamps.length) % timestamps.length;
+
+            return timestamps[index] >= since;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Увеличить количество хранимых отметок времени, сохранив последние из них,
+     * но не больше наибольшего значения ограничения плюс 1
+     * @param capacity требуемое количество хранимых отметок
+     */
+    void ensureCapacity(int capacity) {
+
+        lock.lock();
+        try {
+            int bounded = Math.min(capacity, maxCapacity);
+            if (bounded > timestamps.length) {
+                resize(bounded);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Перенести последние отметки времени в буфер другого размера
+     * @param capacity количество хранимых отметок
+     */
+    private void resize(int capacity) {
+
+        int kept = Math.min(size, capacity);
+        long[] resized = new long[capacity];
+        for (int i = 0; i < kept; i++) {
+            resized[i] = timestamps[(head - kept + i + timestamps.length) % timestamps.length];
+        }
+
+        timestamps = resized;
+        size = kept;
+        head = kept % capacity;
+
+    }
+
+    /**
+     * Получить количество хранимых последних отметок времени
+     * @return количество хранимых отметок
+     */
+    int capacity() {
+        lock.lock();
+        try {
+            return timestamps.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Получить хранимые отметки времени
+     * @return отметки времени по возрастанию
+     */
+    long[] toArray() {
+
+        lock.lock();
+        try {
+            long[] result = new long[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = timestamps[(head - size + i + timestamps.length) % timestamps.length];
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -3,14 +3,39 @@ package ru.f13.ikt.logic;
 import java.time.LocalDateTime;
 
 
+/**
+ * Класс описывает документ.
+ * Документ хранит свое состояние в полях объекта либо, если он добавлен в {@link ColumnarDocumentRepository},
+ * является представлением строки этого хранилища. Представление запоминает в полях объекта прочитанное и записанное
+ * состояние строки, поэтому после удаления строки из хранилища документ остается пригодным: перенесенный в архив
+ * документ получает состояние из архива, удаленный - сохраняет последнее известное состояние.
+ * Стороны документа нумеруются с 0: компания 1 стороны, компания 2 стороны и дополнительные стороны.
+ * Подписи хранятся битовой маской, в которой бит стороны определяется ее номером, поэтому документ подписан
+ * полностью, когда маска подписей совпадает с маской всех сторон
+ */
 public class Document {
 
+    /**
+     * Наибольшее количество сторон документа: по биту маски подписей на сторону
+     */
+    public static final int MAX_PARTIES = 8;
+
+    static final byte SIGNING1 = 1;
+    static final byte SIGNING2 = 2;
+
+    private static final Company[] NO_PARTIES = new Company[0];
+
+    private final long id;
     private String name;
     private Company company1;
     private Company company2;
-    private boolean signing1 = false;
-    private boolean signing2 = false;
-    private LocalDateTime date;
+    private Company[] additionalParties = NO_PARTIES;
+    private byte signatures;
+    private long createdMillis;
+    private Company creator;
+    private SystemWorkflow workflow;
+    private ColumnarDocumentRepository store;
+    private int slot;
 
     /**
      * Конструктор для объекта документа
@@ -18,33 +43,93 @@ public class Document {
      * @param company2 компания указанная во 2 стороне
      */
     public Document(Company company1, Company company2) {
-        this.name = generateName(company1, company2);
+        this.id = DocumentIdGenerator.nextId();
         this.company1 = company1;
         this.company2 = company2;
-        this.date = LocalDateTime.now();
+        this.createdMillis = WorkflowClock.getClock().millis();
+    }
+
+    /**
+     * Конструктор для объекта документа с дополнительными сторонами
+     * @param company1 компания указанная в 1 стороне (создающая документ)
+     * @param company2 компания указанная во 2 стороне
+     * @param additionalParties компании дополнительных сторон, начиная с 3 стороны
+     * @throws IllegalArgumentException сторон больше {@link #MAX_PARTIES}
+     */
+    public Document(Company company1, Company company2, Company... additionalParties) {
+        this(company1, company2);
+        this.additionalParties = checkParties(additionalParties);
+    }
+
+    /**
+     * Конструктор для восстановления документа с заданным идентификатором
+     * @param id идентификатор документа
+     * @param company1 компания указанная в 1 стороне
+     * @param company2 компания указанная во 2 стороне
+     * @param createdMillis время создания документа в миллисекундах от начала эпохи
+     */
+    Document(long id, Company company1, Company company2, long createdMillis) {
+        DocumentIdGenerator.reserve(id);
+        this.id = id;
+        this.company1 = company1;
+        this.company2 = company2;
+        this.createdMillis = createdMillis;
+    }
+
+    /**
+     * Конструктор для восстановления документа с дополнительными сторонами
+     * @param id идентификатор документа
+     * @param company1 компания указанная в 1 стороне
+     * @param company2 компания указанная во 2 стороне
+     * @param additionalParties компании дополнительных сторон, начиная с 3 стороны
+     * @param createdMillis время создания документа в миллисекундах от начала эпохи
+     */
+    Document(long id, Company company1, Company company2, Company[] additionalParties, long createdMillis) {
+        this(id, company1, company2, createdMillis);
+        this.additionalParties = checkParties(additionalParties);
+    }
+
+    /**
+     * Конструктор для представления строки хранилища документов
+     * @param store хранилище документов
+     * @param slot номер строки хранилища
+     * @param id идентификатор документа
+     */
+    Document(ColumnarDocumentRepository store, int slot, long id) {
+        this.id = id;
+        this.store = store;
+        this.slot = slot;
     }
 
     /**
-     * Получить имя документа
+     * Получить идентификатор документа
+     * @return уникальный идентификатор документа
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Получить имя документа (строится при первом обращении)
      * @return имя документа
      */
     public String getName() {
+
+        String name = this.name;
+        if (name == null) {
+            name = generateName();
+            this.name = name;
+        }
+
         return name;
     }
 
     /**
-     * Генерировать имя документа на основе компаний
-     * @param company1 первая компания
-     * @param company2 вторая компания
+     * Генерировать имя документа на основе идентификатора
      * @return сгенерированное имя
      */
-    private String generateName(Company company1, Company company2) {
-
-        if (company1 == null || company2 == null) {
-            return null;
-        }
-
-        return "Doc".concat(String.valueOf(company1.hashCode())).concat("&").concat(String.valueOf(company2.hashCode()));
+    private String generateName() {
+        return "Doc".concat(String.valueOf(id));
     }
 
     /**
@@ -52,7 +137,8 @@ public class Document {
      * @return компания 1 стороны
      */
     public Company getCompany1() {
-        return company1;
+        ColumnarDocumentRepository store = this.store;
+        return store == null ? company1 : (company1 = store.getCompany1(this));
     }
 
     /**
@@ -60,7 +146,12 @@ public class Document {
      * @param company1 компания 1 стороны
      */
     public void setCompany1(Company company1) {
-        this.company1 = company1;
+        long lock = beforeUpdate(company1);
+        writeCompany1(company1);
+        if (workflow != null) {
+            workflow.fireDocumentCompanyChanged(this, 1, company1);
+        }
+        afterUpdate(lock);
     }
 
     /**
@@ -68,7 +159,8 @@ public class Document {
      * @return компания 2 стороны
      */
     public Company getCompany2() {
-        return company2;
+        ColumnarDocumentRepository store = this.store;
+        return store == null ? company2 : (company2 = store.getCompany2(this));
     }
 
     /**
@@ -76,26 +168,83 @@ public class Document {
      * @param company2 компания 2 стороны
      */
     public void setCompany2(Company company2) {
-        this.company2 = company2;
+        long lock = beforeUpdate(company2);
+        writeCompany2(company2);
+        if (workflow != null) {
+            workflow.fireDocumentCompanyChanged(this, 2, company2);
+        }
+        afterUpdate(lock);
     }
 
     /**
-     * Содержится ли компания в документе
-     * @param company проверяемая компания
-     * @return true - компания содержится, false - компания не содержится
+     * Получить количество сторон документа
+     * @return количество сторон: 2 и дополнительные стороны
      */
-    public boolean isContainsCompany(Company company) {
+    public int getPartyCount() {
+        return 2 + getAdditionalParties().length;
+    }
+
+    /**
+     * Получить компанию стороны документа
+     * @param index номер стороны: 0 - 1 сторона, 1 - 2 сторона, далее дополнительные стороны
+     * @return компания стороны
+     * @throws IndexOutOfBoundsException стороны с таким номером нет
+     */
+    public Company getParty(int index) {
+
+        if (index == 0) {
+            return getCompany1();
+        }
+        if (index == 1) {
+            return getCompany2();
+        }
+
+        Company[] additionalParties = getAdditionalParties();
+        if (index < 0 || index - 2 >= additionalParties.length) {
+            throw new IndexOutOfBoundsException("party " + index + " of " + (additionalParties.length + 2));
+        }
+
+        return additionalParties[index - 2];
+    }
 
-        if (company == null || company1 == null || company1 == null) {
-            return false;
+    /**
+     * Получить номер стороны компании
+     * @param company компания
+     * @return номер первой стороны компании или -1, если компания не является стороной документа
+     */
+    public int getPartyIndex(Company company) {
+
+        if (company == null) {
+            return -1;
+        }
+        if (company == getCompany1()) {
+            return 0;
+        }
+        if (company == getCompany2()) {
+            return 1;
         }
 
+        Company[] additionalParties = getAdditionalParties();
+        for (int i = 0; i < additionalParties.length; i++) {
+            if (additionalParties[i] == company) {
+                return i + 2;
+            }
+        }
 
-        return company.equals(company1) || company.equals(company2);
+        return -1;
     }
 
     /**
-     * Подписать документ компанией
+     * Содержится ли компания в документе
+     * @param company проверяемая компания
+     * @return true - компания содержится, false - компания не содержится
+     */
+    public boolean isContainsCompany(Company company) {
+        return getPartyIndex(company) >= 0;
+    }
+
+    /**
+     * Подписать документ компанией: компания подписывает все свои стороны документа
      * @param company компания, которая подписывает документ
      */
     public void sign(Company company) {
@@ -104,60 +253,377 @@ public class Document {
             return;
         }
 
-        if (company instanceof Company1) {
-            signing1 = true;
-        } else if (company instanceof Company2) {
-            signing2 = true;
+        long lock = beforeUpdate(null);
+        byte signatures = getSignatures();
+        setSignatures((byte) (signatures | partyMask(company)));
+        if (workflow != null && signatures != getSignatures()) {
+            workflow.fireDocumentSigned(this, company);
         }
+        afterUpdate(lock);
 
     }
 
     /**
      * Проверить подписан ли документ компанией
      * @param company компания, которая предположительно подписала
-     * @return true - подписала, false - не подписана
+     * @return true - подписала все свои стороны, false - не подписала или не является стороной документа
      */
     public boolean isSigning(Company company) {
-        boolean result = false;
-        if (company instanceof Company1) {
-            result = signing1;
-        } else if (company instanceof Company2) {
-            result = signing2;
-        }
-
-        return result;
+        int mask = partyMask(company);
+        return mask != 0 && (getSignatures() & mask) == mask;
     }
 
     /**
-     * Проверить подписан ли документы обеими сторонами
+     * Проверить подписан ли документы всеми сторонами
      * @return true - подписан, false - не подписан
      */
     public boolean isSigning() {
-        return isSigning(company1) && isSigning(company2);
+        return (getSignatures() & 0xFF) == fullMask(getPartyCount());
     }
 
     /**
      * Проверить подписан ли документ частично
-     * @return true - частично подписан, false - частично не подписан
+     * @return true - подписан частью сторон, false - не подписан или подписан всеми сторонами
      */
     public boolean isPartiallySigned() {
-        return signing1 ^ signing2;
+        int signatures = getSignatures() & 0xFF;
+        return signatures != 0 && signatures != fullMask(getPartyCount());
+    }
+
+    /**
+     * Получить маску подписей сторон компании
+     * @param company компания
+     * @return биты всех сторон компании, 0 - компания не является стороной документа
+     */
+    private int partyMask(Company company) {
+
+        if (company == null) {
+            return 0;
+        }
+
+        int mask = 0;
+        if (company == getCompany1()) {
+            mask = SIGNING1;
+        }
+        if (company == getCompany2()) {
+            mask |= SIGNING2;
+        }
+
+        Company[] additionalParties = getAdditionalParties();
+        for (int i = 0; i < additionalParties.length; i++) {
+            if (additionalParties[i] == company) {
+                mask |= 1 << (i + 2);
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Получить маску подписей всех сторон
+     * @param partyCount количество сторон
+     * @return маска подписей полностью подписанного документа
+     */
+    static int fullMask(int partyCount) {
+        return (1 << partyCount) - 1;
+    }
+
+    /**
+     * Проверить количество дополнительных сторон
+     * @param additionalParties компании дополнительных сторон (может быть null)
+     * @return компании дополнительных сторон
+     */
+    private static Company[] checkParties(Company[] additionalParties) {
+
+        if (additionalParties == null || additionalParties.length == 0) {
+            return NO_PARTIES;
+        }
+
+        if (additionalParties.length > MAX_PARTIES - 2) {
+            throw new IllegalArgumentException("document supports at most " + MAX_PARTIES + " parties: "
+                    + (additionalParties.length + 2));
+        }
+
+        return additionalParties.clone();
     }
 
     /**
      * Сбросить подписания
      */
     public void resetSigning() {
-        signing1 = false;
-        signing2 = false;
+        long lock = beforeUpdate(null);
+        setSignatures((byte) 0);
+        if (workflow != null) {
+            workflow.fireDocumentReset(this);
+        }
+        afterUpdate(lock);
+    }
+
+    /**
+     * Сделать встречное предложение: компания становится 1 стороной, бывшая 1 сторона - 2 стороной,
+     * подписи сбрасываются
+     * @param company компания, делающая встречное предложение
+     */
+    void counterOffer(Company company) {
+        long lock = beforeUpdate(company);
+        Company company1 = getCompany1();
+        writeCompany2(company1);
+        writeCompany1(company);
+        setSignatures((byte) 0);
+        if (workflow != null) {
+            workflow.fireDocumentChanged(this, company);
+        }
+        afterUpdate(lock);
+    }
+
+    /**
+     * Восстановить стороны документа без уведомления об изменении, подписи сбрасываются
+     * @param company1 компания 1 стороны
+     * @param company2 компания 2 стороны
+     */
+    void restoreParties(Company company1, Company company2) {
+        long lock = beforeUpdate(company1);
+        writeCompany1(company1);
+        writeCompany2(company2);
+        setSignatures((byte) 0);
+        afterUpdate(lock);
+    }
+
+    /**
+     * Восстановить подписи документа без уведомления о подписании
+     * @param signatures битовая маска подписей по номерам сторон
+     */
+    void restoreSignatures(byte signatures) {
+        long lock = beforeUpdate(null);
+        setSignatures(signatures);
+        afterUpdate(lock);
     }
 
     /**
-     * Получить дату создания документа
+     * Получить дату создания документа в часовом поясе часов {@link WorkflowClock} (объект создается при обращении)
      * @return объект {@link LocalDateTime}
      */
     public LocalDateTime getDate() {
-        return date;
+        return WorkflowClock.getClock().toLocalDateTime(getCreatedMillis());
+    }
+
+    /**
+     * Получить время создания документа
+     * @return время в миллисекундах от начала эпохи
+     */
+    long getCreatedMillis() {
+        ColumnarDocumentRepository store = this.store;
+        return store == null ? createdMillis : (createdMillis = store.getCreatedMillis(this));
+    }
+
+    /**
+     * Получить компанию, создавшую документ через {@link Company#createDocument(Company)}
+     * @return компания-создатель или null, если документ создан не компанией
+     */
+    Company getCreator() {
+        ColumnarDocumentRepository store = this.store;
+        return store == null ? creator : (creator = store.getCreator(this));
+    }
+
+    /**
+     * Установить компанию, создавшую документ
+     * @param creator компания-создатель
+     */
+    void setCreator(Company creator) {
+        this.creator = creator;
+    }
+
+    /**
+     * Получить компании дополнительных сторон
+     * @return компании сторон начиная с 3 стороны (массив не изменяется)
+     */
+    Company[] getAdditionalParties() {
+        ColumnarDocumentRepository store = this.store;
+        return store == null ? additionalParties : (additionalParties = store.getAdditionalParties(this));
+    }
+
+    /**
+     * Получить подписи документа
+     * @return битовая маска подписей по номерам сторон: {@link #SIGNING1} - 1 сторона, {@link #SIGNING2} - 2 сторона,
+     * далее дополнительные стороны
+     */
+    byte getSignatures() {
+        ColumnarDocumentRepository store = this.store;
+        return store == null ? signatures : (signatures = store.getSignatures(this));
+    }
+
+    /**
+     * Установить подписи документа
+     * @param signatures битовая маска подписей по номерам сторон
+     */
+    private void setSignatures(byte signatures) {
+        ColumnarDocumentRepository store = this.store;
+        if (store != null) {
+            store.setSignatures(this, signatures);
+        }
+        this.signatures = signatures;
+    }
+
+    /**
+     * Записать компанию 1 стороны
+     * @param company1 компания 1 стороны
+     */
+    private void writeCompany1(Company company1) {
+        ColumnarDocumentRepository store = this.store;
+        if (store != null) {
+            store.setCompany1(this, company1);
+        }
+        this.company1 = company1;
+    }
+
+    /**
+     * Записать компанию 2 стороны
+     * @param company2 компания 2 стороны
+     */
+    private void writeCompany2(Company company2) {
+        ColumnarDocumentRepository store = this.store;
+        if (store != null) {
+            store.setCompany2(this, company2);
+        }
+        this.company2 = company2;
+    }
+
+    /**
+     * Сделать документ представлением строки хранилища; поля объекта сохраняют состояние документа
+     * @param store хранилище документов
+     * @param slot номер строки хранилища
+     */
+    void attach(ColumnarDocumentRepository store, int slot) {
+        this.slot = slot;
+        this.store = store;
+    }
+
+    /**
+     * Запомнить состояние строки хранилища в полях объекта
+     * @param company1 компания 1 стороны
+     * @param company2 компания 2 стороны
+     * @param additionalParties компании дополнительных сторон
+     * @param signatures подписи документа
+     * @param createdMillis время создания документа
+     * @param creator компания-создатель
+     */
+    void load(Company company1, Company company2, Company[] additionalParties, byte signatures, long createdMillis,
+              Company creator) {
+        this.company1 = company1;
+        this.company2 = company2;
+        this.additionalParties = additionalParties;
+        this.signatures = signatures;
+        this.createdMillis = createdMillis;
+        this.creator = creator;
+    }
+
+    /**
+     * Перенести состояние документа из хранилища в поля объекта
+     * @param company1 компания 1 стороны
+     * @param company2 компания 2 стороны
+     * @param additionalParties компании дополнительных сторон
+     * @param signatures подписи документа
+     * @param createdMillis время создания документа
+     * @param creator компания-создатель
+     */
+    void detach(Company company1, Company company2, Company[] additionalParties, byte signatures, long createdMillis,
+                Company creator) {
+        load(company1, company2, additionalParties, signatures, createdMillis, creator);
+        this.store = null;
+    }
+
+    /**
+     * Перестать быть представлением строки, удаленной из хранилища через другое представление документа.
+     * Документ, перенесенный в архив системы документооборота, получает состояние из архива,
+     * иначе сохраняет последнее прочитанное или записанное состояние
+     */
+    void detachRemoved() {
+
+        SystemWorkflow workflow = this.workflow;
+        DocumentArchive archive = workflow == null ? null : workflow.getArchive();
+        Document archived = archive == null ? null : archive.get(id);
+
+        this.store = null;
+        this.workflow = null;
+
+        if (archived != null && archived != this) {
+            load(archived.getCompany1(), archived.getCompany2(), archived.getAdditionalParties(),
+                    archived.getSignatures(), archived.getCreatedMillis(), archived.getCreator());
+        }
+    }
+
+    /**
+     * Получить номер строки хранилища, представлением которой является документ
+     * @return номер строки хранилища
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Установить номер строки хранилища, представлением которой является документ
+     * @param slot номер строки хранилища
+     */
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Получить систему документооборота, в которой зарегистрирован документ
+     * @return система документооборота или null, если документ не зарегистрирован
+     */
+    SystemWorkflow getWorkflow() {
+        return workflow;
+    }
+
+    /**
+     * Установить систему документооборота, в которой зарегистрирован документ
+     * @param workflow система документооборота
+     */
+    void setWorkflow(SystemWorkflow workflow) {
+        this.workflow = workflow;
+    }
+
+    /**
+     * Уведомить систему документооборота перед изменением документа
+     * @param company компания, которая станет стороной документа (может быть null)
+     * @return признак блокировки для {@link #afterUpdate(long)}
+     */
+    private long beforeUpdate(Company company) {
+        SystemWorkflow workflow = this.workflow;
+        return workflow == null ? 0L : workflow.beforeDocumentUpdate(this, company);
+    }
+
+    /**
+     * Уведомить систему документооборота после изменения документа
+     * @param lock признак блокировки, полученный в {@link #beforeUpdate(Company)}
+     */
+    private void afterUpdate(long lock) {
+        SystemWorkflow workflow = this.workflow;
+        if (workflow != null) {
+            workflow.afterDocumentUpdate(this, lock);
+        }
+    }
+
+    /**
+     * Документы равны, если у них один идентификатор: представления одной строки хранилища
+     * и исходный объект документа описывают один документ
+     * @param o сравниваемый объект
+     * @return true - документы равны, false - документы не равны
+     */
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        return o instanceof Document && ((Document) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
     }
 
 }
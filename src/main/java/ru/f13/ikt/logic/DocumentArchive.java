@@ -0,0 +1,37 @@
+package ru.f13.ikt.logic;
+
+import java.util.function.Consumer;
+
+/**
+ * Интерфейс архива полностью подписанных документов, вынесенных из хранилища системы документооборота.
+ * Документы архива не участвуют в ограничениях и не изменяются
+ */
+public interface DocumentArchive {
+
+    /**
+     * Поместить документ в архив
+     * @param document полностью подписанный документ
+     * @return true - документ помещен, false - документ уже был в архиве
+     */
+    boolean add(Document document);
+
+    /**
+     * Найти документ архива по идентификатору
+     * @param id идентификатор документа
+     * @return документ или null, если документа нет в архиве
+     */
+    Document get(long id);
+
+    /**
+     * Получить количество документов в архиве
+     * @return количество документов
+     */
+    int size();
+
+    /**
+     * Выполнить действие для каждого документа архива
+     * @param action действие над документом
+     */
+    void forEach(Consumer<? super Document> action);
+
+}
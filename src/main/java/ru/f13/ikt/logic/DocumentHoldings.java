@@ -0,0 +1,309 @@
+package ru.f13.ikt.logic;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Класс описывает документы в наличии компании в порядке их получения.
+ * Документы хранятся в массиве по порядку добавления, а их номера в массиве - в отображении {@link LongIntMap}
+ * по идентификатору документа, поэтому документ в наличии занимает ячейку массива и ячейку отображения
+ * без отдельного объекта-узла. Удаленный документ оставляет пустую ячейку, пустые ячейки убираются
+ * при расширении массива и когда они занимают четверть массива. Поиск документа по номеру в порядке получения
+ * выполняется за постоянное время, если пустых ячеек нет, иначе - проходом по массиву; обход, поиск номера документа
+ * и сравнение наборов проходят массив один раз. Набор не защищен от одновременного изменения
+ */
+final class DocumentHoldings extends AbstractList<Document> {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final int MIN_COMPACT_GAPS = 64;
+
+    private Document[] documents;
+    private final LongIntMap positions;
+    private int end;
+    private int size;
+
+    /**
+     * Конструктор для пустого набора
+     */
+    DocumentHoldings() {
+        documents = new Document[MIN_CAPACITY];
+        positions = new LongIntMap();
+    }
+
+    /**
+     * Добавить документ в конец порядка получения
+     * @param document документ
+     * @return true - документ добавлен, false - документ уже был в наборе
+     */
+    @Override
+    public boolean add(Document document) {
+
+        long id = document.getId();
+        if (positions.containsKey(id)) {
+            return false;
+        }
+
+        if (end == documents.length) {
+            if (size < end >>> 1) {
+                compact();
+            } else {
+                documents = Arrays.copyOf(documents, end << 1);
+            }
+        }
+
+        documents[end] = document;
+        positions.put(id, end++);
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Удалить документ
+     * @param o документ
+     * @return true - документ удален, false - документа не было в наборе
+     */
+    @Override
+    public boolean remove(Object o) {
+
+        if (!(o instanceof Document)) {
+            return false;
+        }
+
+        long id = ((Document) o).getId();
+        int position = positions.get(id, -1);
+        if (position < 0) {
+            return false;
+        }
+
+        positions.remove(id);
+        documents[position] = null;
+        size--;
+
+        //пустые ячейки в конце массива сразу освобождаются для следующих документов
+        while (end > 0 && documents[end - 1] == null) {
+            end--;
+        }
+
+        //каждая четверть массива пустых ячеек убирается один раз, поэтому удаление остается постоянным в среднем
+        int gaps = end - size;
+        if (gaps >= MIN_COMPACT_GAPS && gaps >= end >>> 2) {
+            compact();
+        }
+
+        return true;
+    }
+
+    @Override
+    public Document get(int index) {
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+
+        if (size == end) {
+            return documents[index];
+        }
+
+        int i = skip(0);
+        for (int k = 0; k < index; k++) {
+            i = skip(i + 1);
+        }
+
+        return documents[i];
+    }
+
+    @Override
+    public int indexOf(Object o) {
+
+        if (!(o instanceof Document)) {
+            return -1;
+        }
+
+        int position = positions.get(((Document) o).getId(), -1);
+        if (position < 0 || size == end) {
+            return position;
+        }
+
+        int index = 0;
+        for (int i = 0; i < position; i++) {
+            if (documents[i] != null) {
+                index++;
+            }
+        }
+
+        return index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        //документ входит в набор не больше одного раза
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Document && positions.containsKey(((Document) o).getId());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(documents, 0, end, null);
+        positions.clear();
+        end = 0;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Document> iterator() {
+        return new HoldingsIterator(0);
+    }
+
+    @Override
+    public ListIterator<Document> listIterator(int index) {
+
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+
+        return new HoldingsIterator(index);
+    }
+
+    /**
+     * Найти ближайшую занятую ячейку
+     * @param from номер ячейки начала поиска
+     * @return номер занятой ячейки или конец набора
+     */
+    private int skip(int from) {
+
+        int i = from;
+        while (i < end && documents[i] == null) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Сдвинуть документы на пустые ячейки с сохранением порядка
+     */
+    private void compact() {
+
+        int free = 0;
+        for (int i = 0; i < end; i++) {
+            Document document = documents[i];
+            if (document != null) {
+                if (free != i) {
+                    documents[free] = document;
+                    documents[i] = null;
+                    positions.put(document.getId(), free);
+                }
+                free++;
+            }
+        }
+        end = free;
+    }
+
+    /**
+     * Класс описывает обход документов по ячейкам массива с пропуском пустых ячеек
+     */
+    private final class HoldingsIterator implements ListIterator<Document> {
+
+        private int next;
+        private int index;
+
+        /**
+         * Конструктор для обхода с заданного номера
+         * @param index номер первого документа обхода в порядке получения
+         */
+        private HoldingsIterator(int index) {
+
+            this.index = index;
+
+            if (size == end) {
+                next = index;
+            } else {
+                next = skip(0);
+                for (int k = 0; k < index; k++) {
+                    next = skip(next + 1);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public Document next() {
+
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+
+            Document document = documents[next];
+            next = skip(next + 1);
+            index++;
+
+            return document;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return index > 0;
+        }
+
+        @Override
+        public Document previous() {
+
+            if (index == 0) {
+                throw new NoSuchElementException();
+            }
+
+            int i = next - 1;
+            while (documents[i] == null) {
+                i--;
+            }
+            next = i;
+            index--;
+
+            return documents[i];
+        }
+
+        @Override
+        public int nextIndex() {
+            return index;
+        }
+
+        @Override
+        public int previousIndex() {
+            return index - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
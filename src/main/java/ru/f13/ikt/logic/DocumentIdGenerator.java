@@ -0,0 +1,67 @@
+package ru.f13.ikt.logic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс описывает генератор идентификаторов документов.
+ * Каждый поток получает из общей последовательности блок идентификаторов и раздает их без синхронизации,
+ * поэтому идентификаторы уникальны, но возрастают только в пределах потока.
+ * Занятые идентификаторы восстановленных документов поднимают нижнюю границу выдачи: блок потока,
+ * следующий идентификатор которого не превышает границу, отбрасывается
+ */
+final class DocumentIdGenerator {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final AtomicLong FLOOR = new AtomicLong();
+    private static final ThreadLocal<long[]> BLOCK = ThreadLocal.withInitial(() -> new long[2]);
+
+    private DocumentIdGenerator() {
+    }
+
+    /**
+     * Получить следующий идентификатор документа
+     * @return уникальный положительный идентификатор
+     */
+    static long nextId() {
+
+        //[0] - следующий идентификатор блока, [1] - граница блока
+        long[] block = BLOCK.get();
+
+        if (block[0] == block[1] || block[0] <= FLOOR.get()) {
+            long start = SEQUENCE.getAndAdd(BLOCK_SIZE) + 1L;
+            block[0] = start;
+            block[1] = start + BLOCK_SIZE;
+        }
+
+        return block[0]++;
+    }
+
+    /**
+     * Не выдавать идентификаторы, не превышающие указанный
+     * @param id уже занятый идентификатор
+     */
+    static void reserve(long id) {
+
+        //граница поднимается раньше последовательности: новый блок всегда начинается выше границы
+        raise(FLOOR, id);
+        raise(SEQUENCE, id);
+
+    }
+
+    /**
+     * Поднять значение не ниже указанного
+     * @param value изменяемое значение
+     * @param id новое наименьшее значение
+     */
+    private static void raise(AtomicLong value, long id) {
+
+        long current = value.get();
+        while (current < id && !value.compareAndSet(current, id)) {
+            current = value.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+package ru.f13.ikt.logic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Класс описывает загрузку исторических документов в систему документооборота из файла CSV.
+ * Строка файла: идентификатор,компания 1 стороны,компания 2 стороны,компания-создатель,дата создания,подписи.
+ * Компании указываются идентификаторами (пустое значение - компании нет), дата создания - в формате
+ * {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME}, подписи - битовой маской: 1 - подписана 1 стороной,
+ * 2 - подписана 2 стороной. Строки, начинающиеся с '#', пропускаются.
+ * <p>
+ * Файл читается потоком частями по заданному количеству строк, части разбираются параллельно,
+ * а документы добавляются в порядке файла, поэтому в памяти находится только ограниченное число частей.
+ * Ограничения добавления не проверяются и получатели изменений не уведомляются. Индекс неподписанных
+ * документов и включенные вторичные индексы строятся один раз после загрузки. После загрузки система находится
+ * в том же состоянии, в котором она была бы после добавления документов в работе: документ в наличии у 2 стороны,
+ * если он подписан 1 стороной, иначе у создателя, а создание документа учтено в ограничении на создание документов.
+ * Загрузку следует выполнять, пока с системой не работают другие потоки; для сохранения результата в журнале
+ * после загрузки следует сделать снимок {@link WorkflowJournal#snapshot()}
+ */
+public class DocumentImporter {
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    private final SystemWorkflow workflow;
+    private final IntFunction<Company> companies;
+    private final int parallelism;
+    private final int chunkSize;
+
+    /**
+     * Конструктор для объекта загрузки с разбором в потоках по числу процессоров
+     * @param workflow система документооборота
+     * @param companies поиск компании по идентификатору
+     */
+    public DocumentImporter(SystemWorkflow workflow, IntFunction<Company> companies) {
+        this(workflow, companies, Runtime.getRuntime().availableProcessors(), 4096);
+    }
+
+    /**
+     * Конструктор для объекта загрузки
+     * @param workflow система документооборота
+     * @param companies поиск компании по идентификатору
+     * @param parallelism количество потоков разбора
+     * @param chunkSize количество строк в части файла
+     */
+    public DocumentImporter(SystemWorkflow workflow, IntFunction<Company> companies, int parallelism, int chunkSize) {
+        this.workflow = workflow;
+        this.companies = companies;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Загрузить документы из файла CSV в кодировке UTF-8
+     * @param file файл документов
+     * @return количество добавленных документов (документы, которые уже есть в системе, пропускаются)
+     * @throws IOException ошибка чтения или формата файла
+     */
+    public long importCsv(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importCsv(reader);
+        }
+    }
+
+    /**
+     * Загрузить документы в формате CSV
+     * @param reader источник строк
+     * @return количество добавленных документов (документы, которые уже есть в системе, пропускаются)
+     * @throws IOException ошибка чтения или формата строк
+     */
+    public long importCsv(Reader reader) throws IOException {
+
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "workflow-import-" + THREAD_SEQUENCE.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //разбираемые части в порядке файла, не больше двух частей на поток разбора
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        long imported = 0L;
+        try {
+
+            long lineNumber = 0L;
+            while (true) {
+
+                List<String> chunk = new ArrayList<>(chunkSize);
+                long firstLine = lineNumber + 1L;
+                String line;
+                while (chunk.size() < chunkSize && (line = lines.readLine()) != null) {
+                    chunk.add(line);
+                    lineNumber++;
+                }
+
+                if (!chunk.isEmpty()) {
+                    pending.add(executor.submit(() -> parse(chunk, firstLine)));
+                }
+
+                if (pending.size() >= parallelism * 2 || (chunk.isEmpty() && !pending.isEmpty())) {
+                    imported += apply(await(pending.poll()));
+                }
+
+                if (chunk.isEmpty() && pending.isEmpty()) {
+                    break;
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+            workflow.rebuildUnsignedIndex();
+            workflow.reindexDocuments();
+        }
+
+        return imported;
+    }
+
+    /**
+     * Разобрать часть файла
+     * @param lines строки части
+     * @param firstLine номер первой строки части в файле
+     * @return разобранные документы части
+     * @throws IOException ошибка формата строки
+     */
+    private static Chunk parse(List<String> lines, long firstLine) throws IOException {
+
+        Chunk chunk = new Chunk(lines.size());
+
+        for (int i = 0; i < lines.size(); i++) {
+
+            String line = lines.get(i);
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+
+            try {
+
+                int end1 = line.indexOf(',');
+                int end2 = line.indexOf(',', end1 + 1);
+                int end3 = line.indexOf(',', end2 + 1);
+                int end4 = line.indexOf(',', end3 + 1);
+                int end5 = line.indexOf(',', end4 + 1);
+                if (end1 < 0 || end2 < 0 || end3 < 0 || end4 < 0 || end5 < 0) {
+                    throw new IllegalArgumentException("expected 6 fields");
+                }
+
+                int n = chunk.size++;
+                chunk.ids[n] = Long.parseLong(line.substring(0, end1).trim());
+                chunk.company1Ids[n] = parseCompany(line.substring(end1 + 1, end2));
+                chunk.company2Ids[n] = parseCompany(line.substring(end2 + 1, end3));
+                chunk.creatorIds[n] = parseCompany(line.substring(end3 + 1, end4));
+                chunk.createdMillis[n] = WorkflowClock.getClock().toMillis(
+                        LocalDateTime.parse(line.substring(end4 + 1, end5).trim(), DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                chunk.signatures[n] = (byte) (Integer.parseInt(line.substring(end5 + 1).trim())
+                        & (Document.SIGNING1 | Document.SIGNING2));
+
+                if (chunk.ids[n] <= 0L) {
+                    throw new IllegalArgumentException("document id must be positive");
+                }
+
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IOException("invalid document at line " + (firstLine + i) + ": " + e.getMessage(), e);
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Разобрать идентификатор компании
+     * @param value значение поля
+     * @return идентификатор компании, 0 - компании нет
+     */
+    private static int parseCompany(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? 0 : Integer.parseInt(trimmed);
+    }
+
+    /**
+     * Дождаться разбора части файла
+     * @param future разбор части
+     * @return разобранные документы
+     * @throws IOException ошибка формата строки
+     */
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("cannot parse documents", e.getCause());
+        }
+    }
+
+    /**
+     * Добавить разобранные документы в систему без проверки ограничений
+     * @param chunk разобранные документы
+     * @return количество добавленных документов
+     * @throws IOException документ ссылается на неизвестную компанию
+     */
+    private long apply(Chunk chunk) throws IOException {
+
+        long imported = 0L;
+
+        for (int i = 0; i < chunk.size; i++) {
+
+            Company company1 = company(chunk.company1Ids[i], chunk.ids[i]);
+            Company company2 = company(chunk.company2Ids[i], chunk.ids[i]);
+            Company creator = company(chunk.creatorIds[i], chunk.ids[i]);
+
+            Document document = new Document(chunk.ids[i], company1, company2, chunk.createdMillis[i]);
+            document.setCreator(creator);
+            document.restoreSignatures(chunk.signatures[i]);
+
+            if (!workflow.importDocument(document)) {
+                continue;
+            }
+
+            if (creator != null) {
+                creator.getCreateDocumentLimiter().record(chunk.createdMillis[i]);
+            }
+
+            //в работе документ передается 2 стороне после подписания 1 стороной, иначе остается у создателя
+            Company holder = (chunk.signatures[i] & Document.SIGNING1) != 0 ? company2 : creator;
+            if (holder != null) {
+                holder.store(document);
+            }
+
+            imported++;
+        }
+
+        return imported;
+    }
+
+    /**
+     * Найти компанию документа
+     * @param id идентификатор компании, 0 - компании нет
+     * @param documentId идентификатор документа
+     * @return компания или null
+     * @throws IOException компания не найдена
+     */
+    private Company company(int id, long documentId) throws IOException {
+
+        if (id == 0) {
+            return null;
+        }
+
+        Company company = companies.apply(id);
+        if (company == null) {
+            throw new IOException("document " + documentId + " refers to unknown company " + id);
+        }
+
+        return company;
+    }
+
+    /**
+     * Класс описывает разобранные документы части файла
+     */
+    private static final class Chunk {
+
+        private final long[] ids;
+        private final int[] company1Ids;
+        private final int[] company2Ids;
+        private final int[] creatorIds;
+        private final long[] createdMillis;
+        private final byte[] signatures;
+        private int size;
+
+        /**
+         * Конструктор для объекта разобранных документов
+         * @param capacity количество строк части
+         */
+        private Chunk(int capacity) {
+            ids = new long[capacity];
+            company1Ids = new int[capacity];
+            company2Ids = new int[capacity];
+            creatorIds = new int[capacity];
+            createdMillis = new long[capacity];
+            signatures = new byte[capacity];
+        }
+
+    }
+
+}
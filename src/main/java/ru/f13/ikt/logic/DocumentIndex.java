@@ -0,0 +1,308 @@
+package ru.f13.ikt.logic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * Класс описывает вторичные индексы документов системы документооборота: по компании, по паре компаний,
+ * по состоянию подписания и по времени создания. Документ с дополнительными сторонами индексируется
+ * по каждой своей стороне и по каждой паре сторон. Индекс хранит для каждого документа неизменяемую запись
+ * с его идентификатором, временем создания, сторонами и состоянием; при изменении документа запись заменяется.
+ * Все индексы упорядочены по времени создания документа, поэтому отбор по времени создания выполняется
+ * как диапазон внутри любого индекса. Индексы основаны на параллельных структурах, их обход не блокирует
+ * изменения и видит изменения, выполненные во время обхода, или не видит их
+ */
+class DocumentIndex implements WorkflowListener {
+
+    private final SystemWorkflow workflow;
+
+    private final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, NavigableSet<Entry>> byCompany = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, NavigableSet<Entry>> byPair = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry>[] byState;
+    private final NavigableSet<Entry> byCreated = new ConcurrentSkipListSet<>();
+
+    /**
+     * Конструктор для объекта индексов
+     * @param workflow система документооборота
+     */
+    DocumentIndex(SystemWorkflow workflow) {
+
+        this.workflow = workflow;
+
+        byState = newSets(DocumentState.COUNT);
+        for (int i = 0; i < byState.length; i++) {
+            byState[i] = new ConcurrentSkipListSet<>();
+        }
+
+    }
+
+    /**
+     * Создать массив индексов
+     * @param count количество индексов
+     * @return массив без индексов
+     */
+    @SuppressWarnings("unchecked")
+    private static NavigableSet<Entry>[] newSets(int count) {
+        return (NavigableSet<Entry>[]) new NavigableSet<?>[count];
+    }
+
+    /**
+     * Построить индексы по документам системы.
+     * Вызывается после регистрации индекса получателем изменений, поэтому документы, измененные во время
+     * построения, индексируются по своему последнему состоянию
+     */
+    void build() {
+        workflow.forEachDocument(document -> {
+            //документ мог быть удален до захвата блокировки
+            if (workflow.isContainsDocument(document)) {
+                update(document);
+            }
+        });
+    }
+
+    /**
+     * Найти документы по условиям поиска в порядке времени создания
+     * @param query условия поиска
+     * @return ленивый поток документов
+     */
+    Stream<Document> find(DocumentQuery query) {
+
+        NavigableSet<Entry> base;
+        if (query.companyId != 0 && query.otherCompanyId != 0) {
+            base = byPair.get(UnsignedDocumentIndex.pairKey(query.companyId, query.otherCompanyId));
+        } else if (query.companyId != 0) {
+            base = byCompany.get(query.companyId);
+        } else if (query.state >= 0) {
+            base = byState[query.state];
+        } else {
+            base = byCreated;
+        }
+
+        if (base == null) {
+            base = Collections.emptyNavigableSet();
+        }
+
+        if (query.createdFrom != Long.MIN_VALUE || query.createdTo != Long.MAX_VALUE) {
+            base = base.subSet(new Entry(Long.MIN_VALUE, query.createdFrom), true,
+                    new Entry(Long.MIN_VALUE, query.createdTo), false);
+        }
+
+        return base.stream()
+                .filter(query::matches)
+                .map(entry -> workflow.getDocument(entry.id))
+                .filter(document -> document != null && workflow.isContainsDocument(document));
+    }
+
+    @Override
+    public void documentAdded(Document document) {
+        update(document);
+    }
+
+    @Override
+    public void documentSigned(Document document, Company company) {
+        update(document);
+    }
+
+    @Override
+    public void documentReset(Document document) {
+        update(document);
+    }
+
+    @Override
+    public void documentCompanyChanged(Document document, int party, Company company) {
+        update(document);
+    }
+
+    @Override
+    public void documentChanged(Document document, Company company) {
+        update(document);
+    }
+
+    @Override
+    public void documentRemoved(Document document) {
+        remove(document);
+    }
+
+    @Override
+    public void documentArchived(Document document) {
+        remove(document);
+    }
+
+    /**
+     * Проиндексировать документ по его текущему состоянию
+     * @param document документ
+     */
+    private void update(Document document) {
+
+        int[] partyIds = new int[document.getPartyCount()];
+        for (int i = 0; i < partyIds.length; i++) {
+            partyIds[i] = companyId(document.getParty(i));
+        }
+
+        Entry entry = new Entry(document.getId(), document.getCreatedMillis(), partyIds, DocumentState.of(document));
+
+        Entry previous = entries.put(entry.id, entry);
+        if (previous != null) {
+            if (previous.isSameState(entry)) {
+                return;
+            }
+            unlink(previous);
+        }
+
+        link(entry);
+
+    }
+
+    /**
+     * Исключить документ из индексов
+     * @param document документ
+     */
+    private void remove(Document document) {
+
+        Entry previous = entries.remove(document.getId());
+        if (previous != null) {
+            unlink(previous);
+        }
+
+    }
+
+    /**
+     * Добавить запись в индексы
+     * @param entry запись документа
+     */
+    private void link(Entry entry) {
+
+        byCreated.add(entry);
+        byState[entry.state].add(entry);
+
+        int[] partyIds = entry.partyIds;
+        for (int i = 0; i < partyIds.length; i++) {
+
+            int id = partyIds[i];
+            if (id == 0 || entry.indexOfParty(id) < i) {
+                continue;
+            }
+
+            byCompany.computeIfAbsent(id, key -> new ConcurrentSkipListSet<>()).add(entry);
+            for (int j = i + 1; j < partyIds.length; j++) {
+                int other = partyIds[j];
+                if (other != 0 && entry.indexOfParty(other) == j) {
+                    byPair.computeIfAbsent(UnsignedDocumentIndex.pairKey(id, other),
+                            key -> new ConcurrentSkipListSet<>()).add(entry);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Удалить запись из индексов
+     * @param entry запись документа
+     */
+    private void unlink(Entry entry) {
+
+        byCreated.remove(entry);
+        byState[entry.state].remove(entry);
+
+        //пустые множества компаний и пар остаются: их количество ограничено количеством компаний и пар
+        int[] partyIds = entry.partyIds;
+        for (int i = 0; i < partyIds.length; i++) {
+
+            NavigableSet<Entry> set = byCompany.get(partyIds[i]);
+            if (set != null) {
+                set.remove(entry);
+            }
+            for (int j = i + 1; j < partyIds.length; j++) {
+                set = byPair.get(UnsignedDocumentIndex.pairKey(partyIds[i], partyIds[j]));
+                if (set != null) {
+                    set.remove(entry);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @param company компания (может быть null)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    private static int companyId(Company company) {
+        return company == null ? 0 : company.getId();
+    }
+
+    /**
+     * Класс описывает запись индекса: состояние документа на момент индексирования.
+     * Записи упорядочены по времени создания, затем по идентификатору документа
+     */
+    static final class Entry implements Comparable<Entry> {
+
+        private static final int[] NO_PARTIES = new int[0];
+
+        final long id;
+        final long createdMillis;
+        final int[] partyIds;
+        final byte state;
+
+        /**
+         * Конструктор для записи индекса
+         * @param id идентификатор документа
+         * @param createdMillis время создания в миллисекундах
+         * @param partyIds идентификаторы компаний сторон по номеру стороны, 0 - компания отсутствует
+         * @param state состояние подписания {@link DocumentState}
+         */
+        Entry(long id, long createdMillis, int[] partyIds, byte state) {
+            this.id = id;
+            this.createdMillis = createdMillis;
+            this.partyIds = partyIds;
+            this.state = state;
+        }
+
+        /**
+         * Конструктор для границы диапазона времени создания
+         * @param id идентификатор документа
+         * @param createdMillis время создания в миллисекундах
+         */
+        private Entry(long id, long createdMillis) {
+            this(id, createdMillis, NO_PARTIES, DocumentState.UNSIGNED);
+        }
+
+        /**
+         * Получить первый номер стороны компании
+         * @param companyId идентификатор компании
+         * @return номер стороны или -1, если компания не является стороной
+         */
+        int indexOfParty(int companyId) {
+            for (int i = 0; i < partyIds.length; i++) {
+                if (partyIds[i] == companyId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Проверить совпадают ли индексируемые значения записей
+         * @param other другая запись того же документа
+         * @return true - значения совпадают
+         */
+        private boolean isSameState(Entry other) {
+            return createdMillis == other.createdMillis && state == other.state
+                    && Arrays.equals(partyIds, other.partyIds);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = Long.compare(createdMillis, other.createdMillis);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+    }
+
+}
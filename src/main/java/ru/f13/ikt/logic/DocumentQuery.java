@@ -0,0 +1,139 @@
+package ru.f13.ikt.logic;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Класс описывает поиск документов системы документооборота по вторичным индексам.
+ * Условия объединяются: поиск по паре компаний или по компании, по состоянию подписания
+ * и по диапазону времени создания. Поиск выполняется по наиболее избирательному индексу
+ * (пара компаний, компания, состояние, время создания), остальные условия проверяются по записям индекса.
+ * Документы возвращаются лениво в порядке времени создания, поэтому поиск можно прервать,
+ * не перебирая остальные документы, например {@code query.stream().limit(10)}
+ */
+public final class DocumentQuery implements Iterable<Document> {
+
+    private final DocumentIndex index;
+
+    int companyId;
+    int otherCompanyId;
+    byte state = -1;
+    long createdFrom = Long.MIN_VALUE;
+    long createdTo = Long.MAX_VALUE;
+
+    /**
+     * Конструктор для объекта поиска
+     * @param index индексы документов
+     */
+    DocumentQuery(DocumentIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Искать документы, в которых участвует компания
+     * @param company компания
+     * @return объект поиска
+     */
+    public DocumentQuery company(Company company) {
+        this.companyId = company.getId();
+        this.otherCompanyId = 0;
+        return this;
+    }
+
+    /**
+     * Искать документы между двумя компаниями, в любом порядке сторон
+     * @param company1 первая компания
+     * @param company2 вторая компания
+     * @return объект поиска
+     */
+    public DocumentQuery between(Company company1, Company company2) {
+        this.companyId = company1.getId();
+        this.otherCompanyId = company2.getId();
+        return this;
+    }
+
+    /**
+     * Искать документы в состоянии подписания
+     * @param state значение {@link DocumentState}
+     * @return объект поиска
+     */
+    public DocumentQuery state(byte state) {
+
+        if (state < 0 || state >= DocumentState.COUNT) {
+            throw new IllegalArgumentException("unknown document state " + state);
+        }
+
+        this.state = state;
+        return this;
+    }
+
+    /**
+     * Искать документы, созданные не раньше заданного времени
+     * @param from время создания (включительно)
+     * @return объект поиска
+     */
+    public DocumentQuery createdFrom(LocalDateTime from) {
+        this.createdFrom = toMillis(from);
+        return this;
+    }
+
+    /**
+     * Искать документы, созданные раньше заданного времени
+     * @param to время создания (не включительно)
+     * @return объект поиска
+     */
+    public DocumentQuery createdBefore(LocalDateTime to) {
+        this.createdTo = toMillis(to);
+        return this;
+    }
+
+    /**
+     * Получить найденные документы в порядке времени создания
+     * @return ленивый поток документов
+     */
+    public Stream<Document> stream() {
+        return index.find(this);
+    }
+
+    /**
+     * Получить найденные документы в порядке времени создания
+     * @return ленивый итератор документов
+     */
+    @Override
+    public Iterator<Document> iterator() {
+        return stream().iterator();
+    }
+
+    /**
+     * Проверить соответствует ли запись индекса условиям поиска
+     * @param entry запись индекса
+     * @return true - запись соответствует условиям
+     */
+    boolean matches(DocumentIndex.Entry entry) {
+
+        if (state >= 0 && entry.state != state) {
+            return false;
+        }
+
+        if (companyId != 0 && entry.indexOfParty(companyId) < 0) {
+            return false;
+        }
+
+        if (otherCompanyId != 0 && entry.indexOfParty(otherCompanyId) < 0) {
+            return false;
+        }
+
+        return entry.createdMillis >= createdFrom && entry.createdMillis < createdTo;
+    }
+
+    /**
+     * Получить время в миллисекундах
+     * @param time время
+     * @return время в миллисекундах
+     */
+    private static long toMillis(LocalDateTime time) {
+        return WorkflowClock.getClock().toMillis(time);
+    }
+
+}
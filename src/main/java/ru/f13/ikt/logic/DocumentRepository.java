@@ -0,0 +1,51 @@
+package ru.f13.ikt.logic;
+
+import java.util.function.Consumer;
+
+/**
+ * Интерфейс хранилища документов системы документооборота
+ */
+public interface DocumentRepository {
+
+    /**
+     * Добавить документ
+     * @param document добавляемый документ
+     * @return true - документ добавлен, false - документ уже был в хранилище
+     */
+    boolean add(Document document);
+
+    /**
+     * Удалить документ
+     * @param document удаляемый документ
+     * @return true - документ удален, false - документа не было в хранилище
+     */
+    boolean remove(Document document);
+
+    /**
+     * Проверить есть ли документ в хранилище
+     * @param document проверяемый документ
+     * @return true - документ в хранилище, false - документа нет в хранилище
+     */
+    boolean contains(Document document);
+
+    /**
+     * Найти документ по идентификатору
+     * @param id идентификатор документа
+     * @return документ или null, если документа нет в хранилище
+     */
+    Document get(long id);
+
+    /**
+     * Получить количество документов в хранилище
+     * @return количество документов
+     */
+    int size();
+
+    /**
+     * Выполнить действие для каждого документа хранилища.
+     * Документы, добавленные или удаленные во время обхода, могут как попасть, так и не попасть в обход
+     * @param action действие над документом
+     */
+    void forEach(Consumer<? super Document> action);
+
+}
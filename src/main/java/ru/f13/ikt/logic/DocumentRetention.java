@@ -0,0 +1,265 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс описывает перенос полностью подписанных документов из хранилища системы документооборота
+ * и из наличия компаний в архив {@link DocumentArchive}.
+ * Документ переносится, когда с момента его подписания прошло больше заданного времени или когда
+ * полностью подписанных документов в хранилище больше заданного количества (переносятся самые старые).
+ * Перенос выполняется в фоновом потоке пачками, каждый документ - под блокировками своих компаний,
+ * поэтому работа с системой не останавливается. Перенесенные документы доступны через
+ * {@link SystemWorkflow#getDocument(long)}.
+ * Документ, подписи которого сброшены или который удален из системы, остается в очереди до ее головы,
+ * но не учитывается в количестве подписанных документов; повторно подписанный документ ставится в очередь
+ * заново, и учитывается только его последняя запись
+ */
+public class DocumentRetention implements Closeable {
+
+    private final SystemWorkflow workflow;
+    private final long maxAgeMillis;
+    private final int maxSignedDocuments;
+    private final int batchSize;
+    private final Listener listener = new Listener();
+
+    //очередь подписанных документов в порядке подписания: кольцевой буфер идентификаторов, времени подписания
+    //и номеров записей; действующая запись документа - та, номер которой хранится в live
+    private long[] ids = new long[1024];
+    private long[] signedMillis = new long[1024];
+    private int[] sequences = new int[1024];
+    private int head;
+    private int size;
+    private int sequence;
+    private final LongIntMap live = new LongIntMap();
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Конструктор для объекта переноса документов в архив.
+     * Полностью подписанные документы, которые уже есть в системе, ставятся в очередь переноса со временем создания
+     * @param workflow система документооборота
+     * @param archive архив документов
+     * @param maxAgeMillis время хранения подписанного документа в хранилище, {@link Long#MAX_VALUE} - не ограничено
+     * @param maxSignedDocuments количество подписанных документов в хранилище, {@link Integer#MAX_VALUE} - не ограничено
+     * @param batchSize количество документов, переносимых за один проход
+     */
+    public DocumentRetention(SystemWorkflow workflow, DocumentArchive archive,
+                             long maxAgeMillis, int maxSignedDocuments, int batchSize) {
+
+        if (workflow.getArchive() != null) {
+            throw new IllegalStateException("workflow already has an archive");
+        }
+
+        this.workflow = workflow;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxSignedDocuments = maxSignedDocuments;
+        this.batchSize = Math.max(1, batchSize);
+
+        workflow.setArchive(archive);
+        workflow.addListener(listener);
+
+        workflow.forEachDocument(document -> {
+            if (document.isSigning()) {
+                offer(document.getId(), document.getCreatedMillis());
+            }
+        });
+
+    }
+
+    /**
+     * Запустить перенос документов в фоновом потоке.
+     * Доступно только для системы, созданной для одновременной работы потоков, иначе {@link #archive()}
+     * следует вызывать в потоке, работающем с системой
+     * @param intervalMillis интервал между проверками очереди в миллисекундах
+     */
+    public synchronized void start(long intervalMillis) {
+
+        if (!workflow.isConcurrent()) {
+            throw new IllegalStateException("background retention requires a concurrent workflow");
+        }
+
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workflow-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::archiveAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Перенести в архив одну пачку документов, срок хранения которых истек
+     * @return количество перенесенных документов
+     */
+    public int archive() {
+
+        long expired = WorkflowClock.getClock().millis() - maxAgeMillis;
+        int archived = 0;
+
+        for (int i = 0; i < batchSize; i++) {
+
+            long id = poll(expired);
+            if (id == 0L) {
+                break;
+            }
+
+            //документ мог быть удален или его подписи могли быть сброшены после подписания
+            if (workflow.archiveDocument(id)) {
+                archived++;
+            }
+        }
+
+        return archived;
+    }
+
+    /**
+     * Получить количество подписанных документов в очереди переноса
+     * @return количество документов
+     */
+    public synchronized int getPendingCount() {
+        return live.size();
+    }
+
+    /**
+     * Остановить перенос документов и перестать отслеживать подписание документов.
+     * Перенесенные документы остаются доступны через систему документооборота
+     */
+    @Override
+    public void close() {
+
+        workflow.removeListener(listener);
+
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+    }
+
+    /**
+     * Переносить пачки документов, пока есть документы с истекшим сроком хранения
+     */
+    private void archiveAll() {
+        while (archive() == batchSize) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Поставить документ в очередь переноса
+     * @param id идентификатор документа
+     * @param millis время подписания
+     */
+    private synchronized void offer(long id, long millis) {
+
+        //документ уже в очереди как подписанный
+        if (live.containsKey(id)) {
+            return;
+        }
+
+        if (size == ids.length) {
+            //недействующие записи убираются, буфер расширяется, только если их мало
+            int capacity = live.size() < size >>> 1 ? ids.length : ids.length * 2;
+            long[] movedIds = new long[capacity];
+            long[] movedMillis = new long[capacity];
+            int[] movedSequences = new int[capacity];
+            int moved = 0;
+            for (int i = 0; i < size; i++) {
+                int j = (head + i) % ids.length;
+                if (isLive(j)) {
+                    movedIds[moved] = ids[j];
+                    movedMillis[moved] = signedMillis[j];
+                    movedSequences[moved] = sequences[j];
+                    moved++;
+                }
+            }
+            ids = movedIds;
+            signedMillis = movedMillis;
+            sequences = movedSequences;
+            head = 0;
+            size = moved;
+        }
+
+        int tail = (head + size) % ids.length;
+        ids[tail] = id;
+        signedMillis[tail] = millis;
+        sequences[tail] = ++sequence;
+        live.put(id, sequence);
+        size++;
+
+    }
+
+    /**
+     * Исключить документ из количества подписанных документов: его запись в очереди становится недействующей
+     * @param id идентификатор документа
+     */
+    private synchronized void discard(long id) {
+        live.remove(id);
+    }
+
+    /**
+     * Проверить является ли запись очереди действующей записью документа
+     * @param index номер записи в буфере
+     * @return true - запись действующая
+     */
+    private boolean isLive(int index) {
+        return live.containsKey(ids[index]) && live.get(ids[index], 0) == sequences[index];
+    }
+
+    /**
+     * Взять из очереди документ, срок хранения которого истек
+     * @param expired время подписания, раньше которого срок хранения истек
+     * @return идентификатор документа или 0, если таких документов нет
+     */
+    private synchronized long poll(long expired) {
+
+        while (size > 0 && !isLive(head)) {
+            head = (head + 1) % ids.length;
+            size--;
+        }
+
+        if (size == 0 || (live.size() <= maxSignedDocuments && signedMillis[head] > expired)) {
+            return 0L;
+        }
+
+        long id = ids[head];
+        live.remove(id);
+        head = (head + 1) % ids.length;
+        size--;
+
+        return id;
+    }
+
+    /**
+     * Класс описывает отслеживание полного подписания документов
+     */
+    private final class Listener implements WorkflowListener {
+
+        @Override
+        public void documentSigned(Document document, Company company) {
+            if (document.isSigning()) {
+                offer(document.getId(), WorkflowClock.getClock().millis());
+            }
+        }
+
+        @Override
+        public void documentReset(Document document) {
+            discard(document.getId());
+        }
+
+        @Override
+        public void documentRemoved(Document document) {
+            discard(document.getId());
+        }
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Класс описывает состояния подписания документа для поиска документов {@link DocumentQuery}
+ */
+public final class DocumentState {
+
+    /**
+     * Документ не подписан ни одной стороной
+     */
+    public static final byte UNSIGNED = 0;
+
+    /**
+     * Документ подписан одной стороной, см. {@link Document#isPartiallySigned()}
+     */
+    public static final byte PARTIALLY_SIGNED = 1;
+
+    /**
+     * Документ подписан обеими сторонами, см. {@link Document#isSigning()}
+     */
+    public static final byte SIGNED = 2;
+
+    static final int COUNT = 3;
+
+    private DocumentState() {
+    }
+
+    /**
+     * Получить состояние подписания документа
+     * @param document документ
+     * @return значение {@link DocumentState}
+     */
+    static byte of(Document document) {
+
+        if (document.isSigning()) {
+            return SIGNED;
+        }
+
+        return document.isPartiallySigned() ? PARTIALLY_SIGNED : UNSIGNED;
+    }
+
+}
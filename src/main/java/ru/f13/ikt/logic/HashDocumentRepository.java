@@ -0,0 +1,171 @@
+package ru.f13.ikt.logic;
+
+import java.util.function.Consumer;
+
+/**
+ * Класс описывает хранилище документов в хеш-таблице по идентификатору документа.
+ * Документы хранятся в отображении {@link LongObjectMap} без упаковки идентификаторов и объектов-узлов,
+ * поэтому добавление, поиск и удаление документа не выделяют память, кроме расширения таблицы.
+ * Хранилище для одновременной работы потоков разделено на части по идентификатору документа,
+ * каждая часть защищена своей блокировкой
+ */
+public class HashDocumentRepository implements DocumentRepository {
+
+    private static final int CONCURRENT_STRIPES = 64;
+
+    private final LongObjectMap<Document>[] stripes;
+    private final boolean concurrent;
+
+    /**
+     * Конструктор для хранилища, предназначенного для работы в одном потоке
+     */
+    public HashDocumentRepository() {
+        this(false);
+    }
+
+    /**
+     * Конструктор для объекта хранилища
+     * @param concurrent true - хранилище допускает одновременную работу потоков, false - работа в одном потоке
+     */
+    public HashDocumentRepository(boolean concurrent) {
+
+        this.concurrent = concurrent;
+
+        stripes = newStripes(concurrent ? CONCURRENT_STRIPES : 1);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new LongObjectMap<>();
+        }
+
+    }
+
+    /**
+     * Создать массив частей хранилища
+     * @param count количество частей, степень двойки
+     * @return массив без частей
+     */
+    @SuppressWarnings("unchecked")
+    private static LongObjectMap<Document>[] newStripes(int count) {
+        return (LongObjectMap<Document>[]) new LongObjectMap<?>[count];
+    }
+
+    @Override
+    public boolean add(Document document) {
+
+        long id = document.getId();
+        LongObjectMap<Document> stripe = stripe(id);
+        if (!concurrent) {
+            return stripe.putIfAbsent(id, document) == null;
+        }
+        synchronized (stripe) {
+            return stripe.putIfAbsent(id, document) == null;
+        }
+    }
+
+    @Override
+    public boolean remove(Document document) {
+
+        long id = document.getId();
+        LongObjectMap<Document> stripe = stripe(id);
+        if (!concurrent) {
+            return remove(stripe, id, document);
+        }
+        synchronized (stripe) {
+            return remove(stripe, id, document);
+        }
+    }
+
+    @Override
+    public boolean contains(Document document) {
+        return document.equals(get(document.getId()));
+    }
+
+    @Override
+    public Document get(long id) {
+
+        LongObjectMap<Document> stripe = stripe(id);
+        if (!concurrent) {
+            return stripe.get(id);
+        }
+        synchronized (stripe) {
+            return stripe.get(id);
+        }
+    }
+
+    @Override
+    public int size() {
+
+        if (!concurrent) {
+            return stripes[0].size();
+        }
+
+        int size = 0;
+        for (LongObjectMap<Document> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Document> action) {
+
+        //документы части копируются, поэтому действие может изменять хранилище
+        for (LongObjectMap<Document> stripe : stripes) {
+
+            Document[] documents;
+            if (concurrent) {
+                synchronized (stripe) {
+                    documents = values(stripe);
+                }
+            } else {
+                documents = values(stripe);
+            }
+
+            for (Document document : documents) {
+                action.accept(document);
+            }
+        }
+    }
+
+    /**
+     * Получить часть хранилища документа
+     * @param id идентификатор документа
+     * @return часть хранилища
+     */
+    private LongObjectMap<Document> stripe(long id) {
+        return stripes[(int) id & (stripes.length - 1)];
+    }
+
+    /**
+     * Удалить документ из части хранилища, если по его идентификатору хранится равный документ
+     * @param stripe часть хранилища
+     * @param id идентификатор документа
+     * @param document удаляемый документ
+     * @return true - документ удален, false - документа не было в хранилище
+     */
+    private static boolean remove(LongObjectMap<Document> stripe, long id, Document document) {
+
+        if (!document.equals(stripe.get(id))) {
+            return false;
+        }
+        stripe.remove(id);
+
+        return true;
+    }
+
+    /**
+     * Скопировать документы части хранилища
+     * @param stripe часть хранилища
+     * @return документы части
+     */
+    private static Document[] values(LongObjectMap<Document> stripe) {
+
+        Document[] documents = new Document[stripe.size()];
+        stripe.copyValues(documents);
+
+        return documents;
+    }
+
+}
@@ -0,0 +1,33 @@
+package ru.f13.ikt.logic;
+
+import java.util.function.Consumer;
+
+/**
+ * Класс описывает архив документов в куче: хеш-таблица документов по идентификатору
+ * {@link HashDocumentRepository}, допускающая одновременную работу потоков
+ */
+public class HeapDocumentArchive implements DocumentArchive {
+
+    private final HashDocumentRepository documents = new HashDocumentRepository(true);
+
+    @Override
+    public boolean add(Document document) {
+        return documents.add(document);
+    }
+
+    @Override
+    public Document get(long id) {
+        return documents.get(id);
+    }
+
+    @Override
+    public int size() {
+        return documents.size();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Document> action) {
+        documents.forEach(action);
+    }
+
+}
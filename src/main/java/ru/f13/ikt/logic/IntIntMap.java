@@ -0,0 +1,310 @@
+package ru.f13.ikt.logic;
+
+import java.util.Arrays;
+
+/**
+ * Класс описывает отображение int - int с открытой адресацией и линейным пробированием.
+ * Ключи и значения хранятся в массивах без упаковки, поэтому поиск не выделяет память.
+ * Ключ 0 занимает отдельную ячейку, так как 0 обозначает свободную ячейку массива ключей.
+ * Отображение не защищено от одновременного изменения; для чтения из других потоков его следует
+ * опубликовать после заполнения и больше не изменять
+ */
+final class IntIntMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private int[] values;
+    private int shift;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Конструктор для пустого отображения
+     */
+    IntIntMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Конструктор для отображения заданной емкости
+     * @param expectedSize ожидаемое количество ключей
+     */
+    IntIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Конструктор для копии отображения
+     * @param other копируемое отображение
+     */
+    IntIntMap(IntIntMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        shift = other.shift;
+        size = other.size;
+        hasZeroKey = other.hasZeroKey;
+        zeroValue = other.zeroValue;
+    }
+
+    /**
+     * Получить значение ключа
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет
+     * @return значение ключа или defaultValue
+     */
+    int get(int key, int defaultValue) {
+
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+
+        int[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            int current = keys[i];
+            if (current == key) {
+                return values[i];
+            }
+            if (current == 0) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Проверить есть ли ключ
+     * @param key ключ
+     * @return true - ключ есть
+     */
+    boolean containsKey(int key) {
+
+        if (key == 0) {
+            return hasZeroKey;
+        }
+
+        int mask = keys.length - 1;
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            int current = keys[i];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Установить значение ключа
+     * @param key ключ
+     * @param value значение
+     */
+    void put(int key, int value) {
+
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length >>> 1) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Прибавить к значению ключа, отсутствующий ключ считается имеющим значение 0
+     * @param key ключ
+     * @param delta прибавляемое значение
+     * @return новое значение ключа
+     */
+    int addTo(int key, int delta) {
+
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return values[i] += delta;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = delta;
+        if (++size > keys.length >>> 1) {
+            rehash(keys.length << 1);
+        }
+
+        return delta;
+    }
+
+    /**
+     * Удалить ключ
+     * @param key ключ
+     * @return true - ключ был удален, false - ключа не было
+     */
+    boolean remove(int key) {
+
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return false;
+            }
+            hasZeroKey = false;
+            zeroValue = 0;
+            size--;
+            return true;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        //сдвинуть следующие ключи цепочки на освободившееся место, чтобы поиск не прерывался на пустой ячейке
+        int free = i;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = index(keys[j]);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        keys[free] = 0;
+        values[free] = 0;
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Получить наибольшее значение
+     * @param defaultValue значение, если ключей нет или все значения меньше
+     * @return наибольшее из значений и defaultValue
+     */
+    int maxValue(int defaultValue) {
+
+        int max = defaultValue;
+        if (hasZeroKey && zeroValue > max) {
+            max = zeroValue;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && values[i] > max) {
+                max = values[i];
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Получить количество ключей
+     * @return количество ключей
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Проверить пусто ли отображение
+     * @return true - ключей нет
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Удалить все ключи
+     */
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Получить начальную ячейку ключа
+     * @param key ключ
+     * @return номер ячейки
+     */
+    private int index(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Перестроить массивы с новой емкостью
+     * @param capacity емкость, степень двойки
+     */
+    private void rehash(int capacity) {
+
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != 0) {
+                int i = index(key);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Выделить массивы
+     * @param capacity емкость, степень двойки
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Получить емкость для количества ключей при заполнении не больше половины
+     * @param expectedSize ожидаемое количество ключей
+     * @return емкость, степень двойки
+     */
+    static int capacityFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1;
+        return Math.max(MIN_CAPACITY, capacity);
+    }
+
+}
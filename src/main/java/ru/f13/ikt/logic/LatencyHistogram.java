@@ -0,0 +1,203 @@
+package ru.f13.ikt.logic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Класс описывает гистограмму задержек фиксированного размера.
+ * Значения в наносекундах распределяются по логарифмическим корзинам, каждая степень двойки делится на 16 корзин,
+ * поэтому относительная погрешность процентилей не превышает 1/16. Значения больше 2^41 нс (около 36 минут)
+ * попадают в последнюю корзину. Счетчики разбиты на полосы по потокам, чтобы одновременная запись
+ * из разных потоков не изменяла одни и те же ячейки
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 8;
+
+    //в каждой полосе после корзин хранится сумма значений
+    private static final int STRIDE = BUCKETS + 1;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Конструктор для объекта гистограммы с количеством полос по числу процессоров
+     */
+    public LatencyHistogram() {
+
+        int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+        cells = new AtomicLongArray(stripes * STRIDE);
+        mask = stripes - 1;
+
+    }
+
+    /**
+     * Учесть задержку
+     * @param nanos задержка в наносекундах
+     */
+    public void record(long nanos) {
+
+        int base = ((int) Thread.currentThread().getId() & mask) * STRIDE;
+
+        cells.getAndIncrement(base + bucket(nanos));
+        cells.getAndAdd(base + BUCKETS, nanos);
+
+    }
+
+    /**
+     * Получить снимок гистограммы
+     * @return объект {@link Snapshot}
+     */
+    public Snapshot snapshot() {
+
+        long[] counts = new long[BUCKETS];
+        long sum = 0L;
+
+        for (int base = 0; base < cells.length(); base += STRIDE) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += cells.get(base + i);
+            }
+            sum += cells.get(base + BUCKETS);
+        }
+
+        return new Snapshot(counts, sum);
+    }
+
+    /**
+     * Получить номер корзины значения
+     * @param value значение в наносекундах
+     * @return номер корзины
+     */
+    static int bucket(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return value < 0L ? 0 : (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Получить наименьшее значение корзины
+     * @param bucket номер корзины
+     * @return значение в наносекундах
+     */
+    static long lowerBound(int bucket) {
+
+        int group = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+
+        if (group == 0) {
+            return sub;
+        }
+
+        return (long) (SUB_BUCKETS + sub) << (group - 1);
+    }
+
+    /**
+     * Получить наибольшее значение корзины
+     * @param bucket номер корзины
+     * @return значение в наносекундах
+     */
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1L;
+    }
+
+    /**
+     * Класс описывает снимок гистограммы задержек
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long sum) {
+
+            long count = 0L;
+            for (long value : counts) {
+                count += value;
+            }
+
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+
+        }
+
+        /**
+         * Получить количество учтенных значений
+         * @return количество значений
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Получить сумму учтенных значений
+         * @return сумма в наносекундах
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Получить среднее значение
+         * @return среднее значение в наносекундах, 0 - значений нет
+         */
+        public double getMean() {
+            return count == 0L ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * Получить процентиль
+         * @param quantile доля значений от 0 до 1, например 0.99
+         * @return наибольшее значение корзины процентиля в наносекундах, 0 - значений нет
+         */
+        public long getPercentile(double quantile) {
+
+            if (count == 0L) {
+                return 0L;
+            }
+
+            long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+
+            return upperBound(counts.length - 1);
+        }
+
+        /**
+         * Получить наибольшее значение
+         * @return наибольшее значение корзины наибольшего значения в наносекундах, 0 - значений нет
+         */
+        public long getMax() {
+
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0L) {
+                    return upperBound(i);
+                }
+            }
+
+            return 0L;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Класс описывает индивидуальные значения ограничений для отдельных компаний и пар компаний,
+ * которые заменяют общие значения {@link Settings}. Значения собираются в этом объекте и устанавливаются
+ * в настройки {@link Settings#withOverrides(LimitOverrides)}, которые хранят их копию.
+ * Значения хранятся в отображениях с открытой адресацией по идентификатору компании (для пары - по ключу пары,
+ * не зависящему от порядка компаний), поэтому поиск значения при проверке документа не выделяет память
+ */
+public final class LimitOverrides {
+
+    final IntIntMap companyWorkflowLimits;
+    final IntIntMap companyCreateDocumentLimits;
+    final LongIntMap workflowLimits;
+
+    /**
+     * Конструктор для пустого набора значений
+     */
+    public LimitOverrides() {
+        companyWorkflowLimits = new IntIntMap();
+        companyCreateDocumentLimits = new IntIntMap();
+        workflowLimits = new LongIntMap();
+    }
+
+    /**
+     * Конструктор для копии набора значений
+     * @param other копируемый набор
+     */
+    LimitOverrides(LimitOverrides other) {
+        companyWorkflowLimits = new IntIntMap(other.companyWorkflowLimits);
+        companyCreateDocumentLimits = new IntIntMap(other.companyCreateDocumentLimits);
+        workflowLimits = new LongIntMap(other.workflowLimits);
+    }
+
+    /**
+     * Установить значение ограничения по документообороту компании
+     * @param companyId идентификатор компании
+     * @param limit значение ограничения
+     * @return набор значений
+     */
+    public LimitOverrides companyWorkflowLimit(int companyId, int limit) {
+        companyWorkflowLimits.put(companyId, checkLimit(limit));
+        return this;
+    }
+
+    /**
+     * Установить значение ограничения по созданию документов компанией
+     * @param companyId идентификатор компании
+     * @param limit значение ограничения
+     * @return набор значений
+     */
+    public LimitOverrides companyCreateDocumentLimit(int companyId, int limit) {
+        companyCreateDocumentLimits.put(companyId, checkLimit(limit));
+        return this;
+    }
+
+    /**
+     * Установить значение ограничения по документообороту между компаниями
+     * @param companyId1 идентификатор первой компании
+     * @param companyId2 идентификатор второй компании
+     * @param limit значение ограничения
+     * @return набор значений
+     */
+    public LimitOverrides workflowLimit(int companyId1, int companyId2, int limit) {
+        workflowLimits.put(UnsignedDocumentIndex.pairKey(companyId1, companyId2), checkLimit(limit));
+        return this;
+    }
+
+    /**
+     * Удалить значения ограничений компании, кроме значений ее пар
+     * @param companyId идентификатор компании
+     * @return набор значений
+     */
+    public LimitOverrides removeCompany(int companyId) {
+        companyWorkflowLimits.remove(companyId);
+        companyCreateDocumentLimits.remove(companyId);
+        return this;
+    }
+
+    /**
+     * Удалить значение ограничения по документообороту между компаниями
+     * @param companyId1 идентификатор первой компании
+     * @param companyId2 идентификатор второй компании
+     * @return набор значений
+     */
+    public LimitOverrides removePair(int companyId1, int companyId2) {
+        workflowLimits.remove(UnsignedDocumentIndex.pairKey(companyId1, companyId2));
+        return this;
+    }
+
+    /**
+     * Получить количество индивидуальных значений
+     * @return количество значений
+     */
+    public int size() {
+        return companyWorkflowLimits.size() + companyCreateDocumentLimits.size() + workflowLimits.size();
+    }
+
+    /**
+     * Проверить значение ограничения
+     * @param limit значение ограничения
+     * @return значение ограничения
+     */
+    private static int checkLimit(int limit) {
+
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+
+        return limit;
+    }
+
+}
@@ -0,0 +1,89 @@
+package ru.f13.ikt.logic;
+
+import java.util.Arrays;
+
+/**
+ * Класс описывает расширяемый массив значений long без упаковки.
+ * Массив не защищен от одновременного изменения
+ */
+final class LongArrayList {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] values;
+    private int size;
+
+    /**
+     * Конструктор для пустого массива
+     */
+    LongArrayList() {
+        values = new long[MIN_CAPACITY];
+    }
+
+    /**
+     * Добавить значение в конец массива
+     * @param value значение
+     */
+    void add(long value) {
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+        }
+
+        values[size++] = value;
+    }
+
+    /**
+     * Получить значение
+     * @param index номер значения
+     * @return значение
+     * @throws IndexOutOfBoundsException номер вне массива
+     */
+    long get(int index) {
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+
+        return values[index];
+    }
+
+    /**
+     * Получить количество значений
+     * @return количество значений
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Проверить пуст ли массив
+     * @return true - значений нет
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Упорядочить значения по возрастанию
+     */
+    void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    /**
+     * Удалить все значения
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Получить копию значений
+     * @return массив значений
+     */
+    long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+}
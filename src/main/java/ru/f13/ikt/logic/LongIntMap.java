@@ -0,0 +1,289 @@
+package ru.f13.ikt.logic;
+
+import java.util.Arrays;
+
+/**
+ * Класс описывает отображение long - int с открытой адресацией и линейным пробированием.
+ * Ключи и значения хранятся в массивах без упаковки, поэтому поиск не выделяет память.
+ * Ключ 0 занимает отдельную ячейку, так как 0 обозначает свободную ячейку массива ключей.
+ * Отображение не защищено от одновременного изменения; для чтения из других потоков его следует
+ * опубликовать после заполнения и больше не изменять
+ */
+final class LongIntMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private int[] values;
+    private int shift;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Конструктор для пустого отображения
+     */
+    LongIntMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Конструктор для отображения заданной емкости
+     * @param expectedSize ожидаемое количество ключей
+     */
+    LongIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Конструктор для копии отображения
+     * @param other копируемое отображение
+     */
+    LongIntMap(LongIntMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        shift = other.shift;
+        size = other.size;
+        hasZeroKey = other.hasZeroKey;
+        zeroValue = other.zeroValue;
+    }
+
+    /**
+     * Получить значение ключа
+     * @param key ключ
+     * @param defaultValue значение, если ключа нет
+     * @return значение ключа или defaultValue
+     */
+    int get(long key, int defaultValue) {
+
+        if (key == 0L) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+
+        long[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long current = keys[i];
+            if (current == key) {
+                return values[i];
+            }
+            if (current == 0L) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Проверить есть ли ключ
+     * @param key ключ
+     * @return true - ключ есть
+     */
+    boolean containsKey(long key) {
+
+        if (key == 0L) {
+            return hasZeroKey;
+        }
+
+        int mask = keys.length - 1;
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long current = keys[i];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0L) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Установить значение ключа
+     * @param key ключ
+     * @param value значение
+     */
+    void put(long key, int value) {
+
+        if (key == 0L) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != 0L) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length >>> 1) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Прибавить к значению ключа, отсутствующий ключ считается имеющим значение 0
+     * @param key ключ
+     * @param delta прибавляемое значение
+     * @return новое значение ключа
+     */
+    int addTo(long key, int delta) {
+
+        if (key == 0L) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroValue += delta;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != 0L) {
+            if (keys[i] == key) {
+                return values[i] += delta;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = delta;
+        if (++size > keys.length >>> 1) {
+            rehash(keys.length << 1);
+        }
+
+        return delta;
+    }
+
+    /**
+     * Удалить ключ
+     * @param key ключ
+     * @return true - ключ был удален, false - ключа не было
+     */
+    boolean remove(long key) {
+
+        if (key == 0L) {
+            if (!hasZeroKey) {
+                return false;
+            }
+            hasZeroKey = false;
+            zeroValue = 0;
+            size--;
+            return true;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0L) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        //сдвинуть следующие ключи цепочки на освободившееся место, чтобы поиск не прерывался на пустой ячейке
+        int free = i;
+        for (int j = (i + 1) & mask; keys[j] != 0L; j = (j + 1) & mask) {
+            int home = index(keys[j]);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        keys[free] = 0L;
+        values[free] = 0;
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Получить количество ключей
+     * @return количество ключей
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Проверить пусто ли отображение
+     * @return true - ключей нет
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Удалить все ключи
+     */
+    void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Получить начальную ячейку ключа
+     * @param key ключ
+     * @return номер ячейки
+     */
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Перестроить массивы с новой емкостью
+     * @param capacity емкость, степень двойки
+     */
+    private void rehash(int capacity) {
+
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != 0L) {
+                int i = index(key);
+                while (keys[i] != 0L) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Выделить массивы
+     * @param capacity емкость, степень двойки
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Получить емкость для количества ключей при заполнении не больше половины
+     * @param expectedSize ожидаемое количество ключей
+     * @return емкость, степень двойки
+     */
+    private static int capacityFor(int expectedSize) {
+        return IntIntMap.capacityFor(expectedSize);
+    }
+
+}
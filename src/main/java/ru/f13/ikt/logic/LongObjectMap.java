@@ -0,0 +1,280 @@
+package ru.f13.ikt.logic;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Класс описывает отображение long - объект с открытой адресацией и линейным пробированием.
+ * Ключи хранятся в массиве без упаковки, поэтому поиск и добавление не создают объектов-узлов и упакованных ключей.
+ * Ключ 0 занимает отдельную ячейку, так как 0 обозначает свободную ячейку массива ключей; значение null не допускается.
+ * Отображение не защищено от одновременного изменения
+ * @param <V> тип значений
+ */
+final class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int shift;
+    private int size;
+
+    private Object zeroValue;
+
+    /**
+     * Конструктор для пустого отображения
+     */
+    LongObjectMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Конструктор для отображения заданной емкости
+     * @param expectedSize ожидаемое количество ключей
+     */
+    LongObjectMap(int expectedSize) {
+        allocate(IntIntMap.capacityFor(expectedSize));
+    }
+
+    /**
+     * Получить значение ключа
+     * @param key ключ
+     * @return значение ключа или null, если ключа нет
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+
+        if (key == 0L) {
+            return (V) zeroValue;
+        }
+
+        long[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long current = keys[i];
+            if (current == key) {
+                return (V) values[i];
+            }
+            if (current == 0L) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Установить значение ключа
+     * @param key ключ
+     * @param value значение
+     * @return прежнее значение ключа или null, если ключа не было
+     */
+    V put(long key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Установить значение ключа, если ключа нет
+     * @param key ключ
+     * @param value значение
+     * @return текущее значение ключа или null, если ключа не было и значение установлено
+     */
+    V putIfAbsent(long key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * Удалить ключ
+     * @param key ключ
+     * @return значение удаленного ключа или null, если ключа не было
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+
+        if (key == 0L) {
+            Object removed = zeroValue;
+            if (removed != null) {
+                zeroValue = null;
+                size--;
+            }
+            return (V) removed;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0L) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+        Object removed = values[i];
+
+        //сдвинуть следующие ключи цепочки на освободившееся место, чтобы поиск не прерывался на пустой ячейке
+        int free = i;
+        for (int j = (i + 1) & mask; keys[j] != 0L; j = (j + 1) & mask) {
+            int home = index(keys[j]);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        keys[free] = 0L;
+        values[free] = null;
+        size--;
+
+        return (V) removed;
+    }
+
+    /**
+     * Получить количество ключей
+     * @return количество ключей
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Проверить пусто ли отображение
+     * @return true - ключей нет
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Удалить все ключи
+     */
+    void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Выполнить действие для каждого значения.
+     * Действие не должно изменять отображение
+     * @param action действие над значением
+     */
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+
+        if (zeroValue != null) {
+            action.accept((V) zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0L) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Скопировать значения в массив
+     * @param target массив длиной не меньше количества ключей
+     */
+    @SuppressWarnings("unchecked")
+    void copyValues(V[] target) {
+
+        int count = 0;
+        if (zeroValue != null) {
+            target[count++] = (V) zeroValue;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0L) {
+                target[count++] = (V) values[i];
+            }
+        }
+    }
+
+    /**
+     * Установить значение ключа
+     * @param key ключ
+     * @param value значение
+     * @param replace true - заменить значение имеющегося ключа, false - оставить имеющееся значение
+     * @return прежнее значение ключа или null, если ключа не было
+     */
+    @SuppressWarnings("unchecked")
+    private V put(long key, V value, boolean replace) {
+
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+
+        if (key == 0L) {
+            Object previous = zeroValue;
+            if (previous == null) {
+                size++;
+            }
+            if (previous == null || replace) {
+                zeroValue = value;
+            }
+            return (V) previous;
+        }
+
+        int mask = keys.length - 1;
+        int i = index(key);
+        while (keys[i] != 0L) {
+            if (keys[i] == key) {
+                Object previous = values[i];
+                if (replace) {
+                    values[i] = value;
+                }
+                return (V) previous;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length >>> 1) {
+            rehash(keys.length << 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Получить начальную ячейку ключа
+     * @param key ключ
+     * @return номер ячейки
+     */
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Перестроить массивы с новой емкостью
+     * @param capacity емкость, степень двойки
+     */
+    private void rehash(int capacity) {
+
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != 0L) {
+                int i = index(key);
+                while (keys[i] != 0L) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Выделить массивы
+     * @param capacity емкость, степень двойки
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+}
@@ -0,0 +1,51 @@
+package ru.f13.ikt.logic;
+
+import java.time.ZoneId;
+
+/**
+ * Класс описывает часы, время которых устанавливается вручную, например для проверки ограничений по времени в тестах
+ */
+public final class ManualClock extends WorkflowClock {
+
+    private volatile long millis;
+
+    /**
+     * Конструктор для часов в системном часовом поясе
+     * @param millis начальное время в миллисекундах от начала эпохи
+     */
+    public ManualClock(long millis) {
+        this(millis, ZoneId.systemDefault());
+    }
+
+    /**
+     * Конструктор для часов
+     * @param millis начальное время в миллисекундах от начала эпохи
+     * @param zone часовой пояс
+     */
+    public ManualClock(long millis, ZoneId zone) {
+        super(zone);
+        this.millis = millis;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * Установить время
+     * @param millis время в миллисекундах от начала эпохи
+     */
+    public void set(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Передвинуть время вперед
+     * @param millis приращение времени в миллисекундах
+     */
+    public synchronized void advance(long millis) {
+        this.millis += millis;
+    }
+
+}
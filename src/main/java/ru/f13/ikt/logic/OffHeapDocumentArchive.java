@@ -0,0 +1,674 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Класс описывает архив документов вне кучи.
+ * Документ хранится записью фиксированной длины 28 байт в прямых буферах или в файле, отображенном в память:
+ * [идентификатор:8][компания 1:4][компания 2:4][создатель:4][время создания:48 бит, подписи:16 бит].
+ * Записи собираются в блоки по 256 документов, отсортированные по идентификатору. Заголовок блока
+ * [количество записей:4][резерв:4] записывается после записей: заполненный блок отсортирован, а записи
+ * заполняемого блока записываются по мере добавления в порядке поступления. Разреженный индекс хранит
+ * для каждого блока наименьший и наибольший идентификатор, а также максимум по предшествующим блокам
+ * и минимум по последующим, поэтому для почти упорядоченных по идентификатору документов поиск
+ * проверяет один блок двоичным поиском. В куче на документ приходится около 0,1 байта индекса.
+ * Объект {@link Document} создается только при поиске по идентификатору,
+ * последовательный обход {@link #scan(RecordVisitor)} читает записи без создания объектов.
+ * Дополнительные стороны документов не помещаются в запись и хранятся в куче по идентификатору документа,
+ * а для архива в файле также дописываются в соседний файл [идентификатор:8][количество сторон:1][компании:4*n].
+ * Архив в файле открывается повторно: разреженный индекс восстанавливается по заголовкам блоков,
+ * а заполняемый блок и дополнительные стороны читаются в кучу
+ */
+public class OffHeapDocumentArchive implements DocumentArchive, Closeable {
+
+    private static final int RECORD_SIZE = 28;
+    private static final int BLOCK_BITS = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_HEADER = 8;
+    private static final int BLOCK_BYTES = BLOCK_HEADER + BLOCK_SIZE * RECORD_SIZE;
+    private static final int SEGMENT_BLOCK_BITS = 8;
+    private static final int SEGMENT_BLOCKS = 1 << SEGMENT_BLOCK_BITS;
+    private static final int SEGMENT_BYTES = SEGMENT_BLOCKS * BLOCK_BYTES;
+    private static final int PARTIES_RECORD_SIZE = 9 + 4 * (Document.MAX_PARTIES - 2);
+    private static final String PARTIES_SUFFIX = ".parties";
+
+    private final FileChannel channel;
+    private final FileChannel partiesChannel;
+    private final ByteBuffer partiesRecord;
+    private long partiesLength;
+    private final IntFunction<Company> resolver;
+
+    private ByteBuffer[] segments = new ByteBuffer[0];
+    private long[] blockMin = new long[SEGMENT_BLOCKS];
+    private long[] blockMax = new long[SEGMENT_BLOCKS];
+    private long[] prefixMax = new long[SEGMENT_BLOCKS];
+    private long[] suffixMin = new long[SEGMENT_BLOCKS];
+    private volatile int sealedBlocks;
+
+    //заполняемый блок
+    private final long[] stagingIds = new long[BLOCK_SIZE];
+    private final int[] stagingCompany1Ids = new int[BLOCK_SIZE];
+    private final int[] stagingCompany2Ids = new int[BLOCK_SIZE];
+    private final int[] stagingCreatorIds = new int[BLOCK_SIZE];
+    private final long[] stagingPacked = new long[BLOCK_SIZE];
+    private final int[] stagingOrder = new int[BLOCK_SIZE];
+    private int stagingCount;
+
+    private volatile int size;
+    private volatile Company[] companies = new Company[16];
+    private final Map<Long, int[]> additionalPartyIds = new ConcurrentHashMap<>();
+
+    /**
+     * Конструктор для архива в прямых буферах
+     */
+    public OffHeapDocumentArchive() {
+        this.channel = null;
+        this.partiesChannel = null;
+        this.partiesRecord = null;
+        this.resolver = null;
+    }
+
+    /**
+     * Конструктор для архива в файле, отображенном в память, без поиска компаний.
+     * Документы повторно открытого архива получают только компании, уже помещенные в архив
+     * @param file файл архива
+     * @throws IOException ошибка открытия или чтения файла
+     */
+    public OffHeapDocumentArchive(Path file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Конструктор для архива в файле, отображенном в память.
+     * Документы, записанные в файл ранее, остаются в архиве
+     * @param file файл архива
+     * @param companies компании по идентификатору для документов, записанных в файл ранее (может быть null)
+     * @throws IOException ошибка открытия или чтения файла
+     */
+    public OffHeapDocumentArchive(Path file, IntFunction<Company> companies) throws IOException {
+
+        this.resolver = companies;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        partiesChannel = FileChannel.open(file.resolveSibling(file.getFileName() + PARTIES_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        partiesRecord = ByteBuffer.allocateDirect(PARTIES_RECORD_SIZE);
+
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+    }
+
+    @Override
+    public synchronized boolean add(Document document) {
+
+        long id = document.getId();
+        if (get(id) != null) {
+            return false;
+        }
+
+        Company company1 = document.getCompany1();
+        Company company2 = document.getCompany2();
+        Company creator = document.getCreator();
+
+        registerCompany(company1);
+        registerCompany(company2);
+        registerCompany(creator);
+
+        Company[] parties = document.getAdditionalParties();
+        if (parties.length > 0) {
+            int[] partyIds = new int[parties.length];
+            for (int j = 0; j < parties.length; j++) {
+                registerCompany(parties[j]);
+                partyIds[j] = companyId(parties[j]);
+            }
+            additionalPartyIds.put(id, partyIds);
+            if (partiesChannel != null) {
+                writeParties(id, partyIds);
+            }
+        }
+
+        long created = document.getCreatedMillis();
+
+        int block = sealedBlocks;
+        if (segments.length == block >>> SEGMENT_BLOCK_BITS) {
+            allocateSegment();
+        }
+
+        int i = stagingCount++;
+        stagingIds[i] = id;
+        stagingCompany1Ids[i] = companyId(company1);
+        stagingCompany2Ids[i] = companyId(company2);
+        stagingCreatorIds[i] = companyId(creator);
+        stagingPacked[i] = (created << 16) | (document.getSignatures() & 0xFFFF);
+
+        //запись заполняемого блока сразу помещается в сегмент, количество записей в заголовке - после нее
+        ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+        put(segment, offset(block) + i * RECORD_SIZE, i);
+
+        if (stagingCount == BLOCK_SIZE) {
+            seal();
+        } else {
+            segment.putInt(offset(block) - BLOCK_HEADER, stagingCount);
+        }
+
+        size++;
+
+        return true;
+    }
+
+    @Override
+    public Document get(long id) {
+
+        int sealed = sealedBlocks;
+        long[] prefixMax = this.prefixMax;
+        long[] suffixMin = this.suffixMin;
+
+        //блоки, которые могут содержать идентификатор: максимум предшествующих >= id и минимум последующих <= id
+        int from = firstAtLeast(prefixMax, sealed, id);
+        int to = lastAtMost(suffixMin, sealed, id);
+
+        for (int block = from; block <= to; block++) {
+            if (blockMin[block] <= id && id <= blockMax[block]) {
+                int record = find(block, id);
+                if (record >= 0) {
+                    ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+                    int offset = offset(block) + record * RECORD_SIZE;
+                    return document(id, segment.getInt(offset + 8), segment.getInt(offset + 12),
+                            segment.getInt(offset + 16), segment.getLong(offset + 20));
+                }
+            }
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < stagingCount; i++) {
+                if (stagingIds[i] == id) {
+                    return document(id, stagingCompany1Ids[i], stagingCompany2Ids[i], stagingCreatorIds[i], stagingPacked[i]);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Document> action) {
+        scan((id, company1Id, company2Id, creatorId, createdMillis, signatures) ->
+                action.accept(document(id, company1Id, company2Id, creatorId, (createdMillis << 16) | (signatures & 0xFFFF))));
+    }
+
+    /**
+     * Последовательно прочитать все записи архива без создания объектов документов
+     * @param visitor получатель записей
+     */
+    public void scan(RecordVisitor visitor) {
+
+        int sealed = sealedBlocks;
+        ByteBuffer[] segments = this.segments;
+
+        for (int block = 0; block < sealed; block++) {
+            ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+            int offset = offset(block);
+            for (int i = 0; i < BLOCK_SIZE; i++, offset += RECORD_SIZE) {
+                long packed = segment.getLong(offset + 20);
+                visitor.visit(segment.getLong(offset), segment.getInt(offset + 8), segment.getInt(offset + 12),
+                        segment.getInt(offset + 16), packed >> 16, (byte) packed);
+            }
+        }
+
+        long[] ids;
+        int[] company1Ids;
+        int[] company2Ids;
+        int[] creatorIds;
+        long[] packed;
+        synchronized (this) {
+            ids = Arrays.copyOf(stagingIds, stagingCount);
+            company1Ids = Arrays.copyOf(stagingCompany1Ids, stagingCount);
+            company2Ids = Arrays.copyOf(stagingCompany2Ids, stagingCount);
+            creatorIds = Arrays.copyOf(stagingCreatorIds, stagingCount);
+            packed = Arrays.copyOf(stagingPacked, stagingCount);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            visitor.visit(ids[i], company1Ids[i], company2Ids[i], creatorIds[i], packed[i] >> 16, (byte) packed[i]);
+        }
+
+    }
+
+    /**
+     * Сбросить сегменты архива на диск и закрыть файлы архива
+     * @throws IOException ошибка закрытия файла
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+            partiesChannel.force(false);
+        } finally {
+            try {
+                partiesChannel.close();
+            } finally {
+                channel.close();
+            }
+        }
+
+    }
+
+    /**
+     * Прочитать ранее записанный файл архива: отобразить сегменты, восстановить разреженный индекс
+     * по заголовкам заполненных блоков, прочитать в кучу записи заполняемого блока и дополнительные стороны
+     * @throws IOException файл не является файлом архива или ошибка чтения
+     */
+    private void open() throws IOException {
+
+        long length = channel.size();
+        if (length % SEGMENT_BYTES != 0) {
+            throw new IOException("not an off-heap archive file: size " + length);
+        }
+
+        for (long i = 0; i < length / SEGMENT_BYTES; i++) {
+            allocateSegment();
+        }
+
+        int block = 0;
+        int count = 0;
+        while (block >>> SEGMENT_BLOCK_BITS < segments.length) {
+            ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+            count = segment.getInt(offset(block) - BLOCK_HEADER);
+            if (count != BLOCK_SIZE) {
+                break;
+            }
+            int offset = offset(block);
+            index(block, segment.getLong(offset), segment.getLong(offset + (BLOCK_SIZE - 1) * RECORD_SIZE));
+            sealedBlocks = ++block;
+            count = 0;
+        }
+
+        if (count < 0 || count > BLOCK_SIZE) {
+            throw new IOException("corrupted off-heap archive block " + block + ": " + count + " records");
+        }
+
+        for (int i = 0; i < count; i++) {
+            ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+            int offset = offset(block) + i * RECORD_SIZE;
+            stagingIds[i] = segment.getLong(offset);
+            stagingCompany1Ids[i] = segment.getInt(offset + 8);
+            stagingCompany2Ids[i] = segment.getInt(offset + 12);
+            stagingCreatorIds[i] = segment.getInt(offset + 16);
+            stagingPacked[i] = segment.getLong(offset + 20);
+        }
+        stagingCount = count;
+        size = block * BLOCK_SIZE + count;
+
+        ChannelReader reader = new ChannelReader(partiesChannel, 0L, partiesChannel.size(), 64 * 1024);
+        ByteBuffer buffer = reader.buffer();
+        while (reader.request(9)) {
+            int partyCount = buffer.get(buffer.position() + 8);
+            if (partyCount < 0 || partyCount > Document.MAX_PARTIES - 2 || !reader.request(9 + 4 * partyCount)) {
+                break;
+            }
+            long id = buffer.getLong();
+            buffer.get();
+            int[] partyIds = new int[partyCount];
+            for (int i = 0; i < partyCount; i++) {
+                partyIds[i] = buffer.getInt();
+            }
+            additionalPartyIds.put(id, partyIds);
+        }
+
+        //незавершенная запись сторон отбрасывается
+        partiesLength = reader.offset();
+        partiesChannel.truncate(partiesLength);
+
+    }
+
+    /**
+     * Дописать дополнительные стороны документа в файл сторон
+     * @param id идентификатор документа
+     * @param partyIds идентификаторы компаний дополнительных сторон
+     */
+    private void writeParties(long id, int[] partyIds) {
+
+        ByteBuffer record = partiesRecord;
+        record.clear();
+        record.putLong(id);
+        record.put((byte) partyIds.length);
+        for (int partyId : partyIds) {
+            record.putInt(partyId);
+        }
+        record.flip();
+
+        try {
+            long position = partiesLength;
+            while (record.hasRemaining()) {
+                position += partiesChannel.write(record, position);
+            }
+            partiesLength = position;
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot write archive parties of document " + id, e);
+        }
+
+    }
+
+    /**
+     * Записать запись заполняемого блока в сегмент
+     * @param segment сегмент
+     * @param offset смещение записи
+     * @param i номер записи в заполняемом блоке
+     */
+    private void put(ByteBuffer segment, int offset, int i) {
+        segment.putLong(offset, stagingIds[i]);
+        segment.putInt(offset + 8, stagingCompany1Ids[i]);
+        segment.putInt(offset + 12, stagingCompany2Ids[i]);
+        segment.putInt(offset + 16, stagingCreatorIds[i]);
+        segment.putLong(offset + 20, stagingPacked[i]);
+    }
+
+    /**
+     * Записать заполненный блок вне кучи, отсортировав его по идентификатору, и обновить разреженный индекс
+     */
+    private void seal() {
+
+        int block = sealedBlocks;
+
+        //сортировка вставками: документы переносятся почти по порядку идентификаторов
+        int[] order = stagingOrder;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            int j = i;
+            while (j > 0 && stagingIds[order[j - 1]] > stagingIds[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+
+        ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+        int offset = offset(block);
+        for (int i = 0; i < BLOCK_SIZE; i++, offset += RECORD_SIZE) {
+            put(segment, offset, order[i]);
+        }
+        segment.putInt(offset(block) - BLOCK_HEADER, BLOCK_SIZE);
+
+        index(block, stagingIds[order[0]], stagingIds[order[BLOCK_SIZE - 1]]);
+
+        stagingCount = 0;
+        sealedBlocks = block + 1;
+
+    }
+
+    /**
+     * Добавить заполненный блок в разреженный индекс
+     * @param block номер блока
+     * @param min наименьший идентификатор блока
+     * @param max наибольший идентификатор блока
+     */
+    private void index(int block, long min, long max) {
+
+        if (block == blockMin.length) {
+            int length = blockMin.length * 2;
+            blockMin = Arrays.copyOf(blockMin, length);
+            blockMax = Arrays.copyOf(blockMax, length);
+            prefixMax = Arrays.copyOf(prefixMax, length);
+            suffixMin = Arrays.copyOf(suffixMin, length);
+        }
+
+        blockMin[block] = min;
+        blockMax[block] = max;
+        prefixMax[block] = block == 0 ? max : Math.max(prefixMax[block - 1], max);
+        suffixMin[block] = min;
+
+        //минимум по последующим блокам уменьшается, только если блок записан не по порядку идентификаторов
+        for (int previous = block - 1; previous >= 0 && suffixMin[previous] > min; previous--) {
+            suffixMin[previous] = min;
+        }
+
+    }
+
+    /**
+     * Выделить сегмент вне кучи
+     */
+    private void allocateSegment() {
+
+        ByteBuffer segment;
+        if (channel == null) {
+            segment = ByteBuffer.allocateDirect(SEGMENT_BYTES);
+        } else {
+            try {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.length * SEGMENT_BYTES, SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot map archive segment " + segments.length, e);
+            }
+        }
+
+        ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+        grown[segments.length] = segment;
+        segments = grown;
+
+    }
+
+    /**
+     * Найти запись в блоке двоичным поиском
+     * @param block номер блока
+     * @param id идентификатор документа
+     * @return номер записи в блоке или -1
+     */
+    private int find(int block, long id) {
+
+        ByteBuffer segment = segments[block >>> SEGMENT_BLOCK_BITS];
+        int base = offset(block);
+
+        int low = 0;
+        int high = BLOCK_SIZE - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = segment.getLong(base + middle * RECORD_SIZE);
+            if (value < id) {
+                low = middle + 1;
+            } else if (value > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Получить смещение первой записи блока в сегменте, заголовок блока предшествует записям
+     * @param block номер блока
+     * @return смещение в байтах
+     */
+    private static int offset(int block) {
+        return (block & (SEGMENT_BLOCKS - 1)) * BLOCK_BYTES + BLOCK_HEADER;
+    }
+
+    /**
+     * Найти первый блок, значение которого не меньше заданного, в неубывающем массиве
+     * @param values неубывающие значения блоков
+     * @param count количество блоков
+     * @param id искомый идентификатор
+     * @return номер блока или count, если такого блока нет
+     */
+    private static int firstAtLeast(long[] values, int count, long id) {
+
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Найти последний блок, значение которого не больше заданного, в неубывающем массиве
+     * @param values неубывающие значения блоков
+     * @param count количество блоков
+     * @param id искомый идентификатор
+     * @return номер блока или -1, если такого блока нет
+     */
+    private static int lastAtMost(long[] values, int count, long id) {
+
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low - 1;
+    }
+
+    /**
+     * Создать документ по записи архива
+     * @param id идентификатор документа
+     * @param company1Id идентификатор компании 1 стороны
+     * @param company2Id идентификатор компании 2 стороны
+     * @param creatorId идентификатор компании-создателя
+     * @param packed время создания в старших 48 битах и подписи в младших 16 битах
+     * @return документ
+     */
+    private Document document(long id, int company1Id, int company2Id, int creatorId, long packed) {
+
+        Document document;
+        int[] partyIds = additionalPartyIds.isEmpty() ? null : additionalPartyIds.get(id);
+        if (partyIds == null) {
+            document = new Document(id, company(company1Id), company(company2Id), packed >> 16);
+        } else {
+            Company[] parties = new Company[partyIds.length];
+            for (int i = 0; i < parties.length; i++) {
+                parties[i] = company(partyIds[i]);
+            }
+            document = new Document(id, company(company1Id), company(company2Id), parties, packed >> 16);
+        }
+        document.setCreator(company(creatorId));
+        document.restoreSignatures((byte) packed);
+
+        return document;
+    }
+
+    /**
+     * Запомнить компанию по идентификатору
+     * @param company компания (может быть null)
+     */
+    private void registerCompany(Company company) {
+
+        if (company == null) {
+            return;
+        }
+
+        int id = company.getId();
+        Company[] companies = this.companies;
+        if (id < companies.length && companies[id] == company) {
+            return;
+        }
+
+        if (id >= companies.length) {
+            companies = Arrays.copyOf(companies, Math.max(id + 1, companies.length * 2));
+        }
+        companies[id] = company;
+        this.companies = companies;
+
+    }
+
+    /**
+     * Получить компанию по идентификатору
+     * @param id идентификатор компании, 0 - компания отсутствует
+     * @return компания или null
+     */
+    private Company company(int id) {
+
+        if (id <= 0) {
+            return null;
+        }
+
+        Company[] companies = this.companies;
+        Company company = id < companies.length ? companies[id] : null;
+
+        return company != null || resolver == null ? company : resolve(id);
+    }
+
+    /**
+     * Найти компанию документа, записанного в файл ранее, и запомнить ее
+     * @param id идентификатор компании
+     * @return компания или null
+     */
+    private synchronized Company resolve(int id) {
+
+        Company[] companies = this.companies;
+        if (id < companies.length && companies[id] != null) {
+            return companies[id];
+        }
+
+        Company company = resolver.apply(id);
+        if (company != null && company.getId() == id) {
+            registerCompany(company);
+        }
+
+        return company;
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @param company компания (может быть null)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    private static int companyId(Company company) {
+        return company == null ? 0 : company.getId();
+    }
+
+    /**
+     * Интерфейс получателя записей архива при последовательном обходе
+     */
+    public interface RecordVisitor {
+
+        /**
+         * Обработать запись архива
+         * @param id идентификатор документа
+         * @param company1Id идентификатор компании 1 стороны
+         * @param company2Id идентификатор компании 2 стороны
+         * @param creatorId идентификатор компании-создателя, 0 - документ создан не компанией
+         * @param createdMillis время создания в миллисекундах
+         * @param signatures битовая маска подписей
+         */
+        void visit(long id, int company1Id, int company2Id, int creatorId, long createdMillis, byte signatures);
+
+    }
+
+}
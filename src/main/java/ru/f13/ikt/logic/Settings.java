@@ -1,25 +1,85 @@
 package ru.f13.ikt.logic;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Properties;
+
 /**
- * Класс описывает настройки ограничений
+ * Класс описывает настройки ограничений.
+ * Настройки неизменяемы: для изменения ограничений создаются новые настройки и устанавливаются
+ * в систему документооборота {@link SystemWorkflow#setSettings(Settings)}, поэтому потоки, проверяющие документы,
+ * всегда видят согласованный набор значений. Время ограничения разбирается при создании настроек.
+ * Кроме общих значений ограничений настройки содержат индивидуальные значения для компаний и пар компаний
+ * {@link LimitOverrides}
  */
-public class Settings {
+public final class Settings {
+
+    //ключи файла настроек
+    static final String LIMITED_TIME = "limitedTime";
+    static final String START_LIMITED_TIME = "startLimitedTime";
+    static final String END_LIMITED_TIME = "endLimitedTime";
+    static final String COMPANY_WORKFLOW_LIMIT = "companyWorkflowLimit";
+    static final String COMPANY_WORKFLOW_LIMIT_VALUE = "companyWorkflowLimitValue";
+    static final String COMPANY_CREATE_DOCUMENT_LIMIT = "companyCreateDocumentLimit";
+    static final String COMPANY_CREATE_DOCUMENT_LIMIT_VALUE = "companyCreateDocumentLimitValue";
+    static final String COMPANY_CREATE_DOCUMENT_LIMITED_TIME = "companyCreateDocumentLimitedTime";
+    static final String WORKFLOW_LIMIT = "workflowLimit";
+    static final String WORKFLOW_LIMIT_VALUE = "workflowLimitValue";
+
+    private static final LimitOverrides NO_OVERRIDES = new LimitOverrides();
+
+    private final boolean isLimitedTime;
+    private final String startLimitedTimeValue;
+    private final String endLimitedTimeValue;
+    private final int startLimitedTimeMillis;
+    private final int endLimitedTimeMillis;
+
+    private final boolean isCompanyWorkflowLimit;
+    private final int companyWorkflowLimitValue;
+
+    private final boolean isCompanyCreateDocumentLimit;
+    private final int companyCreateDocumentLimitValue;
+    private final int companyCreateDocumentLimitedTimeValue;
+    private final int maxCompanyCreateDocumentLimitValue;
+
+    private final boolean isWorkflowLimit;
+    private final int workflowLimitValue;
+
+    //копия индивидуальных значений, которая не изменяется после создания настроек
+    private final LimitOverrides overrides;
+
+    private Settings(boolean isLimitedTime, String startLimitedTimeValue, String endLimitedTimeValue,
+                     boolean isCompanyWorkflowLimit, int companyWorkflowLimitValue,
+                     boolean isCompanyCreateDocumentLimit, int companyCreateDocumentLimitValue,
+                     int companyCreateDocumentLimitedTimeValue,
+                     boolean isWorkflowLimit, int workflowLimitValue, LimitOverrides overrides) {
+
+        this.isLimitedTime = isLimitedTime;
+        this.startLimitedTimeValue = startLimitedTimeValue;
+        this.endLimitedTimeValue = endLimitedTimeValue;
+        this.startLimitedTimeMillis = millisOfDay(startLimitedTimeValue);
+        this.endLimitedTimeMillis = millisOfDay(endLimitedTimeValue);
 
-    private boolean isLimitedTime;
-    private String startLimitedTimeValue;
-    private String endLimitedTimeValue;
+        this.isCompanyWorkflowLimit = isCompanyWorkflowLimit;
+        this.companyWorkflowLimitValue = companyWorkflowLimitValue;
 
-    private boolean isCompanyWorkflowLimit;
-    private int companyWorkflowLimitValue;
+        this.isCompanyCreateDocumentLimit = isCompanyCreateDocumentLimit;
+        this.companyCreateDocumentLimitValue = companyCreateDocumentLimitValue;
+        this.companyCreateDocumentLimitedTimeValue = companyCreateDocumentLimitedTimeValue;
+        this.maxCompanyCreateDocumentLimitValue =
+                overrides.companyCreateDocumentLimits.maxValue(companyCreateDocumentLimitValue);
 
-    private boolean isCompanyCreateDocumentLimit;
-    private int companyCreateDocumentLimitValue;
-    private int companyCreateDocumentLimitedTimeValue;
+        this.isWorkflowLimit = isWorkflowLimit;
+        this.workflowLimitValue = workflowLimitValue;
 
-    private boolean isWorkflowLimit;
-    private int workflowLimitValue;
+        this.overrides = overrides;
 
-    private Settings() {
     }
 
     /**
@@ -43,6 +103,7 @@ public class Settings {
      * @param isWorkflowLimit ограничения по документообороту компаний true - подтверждены, false - не подтверждены
      * @param workflowLimitValue значение ограничения по документообороту компаний
      * @return объект настроек {@link Settings}
+     * @throws IllegalArgumentException время ограничения не в формате {@link DateTimeFormatter#ISO_LOCAL_TIME}
      */
     public static Settings createCustomSettings(
             boolean isLimitedTime,
@@ -56,56 +117,194 @@ public class Settings {
             boolean isWorkflowLimit,
             int workflowLimitValue
     ) {
+        return new Settings(
+                isLimitedTime, startLimitedTimeValue, endLimitedTimeValue,
+                isCompanyWorkflowLimit, companyWorkflowLimitValue,
+                isCompanyCreateDocumentLimit, companyCreateDocumentLimitValue, companyCreateDocumentLimitedTimeValue,
+                isWorkflowLimit, workflowLimitValue, NO_OVERRIDES);
+    }
 
-        Settings settings = new Settings();
+    /**
+     * Создать настройки с теми же общими значениями и заданными индивидуальными значениями ограничений
+     * @param overrides индивидуальные значения (копируются, последующие изменения объекта не влияют на настройки)
+     * @return объект настроек {@link Settings}
+     */
+    public Settings withOverrides(LimitOverrides overrides) {
+        return new Settings(
+                isLimitedTime, startLimitedTimeValue, endLimitedTimeValue,
+                isCompanyWorkflowLimit, companyWorkflowLimitValue,
+                isCompanyCreateDocumentLimit, companyCreateDocumentLimitValue, companyCreateDocumentLimitedTimeValue,
+                isWorkflowLimit, workflowLimitValue,
+                overrides.size() == 0 ? NO_OVERRIDES : new LimitOverrides(overrides));
+    }
 
-        settings.setLimitedTime(isLimitedTime);
-        settings.setStartLimitedTimeValue(startLimitedTimeValue);
-        settings.setEndLimitedTimeValue(endLimitedTimeValue);
+    /**
+     * Получить индивидуальные значения ограничений
+     * @return копия индивидуальных значений, которую можно изменить и установить {@link #withOverrides(LimitOverrides)}
+     */
+    public LimitOverrides getOverrides() {
+        return new LimitOverrides(overrides);
+    }
 
-        settings.setCompanyWorkflowLimit(isCompanyWorkflowLimit);
-        settings.setCompanyWorkflowLimitValue(companyWorkflowLimitValue);
+    /**
+     * Загрузить настройки из файла свойств в кодировке UTF-8.
+     * Файл должен содержать все ключи: limitedTime, startLimitedTime, endLimitedTime,
+     * companyWorkflowLimit, companyWorkflowLimitValue, companyCreateDocumentLimit, companyCreateDocumentLimitValue,
+     * companyCreateDocumentLimitedTime, workflowLimit, workflowLimitValue - поэтому недописанный файл не загружается.
+     * Индивидуальные значения задаются ключами companyWorkflowLimitValue.&lt;компания&gt;,
+     * companyCreateDocumentLimitValue.&lt;компания&gt; и workflowLimitValue.&lt;компания&gt;.&lt;компания&gt;,
+     * где компания - идентификатор {@link Company#getId()}
+     * @param file файл настроек
+     * @return объект настроек
+     * @throws IOException ошибка чтения файла
+     * @throws IllegalArgumentException ключ отсутствует или значение недопустимо
+     */
+    public static Settings load(Path file) throws IOException {
 
-        settings.setCompanyCreateDocumentLimit(isCompanyCreateDocumentLimit);
-        settings.setCompanyCreateDocumentLimitValue(companyCreateDocumentLimitValue);
-        settings.setCompanyCreateDocumentLimitedTimeValue(companyCreateDocumentLimitedTimeValue);
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
 
-        settings.setWorkflowLimit(isWorkflowLimit);
-        settings.setWorkflowLimitValue(workflowLimitValue);
+        return load(properties);
+    }
 
-        return settings;
+    /**
+     * Загрузить настройки из свойств
+     * @param properties свойства с ключами, перечисленными в {@link #load(Path)}
+     * @return объект настроек
+     * @throws IllegalArgumentException ключ отсутствует или значение недопустимо
+     */
+    public static Settings load(Properties properties) {
+
+        Settings settings = createCustomSettings(
+                booleanValue(properties, LIMITED_TIME),
+                value(properties, START_LIMITED_TIME),
+                value(properties, END_LIMITED_TIME),
+                booleanValue(properties, COMPANY_WORKFLOW_LIMIT),
+                intValue(properties, COMPANY_WORKFLOW_LIMIT_VALUE),
+                booleanValue(properties, COMPANY_CREATE_DOCUMENT_LIMIT),
+                intValue(properties, COMPANY_CREATE_DOCUMENT_LIMIT_VALUE),
+                intValue(properties, COMPANY_CREATE_DOCUMENT_LIMITED_TIME),
+                booleanValue(properties, WORKFLOW_LIMIT),
+                intValue(properties, WORKFLOW_LIMIT_VALUE));
+
+        LimitOverrides overrides = new LimitOverrides();
+        for (String key : properties.stringPropertyNames()) {
+
+            int separator = key.indexOf('.');
+            if (separator < 0) {
+                continue;
+            }
+
+            //прочие ключи с точкой, например настройки журналирования, к ограничениям не относятся
+            String name = key.substring(0, separator);
+            if (!COMPANY_WORKFLOW_LIMIT_VALUE.equals(name) && !COMPANY_CREATE_DOCUMENT_LIMIT_VALUE.equals(name)
+                    && !WORKFLOW_LIMIT_VALUE.equals(name)) {
+                continue;
+            }
+
+            int limit = intValue(properties, key);
+            try {
+                if (COMPANY_WORKFLOW_LIMIT_VALUE.equals(name)) {
+                    overrides.companyWorkflowLimit(Integer.parseInt(key.substring(separator + 1)), limit);
+                } else if (COMPANY_CREATE_DOCUMENT_LIMIT_VALUE.equals(name)) {
+                    overrides.companyCreateDocumentLimit(Integer.parseInt(key.substring(separator + 1)), limit);
+                } else {
+                    int pair = key.indexOf('.', separator + 1);
+                    overrides.workflowLimit(Integer.parseInt(key.substring(separator + 1, pair)),
+                            Integer.parseInt(key.substring(pair + 1)), limit);
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("invalid setting key " + key, e);
+            }
+        }
+
+        return overrides.size() == 0 ? settings : settings.withOverrides(overrides);
     }
 
     /**
-     * Проверить ограничения по времени
-     * @return true - подтверждены, false - не подтверждены
+     * Получить значение свойства
+     * @param properties свойства
+     * @param key ключ
+     * @return значение без пробелов по краям
      */
-    public boolean isLimitedTime() {
-        return isLimitedTime;
+    private static String value(Properties properties, String key) {
+
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("missing setting " + key);
+        }
+
+        return value.trim();
     }
 
     /**
-     * Установить ограничения по времени
-     * @param limitedTime true - подтверждены, false - не подтверждены
+     * Получить логическое значение свойства
+     * @param properties свойства
+     * @param key ключ
+     * @return значение true или false
      */
-    public void setLimitedTime(boolean limitedTime) {
-        isLimitedTime = limitedTime;
+    private static boolean booleanValue(Properties properties, String key) {
+
+        String value = value(properties, key);
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+
+        throw new IllegalArgumentException("invalid setting " + key + "=" + value);
     }
 
     /**
-     * Получить стартовое значение ограничения времени
-     * @return время суток "00:00" - "23:59"
+     * Получить неотрицательное целое значение свойства
+     * @param properties свойства
+     * @param key ключ
+     * @return значение
      */
-    public String getStartLimitedTimeValue() {
-        return startLimitedTimeValue;
+    private static int intValue(Properties properties, String key) {
+
+        String value = value(properties, key);
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            //ниже - общее сообщение об ошибке
+        }
+
+        throw new IllegalArgumentException("invalid setting " + key + "=" + value);
     }
 
     /**
-     * Установить стартовое значение ограничения времени
-     * @param startLimitedTimeValue время суток "00:00" - "23:59"
+     * Разобрать время суток
+     * @param value время в формате {@link DateTimeFormatter#ISO_LOCAL_TIME}
+     * @return миллисекунды от начала суток
      */
-    public void setStartLimitedTimeValue(String startLimitedTimeValue) {
-        this.startLimitedTimeValue = startLimitedTimeValue;
+    private static int millisOfDay(String value) {
+        try {
+            return (int) (LocalTime.parse(value, DateTimeFormatter.ISO_LOCAL_TIME).toNanoOfDay() / 1_000_000L);
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IllegalArgumentException("invalid limited time " + value, e);
+        }
+    }
+
+    /**
+     * Проверить ограничения по времени
+     * @return true - подтверждены, false - не подтверждены
+     */
+    public boolean isLimitedTime() {
+        return isLimitedTime;
+    }
+
+    /**
+     * Получить стартовое значение ограничения времени
+     * @return время суток "00:00" - "23:59"
+     */
+    public String getStartLimitedTimeValue() {
+        return startLimitedTimeValue;
     }
 
     /**
@@ -117,27 +316,27 @@ public class Settings {
     }
 
     /**
-     * Установить конечное значение ограничения времени
-     * @param endLimitedTimeValue время суток "00:00" - "23:59"
+     * Получить стартовое значение ограничения времени
+     * @return миллисекунды от начала суток
      */
-    public void setEndLimitedTimeValue(String endLimitedTimeValue) {
-        this.endLimitedTimeValue = endLimitedTimeValue;
+    int getStartLimitedTimeMillis() {
+        return startLimitedTimeMillis;
     }
 
     /**
-     * Проверить ограничения по документообороту компании
-     * @return true - подтверждены, false - не подтверждены
+     * Получить конечное значение ограничения времени
+     * @return миллисекунды от начала суток
      */
-    public boolean isCompanyWorkflowLimit() {
-        return isCompanyWorkflowLimit;
+    int getEndLimitedTimeMillis() {
+        return endLimitedTimeMillis;
     }
 
     /**
-     * Установить ограничения по документообороту компании
-     * @param companyWorkflowLimit true - подтверждены, false - не подтверждены
+     * Проверить ограничения по документообороту компании
+     * @return true - подтверждены, false - не подтверждены
      */
-    public void setCompanyWorkflowLimit(boolean companyWorkflowLimit) {
-        isCompanyWorkflowLimit = companyWorkflowLimit;
+    public boolean isCompanyWorkflowLimit() {
+        return isCompanyWorkflowLimit;
     }
 
     /**
@@ -149,11 +348,13 @@ public class Settings {
     }
 
     /**
-     * Установить значение ограничения по документообороту компании
-     * @param companyWorkflowLimitValue значение ограничения по документообороту компании
+     * Получить значение ограничения по документообороту компании с учетом индивидуального значения
+     * @param company компания (может быть null)
+     * @return индивидуальное значение компании или общее значение
      */
-    public void setCompanyWorkflowLimitValue(int companyWorkflowLimitValue) {
-        this.companyWorkflowLimitValue = companyWorkflowLimitValue;
+    public int getCompanyWorkflowLimitValue(Company company) {
+        return company == null ? companyWorkflowLimitValue
+                : overrides.companyWorkflowLimits.get(company.getId(), companyWorkflowLimitValue);
     }
 
     /**
@@ -164,14 +365,6 @@ public class Settings {
         return isCompanyCreateDocumentLimit;
     }
 
-    /**
-     * Установить ограничения по созданию документов компанией
-     * @param companyCreateDocumentLimit true - подтверждены, false - не подтверждены
-     */
-    public void setCompanyCreateDocumentLimit(boolean companyCreateDocumentLimit) {
-        isCompanyCreateDocumentLimit = companyCreateDocumentLimit;
-    }
-
     /**
      * Получить значение ограничения по созданию документов компанией
      * @return значение ограничения по созданию документов компанией
@@ -181,27 +374,29 @@ public class Settings {
     }
 
     /**
-     * Установить значение ограничения по созданию документов компанией
-     * @param companyCreateDocumentLimitValue значение ограничения по созданию документов компанией
+     * Получить значение ограничения по созданию документов компанией с учетом индивидуального значения
+     * @param company компания (может быть null)
+     * @return индивидуальное значение компании или общее значение
      */
-    public void setCompanyCreateDocumentLimitValue(int companyCreateDocumentLimitValue) {
-        this.companyCreateDocumentLimitValue = companyCreateDocumentLimitValue;
+    public int getCompanyCreateDocumentLimitValue(Company company) {
+        return company == null ? companyCreateDocumentLimitValue
+                : overrides.companyCreateDocumentLimits.get(company.getId(), companyCreateDocumentLimitValue);
     }
 
     /**
-     * Получить значение ограничения по созданию документов компанией по времени
-     * @return время в часах
+     * Получить наибольшее значение ограничения по созданию документов компанией среди общего и индивидуальных значений
+     * @return наибольшее значение ограничения по созданию документов компанией
      */
-    public int getCompanyCreateDocumentLimitedTimeValue() {
-        return companyCreateDocumentLimitedTimeValue;
+    public int getMaxCompanyCreateDocumentLimitValue() {
+        return maxCompanyCreateDocumentLimitValue;
     }
 
     /**
-     * Установить значение ограничения по созданию документов компанией по времени
-     * @param companyCreateDocumentLimitedTimeValue время в часах
+     * Получить значение ограничения по созданию документов компанией по времени
+     * @return время в часах
      */
-    public void setCompanyCreateDocumentLimitedTimeValue(int companyCreateDocumentLimitedTimeValue) {
-        this.companyCreateDocumentLimitedTimeValue = companyCreateDocumentLimitedTimeValue;
+    public int getCompanyCreateDocumentLimitedTimeValue() {
+        return companyCreateDocumentLimitedTimeValue;
     }
 
     /**
@@ -212,14 +407,6 @@ public class Settings {
         return isWorkflowLimit;
     }
 
-    /**
-     * Установить ограничения по документообороту компаний
-     * @param workflowLimit  true - подтверждены, false - не подтверждены
-     */
-    public void setWorkflowLimit(boolean workflowLimit) {
-        isWorkflowLimit = workflowLimit;
-    }
-
     /**
      * Получить значение ограничения по документообороту компаний
      * @return значение ограничения по документообороту компаний
@@ -229,11 +416,29 @@ public class Settings {
     }
 
     /**
-     * Установить значение ограничения по документообороту компаний
-     * @param workflowLimitValue значение ограничения по документообороту компаний
+     * Получить значение ограничения по документообороту между компаниями с учетом индивидуального значения пары
+     * @param company1 первая компания (может быть null)
+     * @param company2 вторая компания (может быть null)
+     * @return индивидуальное значение пары компаний или общее значение
      */
-    public void setWorkflowLimitValue(int workflowLimitValue) {
-        this.workflowLimitValue = workflowLimitValue;
+    public int getWorkflowLimitValue(Company company1, Company company2) {
+        return company1 == null || company2 == null ? workflowLimitValue : overrides.workflowLimits.get(
+                UnsignedDocumentIndex.pairKey(company1.getId(), company2.getId()), workflowLimitValue);
+    }
+
+    @Override
+    public String toString() {
+        return LIMITED_TIME + "=" + isLimitedTime
+                + " " + START_LIMITED_TIME + "=" + startLimitedTimeValue
+                + " " + END_LIMITED_TIME + "=" + endLimitedTimeValue
+                + " " + COMPANY_WORKFLOW_LIMIT + "=" + isCompanyWorkflowLimit
+                + " " + COMPANY_WORKFLOW_LIMIT_VALUE + "=" + companyWorkflowLimitValue
+                + " " + COMPANY_CREATE_DOCUMENT_LIMIT + "=" + isCompanyCreateDocumentLimit
+                + " " + COMPANY_CREATE_DOCUMENT_LIMIT_VALUE + "=" + companyCreateDocumentLimitValue
+                + " " + COMPANY_CREATE_DOCUMENT_LIMITED_TIME + "=" + companyCreateDocumentLimitedTimeValue
+                + " " + WORKFLOW_LIMIT + "=" + isWorkflowLimit
+                + " " + WORKFLOW_LIMIT_VALUE + "=" + workflowLimitValue
+                + " overrides=" + overrides.size();
     }
 
 }
@@ -0,0 +1,196 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Класс описывает источник настроек ограничений из файла свойств (см. {@link Settings#load(Path)}).
+ * Файл отслеживается {@link WatchService}: после изменения файла настройки загружаются заново и передаются
+ * получателю, например {@code workflow::setSettings}, без перезапуска и без остановки работы с системой.
+ * Если файл не удалось прочитать или он содержит недопустимые значения, остаются действующие настройки.
+ * Чтобы система не прочитала недописанный файл, новый файл следует записывать рядом и переименовывать
+ * на место отслеживаемого (атомарное перемещение); кроме того, после изменения источник выжидает
+ * {@link #SETTLE_MILLIS} мс, объединяя несколько изменений в одну загрузку
+ */
+public class SettingsFileSource implements Closeable {
+
+    /**
+     * Время ожидания следующих изменений файла перед загрузкой настроек
+     */
+    public static final long SETTLE_MILLIS = 50L;
+
+    private final Path file;
+    private final Consumer<Settings> target;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Settings settings;
+    private volatile Exception lastError;
+    private volatile boolean running = true;
+
+    /**
+     * Конструктор для источника настроек.
+     * Настройки загружаются из файла и передаются получателю сразу, затем - после каждого изменения файла
+     * @param file файл настроек
+     * @param target получатель настроек
+     * @throws IOException ошибка чтения файла или отслеживания каталога
+     * @throws IllegalArgumentException файл содержит недопустимые значения
+     */
+    public SettingsFileSource(Path file, Consumer<Settings> target) throws IOException {
+
+        this.file = file.toAbsolutePath();
+        this.target = target;
+
+        settings = Settings.load(this.file);
+        target.accept(settings);
+
+        watchService = this.file.getFileSystem().newWatchService();
+        try {
+            this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+
+        thread = new Thread(this::run, "workflow-settings");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+    /**
+     * Получить действующие настройки
+     * @return последние успешно загруженные настройки
+     */
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Получить количество загрузок настроек после изменения файла
+     * @return количество успешных загрузок
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    /**
+     * Получить количество неудачных загрузок настроек
+     * @return количество загрузок, после которых остались действующие настройки
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Получить ошибку последней неудачной загрузки
+     * @return ошибка или null, если загрузки не завершались ошибкой
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Загрузить настройки из файла и передать получателю
+     * @return true - настройки загружены, false - остались действующие настройки
+     */
+    public boolean reload() {
+
+        Settings loaded;
+        try {
+            loaded = Settings.load(file);
+        } catch (IOException | RuntimeException e) {
+            lastError = e;
+            failures.incrementAndGet();
+            return false;
+        }
+
+        settings = loaded;
+        target.accept(loaded);
+        reloads.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Отслеживать изменения файла, пока источник не закрыт
+     */
+    private void run() {
+
+        while (running) {
+            try {
+
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+
+                //объединить изменения, следующие друг за другом (запись файла несколькими операциями)
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+
+                if (changed && running) {
+                    reload();
+                }
+
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+
+    }
+
+    /**
+     * Разобрать события каталога
+     * @param key ключ отслеживания каталога
+     * @return true - среди событий есть изменение файла настроек
+     */
+    private boolean drain(WatchKey key) {
+
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+
+        return changed;
+    }
+
+    /**
+     * Прекратить отслеживание файла
+     */
+    @Override
+    public void close() {
+
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            //поток отслеживания завершится при прерывании
+        }
+        thread.interrupt();
+
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
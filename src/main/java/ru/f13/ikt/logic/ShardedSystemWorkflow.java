@@ -0,0 +1,585 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Класс описывает систему документооборота, разделенную на шарды по компаниям.
+ * Каждый шард владеет своей системой документооборота {@link SystemWorkflow} для одного потока
+ * и обрабатывается одним выделенным потоком, который выполняет сообщения из очереди шарда по порядку.
+ * <p>
+ * Документ принадлежит шарду компании документа с меньшим идентификатором, поэтому все документы пары компаний
+ * находятся в одном шарде и ограничение на документооборот между компаниями проверяется в шарде без обмена сообщениями.
+ * Количество неподписанных документов компании для ограничения на участие в документообороте хранит домашний шард
+ * компании: его собственные документы компании и документы других шардов, о которых шарды сообщают сообщениями.
+ * Если вторая сторона документа из другого шарда, шард документа перед добавлением резервирует место
+ * в ее домашнем шарде, а после добавления сообщает фактическое изменение количества, поэтому ограничение
+ * не превышается и при одновременном добавлении документов в разных шардах.
+ * <p>
+ * Передача документа выполняется в шарде документа, поэтому операции с одним документом упорядочены.
+ * Документы, добавленные в систему, следует изменять только через методы этой системы.
+ * Операции с документами разных шардов выполняются параллельно без блокировок.
+ * Система принимает только документы двух сторон: резервирование выполняется для одной компании другого шарда
+ */
+public class ShardedSystemWorkflow implements Closeable {
+
+    private static final int BATCH_SIZE = 256;
+    private static final Runnable STOP = () -> { };
+
+    private final Shard[] shards;
+    private final int mask;
+
+    /**
+     * Конструктор для системы с количеством шардов по числу процессоров
+     */
+    public ShardedSystemWorkflow() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Конструктор для системы с заданным количеством шардов
+     * @param shards количество шардов (округляется до степени двойки)
+     */
+    public ShardedSystemWorkflow(int shards) {
+
+        int size = CompanyLockStripes.stripeCount(shards);
+
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        mask = size - 1;
+
+        setSettings(Settings.createDefaultSettings());
+
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+
+    }
+
+    /**
+     * Добавить документ в систему и дождаться результата
+     * @param document добавляемый документ
+     * @return true - документ успешно добавлен, false - документ не добавлен
+     */
+    public boolean addDocument1(Document document) {
+        return addDocumentAsync(document).join() == AdmissionStatus.SIGNED;
+    }
+
+    /**
+     * Добавить документ в систему.
+     * Документы разных шардов добавляются параллельно, документы одной пары компаний - в порядке вызова,
+     * если для них не требуется резервирование в другом шарде.
+     * Документ с дополнительными сторонами не добавляется
+     * @param document добавляемый документ
+     * @return результат добавления, значение {@link AdmissionStatus}
+     */
+    public CompletableFuture<Byte> addDocumentAsync(Document document) {
+
+        if (document == null || document.getPartyCount() > 2) {
+            return CompletableFuture.completedFuture(AdmissionStatus.REJECTED_INVALID_DOCUMENT);
+        }
+
+        CompletableFuture<Byte> result = new CompletableFuture<>();
+        Shard owner = ownerOf(document);
+        owner.execute(() -> owner.admit(document, result));
+
+        return result;
+    }
+
+    /**
+     * Подписать документ и дождаться результата
+     * @param document подписываемый документ
+     * @param company компания, которая подписывает документ
+     * @return true - документ подписан, false - документ не подписан
+     */
+    public boolean signingDocument(Document document, Company company) {
+        return signAsync(document, company).join();
+    }
+
+    /**
+     * Подписать документ
+     * @param document подписываемый документ
+     * @param company компания, которая подписывает документ
+     * @return true - документ подписан, false - документ не подписан
+     */
+    public CompletableFuture<Boolean> signAsync(Document document, Company company) {
+        Shard owner = ownerOf(document);
+        return owner.submit(() -> owner.sign(document, company));
+    }
+
+    /**
+     * Передать документ и дождаться завершения передачи
+     * @param document передаваемый документ
+     * @param from компания, передающая документ
+     * @param to компания, получающая документ
+     */
+    public void transferDocument(Document document, Company from, Company to) {
+        transferAsync(document, from, to).join();
+    }
+
+    /**
+     * Передать документ в шарде документа
+     * @param document передаваемый документ
+     * @param from компания, передающая документ
+     * @param to компания, получающая документ
+     * @return завершение передачи
+     */
+    public CompletableFuture<Void> transferAsync(Document document, Company from, Company to) {
+        return ownerOf(document).submit(() -> {
+            from.transferDocument(document, to);
+            return null;
+        });
+    }
+
+    /**
+     * Удалить документ из системы и дождаться завершения удаления
+     * @param document удаляемый документ
+     */
+    public void removeDocument(Document document) {
+        removeDocumentAsync(document).join();
+    }
+
+    /**
+     * Удалить документ из системы
+     * @param document удаляемый документ
+     * @return завершение удаления
+     */
+    public CompletableFuture<Void> removeDocumentAsync(Document document) {
+        Shard owner = ownerOf(document);
+        return owner.submit(() -> {
+            owner.remove(document);
+            return null;
+        });
+    }
+
+    /**
+     * Проверить есть ли документ в системе
+     * @param document проверяемый документ
+     * @return true - документ в системе, false - документа нет в системе
+     */
+    public boolean isContainsDocument(Document document) {
+        return document != null && ownerOf(document).workflow.isContainsDocument(document);
+    }
+
+    /**
+     * Найти документ системы по идентификатору
+     * @param id идентификатор документа
+     * @return документ или null, если документа нет в системе
+     */
+    public Document getDocument(long id) {
+
+        for (Shard shard : shards) {
+            Document document = shard.workflow.getDocument(id);
+            if (document != null) {
+                return document;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Получить количество документов в системе
+     * @return количество документов
+     */
+    public long getDocumentCount() {
+
+        long count = 0L;
+        for (Shard shard : shards) {
+            count += shard.workflow.getDocumentCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Получить количество неподписанных документов, в которых участвует компания, по данным ее домашнего шарда.
+     * Учитываются и места, зарезервированные для добавляемых документов
+     * @param company компания
+     * @return количество неподписанных документов
+     */
+    public int getUnsignedDocumentCount(Company company) {
+        Shard home = shardOf(company);
+        return home.submit(() -> home.companyCount(company)).join();
+    }
+
+    /**
+     * Получить количество шардов
+     * @return количество шардов
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Получить номер домашнего шарда компании
+     * @param company компания
+     * @return номер шарда
+     */
+    public int getShardIndex(Company company) {
+        return shardOf(company).index;
+    }
+
+    /**
+     * Получить настройки ограничений
+     * @return объект настроек {@link Settings}
+     */
+    public Settings getSettings() {
+        return shards[0].workflow.getSettings();
+    }
+
+    /**
+     * Установить настройки ограничений во всех шардах
+     * @param settings объект настроек {@link Settings}
+     */
+    public void setSettings(Settings settings) {
+        for (Shard shard : shards) {
+            shard.workflow.setSettings(settings);
+        }
+    }
+
+    /**
+     * Остановить потоки шардов после выполнения сообщений, уже поставленных в очереди.
+     * Закрывать систему следует после завершения операций: сообщения между шардами, поставленные после
+     * остановки, не выполняются
+     */
+    @Override
+    public void close() {
+
+        for (Shard shard : shards) {
+            shard.execute(STOP);
+        }
+
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+    }
+
+    /**
+     * Получить домашний шард компании
+     * @param company компания (может быть null)
+     * @return шард
+     */
+    private Shard shardOf(Company company) {
+        return company == null ? shards[0] : shards[CompanyLockStripes.stripeOf(company.getId(), mask)];
+    }
+
+    /**
+     * Получить шард документа: домашний шард компании документа с меньшим идентификатором
+     * @param document документ
+     * @return шард
+     */
+    private Shard ownerOf(Document document) {
+
+        Company company1 = document.getCompany1();
+        Company company2 = document.getCompany2();
+
+        if (company1 == null || (company2 != null && company2.getId() < company1.getId())) {
+            return shardOf(company2);
+        }
+
+        return shardOf(company1);
+    }
+
+    /**
+     * Класс описывает шард: систему документооборота для одного потока и очередь сообщений ее потока
+     */
+    private final class Shard {
+
+        private final int index;
+        private final SystemWorkflow workflow = new SystemWorkflow(new HashDocumentRepository(true));
+        private final BlockingQueue<Runnable> mailbox = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        //неподписанные документы компаний шарда в других шардах и зарезервированные места, меняется только потоком шарда
+        private final IntIntMap remoteCounters = new IntIntMap();
+
+        /**
+         * Конструктор для объекта шарда
+         * @param index номер шарда
+         */
+        private Shard(int index) {
+
+            this.index = index;
+
+            thread = new Thread(this::run, "workflow-shard-" + index);
+            thread.setDaemon(true);
+
+        }
+
+        /**
+         * Поставить сообщение в очередь шарда
+         * @param message сообщение
+         */
+        private void execute(Runnable message) {
+            mailbox.add(message);
+        }
+
+        /**
+         * Выполнить операцию в потоке шарда
+         * @param operation операция
+         * @param <T> тип результата
+         * @return результат операции
+         */
+        private <T> CompletableFuture<T> submit(Supplier<T> operation) {
+
+            CompletableFuture<T> result = new CompletableFuture<>();
+            execute(() -> complete(result, operation));
+
+            return result;
+        }
+
+        /**
+         * Выполнять сообщения очереди пачками до сообщения об остановке
+         */
+        private void run() {
+
+            List<Runnable> batch = new ArrayList<>(BATCH_SIZE);
+
+            while (true) {
+
+                try {
+                    batch.add(mailbox.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                mailbox.drainTo(batch, BATCH_SIZE - 1);
+
+                for (Runnable message : batch) {
+
+                    if (message == STOP) {
+                        return;
+                    }
+
+                    try {
+                        message.run();
+                    } catch (RuntimeException e) {
+                        //ошибка сообщения не останавливает шард, результат операции завершается в complete
+                    }
+                }
+
+                batch.clear();
+            }
+
+        }
+
+        /**
+         * Добавить документ шарда.
+         * Если вторая сторона документа из другого шарда, сначала резервируется место в ее домашнем шарде,
+         * ответ на резервирование приходит сообщением в очередь этого шарда
+         * @param document добавляемый документ
+         * @param result результат добавления
+         */
+        private void admit(Document document, CompletableFuture<Byte> result) {
+
+            //стороны документа могли измениться после постановки сообщения
+            Shard owner = ownerOf(document);
+            if (owner != this) {
+                owner.execute(() -> owner.admit(document, result));
+                return;
+            }
+
+            Company remote = remoteCompany(document);
+            Settings settings = workflow.getSettings();
+
+            if (remote == null || !settings.isCompanyWorkflowLimit()) {
+                complete(result, () -> admit(document, remote, 0));
+                return;
+            }
+
+            Shard home = shardOf(remote);
+            int limit = settings.getCompanyWorkflowLimitValue(remote);
+            home.execute(() -> {
+                boolean reserved = home.reserve(remote, limit);
+                execute(() -> complete(result, () -> reserved ? admit(document, remote, 1)
+                        : AdmissionStatus.REJECTED_COMPANY_WORKFLOW_LIMIT));
+            });
+
+        }
+
+        /**
+         * Добавить документ шарда после резервирования места для второй стороны в другом шарде
+         * @param document добавляемый документ
+         * @param remote сторона документа из другого шарда (может быть null)
+         * @param reserved количество мест, зарезервированных в домашнем шарде стороны
+         * @return результат добавления, значение {@link AdmissionStatus}
+         */
+        private byte admit(Document document, Company remote, int reserved) {
+
+            int before = workflow.getUnsignedDocumentCount(remote);
+            try {
+
+                if (exceedsCompanyWorkflowLimit(document.getCompany1())
+                        || exceedsCompanyWorkflowLimit(document.getCompany2())) {
+                    return AdmissionStatus.REJECTED_COMPANY_WORKFLOW_LIMIT;
+                }
+
+                return workflow.admitDocument(document);
+
+            } finally {
+                report(remote, before, reserved);
+            }
+        }
+
+        /**
+         * Подписать документ шарда
+         * @param document подписываемый документ
+         * @param company компания, которая подписывает документ
+         * @return true - документ подписан, false - документ не подписан
+         */
+        private boolean sign(Document document, Company company) {
+
+            Company remote = remoteCompany(document);
+            int before = workflow.getUnsignedDocumentCount(remote);
+            try {
+                return workflow.signingDocument(document, company);
+            } finally {
+                report(remote, before, 0);
+            }
+        }
+
+        /**
+         * Удалить документ шарда
+         * @param document удаляемый документ
+         */
+        private void remove(Document document) {
+
+            Company remote = remoteCompany(document);
+            int before = workflow.getUnsignedDocumentCount(remote);
+            try {
+                workflow.removeDocument(document);
+            } finally {
+                report(remote, before, 0);
+            }
+        }
+
+        /**
+         * Сообщить домашнему шарду стороны документа об изменении количества ее неподписанных документов в этом шарде
+         * @param remote сторона документа из другого шарда (может быть null)
+         * @param before количество неподписанных документов стороны в этом шарде до операции
+         * @param reserved количество мест, зарезервированных для операции
+         */
+        private void report(Company remote, int before, int reserved) {
+
+            if (remote == null) {
+                return;
+            }
+
+            int delta = workflow.getUnsignedDocumentCount(remote) - before - reserved;
+            if (delta != 0) {
+                Shard home = shardOf(remote);
+                home.execute(() -> home.change(remote, delta));
+            }
+
+        }
+
+        /**
+         * Зарезервировать место для неподписанного документа компании этого шарда
+         * @param company компания
+         * @param limit ограничение на участие компании в документообороте
+         * @return true - место зарезервировано, false - ограничение достигнуто
+         */
+        private boolean reserve(Company company, int limit) {
+
+            if (companyCount(company) >= limit) {
+                return false;
+            }
+
+            change(company, 1);
+
+            return true;
+        }
+
+        /**
+         * Проверить достигнуто ли ограничение на участие в документообороте компании этого шарда
+         * @param company проверяемая компания (может быть null)
+         * @return true - ограничение есть, false - ограничение отсутствует или компания из другого шарда
+         */
+        private boolean exceedsCompanyWorkflowLimit(Company company) {
+
+            Settings settings = workflow.getSettings();
+            if (company == null || shardOf(company) != this || !settings.isCompanyWorkflowLimit()) {
+                return false;
+            }
+
+            return companyCount(company) >= settings.getCompanyWorkflowLimitValue(company);
+        }
+
+        /**
+         * Получить количество неподписанных документов компании этого шарда во всех шардах
+         * @param company компания
+         * @return количество неподписанных документов и зарезервированных мест
+         */
+        private int companyCount(Company company) {
+
+            if (company == null) {
+                return 0;
+            }
+
+            return workflow.getUnsignedDocumentCount(company) + remoteCounters.get(company.getId(), 0);
+        }
+
+        /**
+         * Изменить количество неподписанных документов компании этого шарда в других шардах
+         * @param company компания
+         * @param delta изменение количества
+         */
+        private void change(Company company, int delta) {
+
+            if (remoteCounters.addTo(company.getId(), delta) <= 0) {
+                remoteCounters.remove(company.getId());
+            }
+
+        }
+
+        /**
+         * Получить сторону документа, домашний шард которой отличается от этого шарда
+         * @param document документ
+         * @return сторона документа или null, если обе стороны из этого шарда
+         */
+        private Company remoteCompany(Document document) {
+
+            Company company1 = document.getCompany1();
+            if (company1 != null && shardOf(company1) != this) {
+                return company1;
+            }
+
+            Company company2 = document.getCompany2();
+            if (company2 != null && shardOf(company2) != this) {
+                return company2;
+            }
+
+            return null;
+        }
+
+    }
+
+    /**
+     * Завершить результат операции
+     * @param result результат
+     * @param operation операция
+     * @param <T> тип результата
+     */
+    private static <T> void complete(CompletableFuture<T> result, Supplier<T> operation) {
+        try {
+            result.complete(operation.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+}
@@ -1,41 +1,215 @@
 package ru.f13.ikt.logic;
 
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
- * Класс описывает систему документооборота
+ * Класс описывает систему документооборота.
+ * Объект, созданный конструктором, предназначен для работы в одном потоке.
+ * Объект, созданный {@link #createConcurrentSystemWorkflow(int)}, допускает одновременную работу потоков:
+ * операции блокируют только компании документа, поэтому операции с несвязанными компаниями
+ * выполняются параллельно, а ограничения соблюдаются точно.
+ * Асинхронные методы {@link #addDocumentAsync(Document)}, {@link #signAsync(Document, Company)}
+ * и {@link #transferAsync(Document, Company, Company)} не блокируют вызывающий поток: в параллельном режиме
+ * операция выполняется исполнителем {@link #setAsyncExecutor(Executor)}, по умолчанию - в виртуальном потоке,
+ * если JVM их поддерживает (см. {@link WorkflowExecutors})
  */
 public class SystemWorkflow {
 
-    private List<Document> documentRepository;
-    private Settings settings;
+    private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+    private static final long MILLIS_PER_MINUTE = 60L * 1000L;
+
+    private DocumentRepository documentRepository;
+    private UnsignedDocumentIndex unsignedIndex;
+    private CompanyLockStripes locks;
+    private volatile WorkflowListener[] listeners = new WorkflowListener[0];
+    private final AtomicReference<Settings> settings = new AtomicReference<>();
+    private volatile WorkflowMetrics metrics;
+    private volatile DocumentArchive archive;
+    private volatile Executor asyncExecutor;
+    private volatile DocumentIndex index;
+    private volatile AdmissionContext admissionContext;
 
     /**
      * Конструктор объекта системы документооборота
      */
     public SystemWorkflow() {
+        this(new HashDocumentRepository());
+    }
 
-        this.documentRepository = new ArrayList<>(0);
+    /**
+     * Конструктор объекта системы документооборота с заданным хранилищем документов
+     * @param documentRepository хранилище документов, например {@link ColumnarDocumentRepository}
+     */
+    public SystemWorkflow(DocumentRepository documentRepository) {
+
+        this.documentRepository = documentRepository;
+        this.unsignedIndex = new UnsignedDocumentIndex(1);
         setSettings(Settings.createDefaultSettings());
 
     }
 
+    /**
+     * Создать систему документооборота для одновременной работы потоков
+     * с количеством полос блокировок по числу процессоров
+     * @return объект системы документооборота
+     */
+    public static SystemWorkflow createConcurrentSystemWorkflow() {
+        return createConcurrentSystemWorkflow(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    /**
+     * Создать систему документооборота для одновременной работы потоков
+     * @param lockStripes количество полос блокировок компаний (округляется до степени двойки)
+     * @return объект системы документооборота
+     */
+    public static SystemWorkflow createConcurrentSystemWorkflow(int lockStripes) {
+        return createConcurrentSystemWorkflow(lockStripes, new HashDocumentRepository(true));
+    }
+
+    /**
+     * Создать систему документооборота для одновременной работы потоков с заданным хранилищем документов
+     * @param lockStripes количество полос блокировок компаний (округляется до степени двойки)
+     * @param documentRepository хранилище документов, допускающее одновременную работу потоков
+     * @return объект системы документооборота
+     */
+    public static SystemWorkflow createConcurrentSystemWorkflow(int lockStripes, DocumentRepository documentRepository) {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(documentRepository);
+
+        systemWorkflow.locks = new CompanyLockStripes(lockStripes);
+        systemWorkflow.unsignedIndex = new UnsignedDocumentIndex(lockStripes);
+
+        return systemWorkflow;
+    }
+
     /**
      * Удалить документ из системы
      * @param document удаляемый документ
      */
     public void removeDocument(Document document) {
 
-        if (!document.isPartiallySigned()) {
+        long lock = lockDocument(document, null);
+        try {
+
+            if (!document.isPartiallySigned() && documentRepository.remove(document)) {
+                unsignedIndex.unregister(document);
+                fireDocumentRemoved(document);
+                document.setWorkflow(null);
+            }
+
+        } finally {
+            unlock(lock);
+        }
+
+    }
+
+    /**
+     * Проверить есть ли документ в системе
+     * @param document проверяемый документ
+     * @return true - документ в системе, false - документа нет в системе
+     */
+    public boolean isContainsDocument(Document document) {
+        return document != null && documentRepository.contains(document);
+    }
+
+    /**
+     * Найти документ системы по идентификатору, в том числе перенесенный в архив
+     * @param id идентификатор документа
+     * @return документ или null, если документа нет в системе и в архиве
+     */
+    public Document getDocument(long id) {
+
+        Document document = documentRepository.get(id);
+
+        if (document == null) {
+            DocumentArchive archive = this.archive;
+            return archive == null ? null : archive.get(id);
+        }
+
+        //хранилище может вернуть новое представление документа
+        if (document.getWorkflow() == null) {
+            document.setWorkflow(this);
+        }
+
+        return document;
+    }
+
+    /**
+     * Перенести полностью подписанный документ из хранилища и из наличия компаний в архив
+     * @param id идентификатор документа
+     * @return true - документ перенесен, false - документа нет в хранилище или он не подписан
+     */
+    boolean archiveDocument(long id) {
+
+        DocumentArchive archive = this.archive;
+        Document document = documentRepository.get(id);
+        if (archive == null || document == null) {
+            return false;
+        }
+
+        long lock = lockDocument(document, document.getCreator());
+        try {
+
+            if (!document.isSigning() || !documentRepository.contains(document)) {
+                return false;
+            }
+
+            Company company1 = document.getCompany1();
+            Company company2 = document.getCompany2();
+            Company creator = document.getCreator();
+
+            //документ сначала помещается в архив, чтобы он все время был доступен по идентификатору;
+            //получатели уведомляются до удаления из хранилища, чтобы журнал записал документ архива
+            //раньше, чем снимок перестанет находить его в хранилище
+            archive.add(document);
+            fireDocumentArchived(document);
             documentRepository.remove(document);
+            document.setWorkflow(null);
+
+            release(company1, document);
+            release(company2, document);
+            for (Company party : document.getAdditionalParties()) {
+                release(party, document);
+            }
+            release(creator, document);
+
+            return true;
+
+        } finally {
+            unlock(lock);
         }
+    }
 
+    /**
+     * Убрать документ из наличия компании
+     * @param company компания (может быть null)
+     * @param document документ
+     */
+    private static void release(Company company, Document document) {
+        if (company != null) {
+            company.release(document);
+        }
+    }
+
+    /**
+     * Получить архив документов
+     * @return архив или null, если документы не переносятся в архив
+     */
+    DocumentArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Установить архив документов
+     * @param archive архив
+     */
+    void setArchive(DocumentArchive archive) {
+        this.archive = archive;
     }
 
     /**
@@ -45,82 +219,324 @@ public class SystemWorkflow {
      * @return true - документ подписан, false - документ не подписан
      */
     public boolean signingDocument(Document document, Company company) {
+        return signingDocument(document, company, admissionContext());
+    }
 
-        if (validateLimitedTime(document)) {
-            return false;
+    /**
+     * Добавить документ в систему
+     * @param document добавляемый документ
+     * @return true - документ успешно добавлен, false - документ не добавлен
+     */
+    public boolean addDocument1(Document document) {
+        return admitDocument(document, admissionContext()) == AdmissionStatus.SIGNED;
+    }
+
+    /**
+     * Добавить документ в систему
+     * @param document добавляемый документ
+     * @return результат добавления, значение {@link AdmissionStatus}
+     */
+    byte admitDocument(Document document) {
+        return admitDocument(document, admissionContext());
+    }
+
+    /**
+     * Добавить документ в систему асинхронно.
+     * Для системы, созданной для работы в одном потоке, операция выполняется в вызывающем потоке
+     * @param document добавляемый документ
+     * @return результат добавления, значение {@link AdmissionStatus}
+     */
+    public CompletableFuture<Byte> addDocumentAsync(Document document) {
+        return CompletableFuture.supplyAsync(() -> admitDocument(document), asyncExecutor());
+    }
+
+    /**
+     * Подписать документ асинхронно.
+     * Для системы, созданной для работы в одном потоке, операция выполняется в вызывающем потоке
+     * @param document подписываемый документ
+     * @param company компания, которая подписывает документ
+     * @return true - документ подписан, false - документ не подписан
+     */
+    public CompletableFuture<Boolean> signAsync(Document document, Company company) {
+        return CompletableFuture.supplyAsync(() -> signingDocument(document, company), asyncExecutor());
+    }
+
+    /**
+     * Передать документ асинхронно.
+     * Для системы, созданной для работы в одном потоке, операция выполняется в вызывающем потоке
+     * @param document передаваемый документ
+     * @param from компания, передающая документ
+     * @param to компания, получающая документ
+     * @return завершение передачи
+     */
+    public CompletableFuture<Void> transferAsync(Document document, Company from, Company to) {
+        return CompletableFuture.runAsync(() -> from.transferDocument(document, to), asyncExecutor());
+    }
+
+    /**
+     * Установить исполнителя асинхронных операций, например {@link WorkflowExecutors#newVirtualThreadPerTaskExecutor()}.
+     * Доступно только для системы, созданной для одновременной работы потоков
+     * @param executor исполнитель операций, null - исполнитель по умолчанию
+     */
+    public void setAsyncExecutor(Executor executor) {
+
+        if (!isConcurrent()) {
+            throw new IllegalStateException("asynchronous executor requires a concurrent workflow");
         }
 
-        if (!documentRepository.contains(document)) {
-            return false;
+        this.asyncExecutor = executor;
+
+    }
+
+    /**
+     * Получить исполнителя асинхронных операций
+     * @return исполнитель операций
+     */
+    private Executor asyncExecutor() {
+
+        if (!isConcurrent()) {
+            return Runnable::run;
         }
 
-        if (document.isSigning()) {
-            return false;
+        Executor executor = this.asyncExecutor;
+
+        return executor == null ? WorkflowExecutors.defaultExecutor() : executor;
+    }
+
+    /**
+     * Добавить пакет документов в систему.
+     * Результат совпадает с последовательным вызовом {@link #addDocument1(Document)} для каждого документа,
+     * но настройки ограничений разбираются один раз на пакет, а идущие подряд документы одной пары компаний
+     * добавляются под одной блокировкой
+     * @param documents добавляемые документы
+     * @return результаты добавления в порядке документов, значения {@link AdmissionStatus}
+     */
+    public byte[] addDocuments(Collection<Document> documents) {
+
+        byte[] results = new byte[documents.size()];
+        AdmissionContext context = admissionContext();
+
+        Company locked1 = null;
+        Company locked2 = null;
+        long lock = 0L;
+        try {
+
+            int i = 0;
+            for (Document document : documents) {
+
+                //блокировка удерживается, пока документы относятся к одной паре компаний без дополнительных сторон
+                if (document != null && (document.getCompany1() != locked1 || document.getCompany2() != locked2
+                        || document.getPartyCount() > 2)) {
+                    unlock(lock);
+                    lock = lockDocument(document, null);
+                    locked1 = document.getCompany1();
+                    locked2 = document.getCompany2();
+                }
+
+                results[i++] = admitDocument(document, context);
+            }
+
+        } finally {
+            unlock(lock);
+        }
+
+        return results;
+    }
+
+    /**
+     * Добавить документ в систему
+     * @param document добавляемый документ
+     * @param context разобранные настройки ограничений
+     * @return результат добавления, значение {@link AdmissionStatus}
+     */
+    private byte admitDocument(Document document, AdmissionContext context) {
+
+        WorkflowMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return admitDocument(document, context, null);
         }
 
-        document.sign(company);
+        long start = System.nanoTime();
+        byte status = admitDocument(document, context, metrics);
+        metrics.recordAdmission(status, System.nanoTime() - start);
 
-        return document.isSigning(company);
+        return status;
     }
 
     /**
      * Добавить документ в систему
      * @param document добавляемый документ
-     * @return true - документ успешно добавлен, false - документ не добавлен
+     * @param context разобранные настройки ограничений
+     * @param metrics метрики системы (null - метрики не учитываются)
+     * @return результат добавления, значение {@link AdmissionStatus}
      */
-    public boolean addDocument1(Document document) {
+    private byte admitDocument(Document document, AdmissionContext context, WorkflowMetrics metrics) {
 
         if (document == null) {
-            return false;
+            return AdmissionStatus.REJECTED_INVALID_DOCUMENT;
         }
 
-        Company company1 = document.getCompany1();
-        Company company2 = document.getCompany2();
+        //документ зарегистрирован в другой системе документооборота
+        if (document.getWorkflow() != null && document.getWorkflow() != this) {
+            return AdmissionStatus.REJECTED_INVALID_DOCUMENT;
+        }
 
-        if (validateCompanyWorkflowLimit(company1) || validateCompanyWorkflowLimit(company2)) {
-            return false;
+        long lock = lockDocument(document, null);
+        try {
+
+            Company company1 = document.getCompany1();
+            Company company2 = document.getCompany2();
+
+            long time = metrics == null ? 0L : System.nanoTime();
+
+            Company limited = validateCompanyWorkflowLimit(company1, context) ? company1
+                    : validateCompanyWorkflowLimit(company2, context) ? company2
+                    : validateAdditionalPartiesWorkflowLimit(document, context);
+            if (metrics != null) {
+                time = metrics.recordValidator(WorkflowMetrics.VALIDATOR_COMPANY_WORKFLOW_LIMIT, time);
+            }
+            if (limited != null) {
+                return reject(AdmissionStatus.REJECTED_COMPANY_WORKFLOW_LIMIT, limited, metrics);
+            }
+
+            boolean rejected = validateCompanyCreateDocumentLimit(company1, document, context);
+            if (metrics != null) {
+                time = metrics.recordValidator(WorkflowMetrics.VALIDATOR_COMPANY_CREATE_DOCUMENT_LIMIT, time);
+            }
+            if (rejected) {
+                return reject(AdmissionStatus.REJECTED_COMPANY_CREATE_DOCUMENT_LIMIT, company1, metrics);
+            }
+
+            rejected = validateWorkflowLimit(company1, company2, context)
+                    || validateAdditionalPairsWorkflowLimit(document, context);
+            if (metrics != null) {
+                metrics.recordValidator(WorkflowMetrics.VALIDATOR_WORKFLOW_LIMIT, time);
+            }
+            if (rejected) {
+                return reject(AdmissionStatus.REJECTED_WORKFLOW_LIMIT, company1, metrics);
+            }
+
+            if (document.getWorkflow() == null) {
+                documentRepository.add(document);
+                unsignedIndex.register(document);
+                document.setWorkflow(this);
+                fireDocumentAdded(document);
+            }
+
+            //документ подписывается сторонами по порядку номеров и передается следующей стороне
+            int parties = document.getPartyCount();
+            Company holder = company1;
+            boolean signed = signingDocument(document, holder, context);
+            for (int i = 1; signed && i < parties; i++) {
+                Company next = document.getParty(i);
+                holder.transferDocument(document, next);
+                holder = next;
+                signed = signingDocument(document, holder, context);
+            }
+
+            return document.isSigning() ? AdmissionStatus.SIGNED : AdmissionStatus.ADDED;
+
+        } finally {
+            unlock(lock);
         }
+    }
 
-        if (validateCompanyCreateDocumentLimit(company1)) {
-            return false;
+    /**
+     * Учесть отказ в добавлении документа в метриках
+     * @param status результат добавления {@link AdmissionStatus}
+     * @param company компания, ограничение которой не позволило добавить документ
+     * @param metrics метрики системы (null - метрики не учитываются)
+     * @return результат добавления
+     */
+    private static byte reject(byte status, Company company, WorkflowMetrics metrics) {
+
+        if (metrics != null) {
+            metrics.recordRejection(status, company);
         }
 
-        if (validateWorkflowLimit(company1, company2)) {
-            return false;
+        return status;
+    }
+
+    /**
+     * Подписать документ
+     * @param document подписываемый документ
+     * @param company компания, которая подписывает документ
+     * @param context разобранные настройки ограничений
+     * @return true - документ подписан, false - документ не подписан
+     */
+    private boolean signingDocument(Document document, Company company, AdmissionContext context) {
+
+        WorkflowMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return signingDocument(document, company, context, null);
         }
 
-        documentRepository.add(document);
+        long start = System.nanoTime();
+        boolean signed = signingDocument(document, company, context, metrics);
+        metrics.recordSigning(signed, System.nanoTime() - start);
+
+        return signed;
+    }
 
-        if (signingDocument(document, company1)) {
-            company1.transferDocument(document, company2);
-            signingDocument(document, company2);
+    /**
+     * Подписать документ
+     * @param document подписываемый документ
+     * @param company компания, которая подписывает документ
+     * @param context разобранные настройки ограничений
+     * @param metrics метрики системы (null - метрики не учитываются)
+     * @return true - документ подписан, false - документ не подписан
+     */
+    private boolean signingDocument(Document document, Company company, AdmissionContext context, WorkflowMetrics metrics) {
+
+        long time = metrics == null ? 0L : System.nanoTime();
+        boolean limitedTime = validateLimitedTime(document, context);
+        if (metrics != null) {
+            metrics.recordValidator(WorkflowMetrics.VALIDATOR_LIMITED_TIME, time);
+        }
+        if (limitedTime) {
+            return false;
         }
 
-        return document.isSigning();
+        long lock = lockDocument(document, null);
+        try {
+
+            if (document.getWorkflow() != this) {
+                return false;
+            }
+
+            if (document.isSigning()) {
+                return false;
+            }
+
+            document.sign(company);
+
+            return document.isSigning(company);
+
+        } finally {
+            unlock(lock);
+        }
     }
 
     /**
      * Подвердить ограниченное время
      * @param document проверяемый документ
+     * @param context разобранные настройки ограничений
      * @return true - ограниченное время подвердилось, false - ограниченное время не подтвердилось
      */
-    private boolean validateLimitedTime(Document document) {
+    private boolean validateLimitedTime(Document document, AdmissionContext context) {
 
-        if (document == null || !settings.isLimitedTime()) {
+        if (document == null || !context.settings.isLimitedTime()) {
             return false;
         }
 
-        LocalTime start = LocalTime.parse(settings.getStartLimitedTimeValue(), DateTimeFormatter.ISO_LOCAL_TIME);
-        LocalTime end = LocalTime.parse(settings.getEndLimitedTimeValue(), DateTimeFormatter.ISO_LOCAL_TIME);
-        LocalTime docTime = document.getDate().toLocalTime();
+        //целые минуты между временем суток, как ChronoUnit.MINUTES.between, без создания объектов времени
+        int start = context.settings.getStartLimitedTimeMillis();
+        int end = context.settings.getEndLimitedTimeMillis();
+        int docTime = context.clock.millisOfDay(document.getCreatedMillis());
 
-//        LocalTime start = LocalTime.parse("21:00", DateTimeFormatter.ISO_LOCAL_TIME);
-//        LocalTime end = LocalTime.parse("00:00", DateTimeFormatter.ISO_LOCAL_TIME);
-//        LocalTime docTime = LocalTime.parse("00:35", DateTimeFormatter.ISO_LOCAL_TIME);
-
-        long b = ChronoUnit.MINUTES.between(start, end);
-        long b1 = ChronoUnit.MINUTES.between(start, docTime);
-        long b2 = ChronoUnit.MINUTES.between(docTime, end);
+        long b = (end - start) / MILLIS_PER_MINUTE;
+        long b1 = (docTime - start) / MILLIS_PER_MINUTE;
+        long b2 = (end - docTime) / MILLIS_PER_MINUTE;
 
         boolean valid = false;
         if (b > 0L) {
@@ -138,52 +554,61 @@ public class SystemWorkflow {
     /**
      * Подтвердить ограничение компании на участие в документообороте
      * @param company проверяемая компания
+     * @param context разобранные настройки ограничений
      * @return true - ограничение есть, false - ограничение отсутсвует
      */
-    private boolean validateCompanyWorkflowLimit(Company company) {
+    private boolean validateCompanyWorkflowLimit(Company company, AdmissionContext context) {
 
-        if (!settings.isCompanyWorkflowLimit()) {
+        if (!context.settings.isCompanyWorkflowLimit()) {
             return false;
         }
 
-        List<Document> documents = documentRepository.
-                stream().
-                filter(document -> !document.isSigning() && document.isContainsCompany(company)).
-                collect(Collectors.toList());
+        int count = unsignedIndex.getCompanyCount(company);
+
+        return count >= context.settings.getCompanyWorkflowLimitValue(company);
+    }
+
+    /**
+     * Подвердить ограничение на участие в документообороте для дополнительных сторон документа
+     * @param document проверяемый документ
+     * @param context разобранные настройки ограничений
+     * @return компания, ограничение которой подтвердилось, или null
+     */
+    private Company validateAdditionalPartiesWorkflowLimit(Document document, AdmissionContext context) {
 
-        int count = documents.size();
+        for (Company party : document.getAdditionalParties()) {
+            if (party != null && validateCompanyWorkflowLimit(party, context)) {
+                return party;
+            }
+        }
 
-        return count >= settings.getCompanyWorkflowLimitValue();
+        return null;
     }
 
     /**
      * Подвердить ограничение на создание компанией документов
      * @param company проверяемая компания
+     * @param document добавляемый документ
+     * @param context разобранные настройки ограничений
      * @return true - ограничение есть, false - ограничение отсутсвует
      */
-    private boolean validateCompanyCreateDocumentLimit(Company company) {
+    private boolean validateCompanyCreateDocumentLimit(Company company, Document document, AdmissionContext context) {
 
-        if (company == null || !settings.isCompanyCreateDocumentLimit()) {
+        if (company == null || !context.settings.isCompanyCreateDocumentLimit()) {
             return false;
         }
 
-        int count = 0;
-        List<Document> companyDocuments = company.getDocuments();
+        int limit = context.settings.getCompanyCreateDocumentLimitValue(company);
+        long since = context.createDocumentSince();
 
-        if (companyDocuments != null) {
-
-            LocalDateTime now = LocalDateTime.now();
-            long minutesLimit = settings.getCompanyCreateDocumentLimitedTimeValue() * 60L;
-            List<Document> documents = companyDocuments.
-                    stream().
-                    filter(document -> ChronoUnit.MINUTES.between(now, document.getDate()) <= minutesLimit).
-                    collect(Collectors.toList());
-            count = documents.size();
+        CreateDocumentLimiter limiter = company.getCreateDocumentLimiter();
 
+        //добавляемый документ, созданный компанией, не учитывается в ограничении
+        if (document.getCreator() == company && limit != Integer.MAX_VALUE) {
+            limit++;
         }
 
-
-        return count >= settings.getCompanyCreateDocumentLimitValue();
+        return limiter.hasAtLeast(limit, since);
 
     }
 
@@ -191,24 +616,437 @@ public class SystemWorkflow {
      * Подтвердить ограничение на ведение документооборота менжду 2 компаниями
      * @param company1 первая проверяемая компания
      * @param company2 вторая проверяемая компания
+     * @param context разобранные настройки ограничений
      * @return true - ограничение есть, false - ограничение отсутсвует
      */
-    private boolean validateWorkflowLimit(Company company1, Company company2) {
+    private boolean validateWorkflowLimit(Company company1, Company company2, AdmissionContext context) {
 
-        if (!settings.isWorkflowLimit()) {
+        if (!context.settings.isWorkflowLimit()) {
             return false;
         }
 
-        int count = 0;
-        if (documentRepository != null) {
-            List<Document> documents = documentRepository.
-                    stream().
-                    filter(document -> !document.isSigning() && document.isContainsCompany(company1) && document.isContainsCompany(company2)).
-                    collect(Collectors.toList());
-            count = documents.size();
+        int count = unsignedIndex.getPairCount(company1, company2);
+
+        return count >= context.settings.getWorkflowLimitValue(company1, company2);
+    }
+
+    /**
+     * Подтвердить ограничение на ведение документооборота для пар с дополнительными сторонами документа
+     * @param document проверяемый документ
+     * @param context разобранные настройки ограничений
+     * @return true - ограничение есть, false - ограничение отсутсвует
+     */
+    private boolean validateAdditionalPairsWorkflowLimit(Document document, AdmissionContext context) {
+
+        Company[] additionalParties = document.getAdditionalParties();
+        for (int i = 0; i < additionalParties.length; i++) {
+            Company party = additionalParties[i];
+            for (int j = 0; party != null && j < i + 2; j++) {
+                Company other = document.getParty(j);
+                if (other != null && other != party && validateWorkflowLimit(other, party, context)) {
+                    return true;
+                }
+            }
         }
 
-        return count >= settings.getWorkflowLimitValue();
+        return false;
+    }
+
+    /**
+     * Восстановить документ в системе без проверки ограничений и без уведомления получателей изменений
+     * @param document восстанавливаемый документ
+     * @return true - документ восстановлен, false - документ уже был в системе
+     */
+    boolean restoreDocument(Document document) {
+
+        long lock = lockDocument(document, null);
+        try {
+
+            if (document.getWorkflow() != null || !documentRepository.add(document)) {
+                return false;
+            }
+
+            unsignedIndex.register(document);
+            document.setWorkflow(this);
+
+            return true;
+
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Добавить загружаемый документ в хранилище без проверки ограничений, без учета в индексе неподписанных
+     * документов и без уведомления получателей изменений. После загрузки следует вызвать {@link #rebuildUnsignedIndex()}
+     * @param document загружаемый документ
+     * @return true - документ добавлен, false - документ уже был в системе
+     */
+    boolean importDocument(Document document) {
+
+        if (!documentRepository.add(document)) {
+            return false;
+        }
+
+        document.setWorkflow(this);
+
+        return true;
+    }
+
+    /**
+     * Построить индекс неподписанных документов заново одним проходом по хранилищу
+     */
+    void rebuildUnsignedIndex() {
+
+        UnsignedDocumentIndex index = new UnsignedDocumentIndex(locks == null ? 1 : locks.getMask() + 1);
+        documentRepository.forEach(index::register);
+
+        unsignedIndex = index;
+
+    }
+
+    /**
+     * Проиндексировать во вторичных индексах документы, добавленные без уведомления получателей изменений,
+     * если индексы включены
+     */
+    synchronized void reindexDocuments() {
+
+        if (index != null) {
+            index.build();
+        }
+
+    }
+
+    /**
+     * Выполнить действие для каждого документа системы.
+     * В параллельном режиме действие выполняется под блокировкой компаний документа
+     * @param action действие над документом
+     */
+    void forEachDocument(Consumer<Document> action) {
+        documentRepository.forEach(document -> {
+            if (document.getWorkflow() == null) {
+                document.setWorkflow(this);
+            }
+            long lock = lockDocument(document, null);
+            try {
+                action.accept(document);
+            } finally {
+                unlock(lock);
+            }
+        });
+    }
+
+    /**
+     * Проверить допускает ли система одновременную работу потоков
+     * @return true - система создана для одновременной работы потоков
+     */
+    boolean isConcurrent() {
+        return locks != null;
+    }
+
+    /**
+     * Добавить получателя изменений состояния системы
+     * @param listener получатель изменений
+     */
+    synchronized void addListener(WorkflowListener listener) {
+
+        WorkflowListener[] listeners = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+
+        this.listeners = listeners;
+
+    }
+
+    /**
+     * Удалить получателя изменений состояния системы
+     * @param listener получатель изменений
+     */
+    synchronized void removeListener(WorkflowListener listener) {
+
+        WorkflowListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                WorkflowListener[] removed = new WorkflowListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, removed, 0, i);
+                System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+                this.listeners = removed;
+                return;
+            }
+        }
+
+    }
+
+    /**
+     * Уведомить получателей изменений о добавлении документа
+     * @param document документ
+     */
+    void fireDocumentAdded(Document document) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentAdded(document);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о подписании документа
+     * @param document документ
+     * @param company компания, подписавшая документ
+     */
+    void fireDocumentSigned(Document document, Company company) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentSigned(document, company);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о сбросе подписей документа
+     * @param document документ
+     */
+    void fireDocumentReset(Document document) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentReset(document);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о изменении стороны документа
+     * @param document документ
+     * @param party номер стороны: 1 или 2
+     * @param company новая компания стороны
+     */
+    void fireDocumentCompanyChanged(Document document, int party, Company company) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentCompanyChanged(document, party, company);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о встречном предложении
+     * @param document документ
+     * @param company компания, сделавшая встречное предложение
+     */
+    void fireDocumentChanged(Document document, Company company) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentChanged(document, company);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о передаче документа
+     * @param document документ
+     * @param from компания, передавшая документ
+     * @param to компания, получившая документ
+     */
+    void fireDocumentTransferred(Document document, Company from, Company to) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentTransferred(document, from, to);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о помещении документа в наличие компании
+     * @param document документ
+     * @param company компания
+     */
+    void fireDocumentHeld(Document document, Company company) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentHeld(document, company);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о удалении документа из наличия компании
+     * @param document документ
+     * @param company компания
+     */
+    void fireDocumentReleased(Document document, Company company) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentReleased(document, company);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о удалении документа из системы
+     * @param document документ
+     */
+    void fireDocumentRemoved(Document document) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentRemoved(document);
+        }
+    }
+
+    /**
+     * Уведомить получателей изменений о переносе документа в архив
+     * @param document документ
+     */
+    void fireDocumentArchived(Document document) {
+        for (WorkflowListener listener : listeners) {
+            listener.documentArchived(document);
+        }
+    }
+
+    /**
+     * Обработать документ перед его изменением
+     * @param document изменяемый документ
+     * @param company компания, которая станет стороной документа (может быть null)
+     * @return признак блокировки для {@link #afterDocumentUpdate(Document, long)}
+     */
+    long beforeDocumentUpdate(Document document, Company company) {
+        long lock = lockDocument(document, company);
+        unsignedIndex.unregister(document);
+        return lock;
+    }
+
+    /**
+     * Обработать документ после его изменения
+     * @param document измененный документ
+     * @param lock признак блокировки, полученный в {@link #beforeDocumentUpdate(Document, Company)}
+     */
+    void afterDocumentUpdate(Document document, long lock) {
+        unsignedIndex.register(document);
+        unlock(lock);
+    }
+
+    /**
+     * Заблокировать компании документа
+     * @param document документ
+     * @param company дополнительно блокируемая компания (может быть null)
+     * @return признак блокировки для {@link #unlock(long)}
+     */
+    long lockDocument(Document document, Company company) {
+
+        if (locks == null) {
+            return 0L;
+        }
+
+        //стороны документа могут измениться до захвата блокировки
+        while (true) {
+            Company company1 = document.getCompany1();
+            Company company2 = document.getCompany2();
+
+            long lock = locks.lock(company1, company2, company, document.getAdditionalParties());
+            if (document.getCompany1() == company1 && document.getCompany2() == company2) {
+                return lock;
+            }
+
+            locks.unlock(lock);
+        }
+
+    }
+
+    /**
+     * Заблокировать компании
+     * @param company1 первая компания
+     * @param company2 вторая компания
+     * @return признак блокировки для {@link #unlock(long)}
+     */
+    long lock(Company company1, Company company2) {
+        return locks == null ? 0L : locks.lock(company1, company2, null);
+    }
+
+    /**
+     * Разблокировать компании
+     * @param lock признак блокировки
+     */
+    void unlock(long lock) {
+        if (locks != null) {
+            locks.unlock(lock);
+        }
+    }
+
+    /**
+     * Включить учет метрик системы
+     * @return метрики системы (при повторном включении - уже учитываемые метрики)
+     */
+    public synchronized WorkflowMetrics enableMetrics() {
+
+        if (metrics == null) {
+            metrics = new WorkflowMetrics(this);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Выключить учет метрик системы
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Получить метрики системы
+     * @return метрики системы или null, если учет метрик выключен
+     */
+    public WorkflowMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Включить вторичные индексы документов для поиска {@link #query()}.
+     * Индексы строятся по документам системы и затем обновляются при каждом изменении документа.
+     * Документы, восстановленные журналом, индексируются, если индексы включены после восстановления;
+     * документы, загруженные {@link DocumentImporter}, индексируются по окончании загрузки
+     */
+    public synchronized void enableIndexes() {
+
+        if (index == null) {
+            DocumentIndex index = new DocumentIndex(this);
+            addListener(index);
+            index.build();
+            this.index = index;
+        }
+
+    }
+
+    /**
+     * Выключить вторичные индексы документов
+     */
+    public synchronized void disableIndexes() {
+
+        if (index != null) {
+            removeListener(index);
+            index = null;
+        }
+
+    }
+
+    /**
+     * Создать поиск документов по вторичным индексам
+     * @return объект поиска без условий
+     */
+    public DocumentQuery query() {
+
+        DocumentIndex index = this.index;
+        if (index == null) {
+            throw new IllegalStateException("document indexes are not enabled");
+        }
+
+        return new DocumentQuery(index);
+    }
+
+    /**
+     * Получить количество документов в системе
+     * @return количество документов
+     */
+    long getDocumentCount() {
+        return documentRepository.size();
+    }
+
+    /**
+     * Получить количество неподписанных документов в системе
+     * @return количество неподписанных документов
+     */
+    long getUnsignedDocumentCount() {
+        return unsignedIndex.getTotalCount();
+    }
+
+    /**
+     * Получить количество неподписанных документов системы, в которых участвует компания
+     * @param company компания
+     * @return количество неподписанных документов
+     */
+    int getUnsignedDocumentCount(Company company) {
+        return unsignedIndex.getCompanyCount(company);
     }
 
     /**
@@ -216,15 +1054,76 @@ public class SystemWorkflow {
      * @return объект настроек {@link Settings}
      */
     public Settings getSettings() {
-        return settings;
+        return settings.get();
     }
 
     /**
-     * Установить настройки ограничений
+     * Установить настройки ограничений.
+     * Настройки публикуются атомарно без блокировок: каждая проверка документа читает настройки один раз
+     * и выполняется целиком по старым или целиком по новым настройкам.
+     * Окна созданных документов всех компаний хранят столько отметок времени, сколько требуется
+     * для наибольшего значения ограничения на создание документов в последних установленных настройках
      * @param settings объект настроек {@link Settings}
      */
     public void setSettings(Settings settings) {
-        this.settings = settings;
+        if (settings == null) {
+            throw new NullPointerException("settings");
+        }
+        CreateDocumentLimiter.setMaxLimit(settings.getMaxCompanyCreateDocumentLimitValue());
+        this.settings.set(settings);
+    }
+
+    /**
+     * Получить разобранные настройки ограничений для текущих настроек и часов.
+     * Разобранные настройки переиспользуются, пока не изменятся настройки или часы,
+     * поэтому проверка документа не создает объектов
+     * @return разобранные настройки ограничений
+     */
+    private AdmissionContext admissionContext() {
+
+        Settings settings = this.settings.get();
+        WorkflowClock clock = WorkflowClock.getClock();
+
+        AdmissionContext context = admissionContext;
+        if (context == null || context.settings != settings || context.clock != clock) {
+            context = new AdmissionContext(settings, clock);
+            admissionContext = context;
+        }
+
+        return context;
+    }
+
+    /**
+     * Класс описывает настройки ограничений, разобранные для проверки документов
+     */
+    private static final class AdmissionContext {
+
+        private final Settings settings;
+        private final WorkflowClock clock;
+        private final long createDocumentWindow;
+
+        /**
+         * Конструктор для объекта разобранных настроек
+         * @param settings объект настроек {@link Settings}
+         * @param clock часы системы документооборота
+         */
+        private AdmissionContext(Settings settings, WorkflowClock clock) {
+
+            this.settings = settings;
+            this.clock = clock;
+
+            createDocumentWindow = settings.getCompanyCreateDocumentLimitedTimeValue() * MILLIS_PER_HOUR;
+
+        }
+
+        /**
+         * Получить начало скользящего окна ограничения на создание документов
+         * @return время начала окна в миллисекундах от начала эпохи
+         */
+        private long createDocumentSince() {
+            return clock.millis() - createDocumentWindow;
+        }
+
     }
 
 }
@@ -0,0 +1,214 @@
+package ru.f13.ikt.logic;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс описывает индекс неподписанных документов системы документооборота.
+ * Хранит количество неподписанных документов по каждой компании и по каждой паре компаний,
+ * счетчики обновляются при добавлении, подписании, сбросе подписаний и удалении документа.
+ * Счетчики разбиты на полосы так же, как {@link CompanyLockStripes}: счетчик компании хранится
+ * в полосе компании, счетчик пары - в полосе компании с меньшим идентификатором.
+ * Документ с дополнительными сторонами учитывается в счетчике каждой своей компании и каждой пары своих компаний.
+ * Счетчики полосы хранятся в отображениях {@link IntIntMap} и {@link LongIntMap} без упаковки ключей и значений
+ */
+class UnsignedDocumentIndex {
+
+    private final IntIntMap[] companyCounters;
+    private final LongIntMap[] pairCounters;
+    private final LongAdder total = new LongAdder();
+    private final int mask;
+
+    /**
+     * Конструктор для объекта индекса
+     * @param stripes количество полос (округляется до степени двойки)
+     */
+    UnsignedDocumentIndex(int stripes) {
+
+        int size = CompanyLockStripes.stripeCount(stripes);
+
+        companyCounters = new IntIntMap[size];
+        pairCounters = new LongIntMap[size];
+        for (int i = 0; i < size; i++) {
+            companyCounters[i] = new IntIntMap();
+            pairCounters[i] = new LongIntMap();
+        }
+        mask = size - 1;
+
+    }
+
+    /**
+     * Учесть документ в индексе
+     * @param document учитываемый документ
+     */
+    void register(Document document) {
+        update(document, 1);
+    }
+
+    /**
+     * Исключить документ из индекса
+     * @param document исключаемый документ
+     */
+    void unregister(Document document) {
+        update(document, -1);
+    }
+
+    /**
+     * Получить количество неподписанных документов в индексе
+     * @return количество неподписанных документов
+     */
+    long getTotalCount() {
+        return total.sum();
+    }
+
+    /**
+     * Получить количество неподписанных документов, в которых участвует компания
+     * @param company компания
+     * @return количество неподписанных документов
+     */
+    int getCompanyCount(Company company) {
+
+        if (company == null) {
+            return 0;
+        }
+
+        return companyCounters(company).get(company.getId(), 0);
+    }
+
+    /**
+     * Получить количество неподписанных документов, в которых участвуют обе компании (любыми сторонами)
+     * @param company1 первая компания
+     * @param company2 вторая компания
+     * @return количество неподписанных документов
+     */
+    int getPairCount(Company company1, Company company2) {
+
+        if (company1 == null || company2 == null) {
+            return 0;
+        }
+
+        //документы компании самой с собой учитываются в счетчике компании
+        if (company1 == company2) {
+            return getCompanyCount(company1);
+        }
+
+        return pairCounters(company1, company2).get(pairKey(company1, company2), 0);
+    }
+
+    /**
+     * Изменить счетчики компаний документа
+     * @param document документ
+     * @param delta изменение счетчиков
+     */
+    private void update(Document document, int delta) {
+
+        if (document == null || document.isSigning()) {
+            return;
+        }
+
+        Company company1 = document.getCompany1();
+        Company company2 = document.getCompany2();
+
+        total.add(delta);
+
+        if (company1 != null) {
+            change(companyCounters(company1), company1.getId(), delta);
+        }
+
+        if (company2 != null && company2 != company1) {
+            change(companyCounters(company2), company2.getId(), delta);
+
+            if (company1 != null) {
+                change(pairCounters(company1, company2), pairKey(company1, company2), delta);
+            }
+        }
+
+        Company[] additionalParties = document.getAdditionalParties();
+        for (int i = 0; i < additionalParties.length; i++) {
+
+            //компания нескольких сторон учитывается один раз по своей первой стороне
+            Company party = additionalParties[i];
+            if (party == null || document.getPartyIndex(party) < i + 2) {
+                continue;
+            }
+
+            change(companyCounters(party), party.getId(), delta);
+
+            for (int j = 0; j < i + 2; j++) {
+                Company other = document.getParty(j);
+                if (other != null && document.getPartyIndex(other) == j) {
+                    change(pairCounters(other, party), pairKey(other, party), delta);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Получить счетчики полосы компании
+     * @param company компания
+     * @return счетчики компаний полосы
+     */
+    private IntIntMap companyCounters(Company company) {
+        return companyCounters[CompanyLockStripes.stripeOf(company.getId(), mask)];
+    }
+
+    /**
+     * Получить счетчики полосы пары компаний
+     * @param company1 первая компания
+     * @param company2 вторая компания
+     * @return счетчики пар компаний полосы
+     */
+    private LongIntMap pairCounters(Company company1, Company company2) {
+        int id = Math.min(company1.getId(), company2.getId());
+        return pairCounters[CompanyLockStripes.stripeOf(id, mask)];
+    }
+
+    /**
+     * Изменить счетчик компании, удаляя обнулившиеся счетчики
+     * @param counters счетчики
+     * @param key идентификатор компании
+     * @param delta изменение счетчика
+     */
+    private static void change(IntIntMap counters, int key, int delta) {
+        if (counters.addTo(key, delta) <= 0) {
+            counters.remove(key);
+        }
+    }
+
+    /**
+     * Изменить счетчик пары компаний, удаляя обнулившиеся счетчики
+     * @param counters счетчики
+     * @param key ключ пары компаний
+     * @param delta изменение счетчика
+     */
+    private static void change(LongIntMap counters, long key, int delta) {
+        if (counters.addTo(key, delta) <= 0) {
+            counters.remove(key);
+        }
+    }
+
+    /**
+     * Получить ключ пары компаний, не зависящий от порядка компаний
+     * @param company1 первая компания
+     * @param company2 вторая компания
+     * @return ключ пары компаний
+     */
+    static long pairKey(Company company1, Company company2) {
+        return pairKey(company1.getId(), company2.getId());
+    }
+
+    /**
+     * Получить ключ пары компаний по идентификаторам, не зависящий от порядка компаний
+     * @param id1 идентификатор первой компании
+     * @param id2 идентификатор второй компании
+     * @return ключ пары компаний
+     */
+    static long pairKey(int id1, int id2) {
+
+        int min = Math.min(id1, id2);
+        int max = Math.max(id1, id2);
+
+        return ((long) min << 32) | (max & 0xFFFFFFFFL);
+    }
+
+}
@@ -0,0 +1,153 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Класс описывает журнал архива: файл, в конец которого дописываются документы, перенесенные в архив,
+ * в формате документов снимка. Снимок хранит только длину журнала архива на момент снятия,
+ * поэтому документ архива записывается один раз, а размер снимка не зависит от размера архива.
+ * Файл читается и дописывается частями, поэтому его размер не ограничен размером отображения в память.
+ * Журнал архива не защищен от одновременной работы потоков: дописывание выполняется под блокировкой журнала
+ */
+final class WorkflowArchiveLog implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RECORD_SIZE = WorkflowSnapshot.DOCUMENT_SIZE + 4 * (Document.MAX_PARTIES - 2);
+
+    private final FileChannel channel;
+    private ChannelWriter writer;
+    private volatile long length;
+    private volatile long forcedLength;
+
+    //документы, записанные после длины журнала архива в снимке, до окончания воспроизведения журнала
+    private final LongIntMap tailIds = new LongIntMap();
+
+    /**
+     * Конструктор для объекта журнала архива
+     * @param channel файл журнала архива
+     */
+    private WorkflowArchiveLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Открыть журнал архива. Дописывать документы можно после {@link #recover(long, IntFunction, Consumer)}
+     * @param file файл журнала архива
+     * @return объект журнала архива
+     * @throws IOException ошибка открытия файла
+     */
+    static WorkflowArchiveLog open(Path file) throws IOException {
+        return new WorkflowArchiveLog(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Прочитать журнал архива: передать документы, записанные до заданной длины, найти конец последней
+     * полностью записанной записи и отбросить незавершенную запись
+     * @param watermark длина журнала архива в снимке, 0 - снимка нет
+     * @param companies компании по идентификатору
+     * @param action действие над документом, записанным до заданной длины (может быть null, если длина 0)
+     * @throws IOException журнал архива короче заданной длины или ошибка чтения файла
+     */
+    void recover(long watermark, IntFunction<Company> companies, Consumer<Document> action) throws IOException {
+
+        ChannelReader reader = new ChannelReader(channel, 0L, channel.size(), BUFFER_SIZE);
+        ByteBuffer buffer = reader.buffer();
+
+        while (reader.request(WorkflowSnapshot.DOCUMENT_SIZE)) {
+
+            int partyCount = buffer.get(buffer.position() + WorkflowSnapshot.DOCUMENT_SIZE - 1);
+            if (partyCount < 0 || partyCount > Document.MAX_PARTIES - 2
+                    || !reader.request(WorkflowSnapshot.DOCUMENT_SIZE + 4 * partyCount)) {
+                break;
+            }
+
+            if (reader.offset() < watermark) {
+                action.accept(WorkflowSnapshot.getDocument(buffer, companies, true));
+            } else {
+                tailIds.put(buffer.getLong(buffer.position()), 1);
+                buffer.position(buffer.position() + WorkflowSnapshot.DOCUMENT_SIZE + 4 * partyCount);
+            }
+        }
+
+        long end = reader.offset();
+        if (end < watermark) {
+            throw new IOException("archive log is shorter than the snapshot: " + end + " < " + watermark + " bytes");
+        }
+
+        channel.truncate(end);
+        writer = new ChannelWriter(channel, end, MAX_RECORD_SIZE);
+        length = end;
+        forcedLength = end;
+
+    }
+
+    /**
+     * Проверить записан ли документ в журнал архива после длины журнала архива в снимке
+     * @param id идентификатор документа
+     * @return true - документ уже записан
+     */
+    boolean isWrittenAfterSnapshot(long id) {
+        return !tailIds.isEmpty() && tailIds.containsKey(id);
+    }
+
+    /**
+     * Забыть документы, записанные после снимка, по окончании воспроизведения журнала
+     */
+    void endRecovery() {
+        tailIds.clear();
+    }
+
+    /**
+     * Дописать документ в конец журнала архива
+     * @param document документ, перенесенный в архив
+     */
+    void append(Document document) {
+
+        try {
+            ByteBuffer buffer = writer.reserve(MAX_RECORD_SIZE);
+            WorkflowSnapshot.putDocument(buffer, document);
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot write archive log document " + document.getId(), e);
+        }
+
+        length = writer.position();
+
+    }
+
+    /**
+     * Получить длину записанной части журнала архива
+     * @return длина в байтах
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Сбросить дописанные документы на диск
+     * @throws IOException ошибка записи файла
+     */
+    void force() throws IOException {
+
+        long length = this.length;
+        if (length != forcedLength) {
+            channel.force(false);
+            forcedLength = length;
+        }
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,161 @@
+package ru.f13.ikt.logic;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Класс описывает часы системы документооборота: источник текущего времени в миллисекундах от начала эпохи
+ * и часовой пояс, в котором время документов переводится в {@link LocalDateTime}.
+ * Все компоненты пакета получают текущее время через часы, установленные {@link #setClock(WorkflowClock)}:
+ * по умолчанию - системные часы, для работы под нагрузкой - {@link CachedClock},
+ * для тестов ограничений по времени - {@link ManualClock}
+ */
+public abstract class WorkflowClock {
+
+    private static final WorkflowClock SYSTEM = new WorkflowClock(ZoneId.systemDefault()) {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static volatile WorkflowClock clock = SYSTEM;
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private final boolean fixedOffset;
+    private final long offsetMillis;
+    private volatile OffsetPeriod offsetPeriod;
+
+    /**
+     * Конструктор для часов
+     * @param zone часовой пояс
+     */
+    protected WorkflowClock(ZoneId zone) {
+
+        this.zone = zone;
+        this.rules = zone.getRules();
+        this.fixedOffset = rules.isFixedOffset();
+        this.offsetMillis = fixedOffset ? rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L : 0L;
+
+    }
+
+    /**
+     * Получить текущее время
+     * @return время в миллисекундах от начала эпохи
+     */
+    public abstract long millis();
+
+    /**
+     * Получить часовой пояс часов
+     * @return часовой пояс
+     */
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Получить системные часы
+     * @return часы, читающие {@link System#currentTimeMillis()} при каждом обращении
+     */
+    public static WorkflowClock system() {
+        return SYSTEM;
+    }
+
+    /**
+     * Получить часы системы документооборота
+     * @return часы
+     */
+    public static WorkflowClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Установить часы системы документооборота
+     * @param clock часы, null - системные часы
+     */
+    public static void setClock(WorkflowClock clock) {
+        WorkflowClock.clock = clock == null ? SYSTEM : clock;
+    }
+
+    /**
+     * Перевести время в дату и время часового пояса часов
+     * @param millis время в миллисекундах от начала эпохи
+     * @return дата и время
+     */
+    LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+    }
+
+    /**
+     * Перевести дату и время часового пояса часов во время от начала эпохи
+     * @param dateTime дата и время
+     * @return время в миллисекундах от начала эпохи
+     */
+    long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Получить время суток в часовом поясе часов без создания объектов даты.
+     * Для поясов с переходами смещение берется из запомненного промежутка между переходами,
+     * объекты создаются только при выходе времени за этот промежуток
+     * @param millis время в миллисекундах от начала эпохи
+     * @return миллисекунды от начала суток
+     */
+    int millisOfDay(long millis) {
+
+        long offset = offsetMillis;
+        if (!fixedOffset) {
+            OffsetPeriod period = offsetPeriod;
+            if (period == null || millis < period.from || millis >= period.until) {
+                period = new OffsetPeriod(rules, millis);
+                offsetPeriod = period;
+            }
+            offset = period.offsetMillis;
+        }
+
+        return (int) Math.floorMod(millis + offset, 24L * 60L * 60L * 1000L);
+    }
+
+    /**
+     * Класс описывает промежуток времени между переходами часового пояса с постоянным смещением
+     */
+    private static final class OffsetPeriod {
+
+        private final long from;
+        private final long until;
+        private final long offsetMillis;
+
+        /**
+         * Конструктор для промежутка, содержащего время
+         * @param rules правила часового пояса
+         * @param millis время в миллисекундах от начала эпохи
+         */
+        private OffsetPeriod(ZoneRules rules, long millis) {
+
+            Instant instant = Instant.ofEpochMilli(millis);
+            ZoneOffset offset = rules.getOffset(instant);
+            ZoneOffsetTransition previous = rules.previousTransition(instant);
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+
+            //если время совпадает с переходом, предыдущий переход ведет к прежнему смещению и промежуток начинается с самого времени
+            if (previous == null) {
+                from = Long.MIN_VALUE;
+            } else if (previous.getOffsetAfter().equals(offset)) {
+                from = previous.toEpochSecond() * 1000L;
+            } else {
+                from = millis;
+            }
+            until = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+            offsetMillis = offset.getTotalSeconds() * 1000L;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Класс описывает событие жизненного цикла документа.
+ * Объекты событий заранее созданы в кольцевом буфере {@link WorkflowEventStream} и переиспользуются,
+ * поэтому событие действительно только во время вызова {@link WorkflowEventConsumer#onEvent(WorkflowEvent, boolean)}:
+ * чтобы сохранить данные события, их следует скопировать
+ */
+public final class WorkflowEvent {
+
+    private long sequence;
+    private byte type;
+    private long documentId;
+    private int companyId;
+    private int otherCompanyId;
+    private byte signatures;
+    private long timeMillis;
+
+    /**
+     * Получить порядковый номер события в потоке
+     * @return порядковый номер события
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Получить тип события
+     * @return значение {@link WorkflowEventType}
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Получить идентификатор документа
+     * @return идентификатор документа
+     */
+    public long getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * Получить идентификатор компании события (значение зависит от типа события)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    /**
+     * Получить идентификатор другой компании события (значение зависит от типа события)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    public int getOtherCompanyId() {
+        return otherCompanyId;
+    }
+
+    /**
+     * Проверить подписан ли документ 1 стороной на момент события
+     * @return true - подписан, false - не подписан
+     */
+    public boolean isSigning1() {
+        return (signatures & Document.SIGNING1) != 0;
+    }
+
+    /**
+     * Проверить подписан ли документ 2 стороной на момент события
+     * @return true - подписан, false - не подписан
+     */
+    public boolean isSigning2() {
+        return (signatures & Document.SIGNING2) != 0;
+    }
+
+    /**
+     * Получить время события
+     * @return время события в миллисекундах
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Заполнить событие
+     * @param sequence порядковый номер события
+     * @param type тип события
+     * @param documentId идентификатор документа
+     * @param companyId идентификатор компании события
+     * @param otherCompanyId идентификатор другой компании события
+     * @param signatures битовая маска подписей документа
+     * @param timeMillis время события в миллисекундах
+     */
+    void set(long sequence, byte type, long documentId, int companyId, int otherCompanyId, byte signatures, long timeMillis) {
+        this.sequence = sequence;
+        this.type = type;
+        this.documentId = documentId;
+        this.companyId = companyId;
+        this.otherCompanyId = otherCompanyId;
+        this.signatures = signatures;
+        this.timeMillis = timeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkflowEvent{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", documentId=" + documentId +
+                ", companyId=" + companyId +
+                ", otherCompanyId=" + otherCompanyId +
+                ", signatures=" + signatures +
+                '}';
+    }
+
+}
@@ -0,0 +1,16 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Интерфейс подписчика событий жизненного цикла документов {@link WorkflowEventStream}.
+ * Методы вызываются в отдельном потоке подписки
+ */
+public interface WorkflowEventConsumer {
+
+    /**
+     * Обработать событие
+     * @param event событие, действительное только во время вызова
+     * @param endOfBatch true - последнее из опубликованных на момент обработки событий
+     */
+    void onEvent(WorkflowEvent event, boolean endOfBatch);
+
+}
@@ -0,0 +1,440 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Класс описывает поток событий жизненного цикла документов системы документооборота.
+ * События публикуются в кольцевой буфер заранее созданных объектов {@link WorkflowEvent} в потоке,
+ * выполняющем изменение, без выделения памяти и без ожидания подписчиков (для политики {@link BackpressurePolicy#DROP}).
+ * Каждый подписчик читает буфер в своем потоке пачками опубликованных событий и получает все события
+ * в порядке публикации. Если подписчик отстал на размер буфера, поведение определяется политикой
+ * {@link BackpressurePolicy}
+ */
+public class WorkflowEventStream implements Closeable {
+
+    /**
+     * Поведение при заполнении буфера отставшими подписчиками
+     */
+    public enum BackpressurePolicy {
+
+        /**
+         * Событие не публикуется, количество пропущенных событий учитывается в {@link #getDroppedCount()}.
+         * Изменения в системе документооборота не ожидают подписчиков
+         */
+        DROP,
+
+        /**
+         * Публикация ожидает, пока отставший подписчик освободит место в буфере.
+         * Изменения в системе ожидают подписчиков под блокировками компаний, поэтому подписчик
+         * не должен изменять систему документооборота
+         */
+        BLOCK
+
+    }
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    private final WorkflowEvent[] events;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final BackpressurePolicy policy;
+
+    private final AtomicLong cursor = new AtomicLong(-1L);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Publisher publisher = new Publisher();
+
+    private volatile long gatingSequence = -1L;
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    private SystemWorkflow workflow;
+
+    /**
+     * Конструктор для объекта потока событий
+     * @param capacity размер буфера событий (округляется до степени двойки)
+     * @param policy поведение при заполнении буфера
+     */
+    public WorkflowEventStream(int capacity, BackpressurePolicy policy) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        events = new WorkflowEvent[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new WorkflowEvent();
+            published.set(i, -1L);
+        }
+        mask = size - 1;
+        this.policy = policy;
+
+    }
+
+    /**
+     * Начать публиковать события системы документооборота
+     * @param workflow система документооборота
+     */
+    public synchronized void attach(SystemWorkflow workflow) {
+
+        if (this.workflow != null) {
+            throw new IllegalStateException("event stream is already attached");
+        }
+
+        this.workflow = workflow;
+        workflow.addListener(publisher);
+
+    }
+
+    /**
+     * Подписаться на события, опубликованные после подписки
+     * @param consumer подписчик
+     * @return подписка, закрытие которой прекращает доставку событий
+     */
+    public synchronized Subscription subscribe(WorkflowEventConsumer consumer) {
+
+        Subscription subscription = new Subscription(consumer, cursor.get());
+
+        Subscription[] subscriptions = new Subscription[this.subscriptions.length + 1];
+        System.arraycopy(this.subscriptions, 0, subscriptions, 0, this.subscriptions.length);
+        subscriptions[subscriptions.length - 1] = subscription;
+        this.subscriptions = subscriptions;
+
+        subscription.thread.start();
+
+        return subscription;
+    }
+
+    /**
+     * Получить количество событий, не опубликованных из-за заполнения буфера
+     * @return количество пропущенных событий
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Получить размер буфера событий
+     * @return размер буфера
+     */
+    public int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * Прекратить публикацию событий и закрыть подписки после доставки опубликованных событий
+     */
+    @Override
+    public void close() {
+
+        Subscription[] subscriptions;
+        synchronized (this) {
+            if (workflow != null) {
+                workflow.removeListener(publisher);
+            }
+            subscriptions = this.subscriptions;
+        }
+
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+
+    }
+
+    /**
+     * Опубликовать событие
+     * @param type тип события {@link WorkflowEventType}
+     * @param document документ
+     * @param company компания события (может быть null)
+     * @param otherCompany другая компания события (может быть null)
+     */
+    private void publish(byte type, Document document, Company company, Company otherCompany) {
+
+        if (subscriptions.length == 0) {
+            return;
+        }
+
+        long sequence = claim();
+        if (sequence < 0L) {
+            return;
+        }
+
+        int index = (int) sequence & mask;
+        events[index].set(sequence, type, document.getId(), companyId(company), companyId(otherCompany),
+                document.getSignatures(), WorkflowClock.getClock().millis());
+        published.lazySet(index, sequence);
+
+    }
+
+    /**
+     * Занять номер события в буфере
+     * @return номер события или -1, если событие пропущено
+     */
+    private long claim() {
+
+        while (true) {
+
+            long current = cursor.get();
+            long next = current + 1L;
+            long wrap = next - events.length;
+
+            if (wrap > gatingSequence) {
+
+                long minimum = minimumSequence(current);
+                gatingSequence = minimum;
+
+                if (wrap > minimum) {
+                    if (policy == BackpressurePolicy.DROP) {
+                        dropped.incrementAndGet();
+                        return -1L;
+                    }
+                    LockSupport.parkNanos(1000L);
+                    continue;
+                }
+            }
+
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+
+    }
+
+    /**
+     * Получить номер последнего события, обработанного самым отставшим подписчиком
+     * @param current номер последнего занятого события
+     * @return номер события
+     */
+    private long minimumSequence(long current) {
+
+        long minimum = current;
+        for (Subscription subscription : subscriptions) {
+            minimum = Math.min(minimum, subscription.sequence.get());
+        }
+
+        return minimum;
+    }
+
+    /**
+     * Получить номер последнего опубликованного события, до которого опубликованы все события
+     * @param from номер первого проверяемого события
+     * @param to номер последнего занятого события
+     * @return номер события или from - 1, если событие from не опубликовано
+     */
+    private long highestPublished(long from, long to) {
+
+        for (long sequence = from; sequence <= to; sequence++) {
+            if (published.get((int) sequence & mask) != sequence) {
+                return sequence - 1L;
+            }
+        }
+
+        return to;
+    }
+
+    /**
+     * Удалить подписку
+     * @param subscription подписка
+     */
+    private synchronized void unsubscribe(Subscription subscription) {
+
+        Subscription[] subscriptions = this.subscriptions;
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i] == subscription) {
+                Subscription[] removed = new Subscription[subscriptions.length - 1];
+                System.arraycopy(subscriptions, 0, removed, 0, i);
+                System.arraycopy(subscriptions, i + 1, removed, i, subscriptions.length - i - 1);
+                this.subscriptions = removed;
+                return;
+            }
+        }
+
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @param company компания (может быть null)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    private static int companyId(Company company) {
+        return company == null ? 0 : company.getId();
+    }
+
+    /**
+     * Класс описывает подписку на события: поток подписки читает опубликованные события и передает их подписчику
+     */
+    public final class Subscription implements Closeable {
+
+        private final WorkflowEventConsumer consumer;
+        private final AtomicLong sequence;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        /**
+         * Конструктор для объекта подписки
+         * @param consumer подписчик
+         * @param sequence номер последнего события до подписки
+         */
+        private Subscription(WorkflowEventConsumer consumer, long sequence) {
+
+            this.consumer = consumer;
+            this.sequence = new AtomicLong(sequence);
+
+            thread = new Thread(this::run, "workflow-events-" + THREAD_SEQUENCE.incrementAndGet());
+            thread.setDaemon(true);
+
+        }
+
+        /**
+         * Получить номер последнего обработанного события
+         * @return номер события
+         */
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        /**
+         * Прекратить доставку событий после доставки уже опубликованных событий
+         */
+        @Override
+        public void close() {
+
+            running = false;
+
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            unsubscribe(this);
+
+        }
+
+        /**
+         * Читать опубликованные события и передавать их подписчику
+         */
+        private void run() {
+
+            long next = sequence.get() + 1L;
+            int idle = 0;
+
+            while (true) {
+
+                long available = highestPublished(next, cursor.get());
+
+                if (available >= next) {
+
+                    for (long current = next; current <= available; current++) {
+                        try {
+                            consumer.onEvent(events[(int) current & mask], current == available);
+                        } catch (RuntimeException e) {
+                            //ошибка подписчика не прекращает доставку следующих событий
+                        }
+                    }
+
+                    sequence.lazySet(available);
+                    next = available + 1L;
+                    idle = 0;
+
+                } else if (!running) {
+                    return;
+                } else {
+                    idle = idle(idle);
+                }
+
+            }
+
+        }
+
+        /**
+         * Ожидать публикации событий: сначала активно, затем с уступкой процессора и с засыпанием
+         * @param idle количество предыдущих пустых проверок
+         * @return количество пустых проверок
+         */
+        private int idle(int idle) {
+
+            if (idle < 100) {
+                return idle + 1;
+            }
+
+            if (idle < 200) {
+                Thread.yield();
+                return idle + 1;
+            }
+
+            LockSupport.parkNanos(100_000L);
+
+            return idle;
+        }
+
+    }
+
+    /**
+     * Класс описывает публикацию изменений системы документооборота в поток событий
+     */
+    private final class Publisher implements WorkflowListener {
+
+        @Override
+        public void documentAdded(Document document) {
+            publish(WorkflowEventType.ADMITTED, document, document.getCompany1(), document.getCompany2());
+        }
+
+        @Override
+        public void documentSigned(Document document, Company company) {
+
+            publish(WorkflowEventType.SIGNED, document, company, null);
+
+            if (document.isSigning()) {
+                publish(WorkflowEventType.FULLY_SIGNED, document, company, null);
+            }
+
+        }
+
+        @Override
+        public void documentReset(Document document) {
+            publish(WorkflowEventType.RESET, document, null, null);
+        }
+
+        @Override
+        public void documentCompanyChanged(Document document, int party, Company company) {
+            publish(party == 1 ? WorkflowEventType.COMPANY1_CHANGED : WorkflowEventType.COMPANY2_CHANGED,
+                    document, company, null);
+        }
+
+        @Override
+        public void documentChanged(Document document, Company company) {
+            publish(WorkflowEventType.COUNTER_OFFERED, document, company, document.getCompany2());
+        }
+
+        @Override
+        public void documentTransferred(Document document, Company from, Company to) {
+            publish(WorkflowEventType.TRANSFERRED, document, from, to);
+        }
+
+        @Override
+        public void documentHeld(Document document, Company company) {
+            publish(WorkflowEventType.HELD, document, company, null);
+        }
+
+        @Override
+        public void documentReleased(Document document, Company company) {
+            publish(WorkflowEventType.RELEASED, document, company, null);
+        }
+
+        @Override
+        public void documentRemoved(Document document) {
+            publish(WorkflowEventType.REMOVED, document, null, null);
+        }
+
+        @Override
+        public void documentArchived(Document document) {
+            publish(WorkflowEventType.ARCHIVED, document, null, null);
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Класс описывает типы событий жизненного цикла документа, публикуемых {@link WorkflowEventStream}
+ */
+public final class WorkflowEventType {
+
+    /**
+     * Документ добавлен в систему: компания - 1 сторона, другая компания - 2 сторона
+     */
+    public static final byte ADMITTED = 0;
+
+    /**
+     * Документ подписан одной стороной: компания - подписавшая сторона
+     */
+    public static final byte SIGNED = 1;
+
+    /**
+     * Документ подписан обеими сторонами: компания - сторона, подписавшая последней
+     */
+    public static final byte FULLY_SIGNED = 2;
+
+    /**
+     * Подписи документа сброшены
+     */
+    public static final byte RESET = 3;
+
+    /**
+     * Изменена 1 сторона документа: компания - новая 1 сторона
+     */
+    public static final byte COMPANY1_CHANGED = 4;
+
+    /**
+     * Изменена 2 сторона документа: компания - новая 2 сторона
+     */
+    public static final byte COMPANY2_CHANGED = 5;
+
+    /**
+     * Сделано встречное предложение: компания - новая 1 сторона, другая компания - новая 2 сторона
+     */
+    public static final byte COUNTER_OFFERED = 6;
+
+    /**
+     * Документ передан: компания - передающая, другая компания - получающая
+     */
+    public static final byte TRANSFERRED = 7;
+
+    /**
+     * Документ помещен в наличие компании
+     */
+    public static final byte HELD = 8;
+
+    /**
+     * Документ убран из наличия компании
+     */
+    public static final byte RELEASED = 9;
+
+    /**
+     * Документ удален из системы
+     */
+    public static final byte REMOVED = 10;
+
+    /**
+     * Полностью подписанный документ перенесен в архив
+     */
+    public static final byte ARCHIVED = 11;
+
+    private WorkflowEventType() {
+    }
+
+}
@@ -0,0 +1,89 @@
+package ru.f13.ikt.logic;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс описывает исполнителей асинхронных операций системы документооборота.
+ * Проект собирается для Java 8, поэтому виртуальные потоки (Java 21 и новее) создаются через отражение:
+ * на такой JVM каждая операция выполняется в своем виртуальном потоке, и ожидание блокировок компаний
+ * не занимает потоки платформы. На более старых JVM используются потоки платформы
+ */
+public final class WorkflowExecutors {
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+    private static final Method VIRTUAL_THREAD_EXECUTOR = virtualThreadExecutorMethod();
+
+    private WorkflowExecutors() {
+    }
+
+    /**
+     * Проверить поддерживает ли JVM виртуальные потоки
+     * @return true - виртуальные потоки поддерживаются
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Создать исполнителя, выполняющего каждую операцию в новом виртуальном потоке,
+     * или, если JVM не поддерживает виртуальные потоки, в потоках платформы
+     * @return исполнитель операций
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+        if (VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot create virtual thread executor", e);
+            }
+        }
+
+        return newPlatformThreadExecutor();
+    }
+
+    /**
+     * Создать исполнителя, выполняющего операции в потоках платформы, которые создаются по мере необходимости
+     * @return исполнитель операций
+     */
+    public static ExecutorService newPlatformThreadExecutor() {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "workflow-async-" + THREAD_SEQUENCE.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Получить исполнителя асинхронных операций по умолчанию, общего для всех систем документооборота
+     * @return исполнитель операций
+     */
+    static ExecutorService defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * Найти метод создания исполнителя виртуальных потоков
+     * @return метод или null, если JVM не поддерживает виртуальные потоки
+     */
+    private static Method virtualThreadExecutorMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Класс описывает отложенное создание исполнителя по умолчанию
+     */
+    private static final class DefaultExecutor {
+
+        private static final ExecutorService INSTANCE = newVirtualThreadPerTaskExecutor();
+
+    }
+
+}
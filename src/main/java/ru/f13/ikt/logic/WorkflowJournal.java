@@ -0,0 +1,901 @@
+package ru.f13.ikt.logic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Класс описывает журнал изменений состояния системы документооборота.
+ * Каждое изменение (добавление, подписание, сброс подписей, изменение сторон, встречное предложение,
+ * передача, помещение в наличие, удаление и перенос документа в архив) записывается компактной двоичной записью в конец
+ * сегмента журнала, отображенного в память. Сброс на диск выполняется группами: через заданное количество
+ * записей и (или) через заданный интервал времени. При подключении к системе журнал воспроизводится
+ * и восстанавливает документы, их подписи и наличие у компаний.
+ * Снимки состояния ({@link #snapshot()}) позволяют при подключении загрузить последний снимок и воспроизвести
+ * только записи после него, а сегменты и снимки, предшествующие последнему снимку, удаляются.
+ * Документы, перенесенные в архив, дописываются в журнал архива {@link WorkflowArchiveLog} в том же каталоге,
+ * а снимок хранит только его длину.
+ * Запись сегмента: [тип:1][идентификатор документа:8][данные записи], тип 0 означает конец сегмента.
+ * Документ с дополнительными сторонами записывается записью {@link #ADD_PARTIES}: данные записи добавления
+ * и [количество дополнительных сторон:1][наличие у дополнительных сторон:1][компании сторон:4*6]
+ */
+public class WorkflowJournal implements Closeable {
+
+    static final byte ADD = 1;
+    static final byte SIGN = 2;
+    static final byte RESET = 3;
+    static final byte SET_COMPANY1 = 4;
+    static final byte SET_COMPANY2 = 5;
+    static final byte CHANGE = 6;
+    static final byte TRANSFER = 7;
+    static final byte HOLD = 8;
+    static final byte RELEASE = 9;
+    static final byte REMOVE = 10;
+    static final byte ARCHIVE = 11;
+    static final byte ADD_PARTIES = 12;
+
+    private static final byte HELD_BY_COMPANY1 = 1;
+    private static final byte HELD_BY_COMPANY2 = 2;
+    private static final byte HELD_BY_CREATOR = 4;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String ARCHIVE_LOG = "archive.journal";
+
+    /**
+     * Размер сегмента по умолчанию
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int syncEveryRecords;
+    private final Recorder recorder = new Recorder();
+    //компании по идентификатору, защищены блокировкой журнала
+    private final LongObjectMap<Company> companies = new LongObjectMap<>();
+    private final ScheduledExecutorService executor;
+
+    private WorkflowArchiveLog archiveLog;
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private long segment;
+    private int position;
+    private int unsyncedRecords;
+    private volatile boolean dirty;
+
+    private SystemWorkflow workflow;
+
+    /**
+     * Конструктор для объекта журнала
+     * @param directory каталог сегментов журнала
+     * @param segmentSize размер сегмента в байтах
+     * @param syncEveryRecords сбрасывать на диск через указанное количество записей, 0 - не сбрасывать по количеству
+     * @param syncIntervalMillis сбрасывать на диск с указанным интервалом, 0 - не сбрасывать по времени
+     */
+    private WorkflowJournal(Path directory, int segmentSize, int syncEveryRecords, long syncIntervalMillis) {
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncEveryRecords = syncEveryRecords;
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workflow-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (syncIntervalMillis > 0L) {
+            executor.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    /**
+     * Открыть журнал со сбросом на диск каждые 10 мс
+     * @param directory каталог сегментов журнала
+     * @return объект журнала
+     * @throws IOException ошибка открытия сегмента
+     */
+    public static WorkflowJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, 0, 10L);
+    }
+
+    /**
+     * Открыть журнал
+     * @param directory каталог сегментов журнала
+     * @param segmentSize размер сегмента в байтах
+     * @param syncEveryRecords сбрасывать на диск через указанное количество записей, 0 - не сбрасывать по количеству
+     * @param syncIntervalMillis сбрасывать на диск с указанным интервалом, 0 - не сбрасывать по времени
+     * @return объект журнала
+     * @throws IOException ошибка открытия сегмента
+     */
+    public static WorkflowJournal open(Path directory, int segmentSize, int syncEveryRecords, long syncIntervalMillis)
+            throws IOException {
+
+        if (segmentSize < 64) {
+            throw new IllegalArgumentException("segmentSize must be at least 64 bytes");
+        }
+
+        Files.createDirectories(directory);
+
+        WorkflowJournal journal = new WorkflowJournal(directory, segmentSize, syncEveryRecords, syncIntervalMillis);
+
+        LongArrayList segments = journal.listSegments();
+        journal.openSegment(segments.isEmpty() ? 1L : segments.get(segments.size() - 1));
+        journal.archiveLog = WorkflowArchiveLog.open(directory.resolve(ARCHIVE_LOG));
+
+        return journal;
+    }
+
+    /**
+     * Загрузить последний снимок, воспроизвести записанный после него журнал в системе документооборота
+     * и начать записывать ее изменения
+     * @param workflow система документооборота без документов
+     * @param companies компании по идентификатору
+     * @throws IOException ошибка чтения снимка или сегмента
+     */
+    public void attach(SystemWorkflow workflow, IntFunction<Company> companies) throws IOException {
+
+        IntFunction<Company> resolver = id -> resolve(id, companies);
+        Map<Integer, Long> watermarks = new HashMap<>();
+
+        long position = 1L << 32;
+        List<Path> snapshots = listSnapshots();
+        if (!snapshots.isEmpty()) {
+            position = WorkflowSnapshot.load(snapshots.get(snapshots.size() - 1), workflow, resolver, watermarks,
+                    archiveLog);
+        } else {
+            archiveLog.recover(0L, resolver, null);
+        }
+
+        replay(workflow, resolver, watermarks, position >>> 32, (int) position);
+        archiveLog.endRecovery();
+        attach(workflow);
+
+    }
+
+    /**
+     * Начать записывать изменения системы документооборота без воспроизведения журнала
+     * @param workflow система документооборота
+     */
+    synchronized void attach(SystemWorkflow workflow) {
+
+        if (this.workflow != null) {
+            throw new IllegalStateException("journal is already attached");
+        }
+
+        this.workflow = workflow;
+        workflow.addListener(recorder);
+
+    }
+
+    /**
+     * Получить позицию, с которой будет записана следующая запись
+     * @return позиция журнала: номер сегмента в старших 32 битах, смещение в младших
+     */
+    synchronized long getPosition() {
+        return (segment << 32) | position;
+    }
+
+    /**
+     * Сбросить записанные изменения на диск
+     */
+    public void sync() {
+
+        if (!dirty) {
+            return;
+        }
+
+        dirty = false;
+        //документ архива записывается на диск не позже записи переноса в архив
+        try {
+            archiveLog.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.force();
+
+    }
+
+    /**
+     * Снять снимок состояния системы документооборота.
+     * Состояние снимается в вызывающем потоке без остановки работы с системой, а файл снимка записывается
+     * в фоновом потоке журнала, после чего сегменты и снимки, предшествующие снимку, удаляются
+     * @return файл записанного снимка
+     */
+    public CompletableFuture<Path> snapshot() {
+
+        WorkflowSnapshot snapshot = captureSnapshot();
+
+        return CompletableFuture.supplyAsync(() -> writeSnapshot(snapshot), executor);
+    }
+
+    /**
+     * Снимать снимки состояния системы документооборота с заданным интервалом в фоновом потоке журнала.
+     * Доступно только для системы, созданной для одновременной работы потоков
+     * @param intervalMillis интервал между снимками в миллисекундах
+     */
+    public void scheduleSnapshots(long intervalMillis) {
+
+        SystemWorkflow workflow;
+        synchronized (this) {
+            workflow = this.workflow;
+        }
+
+        if (workflow == null || !workflow.isConcurrent()) {
+            throw new IllegalStateException("periodic snapshots require an attached concurrent workflow");
+        }
+
+        executor.scheduleWithFixedDelay(() -> writeSnapshot(captureSnapshot()),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Снять состояние системы документооборота в память
+     * @return снимок
+     */
+    private WorkflowSnapshot captureSnapshot() {
+
+        SystemWorkflow workflow;
+        long position;
+        Company[] registered;
+        synchronized (this) {
+            workflow = this.workflow;
+            position = getPosition();
+            registered = new Company[companies.size()];
+            companies.copyValues(registered);
+        }
+
+        if (workflow == null) {
+            throw new IllegalStateException("journal is not attached");
+        }
+
+        return WorkflowSnapshot.capture(workflow, Arrays.asList(registered), position, archiveLog::length);
+    }
+
+    /**
+     * Записать снимок и удалить предшествующие ему сегменты и снимки
+     * @param snapshot снимок
+     * @return файл снимка
+     */
+    private Path writeSnapshot(WorkflowSnapshot snapshot) {
+
+        long position = snapshot.getPosition();
+        Path file = directory.resolve(String.format("%s%016d-%010d%s",
+                SNAPSHOT_PREFIX, position >>> 32, position & 0xFFFFFFFFL, SNAPSHOT_SUFFIX));
+
+        try {
+
+            //записи до снимка должны быть на диске раньше, чем будут удалены их сегменты
+            sync();
+            snapshot.write(file);
+
+            LongArrayList segments = listSegments();
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i) < position >>> 32) {
+                    Files.deleteIfExists(segmentPath(segments.get(i)));
+                }
+            }
+            for (Path previous : listSnapshots()) {
+                if (previous.getFileName().toString().compareTo(file.getFileName().toString()) < 0) {
+                    Files.deleteIfExists(previous);
+                }
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        executor.shutdown();
+        try {
+            //дождаться записи начатых снимков
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (workflow != null) {
+                workflow.removeListener(recorder);
+            }
+            buffer.force();
+            channel.close();
+            archiveLog.close();
+        }
+
+    }
+
+    /**
+     * Воспроизвести журнал начиная с указанной позиции.
+     * Записи изменяют состояние до записанного значения, поэтому повторное применение записи, уже учтенной
+     * в снимке, не изменяет состояние
+     * @param workflow система документооборота
+     * @param companies компании по идентификатору
+     * @param watermarks последние отметки окон созданных документов, загруженные из снимка
+     * @param fromSegment номер сегмента начала
+     * @param fromOffset смещение начала в сегменте
+     * @throws IOException ошибка чтения сегмента
+     */
+    private void replay(SystemWorkflow workflow, IntFunction<Company> companies, Map<Integer, Long> watermarks,
+                        long fromSegment, int fromOffset) throws IOException {
+
+        CompanyResolver resolver = new CompanyResolver(companies, watermarks);
+
+        LongArrayList segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+
+            long segment = segments.get(i);
+            if (segment < fromSegment) {
+                continue;
+            }
+
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                int position = segment == fromSegment ? fromOffset : 0;
+                int size;
+                while ((size = recordSize(buffer, position)) > 0) {
+                    apply(buffer, position, workflow, resolver);
+                    position += size;
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Применить запись журнала к системе документооборота
+     * @param buffer сегмент журнала
+     * @param position позиция записи
+     * @param workflow система документооборота
+     * @param resolver компании по идентификатору
+     */
+    private void apply(MappedByteBuffer buffer, int position, SystemWorkflow workflow, CompanyResolver resolver) {
+
+        byte type = buffer.get(position);
+        long id = buffer.getLong(position + 1);
+        int data = position + 9;
+
+        if (type == ADD || type == ADD_PARTIES) {
+
+            //документ уже загружен из снимка
+            if (workflow.getDocument(id) != null) {
+                return;
+            }
+
+            Company company1 = resolver.get(buffer.getInt(data));
+            Company company2 = resolver.get(buffer.getInt(data + 4));
+            Company creator = resolver.get(buffer.getInt(data + 8));
+            long created = buffer.getLong(data + 12);
+            byte signatures = buffer.get(data + 20);
+            byte holders = buffer.get(data + 21);
+
+            Company[] parties = new Company[type == ADD_PARTIES ? buffer.get(data + 22) : 0];
+            for (int i = 0; i < parties.length; i++) {
+                parties[i] = resolver.get(buffer.getInt(data + 24 + i * 4));
+            }
+
+            Document document = new Document(id, company1, company2, parties, created);
+            document.setCreator(creator);
+            document.restoreSignatures(signatures);
+
+            if (creator != null && created > resolver.watermark(creator)) {
+                creator.getCreateDocumentLimiter().record(created);
+            }
+            hold(document, company1, (holders & HELD_BY_COMPANY1) != 0);
+            hold(document, company2, (holders & HELD_BY_COMPANY2) != 0);
+            hold(document, creator, (holders & HELD_BY_CREATOR) != 0);
+            for (int i = 0; i < parties.length; i++) {
+                hold(document, parties[i], (buffer.get(data + 23) & (1 << i)) != 0);
+            }
+
+            workflow.restoreDocument(document);
+            return;
+        }
+
+        Document document = workflow.getDocument(id);
+        if (document == null) {
+            return;
+        }
+
+        switch (type) {
+            case SIGN:
+                document.restoreSignatures(buffer.get(data + 4));
+                break;
+            case RESET:
+                document.resetSigning();
+                break;
+            case SET_COMPANY1:
+                document.setCompany1(resolver.get(buffer.getInt(data)));
+                break;
+            case SET_COMPANY2:
+                document.setCompany2(resolver.get(buffer.getInt(data)));
+                break;
+            case CHANGE:
+                Company company = resolver.get(buffer.getInt(data));
+                document.restoreParties(company, resolver.get(buffer.getInt(data + 4)));
+                hold(document, company, true);
+                break;
+            case TRANSFER:
+                resolver.get(buffer.getInt(data)).transferDocument(document, resolver.get(buffer.getInt(data + 4)));
+                break;
+            case HOLD:
+                resolver.get(buffer.getInt(data)).addDocument(document);
+                break;
+            case RELEASE:
+                resolver.get(buffer.getInt(data)).removeDocument(document);
+                break;
+            case REMOVE:
+                workflow.removeDocument(document);
+                break;
+            case ARCHIVE:
+                //без архива документ остается в хранилище, чтобы не быть потерянным;
+                //документ, не записанный в журнал архива до сбоя, дописывается повторно
+                if (workflow.archiveDocument(id) && !archiveLog.isWrittenAfterSnapshot(id)) {
+                    archiveLog.append(document);
+                }
+                break;
+            default:
+                break;
+        }
+
+    }
+
+    /**
+     * Поместить документ в наличие компании
+     * @param document документ
+     * @param company компания (может быть null)
+     * @param held true - документ был в наличии у компании
+     */
+    private static void hold(Document document, Company company, boolean held) {
+        if (held && company != null) {
+            company.store(document);
+        }
+    }
+
+    /**
+     * Получить размер записи журнала
+     * @param buffer сегмент журнала
+     * @param position позиция записи
+     * @return размер записи или 0, если записей больше нет
+     */
+    private static int recordSize(MappedByteBuffer buffer, int position) {
+
+        if (position >= buffer.limit()) {
+            return 0;
+        }
+
+        int size = recordSize(buffer.get(position));
+
+        return position + size <= buffer.limit() ? size : 0;
+    }
+
+    /**
+     * Получить размер записи журнала по типу
+     * @param type тип записи
+     * @return размер записи или 0 для неизвестного типа
+     */
+    private static int recordSize(byte type) {
+        switch (type) {
+            case ADD:
+                return 31;
+            case ADD_PARTIES:
+                return 33 + 4 * (Document.MAX_PARTIES - 2);
+            case SIGN:
+                return 14;
+            case RESET:
+            case REMOVE:
+            case ARCHIVE:
+                return 9;
+            case SET_COMPANY1:
+            case SET_COMPANY2:
+            case HOLD:
+            case RELEASE:
+                return 13;
+            case CHANGE:
+            case TRANSFER:
+                return 17;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Начать запись и вернуть позицию данных записи
+     * @param type тип записи
+     * @param id идентификатор документа
+     * @return позиция данных записи
+     */
+    private int begin(byte type, long id) {
+
+        int size = recordSize(type);
+        if (position + size > segmentSize) {
+            rollSegment();
+        }
+
+        buffer.putLong(position + 1, id);
+
+        return position + 9;
+    }
+
+    /**
+     * Завершить запись: тип записывается последним, чтобы незавершенная запись не была воспроизведена
+     * @param type тип записи
+     * @return true - требуется сброс на диск
+     */
+    private boolean commit(byte type) {
+
+        buffer.put(position, type);
+        position += recordSize(type);
+        dirty = true;
+
+        if (syncEveryRecords > 0 && ++unsyncedRecords >= syncEveryRecords) {
+            unsyncedRecords = 0;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Перейти к следующему сегменту
+     */
+    private void rollSegment() {
+        try {
+            buffer.force();
+            channel.close();
+            openSegment(segment + 1L);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot open journal segment " + (segment + 1L), e);
+        }
+    }
+
+    /**
+     * Открыть сегмент для записи и найти конец записанных данных
+     * @param segment номер сегмента
+     * @throws IOException ошибка открытия сегмента
+     */
+    private void openSegment(long segment) throws IOException {
+
+        FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+        int position = 0;
+        int size;
+        while ((size = recordSize(buffer, position)) > 0) {
+            position += size;
+        }
+
+        this.channel = channel;
+        this.buffer = buffer;
+        this.segment = segment;
+        this.position = position;
+
+    }
+
+    /**
+     * Получить номера сегментов журнала по возрастанию
+     * @return номера сегментов
+     * @throws IOException ошибка чтения каталога
+     */
+    LongArrayList listSegments() throws IOException {
+
+        LongArrayList segments = new LongArrayList();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        segments.sort();
+
+        return segments;
+    }
+
+    /**
+     * Получить файлы снимков по возрастанию позиции журнала
+     * @return файлы снимков
+     * @throws IOException ошибка чтения каталога
+     */
+    private List<Path> listSnapshots() throws IOException {
+
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path path : stream) {
+                snapshots.add(path);
+            }
+        }
+        snapshots.sort(null);
+
+        return snapshots;
+    }
+
+    /**
+     * Получить путь файла сегмента
+     * @param segment номер сегмента
+     * @return путь файла сегмента
+     */
+    Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Сбросить изменения на диск из фонового потока
+     */
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            //следующая попытка будет выполнена по расписанию
+        }
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @param company компания (может быть null)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    private static int companyId(Company company) {
+        return company == null ? 0 : company.getId();
+    }
+
+    /**
+     * Класс описывает запись изменений системы документооборота в журнал
+     */
+    private final class Recorder implements WorkflowListener {
+
+        @Override
+        public void documentAdded(Document document) {
+
+            Company company1 = document.getCompany1();
+            Company company2 = document.getCompany2();
+            Company creator = document.getCreator();
+            Company[] parties = document.getAdditionalParties();
+
+            byte partyHolders = 0;
+            for (int i = 0; i < parties.length; i++) {
+                if (parties[i] != null && parties[i].isContainsDocument(document)) {
+                    partyHolders |= 1 << i;
+                }
+            }
+
+            byte holders = 0;
+            if (company1 != null && company1.isContainsDocument(document)) {
+                holders |= HELD_BY_COMPANY1;
+            }
+            if (company2 != null && company2.isContainsDocument(document)) {
+                holders |= HELD_BY_COMPANY2;
+            }
+            if (creator != null && creator.isContainsDocument(document)) {
+                holders |= HELD_BY_CREATOR;
+            }
+
+            long created = document.getCreatedMillis();
+            byte type = parties.length == 0 ? ADD : ADD_PARTIES;
+
+            boolean sync;
+            synchronized (WorkflowJournal.this) {
+                register(company1);
+                register(company2);
+                register(creator);
+                for (Company party : parties) {
+                    register(party);
+                }
+                int data = begin(type, document.getId());
+                buffer.putInt(data, companyId(company1));
+                buffer.putInt(data + 4, companyId(company2));
+                buffer.putInt(data + 8, companyId(creator));
+                buffer.putLong(data + 12, created);
+                buffer.put(data + 20, document.getSignatures());
+                buffer.put(data + 21, holders);
+                if (type == ADD_PARTIES) {
+                    buffer.put(data + 22, (byte) parties.length);
+                    buffer.put(data + 23, partyHolders);
+                    for (int i = 0; i < parties.length; i++) {
+                        buffer.putInt(data + 24 + i * 4, companyId(parties[i]));
+                    }
+                }
+                sync = commit(type);
+            }
+            if (sync) {
+                sync();
+            }
+
+        }
+
+        @Override
+        public void documentSigned(Document document, Company company) {
+
+            boolean sync;
+            synchronized (WorkflowJournal.this) {
+                int data = begin(SIGN, document.getId());
+                buffer.putInt(data, companyId(company));
+                buffer.put(data + 4, document.getSignatures());
+                sync = commit(SIGN);
+            }
+            if (sync) {
+                sync();
+            }
+
+        }
+
+        @Override
+        public void documentReset(Document document) {
+            write(RESET, document, null, null);
+        }
+
+        @Override
+        public void documentCompanyChanged(Document document, int party, Company company) {
+            write(party == 1 ? SET_COMPANY1 : SET_COMPANY2, document, company, null);
+        }
+
+        @Override
+        public void documentChanged(Document document, Company company) {
+            write(CHANGE, document, company, document.getCompany2());
+        }
+
+        @Override
+        public void documentTransferred(Document document, Company from, Company to) {
+            write(TRANSFER, document, from, to);
+        }
+
+        @Override
+        public void documentHeld(Document document, Company company) {
+            write(HOLD, document, company, null);
+        }
+
+        @Override
+        public void documentReleased(Document document, Company company) {
+            write(RELEASE, document, company, null);
+        }
+
+        @Override
+        public void documentRemoved(Document document) {
+            write(REMOVE, document, null, null);
+        }
+
+        @Override
+        public void documentArchived(Document document) {
+
+            //снимок хранит только длину журнала архива, поэтому документ записывается в него раньше записи переноса
+            synchronized (WorkflowJournal.this) {
+                archiveLog.append(document);
+            }
+            write(ARCHIVE, document, null, null);
+
+        }
+
+        /**
+         * Записать запись с идентификаторами компаний
+         * @param type тип записи
+         * @param document документ
+         * @param company1 первая компания записи (для записей с компанией)
+         * @param company2 вторая компания записи (для передачи)
+         */
+        private void write(byte type, Document document, Company company1, Company company2) {
+
+            boolean sync;
+            synchronized (WorkflowJournal.this) {
+                register(company1);
+                register(company2);
+                int data = begin(type, document.getId());
+                int size = recordSize(type);
+                if (size >= 13) {
+                    buffer.putInt(data, companyId(company1));
+                }
+                if (size >= 17) {
+                    buffer.putInt(data + 4, companyId(company2));
+                }
+                sync = commit(type);
+            }
+            if (sync) {
+                sync();
+            }
+
+        }
+
+    }
+
+    /**
+     * Запомнить компанию, чтобы сохранять ее документы и окно созданных документов в снимках.
+     * Вызывается под блокировкой журнала
+     * @param company компания (может быть null)
+     */
+    private void register(Company company) {
+        if (company != null && companies.get(company.getId()) != company) {
+            companies.put(company.getId(), company);
+        }
+    }
+
+    /**
+     * Найти запомненную компанию по идентификатору или получить ее и запомнить
+     * @param id идентификатор компании
+     * @param companies компании по идентификатору
+     * @return компания или null, если компании нет
+     */
+    private synchronized Company resolve(int id, IntFunction<Company> companies) {
+
+        Company company = this.companies.get(id);
+        if (company == null) {
+            company = companies.apply(id);
+            if (company != null) {
+                this.companies.put(id, company);
+            }
+        }
+
+        return company;
+    }
+
+    /**
+     * Класс описывает поиск компаний по идентификатору при воспроизведении журнала
+     */
+    private static final class CompanyResolver {
+
+        private final IntFunction<Company> companies;
+        private final Map<Integer, Long> watermarks;
+        private final LongObjectMap<Company> resolved = new LongObjectMap<>();
+
+        private CompanyResolver(IntFunction<Company> companies, Map<Integer, Long> watermarks) {
+            this.companies = companies;
+            this.watermarks = watermarks;
+        }
+
+        private Company get(int id) {
+
+            if (id == 0) {
+                return null;
+            }
+
+            Company company = resolved.get(id);
+            if (company == null) {
+                company = companies.apply(id);
+                if (company != null) {
+                    resolved.put(id, company);
+                }
+            }
+
+            return company;
+        }
+
+        /**
+         * Получить последнюю отметку окна созданных документов компании, загруженную из снимка
+         * @param company компания
+         * @return отметка времени или {@link Long#MIN_VALUE}, если снимка не было
+         */
+        private long watermark(Company company) {
+            Long watermark = watermarks.get(company.getId());
+            return watermark == null ? Long.MIN_VALUE : watermark;
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package ru.f13.ikt.logic;
+
+/**
+ * Интерфейс получателя изменений состояния системы документооборота.
+ * Методы вызываются в потоке, выполняющем изменение, под блокировками компаний документа,
+ * поэтому изменения одного документа поступают в том порядке, в котором они выполнены.
+ * По умолчанию методы ничего не делают, получатель переопределяет нужные ему
+ */
+interface WorkflowListener {
+
+    /**
+     * Документ добавлен в систему
+     * @param document документ
+     */
+    default void documentAdded(Document document) {
+    }
+
+    /**
+     * Документ подписан компанией
+     * @param document документ
+     * @param company компания, подписавшая документ
+     */
+    default void documentSigned(Document document, Company company) {
+    }
+
+    /**
+     * Подписи документа сброшены
+     * @param document документ
+     */
+    default void documentReset(Document document) {
+    }
+
+    /**
+     * Изменена сторона документа
+     * @param document документ
+     * @param party номер стороны: 1 или 2
+     * @param company новая компания стороны
+     */
+    default void documentCompanyChanged(Document document, int party, Company company) {
+    }
+
+    /**
+     * Компания сделала встречное предложение ({@link Company#changeDocument(Document)})
+     * @param document документ
+     * @param company компания, сделавшая встречное предложение
+     */
+    default void documentChanged(Document document, Company company) {
+    }
+
+    /**
+     * Документ передан другой компании
+     * @param document документ
+     * @param from компания, передавшая документ
+     * @param to компания, получившая документ
+     */
+    default void documentTransferred(Document document, Company from, Company to) {
+    }
+
+    /**
+     * Документ помещен в наличие компании
+     * @param document документ
+     * @param company компания
+     */
+    default void documentHeld(Document document, Company company) {
+    }
+
+    /**
+     * Документ убран из наличия компании
+     * @param document документ
+     * @param company компания
+     */
+    default void documentReleased(Document document, Company company) {
+    }
+
+    /**
+     * Документ удален из системы
+     * @param document документ
+     */
+    default void documentRemoved(Document document) {
+    }
+
+    /**
+     * Полностью подписанный документ перенесен в архив.
+     * Уведомление приходит после помещения документа в архив и до его удаления из хранилища
+     * @param document документ
+     */
+    default void documentArchived(Document document) {
+    }
+
+}
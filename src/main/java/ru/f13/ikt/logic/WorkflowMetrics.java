@@ -0,0 +1,409 @@
+package ru.f13.ikt.logic;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс описывает метрики системы документооборота: количество результатов добавления документов
+ * по {@link AdmissionStatus} в целом и отказов по компаниям, количество подписаний, гистограммы задержек
+ * добавления, проверок ограничений и подписания, а также размер хранилища и количество неподписанных документов.
+ * Счетчики - {@link LongAdder}, гистограммы - {@link LatencyHistogram} фиксированного размера,
+ * поэтому учет не выделяет память (кроме первого отказа по компании) и не создает общих точек конкуренции.
+ * Счетчики отказов компаний находятся по идентификатору компании в полосах {@link IntIntMap} без упаковки ключей,
+ * каждая полоса защищена своей блокировкой
+ */
+public class WorkflowMetrics {
+
+    /**
+     * Проверка ограниченного времени
+     */
+    public static final byte VALIDATOR_LIMITED_TIME = 0;
+
+    /**
+     * Проверка ограничения по документообороту компании
+     */
+    public static final byte VALIDATOR_COMPANY_WORKFLOW_LIMIT = 1;
+
+    /**
+     * Проверка ограничения по созданию документов компанией
+     */
+    public static final byte VALIDATOR_COMPANY_CREATE_DOCUMENT_LIMIT = 2;
+
+    /**
+     * Проверка ограничения по документообороту между компаниями
+     */
+    public static final byte VALIDATOR_WORKFLOW_LIMIT = 3;
+
+    private static final String[] STATUS_NAMES = {
+            "signed", "added", "rejected_invalid_document", "rejected_company_workflow_limit",
+            "rejected_company_create_document_limit", "rejected_workflow_limit"
+    };
+
+    private static final String[] VALIDATOR_NAMES = {
+            "limited_time", "company_workflow_limit", "company_create_document_limit", "workflow_limit"
+    };
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final int REJECTION_STRIPES = 64;
+
+    private final SystemWorkflow workflow;
+
+    private final LongAdder[] admissions = new LongAdder[STATUS_NAMES.length];
+    private final RejectionStripe[] companyRejections = new RejectionStripe[REJECTION_STRIPES];
+    private final LongAdder signed = new LongAdder();
+    private final LongAdder notSigned = new LongAdder();
+
+    private final LatencyHistogram admissionLatency = new LatencyHistogram();
+    private final LatencyHistogram signingLatency = new LatencyHistogram();
+    private final LatencyHistogram[] validatorLatency = new LatencyHistogram[VALIDATOR_NAMES.length];
+
+    /**
+     * Конструктор для объекта метрик
+     * @param workflow система документооборота
+     */
+    WorkflowMetrics(SystemWorkflow workflow) {
+
+        this.workflow = workflow;
+
+        for (int i = 0; i < admissions.length; i++) {
+            admissions[i] = new LongAdder();
+        }
+        for (int i = 0; i < validatorLatency.length; i++) {
+            validatorLatency[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < companyRejections.length; i++) {
+            companyRejections[i] = new RejectionStripe();
+        }
+
+    }
+
+    /**
+     * Учесть результат добавления документа
+     * @param status результат добавления {@link AdmissionStatus}
+     * @param nanos время добавления в наносекундах
+     */
+    void recordAdmission(byte status, long nanos) {
+        admissions[status].increment();
+        admissionLatency.record(nanos);
+    }
+
+    /**
+     * Учесть отказ в добавлении документа из-за ограничения компании
+     * @param status результат добавления {@link AdmissionStatus}
+     * @param company компания, ограничение которой не позволило добавить документ (может быть null)
+     */
+    void recordRejection(byte status, Company company) {
+
+        if (company == null) {
+            return;
+        }
+
+        int id = company.getId();
+        RejectionStripe stripe = companyRejections[id & (REJECTION_STRIPES - 1)];
+
+        LongAdder[] counters;
+        synchronized (stripe) {
+            counters = stripe.counters(id);
+        }
+
+        counters[status].increment();
+
+    }
+
+    /**
+     * Учесть время проверки ограничения
+     * @param validator проверка, например {@link #VALIDATOR_WORKFLOW_LIMIT}
+     * @param start время начала проверки {@link System#nanoTime()}
+     * @return время окончания проверки {@link System#nanoTime()}, чтобы использовать его как начало следующей
+     */
+    long recordValidator(byte validator, long start) {
+        long now = System.nanoTime();
+        validatorLatency[validator].record(now - start);
+        return now;
+    }
+
+    /**
+     * Учесть подписание документа
+     * @param success true - документ подписан, false - документ не подписан
+     * @param nanos время подписания в наносекундах
+     */
+    void recordSigning(boolean success, long nanos) {
+        (success ? signed : notSigned).increment();
+        signingLatency.record(nanos);
+    }
+
+    /**
+     * Получить снимок метрик
+     * @return объект {@link Snapshot}
+     */
+    public Snapshot snapshot() {
+
+        long[] admissions = new long[this.admissions.length];
+        for (int i = 0; i < admissions.length; i++) {
+            admissions[i] = this.admissions[i].sum();
+        }
+
+        Map<Integer, long[]> companyRejections = new TreeMap<>();
+        for (RejectionStripe stripe : this.companyRejections) {
+            synchronized (stripe) {
+                for (int j = 0; j < stripe.size; j++) {
+                    long[] counts = new long[STATUS_NAMES.length];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = stripe.counters[j][i].sum();
+                    }
+                    companyRejections.put(stripe.ids[j], counts);
+                }
+            }
+        }
+
+        LatencyHistogram.Snapshot[] validatorLatency = new LatencyHistogram.Snapshot[this.validatorLatency.length];
+        for (int i = 0; i < validatorLatency.length; i++) {
+            validatorLatency[i] = this.validatorLatency[i].snapshot();
+        }
+
+        return new Snapshot(admissions, companyRejections, signed.sum(), notSigned.sum(),
+                admissionLatency.snapshot(), signingLatency.snapshot(), validatorLatency,
+                workflow.getDocumentCount(), workflow.getUnsignedDocumentCount());
+    }
+
+    /**
+     * Класс описывает полосу счетчиков отказов компаний: номера счетчиков по идентификатору компании
+     * и счетчики по порядку первого отказа. Полоса не защищена от одновременного изменения,
+     * обращения выполняются под ее блокировкой
+     */
+    private static final class RejectionStripe {
+
+        private final IntIntMap slots = new IntIntMap();
+        private int[] ids = new int[4];
+        private LongAdder[][] counters = new LongAdder[4][];
+        private int size;
+
+        /**
+         * Получить счетчики отказов компании, создав их при первом отказе
+         * @param id идентификатор компании
+         * @return счетчики по {@link AdmissionStatus}
+         */
+        private LongAdder[] counters(int id) {
+
+            int slot = slots.get(id, -1);
+            if (slot >= 0) {
+                return counters[slot];
+            }
+
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+                counters = Arrays.copyOf(counters, size << 1);
+            }
+
+            LongAdder[] created = new LongAdder[STATUS_NAMES.length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new LongAdder();
+            }
+
+            ids[size] = id;
+            counters[size] = created;
+            slots.put(id, size++);
+
+            return created;
+        }
+
+    }
+
+    /**
+     * Класс описывает снимок метрик системы документооборота
+     */
+    public static final class Snapshot {
+
+        private final long[] admissions;
+        private final Map<Integer, long[]> companyRejections;
+        private final long signed;
+        private final long notSigned;
+        private final LatencyHistogram.Snapshot admissionLatency;
+        private final LatencyHistogram.Snapshot signingLatency;
+        private final LatencyHistogram.Snapshot[] validatorLatency;
+        private final long documentCount;
+        private final long unsignedDocumentCount;
+
+        private Snapshot(long[] admissions, Map<Integer, long[]> companyRejections, long signed, long notSigned,
+                         LatencyHistogram.Snapshot admissionLatency, LatencyHistogram.Snapshot signingLatency,
+                         LatencyHistogram.Snapshot[] validatorLatency, long documentCount, long unsignedDocumentCount) {
+            this.admissions = admissions;
+            this.companyRejections = companyRejections;
+            this.signed = signed;
+            this.notSigned = notSigned;
+            this.admissionLatency = admissionLatency;
+            this.signingLatency = signingLatency;
+            this.validatorLatency = validatorLatency;
+            this.documentCount = documentCount;
+            this.unsignedDocumentCount = unsignedDocumentCount;
+        }
+
+        /**
+         * Получить количество добавлений документов с указанным результатом
+         * @param status результат добавления {@link AdmissionStatus}
+         * @return количество добавлений
+         */
+        public long getAdmissionCount(byte status) {
+            return admissions[status];
+        }
+
+        /**
+         * Получить количество отказов в добавлении документа из-за ограничения компании
+         * @param companyId идентификатор компании
+         * @param status результат добавления {@link AdmissionStatus}
+         * @return количество отказов
+         */
+        public long getCompanyRejectionCount(int companyId, byte status) {
+            long[] counts = companyRejections.get(companyId);
+            return counts == null ? 0L : counts[status];
+        }
+
+        /**
+         * Получить идентификаторы компаний, по которым были отказы
+         * @return идентификаторы компаний по возрастанию
+         */
+        public Iterable<Integer> getRejectedCompanyIds() {
+            return Collections.unmodifiableSet(companyRejections.keySet());
+        }
+
+        /**
+         * Получить количество подписаний документов
+         * @param success true - успешные подписания, false - подписания, после которых документ не подписан
+         * @return количество подписаний
+         */
+        public long getSigningCount(boolean success) {
+            return success ? signed : notSigned;
+        }
+
+        /**
+         * Получить гистограмму задержек добавления документа
+         * @return снимок гистограммы
+         */
+        public LatencyHistogram.Snapshot getAdmissionLatency() {
+            return admissionLatency;
+        }
+
+        /**
+         * Получить гистограмму задержек подписания документа
+         * @return снимок гистограммы
+         */
+        public LatencyHistogram.Snapshot getSigningLatency() {
+            return signingLatency;
+        }
+
+        /**
+         * Получить гистограмму задержек проверки ограничения
+         * @param validator проверка, например {@link #VALIDATOR_WORKFLOW_LIMIT}
+         * @return снимок гистограммы
+         */
+        public LatencyHistogram.Snapshot getValidatorLatency(byte validator) {
+            return validatorLatency[validator];
+        }
+
+        /**
+         * Получить количество документов в хранилище
+         * @return количество документов
+         */
+        public long getDocumentCount() {
+            return documentCount;
+        }
+
+        /**
+         * Получить количество неподписанных документов в системе
+         * @return количество неподписанных документов
+         */
+        public long getUnsignedDocumentCount() {
+            return unsignedDocumentCount;
+        }
+
+        /**
+         * Выгрузить метрики в текстовом формате Prometheus
+         * @param out получатель текста
+         * @throws IOException ошибка записи
+         */
+        public void export(Appendable out) throws IOException {
+
+            out.append("# TYPE workflow_admissions_total counter\n");
+            for (int i = 0; i < admissions.length; i++) {
+                out.append("workflow_admissions_total{status=\"").append(STATUS_NAMES[i]).append("\"} ")
+                        .append(Long.toString(admissions[i])).append('\n');
+            }
+
+            out.append("# TYPE workflow_company_rejections_total counter\n");
+            for (Map.Entry<Integer, long[]> entry : companyRejections.entrySet()) {
+                long[] counts = entry.getValue();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] != 0L) {
+                        out.append("workflow_company_rejections_total{company=\"").append(entry.getKey().toString())
+                                .append("\",status=\"").append(STATUS_NAMES[i]).append("\"} ")
+                                .append(Long.toString(counts[i])).append('\n');
+                    }
+                }
+            }
+
+            out.append("# TYPE workflow_signings_total counter\n");
+            out.append("workflow_signings_total{result=\"signed\"} ").append(Long.toString(signed)).append('\n');
+            out.append("workflow_signings_total{result=\"not_signed\"} ").append(Long.toString(notSigned)).append('\n');
+
+            out.append("# TYPE workflow_documents gauge\n");
+            out.append("workflow_documents ").append(Long.toString(documentCount)).append('\n');
+            out.append("# TYPE workflow_unsigned_documents gauge\n");
+            out.append("workflow_unsigned_documents ").append(Long.toString(unsignedDocumentCount)).append('\n');
+
+            exportLatency(out, "workflow_admission_latency_seconds", "", admissionLatency);
+            exportLatency(out, "workflow_signing_latency_seconds", "", signingLatency);
+            out.append("# TYPE workflow_validator_latency_seconds summary\n");
+            for (int i = 0; i < validatorLatency.length; i++) {
+                exportSummary(out, "workflow_validator_latency_seconds",
+                        "validator=\"" + VALIDATOR_NAMES[i] + "\"", validatorLatency[i]);
+            }
+
+        }
+
+        /**
+         * Выгрузить гистограмму задержек как summary Prometheus
+         * @param out получатель текста
+         * @param name имя метрики
+         * @param labels метки через запятую (может быть пустой строкой)
+         * @param latency снимок гистограммы
+         * @throws IOException ошибка записи
+         */
+        private static void exportLatency(Appendable out, String name, String labels, LatencyHistogram.Snapshot latency)
+                throws IOException {
+            out.append("# TYPE ").append(name).append(" summary\n");
+            exportSummary(out, name, labels, latency);
+        }
+
+        /**
+         * Выгрузить процентили, сумму и количество гистограммы задержек
+         * @param out получатель текста
+         * @param name имя метрики
+         * @param labels метки через запятую (может быть пустой строкой)
+         * @param latency снимок гистограммы
+         * @throws IOException ошибка записи
+         */
+        private static void exportSummary(Appendable out, String name, String labels, LatencyHistogram.Snapshot latency)
+                throws IOException {
+
+            String separator = labels.isEmpty() ? "" : ",";
+
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{").append(labels).append(separator)
+                        .append("quantile=\"").append(Double.toString(quantile)).append("\"} ")
+                        .append(Double.toString(latency.getPercentile(quantile) / 1e9)).append('\n');
+            }
+
+            String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+            out.append(name).append("_sum").append(suffix).append(Double.toString(latency.getSum() / 1e9)).append('\n');
+            out.append(name).append("_count").append(suffix).append(Long.toString(latency.getCount())).append('\n');
+
+        }
+
+    }
+
+}
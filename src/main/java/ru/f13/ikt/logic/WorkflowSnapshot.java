@@ -0,0 +1,442 @@
+package ru.f13.ikt.logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Класс описывает снимок состояния системы документооборота: документы, их подписи, документы в наличии
+ * у компаний в порядке получения и окна созданных компаниями документов.
+ * Снимок снимается без остановки работы с системой и хранит позицию журнала, записанную до начала снятия,
+ * поэтому вместе с записями журнала после этой позиции он восстанавливает состояние системы.
+ * Формат файла: [признак:4][сегмент журнала:8][смещение в сегменте:4][количество документов:4][количество компаний:4],
+ * затем документы [идентификатор:8][компания 1:4][компания 2:4][создатель:4][время создания:8][подписи:1]
+ * [количество дополнительных сторон:1][компании дополнительных сторон:4*n],
+ * затем компании [идентификатор:4][размер окна:4][количество отметок:4][отметки:8*n][количество документов:4][идентификаторы:8*n],
+ * затем [длина журнала архива:8]. Документы архива не копируются в снимок: они дописываются в журнал архива
+ * {@link WorkflowArchiveLog} при переносе, а снимок хранит длину журнала архива, взятую после обхода хранилища.
+ * Файл записывается и читается частями, поэтому размер снимка не ограничен размером отображения в память.
+ * Снимки прежних форматов (документы без дополнительных сторон; документы архива в конце снимка
+ * [количество документов архива:4] в формате документов) загружаются по своему признаку,
+ * а их документы архива дописываются в журнал архива
+ */
+final class WorkflowSnapshot {
+
+    private static final int MAGIC_TWO_PARTIES = 0x57465331;
+    private static final int MAGIC_ARCHIVED = 0x57465332;
+    private static final int MAGIC = 0x57465333;
+    private static final int HEADER_SIZE = 24;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Размер записи документа без компаний дополнительных сторон
+     */
+    static final int DOCUMENT_SIZE = 30;
+
+    private final long position;
+    private long archiveLength;
+
+    private int documentCount;
+    private long[] ids = new long[1024];
+    private int[] company1Ids = new int[1024];
+    private int[] company2Ids = new int[1024];
+    private int[] creatorIds = new int[1024];
+    private long[] createdMillis = new long[1024];
+    private byte[] signatures = new byte[1024];
+    private int[][] additionalPartyIds = new int[1024][];
+
+    private int companyCount;
+    private int[] companyIds = new int[16];
+    private int[] limiterCapacities = new int[16];
+    private long[][] limiterMillis = new long[16][];
+    private long[][] heldIds = new long[16][];
+
+    /**
+     * Конструктор для объекта снимка
+     * @param position позиция журнала, после которой записи не учтены в снимке
+     */
+    private WorkflowSnapshot(long position) {
+        this.position = position;
+    }
+
+    /**
+     * Снять состояние системы документооборота в память
+     * @param workflow система документооборота
+     * @param companies компании, документы и окна которых сохраняются в снимке
+     * @param position позиция журнала, взятая до начала снятия
+     * @param archiveLength длина журнала архива
+     * @return снимок
+     */
+    static WorkflowSnapshot capture(SystemWorkflow workflow, Collection<Company> companies, long position,
+                                    LongSupplier archiveLength) {
+
+        WorkflowSnapshot snapshot = new WorkflowSnapshot(position);
+
+        workflow.forEachDocument(document -> {
+            //документ мог быть удален во время обхода
+            if (workflow.isContainsDocument(document)) {
+                snapshot.addDocument(document);
+            }
+        });
+
+        //документ дописывается в журнал архива до удаления из хранилища, поэтому документ,
+        //перенесенный во время обхода, попадет в снимок или в журнал архива до взятой длины
+        snapshot.archiveLength = archiveLength.getAsLong();
+
+        for (Company company : companies) {
+
+            long[] held = company.getDocumentIds();
+
+            CreateDocumentLimiter limiter = company.getCreateDocumentLimiter();
+            snapshot.addCompany(company.getId(), limiter.capacity(), limiter.toArray(), held);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Получить позицию журнала снимка
+     * @return позиция журнала: номер сегмента в старших 32 битах, смещение в младших
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Записать снимок в файл. Снимок записывается во временный файл и затем переименовывается,
+     * поэтому файл снимка всегда записан полностью
+     * @param file файл снимка
+     * @throws IOException ошибка записи файла
+     */
+    void write(Path file) throws IOException {
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            ChannelWriter writer = new ChannelWriter(channel, 0L, BUFFER_SIZE);
+
+            ByteBuffer buffer = writer.reserve(HEADER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putLong(position >>> 32);
+            buffer.putInt((int) position);
+            buffer.putInt(documentCount);
+            buffer.putInt(companyCount);
+
+            for (int i = 0; i < documentCount; i++) {
+                putDocument(writer.reserve(DOCUMENT_SIZE + 4 * (Document.MAX_PARTIES - 2)), ids[i],
+                        company1Ids[i], company2Ids[i], creatorIds[i], createdMillis[i], signatures[i],
+                        additionalPartyIds[i]);
+            }
+
+            for (int i = 0; i < companyCount; i++) {
+                buffer = writer.reserve(12);
+                buffer.putInt(companyIds[i]);
+                buffer.putInt(limiterCapacities[i]);
+                buffer.putInt(limiterMillis[i].length);
+                for (long millis : limiterMillis[i]) {
+                    writer.reserve(8).putLong(millis);
+                }
+                writer.reserve(4).putInt(heldIds[i].length);
+                for (long id : heldIds[i]) {
+                    writer.reserve(8).putLong(id);
+                }
+            }
+
+            writer.reserve(8).putLong(archiveLength);
+
+            writer.flush();
+            channel.force(false);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
+    /**
+     * Загрузить снимок из файла в систему документооборота без документов
+     * @param file файл снимка
+     * @param workflow система документооборота
+     * @param companies компании по идентификатору
+     * @param watermarks последние отметки окон созданных документов по идентификатору компании,
+     *                   заполняются при загрузке
+     * @param archiveLog журнал архива, документы которого до длины в снимке помещаются в архив
+     * @return позиция журнала снимка
+     * @throws IOException ошибка чтения файла
+     */
+    static long load(Path file, SystemWorkflow workflow, IntFunction<Company> companies, Map<Integer, Long> watermarks,
+                     WorkflowArchiveLog archiveLog) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            ChannelReader reader = new ChannelReader(channel, 0L, channel.size(), BUFFER_SIZE);
+
+            ByteBuffer buffer = read(reader, HEADER_SIZE);
+            int magic = buffer.getInt();
+            if (magic != MAGIC && magic != MAGIC_ARCHIVED && magic != MAGIC_TWO_PARTIES) {
+                throw new IOException("not a workflow snapshot: " + file);
+            }
+            boolean parties = magic != MAGIC_TWO_PARTIES;
+
+            long position = (buffer.getLong() << 32) | (buffer.getInt() & 0xFFFFFFFFL);
+            int documentCount = buffer.getInt();
+            int companyCount = buffer.getInt();
+
+            for (int i = 0; i < documentCount; i++) {
+                workflow.restoreDocument(readDocument(reader, companies, parties));
+            }
+
+            for (int i = 0; i < companyCount; i++) {
+
+                buffer = read(reader, 12);
+                Company company = company(companies, buffer.getInt());
+
+                CreateDocumentLimiter limiter = company.getCreateDocumentLimiter();
+                limiter.ensureCapacity(buffer.getInt());
+                int limiterCount = buffer.getInt();
+                long last = Long.MIN_VALUE;
+                for (int j = 0; j < limiterCount; j++) {
+                    last = read(reader, 8).getLong();
+                    limiter.record(last);
+                }
+                watermarks.put(company.getId(), last);
+
+                int heldCount = read(reader, 4).getInt();
+                for (int j = 0; j < heldCount; j++) {
+                    //документы, добавленные в систему после снятия, восстанавливаются из журнала
+                    Document document = workflow.getDocument(read(reader, 8).getLong());
+                    if (document != null) {
+                        company.store(document);
+                    }
+                }
+            }
+
+            //без архива документ остается в хранилище, чтобы не быть потерянным
+            DocumentArchive archive = workflow.getArchive();
+            Consumer<Document> archived = archive != null ? archive::add : workflow::restoreDocument;
+
+            if (magic == MAGIC) {
+                archiveLog.recover(read(reader, 8).getLong(), companies, archived);
+                return position;
+            }
+
+            //документы архива прежнего формата дописываются в журнал архива, чтобы их сохранил следующий снимок
+            archiveLog.recover(0L, companies, null);
+            int archivedCount = read(reader, 4).getInt();
+            for (int i = 0; i < archivedCount; i++) {
+                Document document = readDocument(reader, companies, parties);
+                archived.accept(document);
+                if (archive != null) {
+                    archiveLog.append(document);
+                }
+            }
+
+            return position;
+        }
+
+    }
+
+    /**
+     * Записать документ в формате документов снимка
+     * @param buffer буфер записи
+     * @param document документ
+     */
+    static void putDocument(ByteBuffer buffer, Document document) {
+
+        Company[] parties = document.getAdditionalParties();
+        int[] partyIds = null;
+        if (parties.length > 0) {
+            partyIds = new int[parties.length];
+            for (int i = 0; i < parties.length; i++) {
+                partyIds[i] = companyId(parties[i]);
+            }
+        }
+
+        putDocument(buffer, document.getId(), companyId(document.getCompany1()), companyId(document.getCompany2()),
+                companyId(document.getCreator()), document.getCreatedMillis(), document.getSignatures(), partyIds);
+    }
+
+    /**
+     * Записать документ снимка
+     * @param buffer буфер записи
+     * @param id идентификатор документа
+     * @param company1Id идентификатор компании 1 стороны
+     * @param company2Id идентификатор компании 2 стороны
+     * @param creatorId идентификатор компании-создателя
+     * @param createdMillis время создания
+     * @param signatures битовая маска подписей
+     * @param parties идентификаторы компаний дополнительных сторон (может быть null)
+     */
+    private static void putDocument(ByteBuffer buffer, long id, int company1Id, int company2Id, int creatorId,
+                                    long createdMillis, byte signatures, int[] parties) {
+
+        buffer.putLong(id);
+        buffer.putInt(company1Id);
+        buffer.putInt(company2Id);
+        buffer.putInt(creatorId);
+        buffer.putLong(createdMillis);
+        buffer.put(signatures);
+
+        buffer.put((byte) (parties == null ? 0 : parties.length));
+        if (parties != null) {
+            for (int partyId : parties) {
+                buffer.putInt(partyId);
+            }
+        }
+
+    }
+
+    /**
+     * Прочитать документ снимка частями
+     * @param reader чтение файла снимка
+     * @param companies компании по идентификатору
+     * @param parties true - запись документа содержит дополнительные стороны
+     * @return документ
+     * @throws IOException снимок записан не полностью или ошибка чтения файла
+     */
+    private static Document readDocument(ChannelReader reader, IntFunction<Company> companies, boolean parties)
+            throws IOException {
+
+        ByteBuffer buffer = read(reader, parties ? DOCUMENT_SIZE : DOCUMENT_SIZE - 1);
+        if (parties) {
+            read(reader, DOCUMENT_SIZE + 4 * buffer.get(buffer.position() + DOCUMENT_SIZE - 1));
+        }
+
+        return getDocument(buffer, companies, parties);
+    }
+
+    /**
+     * Дочитать в буфер заданное количество байт снимка
+     * @param reader чтение файла снимка
+     * @param count количество байт
+     * @return буфер с непрочитанными байтами
+     * @throws IOException снимок записан не полностью или ошибка чтения файла
+     */
+    private static ByteBuffer read(ChannelReader reader, int count) throws IOException {
+
+        if (!reader.request(count)) {
+            throw new IOException("workflow snapshot is truncated at " + reader.offset());
+        }
+
+        return reader.buffer();
+    }
+
+    /**
+     * Прочитать документ снимка из буфера, содержащего всю запись документа
+     * @param buffer буфер с записью документа
+     * @param companies компании по идентификатору
+     * @param parties true - запись документа содержит дополнительные стороны
+     * @return документ
+     */
+    static Document getDocument(ByteBuffer buffer, IntFunction<Company> companies, boolean parties) {
+
+        long id = buffer.getLong();
+        Company company1 = company(companies, buffer.getInt());
+        Company company2 = company(companies, buffer.getInt());
+        Company creator = company(companies, buffer.getInt());
+        long created = buffer.getLong();
+        byte signatures = buffer.get();
+
+        Company[] additionalParties = new Company[parties ? buffer.get() : 0];
+        for (int i = 0; i < additionalParties.length; i++) {
+            additionalParties[i] = company(companies, buffer.getInt());
+        }
+
+        Document document = new Document(id, company1, company2, additionalParties, created);
+        document.setCreator(creator);
+        document.restoreSignatures(signatures);
+
+        return document;
+    }
+
+    /**
+     * Получить компанию по идентификатору
+     * @param companies компании по идентификатору
+     * @param id идентификатор компании, 0 - компания отсутствует
+     * @return компания или null
+     */
+    private static Company company(IntFunction<Company> companies, int id) {
+        return id == 0 ? null : companies.apply(id);
+    }
+
+    /**
+     * Добавить документ в снимок
+     * @param document документ
+     */
+    private void addDocument(Document document) {
+
+        if (documentCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            company1Ids = Arrays.copyOf(company1Ids, capacity);
+            company2Ids = Arrays.copyOf(company2Ids, capacity);
+            creatorIds = Arrays.copyOf(creatorIds, capacity);
+            createdMillis = Arrays.copyOf(createdMillis, capacity);
+            signatures = Arrays.copyOf(signatures, capacity);
+            additionalPartyIds = Arrays.copyOf(additionalPartyIds, capacity);
+        }
+
+        int i = documentCount++;
+        ids[i] = document.getId();
+        company1Ids[i] = companyId(document.getCompany1());
+        company2Ids[i] = companyId(document.getCompany2());
+        creatorIds[i] = companyId(document.getCreator());
+        createdMillis[i] = document.getCreatedMillis();
+        signatures[i] = document.getSignatures();
+
+        Company[] parties = document.getAdditionalParties();
+        if (parties.length > 0) {
+            int[] ids = new int[parties.length];
+            for (int j = 0; j < parties.length; j++) {
+                ids[j] = companyId(parties[j]);
+            }
+            additionalPartyIds[i] = ids;
+        }
+
+    }
+
+    /**
+     * Добавить компанию в снимок
+     * @param id идентификатор компании
+     * @param capacity размер окна созданных документов
+     * @param limiter отметки окна созданных документов
+     * @param held идентификаторы документов в наличии
+     */
+    private void addCompany(int id, int capacity, long[] limiter, long[] held) {
+
+        if (companyCount == companyIds.length) {
+            int length = companyIds.length * 2;
+            companyIds = Arrays.copyOf(companyIds, length);
+            limiterCapacities = Arrays.copyOf(limiterCapacities, length);
+            limiterMillis = Arrays.copyOf(limiterMillis, length);
+            heldIds = Arrays.copyOf(heldIds, length);
+        }
+
+        int i = companyCount++;
+        companyIds[i] = id;
+        limiterCapacities[i] = capacity;
+        limiterMillis[i] = limiter;
+        heldIds[i] = held;
+
+    }
+
+    /**
+     * Получить идентификатор компании
+     * @param company компания (может быть null)
+     * @return идентификатор компании, 0 - компания отсутствует
+     */
+    private static int companyId(Company company) {
+        return company == null ? 0 : company.getId();
+    }
+
+}
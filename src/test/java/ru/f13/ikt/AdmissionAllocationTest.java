@@ -0,0 +1,211 @@
+package ru.f13.ikt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Тесты памяти, выделяемой потоком при добавлении и подписании документов.
+ * Объем выделенной памяти читается из {@link com.sun.management.ThreadMXBean}; тесты пропускаются,
+ * если виртуальная машина его не поддерживает
+ */
+public class AdmissionAllocationTest {
+
+    private static final long NOON = 12 * 60 * 60 * 1000L;
+    private static final int WARMUP = 2_000;
+    private static final int ROUNDS = 5;
+    private static final int ROUND = 1_000;
+    private static final int COUNT = WARMUP + ROUNDS * ROUND;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        //часовой пояс с переходами проверяет время документов без создания объектов даты
+        WorkflowClock.setClock(new ManualClock(NOON, ZoneId.of("Europe/Berlin")));
+    }
+
+    @After
+    public void resetClock() {
+        WorkflowClock.setClock(null);
+    }
+
+    /**
+     * Подписать документы без выделения памяти
+     */
+    @Test
+    public void signDocumentsWithoutAllocation() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        //документы, добавленные в ограниченное время, остаются неподписанными
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                false, 10,
+                false, 10, 1,
+                false, 10)
+        );
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            Document document = company1.createDocument(company2);
+            Assert.assertFalse(systemWorkflow.addDocument1(document));
+            documents.add(document);
+        }
+
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "00:01",
+                false, 10,
+                false, 10, 1,
+                false, 10)
+        );
+
+        long allocated = minAllocatedBytes(documents, document -> systemWorkflow.signingDocument(document, company1));
+
+        Assert.assertTrue(documents.get(COUNT - 1).isSigning(company1));
+        Assert.assertEquals(0L, allocated);
+    }
+
+    /**
+     * Отклонить документы по ограничениям без выделения памяти
+     */
+    @Test
+    public void rejectDocumentsWithoutAllocation() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 10,
+                true, 10, 1,
+                true, 1)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        //неподписанный документ пары не позволяет добавить следующие документы этой пары
+        Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            documents.add(company2.createDocument(company1));
+        }
+
+        long allocated = minAllocatedBytes(documents, systemWorkflow::addDocument1);
+
+        Assert.assertFalse(systemWorkflow.isContainsDocument(documents.get(COUNT - 1)));
+        Assert.assertEquals(0L, allocated);
+    }
+
+    /**
+     * Добавить и подписать документы без выделения памяти, кроме расширения хранилища.
+     * Столбцы и индекс {@link ColumnarDocumentRepository} расширяются в разы, поэтому в части серий
+     * хранилище не расширяется и добавление не должно выделять память
+     */
+    @Test
+    public void admitDocumentsWithoutAllocation() {
+        Assert.assertEquals(0L, admitDocuments(new SystemWorkflow(new ColumnarDocumentRepository()), false));
+    }
+
+    /**
+     * Добавить и подписать документы в хранилище по умолчанию без выделения памяти, кроме расширения хранилища
+     */
+    @Test
+    public void admitDocumentsToDefaultRepositoryWithoutAllocation() {
+        Assert.assertEquals(0L, admitDocuments(new SystemWorkflow(), false));
+    }
+
+    /**
+     * Добавить и подписать документы с ограничением на создание документов компанией без выделения памяти,
+     * кроме расширения хранилища
+     */
+    @Test
+    public void admitDocumentsWithCreateDocumentLimitWithoutAllocation() {
+        Assert.assertEquals(0L, admitDocuments(new SystemWorkflow(), true));
+    }
+
+    /**
+     * Добавить и подписать документы сериями
+     * @param systemWorkflow система документооборота
+     * @param isCompanyCreateDocumentLimit ограничение на создание документов компанией, больше количества документов
+     * @return наименьший объем памяти за серию в байтах
+     */
+    private long admitDocuments(SystemWorkflow systemWorkflow, boolean isCompanyCreateDocumentLimit) {
+
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "00:01",
+                true, 10,
+                isCompanyCreateDocumentLimit, 2 * COUNT, 1,
+                true, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            documents.add(company1.createDocument(company2));
+        }
+
+        long allocated = minAllocatedBytes(documents, document -> Assert.assertTrue(systemWorkflow.addDocument1(document)));
+
+        Assert.assertTrue(systemWorkflow.getDocument(documents.get(COUNT - 1).getId()).isSigning());
+
+        return allocated;
+    }
+
+    /**
+     * Выполнить действие с документами сериями и получить наименьший объем памяти, выделенной за серию.
+     * Компиляция и деоптимизация кода изредка выделяют память в отдельной серии, а выделение памяти
+     * в самом действии повторяется в каждой серии
+     * @param documents документы: сначала для прогрева, затем для серий
+     * @param action действие с документом
+     * @return наименьший объем памяти за серию в байтах
+     */
+    private long minAllocatedBytes(List<Document> documents, Consumer<Document> action) {
+
+        for (int i = 0; i < WARMUP; i++) {
+            action.accept(documents.get(i));
+        }
+
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+
+            int from = WARMUP + round * ROUND;
+            long before = allocatedBytes();
+            for (int i = from; i < from + ROUND; i++) {
+                action.accept(documents.get(i));
+            }
+            min = Math.min(min, allocatedBytes() - before);
+        }
+
+        return min;
+    }
+
+    /**
+     * Получить объем памяти, выделенной текущим потоком
+     * @return объем памяти в байтах
+     */
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
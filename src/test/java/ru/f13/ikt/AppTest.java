@@ -4,6 +4,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import ru.f13.ikt.logic.*;
 
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
 import static org.junit.Assert.*;
 
 /**
@@ -100,6 +105,117 @@ public class AppTest
         Assert.assertFalse(actual);
     }
 
+    /**
+     * Превысить лимит созданных документов компанией, больший количества отметок окна по умолчанию,
+     * в том числе после увеличения лимита
+     */
+    @Test
+    public void exceedLargeCompanyCreateDocumentLimit() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 100, 1,
+                false, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        for (int i = 0; i < 100; i++) {
+            company1.createDocument(company2);
+        }
+        Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+        Company1 company3 = new Company1();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 10, 1,
+                false, 10)
+        );
+        Assert.assertTrue(systemWorkflow.addDocument1(company3.createDocument(company2)));
+
+        //лимит увеличен после проверки: созданные ранее документы по-прежнему учитываются
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 30, 1,
+                false, 10)
+        );
+        for (int i = 0; i < 40; i++) {
+            company3.createDocument(company2);
+        }
+        Assert.assertFalse(systemWorkflow.addDocument1(company3.createDocument(company2)));
+    }
+
+    /**
+     * Добавить документы при наибольшем значении ограничения на создание документов компанией
+     */
+    @Test
+    public void addDocumentsWithMaxCompanyCreateDocumentLimit() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, Integer.MAX_VALUE, 1,
+                false, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document document = company1.createDocument(company2);
+        Assert.assertTrue(systemWorkflow.addDocument1(document));
+        Assert.assertTrue(systemWorkflow.isContainsDocument(document));
+
+        //индивидуальное значение компании
+        Company1 company3 = new Company1();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 1, 1,
+                false, 10).withOverrides(new LimitOverrides().companyCreateDocumentLimit(company3.getId(), Integer.MAX_VALUE))
+        );
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(systemWorkflow.addDocument1(company3.createDocument(company2)));
+        }
+    }
+
+    /**
+     * Не учитывать полученные передачей документы в ограничении на создание документов компанией
+     */
+    @Test
+    public void doNotCountTransferredDocumentsAsCreated() {
+
+        int limit = 10;
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, limit, 1,
+                true, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        //передать второй компании документов больше ограничения
+        for (int i = 0; i < limit; i++) {
+            systemWorkflow.addDocument1(company1.createDocument(company2));
+        }
+
+        Assert.assertTrue(company2.getDocuments().size() >= limit);
+
+        boolean actual = systemWorkflow.addDocument1(company2.createDocument(company1));
+
+        Assert.assertTrue(actual);
+    }
+
     /**
      * Превысить количество допустимых документоборотов между компаниями
      */
@@ -133,6 +249,91 @@ public class AppTest
         Assert.assertFalse(actual);
     }
 
+    /**
+     * Освободить лимит документооборота между компаниями удалением неподписанного документа
+     */
+    @Test
+    public void removeDocumentReleasesWorkflowLimit() {
+
+        int limit = 3;
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 10, 1,
+                true, limit)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        //добавить документов до ограничения и сбросить их подписания
+        Document removed = null;
+        for (int i = 0; i < limit; i++) {
+            removed = company1.createDocument(company2);
+            systemWorkflow.addDocument1(removed);
+            removed.resetSigning();
+        }
+
+        Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+        systemWorkflow.removeDocument(removed);
+
+        Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(company2)));
+    }
+
+    /**
+     * Добавить пакет документов с тем же результатом, что и при добавлении по одному
+     */
+    @Test
+    public void addDocumentsLikeOneByOne() {
+
+        Settings settings = Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 5,
+                true, 4, 1,
+                true, 3);
+
+        //документы созданы в ограниченное время, поэтому не подписываются и остаются неподписанными
+        WorkflowClock.setClock(new ManualClock(12 * 60 * 60 * 1000L, ZoneOffset.UTC));
+        try {
+
+            SystemWorkflow sequential = new SystemWorkflow();
+            sequential.setSettings(settings);
+            SystemWorkflow batch = new SystemWorkflow();
+            batch.setSettings(settings);
+
+            Company[] companies1 = {new Company1(), new Company1(), new Company2()};
+            Company[] companies2 = {new Company1(), new Company1(), new Company2()};
+
+            List<Document> documents1 = new ArrayList<>();
+            List<Document> documents2 = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                int a = i % 3;
+                int b = (i / 3 + 1 + a) % 3;
+                documents1.add(companies1[a].createDocument(companies1[b]));
+                documents2.add(companies2[a].createDocument(companies2[b]));
+            }
+
+            for (Document document : documents1) {
+                sequential.addDocument1(document);
+            }
+            byte[] results = batch.addDocuments(documents2);
+
+            Assert.assertEquals(documents2.size(), results.length);
+            for (int i = 0; i < results.length; i++) {
+                Assert.assertEquals(sequential.isContainsDocument(documents1.get(i)), AdmissionStatus.isAdded(results[i]));
+                Assert.assertEquals(batch.isContainsDocument(documents2.get(i)), AdmissionStatus.isAdded(results[i]));
+            }
+
+            Assert.assertEquals(AdmissionStatus.REJECTED_COMPANY_CREATE_DOCUMENT_LIMIT, results[results.length - 1]);
+
+        } finally {
+            WorkflowClock.setClock(null);
+        }
+    }
+
     /**
      * Превысить значения ограничений и выключить проверку ограничений
      */
@@ -189,6 +390,124 @@ public class AppTest
         Assert.assertTrue(actual);
     }
 
+    /**
+     * Получить документы компании в порядке получения в представлении только для чтения
+     */
+    @Test
+    public void getDocumentsInOrderAndReadOnly() {
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document document1 = company1.createDocument(company2);
+        Document document2 = company1.createDocument(company2);
+        Document document3 = company1.createDocument(company2);
+
+        company1.transferDocument(document2, company2);
+        company2.transferDocument(document2, company1);
+
+        Assert.assertArrayEquals(new Document[]{document1, document3, document2}, company1.getDocuments().toArray());
+        Assert.assertTrue(company1.isContainsDocument(document2));
+        Assert.assertFalse(company2.isContainsDocument(document2));
+
+        try {
+            company1.getDocuments().clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(3, company1.getDocuments().size());
+        }
+    }
+
+    /**
+     * Сохранить порядок получения документов после передачи большей части документов другой компании
+     */
+    @Test
+    public void keepDocumentsOrderAfterTransfers() {
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Document> kept = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Document document = company1.createDocument(company2);
+            if (i % 3 == 0) {
+                kept.add(document);
+            } else {
+                company1.transferDocument(document, company2);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            kept.add(company1.createDocument(company2));
+        }
+
+        Assert.assertArrayEquals(kept.toArray(), company1.getDocuments().toArray());
+        Assert.assertSame(kept.get(kept.size() - 1), company1.getDocuments().get(kept.size() - 1));
+        Assert.assertEquals(kept, company1.getDocuments());
+        Assert.assertEquals(66, company2.getDocuments().size());
+        Assert.assertTrue(company1.isContainsDocument(kept.get(0)));
+        Assert.assertFalse(company1.isContainsDocument(company2.getDocuments().iterator().next()));
+    }
+
+    /**
+     * Найти номера документов и обойти документы в обе стороны после передачи документов из середины порядка
+     */
+    @Test
+    public void findDocumentsIndexAfterTransfers() {
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Document> kept = new ArrayList<>();
+        Document transferred = null;
+        for (int i = 0; i < 10; i++) {
+            Document document = company1.createDocument(company2);
+            if (i == 2 || i == 5) {
+                company1.transferDocument(document, company2);
+                transferred = document;
+            } else {
+                kept.add(document);
+            }
+        }
+
+        List<Document> documents = company1.getDocuments();
+        for (int i = 0; i < kept.size(); i++) {
+            Assert.assertEquals(i, documents.indexOf(kept.get(i)));
+            Assert.assertEquals(i, documents.lastIndexOf(kept.get(i)));
+        }
+        Assert.assertEquals(-1, documents.indexOf(transferred));
+        Assert.assertEquals(kept.hashCode(), documents.hashCode());
+
+        ListIterator<Document> iterator = documents.listIterator(kept.size());
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            Assert.assertEquals(i, iterator.previousIndex());
+            Assert.assertSame(kept.get(i), iterator.previous());
+        }
+        Assert.assertFalse(iterator.hasPrevious());
+        Assert.assertSame(kept.get(0), iterator.next());
+        Assert.assertEquals(kept.subList(3, 6), documents.subList(3, 6));
+    }
+
+    /**
+     * Найти документ системы по уникальному идентификатору
+     */
+    @Test
+    public void getDocumentById() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document document1 = company1.createDocument(company2);
+        Document document2 = company1.createDocument(company2);
+        systemWorkflow.addDocument1(document1);
+
+        Assert.assertNotEquals(document1.getId(), document2.getId());
+        Assert.assertNotEquals(document1.getName(), document2.getName());
+        Assert.assertSame(document1, systemWorkflow.getDocument(document1.getId()));
+        Assert.assertNull(systemWorkflow.getDocument(document2.getId()));
+    }
+
     /**
      * Тест примера сценария 2, без системы и ограничений
      */
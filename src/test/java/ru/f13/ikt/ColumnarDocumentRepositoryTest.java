@@ -0,0 +1,114 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+/**
+ * Тесты системы документооборота с хранилищем документов по столбцам
+ */
+public class ColumnarDocumentRepositoryTest {
+
+    /**
+     * Подписать документ обеими сторонами и найти его представление по идентификатору
+     */
+    @Test
+    public void signAndGetDocumentView() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(new ColumnarDocumentRepository());
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 10, 1,
+                true, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document document = company1.createDocument(company2);
+
+        Assert.assertTrue(systemWorkflow.addDocument1(document));
+
+        Document view = systemWorkflow.getDocument(document.getId());
+
+        Assert.assertNotSame(document, view);
+        Assert.assertEquals(document, view);
+        Assert.assertSame(company1, view.getCompany1());
+        Assert.assertSame(company2, view.getCompany2());
+        Assert.assertTrue(view.isSigning());
+        Assert.assertTrue(company2.isContainsDocument(view));
+        Assert.assertEquals(document.getDate().withNano(0), view.getDate().withNano(0));
+
+        //изменение через представление видно через исходный документ
+        view.resetSigning();
+        Assert.assertFalse(document.isSigning());
+    }
+
+    /**
+     * Превысить количество допустимых документоборотов между компаниями
+     */
+    @Test
+    public void exceedWorkflowLimit() {
+
+        int limit = 10;
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(new ColumnarDocumentRepository());
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 100,
+                true, 100, 1,
+                true, limit)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document last = null;
+        for (int i = 0; i < limit; i++) {
+            last = company1.createDocument(company2);
+            systemWorkflow.addDocument1(last);
+            //сбросить подписания
+            last.resetSigning();
+        }
+
+        Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+        //удаленный документ сохраняет свое состояние
+        systemWorkflow.removeDocument(last);
+        Assert.assertFalse(systemWorkflow.isContainsDocument(last));
+        Assert.assertSame(company1, last.getCompany1());
+        Assert.assertNull(systemWorkflow.getDocument(last.getId()));
+
+        Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(company2)));
+    }
+
+    /**
+     * Встречное предложение изменяет стороны документа в хранилище
+     */
+    @Test
+    public void changeDocumentInRepository() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(new ColumnarDocumentRepository());
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 10,
+                false, 10, 1,
+                false, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document document = company1.createDocument(company2);
+        systemWorkflow.addDocument1(document);
+
+        company2.changeDocument(document);
+
+        Document view = systemWorkflow.getDocument(document.getId());
+        Assert.assertSame(company2, view.getCompany1());
+        Assert.assertSame(company1, view.getCompany2());
+        Assert.assertFalse(view.isSigning());
+    }
+
+}
@@ -0,0 +1,171 @@
+package ru.f13.ikt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Тесты системы документооборота при одновременной работе потоков
+ */
+public class ConcurrentSystemWorkflowTest {
+
+    private static final int THREADS = 8;
+    private static final long NOON = 12 * 60 * 60 * 1000L;
+
+    @After
+    public void resetClock() {
+        WorkflowClock.setClock(null);
+    }
+
+    /**
+     * Не превысить лимит документооборота между компаниями при одновременном добавлении документов
+     */
+    @Test
+    public void doNotExceedWorkflowLimitConcurrently() throws Exception {
+
+        int limit = 100;
+
+        //документы созданы в ограниченное время, поэтому не подписываются и остаются неподписанными
+        WorkflowClock.setClock(new ManualClock(NOON, ZoneOffset.UTC));
+        SystemWorkflow systemWorkflow = SystemWorkflow.createConcurrentSystemWorkflow(64);
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 10000,
+                false, 10, 1,
+                true, limit)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Document> documents = new CopyOnWriteArrayList<>();
+        runInThreads(() -> {
+            for (int i = 0; i < 1000; i++) {
+                Document document = company1.createDocument(company2);
+                systemWorkflow.addDocument1(document);
+                documents.add(document);
+            }
+        });
+
+        long admitted = documents.stream().filter(systemWorkflow::isContainsDocument).count();
+
+        Assert.assertEquals(limit, admitted);
+    }
+
+    /**
+     * Подписать все документы несвязанных пар компаний при одновременном добавлении документов
+     */
+    @Test
+    public void signDocumentsOfUnrelatedPairsConcurrently() throws Exception {
+
+        int documentsPerThread = 10000;
+
+        SystemWorkflow systemWorkflow = SystemWorkflow.createConcurrentSystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                false, 10, 1,
+                true, 10)
+        );
+
+        AtomicInteger signed = new AtomicInteger();
+        runInThreads(() -> {
+            Company1 company1 = new Company1();
+            Company2 company2 = new Company2();
+
+            for (int i = 0; i < documentsPerThread; i++) {
+                if (systemWorkflow.addDocument1(company1.createDocument(company2))) {
+                    signed.incrementAndGet();
+                }
+            }
+        });
+
+        Assert.assertEquals(THREADS * documentsPerThread, signed.get());
+    }
+
+    /**
+     * Добавить, подписать и передать документы асинхронно, не превысив лимит документооборота между компаниями
+     */
+    @Test
+    public void addSignAndTransferDocumentsAsynchronously() throws Exception {
+
+        int limit = 100;
+
+        //документы созданы в ограниченное время, поэтому не подписываются и остаются неподписанными
+        WorkflowClock.setClock(new ManualClock(NOON, ZoneOffset.UTC));
+        SystemWorkflow systemWorkflow = SystemWorkflow.createConcurrentSystemWorkflow(64);
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 10000,
+                false, 10, 1,
+                true, limit)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<CompletableFuture<Byte>> results = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            results.add(systemWorkflow.addDocumentAsync(company1.createDocument(company2)));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.MINUTES);
+
+        long added = results.stream().filter(result -> result.join() == AdmissionStatus.ADDED).count();
+        Assert.assertEquals(limit, added);
+
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "23:59",
+                true, 10000,
+                false, 10, 1,
+                true, limit)
+        );
+        Company1 signer1 = new Company1();
+        Company2 signer2 = new Company2();
+        Document document = signer1.createDocument(signer2);
+
+        Assert.assertEquals(AdmissionStatus.SIGNED, (byte) systemWorkflow.addDocumentAsync(document).get(1, TimeUnit.MINUTES));
+        Assert.assertFalse(systemWorkflow.signAsync(document, signer1).get(1, TimeUnit.MINUTES));
+
+        systemWorkflow.transferAsync(document, signer2, signer1).get(1, TimeUnit.MINUTES);
+        Assert.assertTrue(signer1.isContainsDocument(document));
+        Assert.assertFalse(signer2.isContainsDocument(document));
+
+        //система для одного потока выполняет асинхронные операции в вызывающем потоке
+        SystemWorkflow singleThreaded = new SystemWorkflow();
+        Assert.assertTrue(singleThreaded.addDocumentAsync(new Company1().createDocument(new Company2())).isDone());
+    }
+
+    /**
+     * Выполнить задачу одновременно в нескольких потоках
+     * @param task задача
+     */
+    private static void runInThreads(Runnable task) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+}
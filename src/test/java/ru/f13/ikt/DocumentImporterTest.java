@@ -0,0 +1,152 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.f13.ikt.logic.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Тесты загрузки исторических документов
+ */
+public class DocumentImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Загрузить документы без проверки ограничений и восстановить наличие документов и индекс неподписанных документов
+     */
+    @Test
+    public void importHistoricalDocuments() throws Exception {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(new ColumnarDocumentRepository());
+        //исторические документы созданы вне разрешенного времени и отклонялись бы при добавлении в работе
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "00:01",
+                true, 1000,
+                false, 10, 1,
+                true, 1000)
+        );
+        WorkflowMetrics metrics = systemWorkflow.enableMetrics();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+        Map<Integer, Company> companies = new HashMap<>();
+        companies.put(company1.getId(), company1);
+        companies.put(company2.getId(), company2);
+
+        int count = 20_000;
+        long firstId = 1_000_000_000L;
+        List<String> lines = new ArrayList<>();
+        lines.add("# id,company1,company2,creator,created,signatures");
+        for (int i = 0; i < count; i++) {
+            int signatures = i % 4 == 0 ? 0 : 3;
+            lines.add((firstId + i) + "," + company1.getId() + "," + company2.getId() + "," + company1.getId()
+                    + ",2019-03-01T10:15:30," + signatures);
+        }
+        Path file = folder.newFile("documents.csv").toPath();
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        DocumentImporter importer = new DocumentImporter(systemWorkflow, companies::get, 4, 1000);
+
+        Assert.assertEquals(count, importer.importCsv(file));
+        Assert.assertEquals(0, importer.importCsv(file));
+
+        Assert.assertNotNull(systemWorkflow.getDocument(firstId + count - 1));
+        Assert.assertEquals(count / 4, company1.getDocuments().size());
+        Assert.assertEquals(count - count / 4, company2.getDocuments().size());
+
+        WorkflowMetrics.Snapshot snapshot = metrics.snapshot();
+        Assert.assertEquals(count, snapshot.getDocumentCount());
+        Assert.assertEquals(count / 4, snapshot.getUnsignedDocumentCount());
+
+        Document unsigned = systemWorkflow.getDocument(firstId);
+        Assert.assertFalse(unsigned.isSigning());
+        Assert.assertSame(company2, unsigned.getCompany2());
+        Assert.assertTrue(systemWorkflow.getDocument(firstId + 1).isSigning());
+
+        //загруженные неподписанные документы учитываются ограничением на документооборот между компаниями
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 1000,
+                false, 10, 1,
+                true, count / 4)
+        );
+        Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+    }
+
+    /**
+     * Не выдавать новым документам идентификаторы загруженных документов,
+     * даже если они попадают в уже полученный потоком блок идентификаторов
+     */
+    @Test
+    public void doNotReuseImportedIds() throws Exception {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 10,
+                false, 10, 1,
+                false, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        systemWorkflow.enableIndexes();
+
+        Document created = company1.createDocument(company2);
+        Assert.assertTrue(systemWorkflow.addDocument1(created));
+
+        long importedId = created.getId() + 5;
+        DocumentImporter importer = new DocumentImporter(systemWorkflow, id -> id == company1.getId() ? company1 : company2, 1, 1);
+        Assert.assertEquals(1, importer.importCsv(new StringReader(importedId + "," + company1.getId() + ","
+                + company2.getId() + "," + company1.getId() + ",2019-03-01T10:15:30,3\n")));
+        //загруженный документ проиндексирован вместе с добавленным в работе
+        Assert.assertEquals(2, systemWorkflow.query().between(company1, company2).stream().count());
+
+        Set<Long> ids = new HashSet<>();
+        ids.add(created.getId());
+        ids.add(importedId);
+        for (int i = 0; i < 10; i++) {
+            Document document = company1.createDocument(company2);
+            Assert.assertTrue(ids.add(document.getId()));
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+        }
+    }
+
+    /**
+     * Сообщить номер строки с ошибкой формата
+     */
+    @Test
+    public void reportInvalidLine() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        Company1 company1 = new Company1();
+
+        DocumentImporter importer = new DocumentImporter(systemWorkflow, id -> company1, 2, 1);
+
+        String csv = "2000000001," + company1.getId() + ",,,2019-03-01T10:15:30,1\n"
+                + "2000000002," + company1.getId() + ",,,not a date,1\n";
+        try {
+            importer.importCsv(new StringReader(csv));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+        }
+    }
+
+}
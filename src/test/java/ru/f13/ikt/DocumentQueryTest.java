@@ -0,0 +1,95 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Тесты поиска документов по вторичным индексам
+ */
+public class DocumentQueryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2019, 3, 1, 0, 0);
+
+    /**
+     * Найти документы по паре компаний, состоянию подписания и времени создания и обновить индексы при изменениях
+     */
+    @Test
+    public void findDocumentsByIndexes() throws Exception {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 1000,
+                false, 10, 1,
+                false, 1000)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+        Company2 company3 = new Company2();
+        Map<Integer, Company> companies = new HashMap<>();
+        companies.put(company1.getId(), company1);
+        companies.put(company2.getId(), company2);
+        companies.put(company3.getId(), company3);
+
+        //документ i создан через i часов после начала: с компанией 2 - четные, с компанией 3 - нечетные;
+        //подписи по кругу: нет, 1 сторона, обе стороны
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            Company other = i % 2 == 0 ? company2 : company3;
+            int signatures = i % 3 == 0 ? 0 : i % 3 == 1 ? 1 : 3;
+            csv.append(3_000_000_000L + i).append(',').append(company1.getId()).append(',').append(other.getId())
+                    .append(',').append(company1.getId()).append(',').append(START.plusHours(i)).append(',')
+                    .append(signatures).append('\n');
+        }
+        new DocumentImporter(systemWorkflow, companies::get).importCsv(new StringReader(csv.toString()));
+
+        systemWorkflow.enableIndexes();
+
+        //четные i с остатком 1 от деления на 3: i = 4, 10, 16, ...
+        Assert.assertEquals(50, systemWorkflow.query().between(company2, company1)
+                .state(DocumentState.PARTIALLY_SIGNED).stream().count());
+
+        Assert.assertEquals(34, systemWorkflow.query().state(DocumentState.UNSIGNED)
+                .createdBefore(START.plusHours(100)).stream().count());
+
+        List<Document> latest = systemWorkflow.query().company(company3).createdFrom(START.plusHours(200))
+                .stream().limit(3).collect(Collectors.toList());
+        Assert.assertEquals(3, latest.size());
+        Assert.assertEquals(START.plusHours(201), latest.get(0).getDate());
+        Assert.assertEquals(START.plusHours(203), latest.get(1).getDate());
+
+        //изменения документов обновляют индексы
+        Document unsigned = systemWorkflow.getDocument(3_000_000_000L);
+        Assert.assertTrue(systemWorkflow.signingDocument(unsigned, company1));
+        Assert.assertEquals(101, systemWorkflow.query().between(company1, company2)
+                .state(DocumentState.PARTIALLY_SIGNED).stream().count() + systemWorkflow.query()
+                .between(company1, company3).state(DocumentState.PARTIALLY_SIGNED).stream().count());
+
+        unsigned.resetSigning();
+        systemWorkflow.removeDocument(unsigned);
+        Assert.assertEquals(99, systemWorkflow.query().state(DocumentState.UNSIGNED).stream().count());
+
+        Document added = company1.createDocument(company3);
+        Assert.assertTrue(systemWorkflow.addDocument1(added));
+        Assert.assertEquals(added, systemWorkflow.query().between(company1, company3)
+                .createdFrom(START.plusYears(1)).iterator().next());
+
+        systemWorkflow.disableIndexes();
+        try {
+            systemWorkflow.query();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //индексы выключены
+        }
+    }
+
+}
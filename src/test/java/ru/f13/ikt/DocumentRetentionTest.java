@@ -0,0 +1,190 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тесты переноса подписанных документов в архив
+ */
+public class DocumentRetentionTest {
+
+    /**
+     * Оставить в хранилище заданное количество последних подписанных документов
+     */
+    @Test
+    public void archiveOldestSignedDocumentsOverCount() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 100,
+                false, 100, 1,
+                true, 100)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        DocumentRetention retention = new DocumentRetention(systemWorkflow, new HeapDocumentArchive(),
+                Long.MAX_VALUE, 2, 10);
+
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Document document = company1.createDocument(company2);
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+            documents.add(document);
+        }
+
+        Assert.assertEquals(3, retention.archive());
+        Assert.assertEquals(0, retention.archive());
+
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            boolean archived = i < 3;
+
+            Assert.assertEquals(!archived, systemWorkflow.isContainsDocument(document));
+            Assert.assertEquals(!archived, company2.isContainsDocument(document));
+            Assert.assertEquals(document, systemWorkflow.getDocument(document.getId()));
+            Assert.assertTrue(systemWorkflow.getDocument(document.getId()).isSigning());
+        }
+        Assert.assertEquals(2, company2.getDocuments().size());
+
+        retention.close();
+    }
+
+    /**
+     * Не учитывать в количестве подписанных документов документы со сброшенными подписями
+     * и учитывать повторно подписанный документ один раз
+     */
+    @Test
+    public void countOnlyLiveSignedDocuments() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 100,
+                false, 100, 1,
+                false, 100)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        DocumentRetention retention = new DocumentRetention(systemWorkflow, new HeapDocumentArchive(),
+                Long.MAX_VALUE, 2, 10);
+
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Document document = company1.createDocument(company2);
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+            documents.add(document);
+        }
+        Assert.assertEquals(3, retention.getPendingCount());
+
+        Document first = documents.get(0);
+        first.resetSigning();
+        Assert.assertEquals(2, retention.getPendingCount());
+        Assert.assertEquals(0, retention.archive());
+
+        for (int i = 0; i < 2; i++) {
+            first.resetSigning();
+            company2.transferDocument(first, company1);
+            Assert.assertTrue(systemWorkflow.signingDocument(first, company1));
+            company1.transferDocument(first, company2);
+            Assert.assertTrue(systemWorkflow.signingDocument(first, company2));
+            Assert.assertTrue(first.isSigning());
+        }
+        Assert.assertEquals(3, retention.getPendingCount());
+
+        //переносится самый старый действующий подписанный документ, а не повторно подписанный
+        Assert.assertEquals(1, retention.archive());
+        Assert.assertFalse(systemWorkflow.isContainsDocument(documents.get(1)));
+        Assert.assertTrue(systemWorkflow.isContainsDocument(first));
+        Assert.assertEquals(2, retention.getPendingCount());
+
+        retention.close();
+    }
+
+    /**
+     * Переносить в архив подписанные документы с истекшим сроком хранения и не переносить неподписанные
+     */
+    @Test
+    public void archiveExpiredSignedDocumentsOnly() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(new ColumnarDocumentRepository());
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 100,
+                false, 100, 1,
+                false, 100)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document signed = company1.createDocument(company2);
+        systemWorkflow.addDocument1(signed);
+
+        Document reset = company1.createDocument(company2);
+        systemWorkflow.addDocument1(reset);
+        systemWorkflow.getDocument(reset.getId()).resetSigning();
+
+        DocumentRetention retention = new DocumentRetention(systemWorkflow, new HeapDocumentArchive(),
+                0L, Integer.MAX_VALUE, 10);
+
+        Assert.assertEquals(1, retention.archive());
+
+        Assert.assertFalse(systemWorkflow.isContainsDocument(signed));
+        Assert.assertTrue(systemWorkflow.isContainsDocument(reset));
+        Assert.assertSame(company1, systemWorkflow.getDocument(signed.getId()).getCompany1());
+
+        retention.close();
+    }
+
+    /**
+     * Сохранить состояние документа у всех его представлений после переноса строки хранилища по столбцам в архив
+     */
+    @Test
+    public void keepArchivedDocumentStateInViews() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow(new ColumnarDocumentRepository());
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 100,
+                false, 100, 1,
+                false, 100)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        Document signed = company1.createDocument(company2);
+        Assert.assertTrue(systemWorkflow.addDocument1(signed));
+        LocalDateTime date = signed.getDate();
+
+        //представление, не читавшее документ после изменения стороны через другое представление
+        Document view = systemWorkflow.getDocument(signed.getId());
+        Company2 company3 = new Company2();
+        signed.setCompany2(company3);
+
+        DocumentRetention retention = new DocumentRetention(systemWorkflow, new HeapDocumentArchive(),
+                0L, Integer.MAX_VALUE, 10);
+        Assert.assertEquals(1, retention.archive());
+        Assert.assertFalse(systemWorkflow.isContainsDocument(signed));
+
+        for (Document document : new Document[]{signed, view}) {
+            Assert.assertTrue(document.isSigning());
+            Assert.assertSame(company1, document.getCompany1());
+            Assert.assertSame(company3, document.getCompany2());
+            Assert.assertEquals(date, document.getDate());
+        }
+
+        retention.close();
+    }
+
+}
@@ -0,0 +1,139 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Тесты индивидуальных значений ограничений компаний и пар компаний
+ */
+public class LimitOverridesTest {
+
+    /**
+     * Добавлять документы по индивидуальным значениям ограничений вместо общих
+     */
+    @Test
+    public void admitDocumentsByOverriddenLimits() {
+
+        Company1 large = new Company1();
+        Company1 small = new Company1();
+        Company2 partner = new Company2();
+        Company2 other = new Company2();
+
+        Settings settings = Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 2,
+                true, 3, 1,
+                true, 2);
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(settings.withOverrides(new LimitOverrides()
+                .companyWorkflowLimit(large.getId(), 5)
+                .companyCreateDocumentLimit(large.getId(), 100)
+                .companyWorkflowLimit(partner.getId(), 5)
+                .workflowLimit(partner.getId(), large.getId(), 4)
+                .companyCreateDocumentLimit(small.getId(), 1)));
+
+        //пара large - partner: 4 неподписанных документа вместо 2
+        for (int i = 0; i < 4; i++) {
+            Document document = large.createDocument(partner);
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+            document.resetSigning();
+        }
+        Assert.assertFalse(systemWorkflow.addDocument1(large.createDocument(partner)));
+
+        //компания large: 5 неподписанных документов вместо 2, пара large - other - общее значение
+        Document document = large.createDocument(other);
+        Assert.assertTrue(systemWorkflow.addDocument1(document));
+        document.resetSigning();
+        Assert.assertFalse(systemWorkflow.addDocument1(large.createDocument(other)));
+
+        //компания small: 1 созданный документ вместо 3
+        Assert.assertTrue(systemWorkflow.addDocument1(small.createDocument(other)));
+        Assert.assertFalse(systemWorkflow.addDocument1(small.createDocument(other)));
+
+        Assert.assertEquals(2, systemWorkflow.getSettings().getCompanyWorkflowLimitValue(small));
+        Assert.assertEquals(2, systemWorkflow.getSettings().getWorkflowLimitValue(small, partner));
+    }
+
+    /**
+     * Найти индивидуальные значения среди большого количества значений после удаления части из них
+     */
+    @Test
+    public void resolveManyOverrides() {
+
+        List<Company> companies = new ArrayList<>();
+        LimitOverrides overrides = new LimitOverrides();
+        for (int i = 0; i < 100_000; i++) {
+            Company company = new Company2();
+            companies.add(company);
+            overrides.companyWorkflowLimit(company.getId(), i);
+        }
+        for (int i = 0; i < companies.size(); i += 2) {
+            overrides.removeCompany(companies.get(i).getId());
+        }
+
+        Settings settings = Settings.createDefaultSettings().withOverrides(overrides);
+        //последующие изменения набора значений не влияют на настройки
+        overrides.companyWorkflowLimit(companies.get(1).getId(), 7);
+
+        for (int i = 0; i < companies.size(); i++) {
+            Assert.assertEquals(i % 2 == 0 ? 10 : i, settings.getCompanyWorkflowLimitValue(companies.get(i)));
+        }
+        Assert.assertEquals(50_000, settings.getOverrides().size());
+    }
+
+    /**
+     * Загрузить индивидуальные значения из свойств
+     */
+    @Test
+    public void loadOverridesFromProperties() throws Exception {
+
+        Properties properties = new Properties();
+        properties.load(new StringReader("limitedTime=false\n"
+                + "startLimitedTime=07:00\n"
+                + "endLimitedTime=21:00\n"
+                + "companyWorkflowLimit=true\n"
+                + "companyWorkflowLimitValue=10\n"
+                + "companyCreateDocumentLimit=true\n"
+                + "companyCreateDocumentLimitValue=10\n"
+                + "companyCreateDocumentLimitedTime=1\n"
+                + "workflowLimit=true\n"
+                + "workflowLimitValue=10\n"
+                + "companyWorkflowLimitValue.1000001=100\n"
+                + "companyCreateDocumentLimitValue.1000001=50\n"
+                + "workflowLimitValue.1000002.1000001=30\n"
+                + "log.level=debug\n"));
+
+        Settings settings = Settings.load(properties);
+        Company company1 = new Company1(1000001);
+        Company company2 = new Company2(1000002);
+
+        Assert.assertEquals(100, settings.getCompanyWorkflowLimitValue(company1));
+        Assert.assertEquals(10, settings.getCompanyWorkflowLimitValue(company2));
+        Assert.assertEquals(50, settings.getCompanyCreateDocumentLimitValue(company1));
+        Assert.assertEquals(30, settings.getWorkflowLimitValue(company1, company2));
+
+        //индивидуальное значение больше количества отметок окна по умолчанию
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(settings);
+        for (int i = 0; i < 50; i++) {
+            company1.createDocument(company2);
+        }
+        Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+        properties.setProperty("workflowLimitValue.1000001", "5");
+        try {
+            Settings.load(properties);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //для пары нужны две компании
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package ru.f13.ikt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.f13.ikt.logic.*;
+
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+
+/**
+ * Тесты документов с несколькими сторонами и подписей по номерам сторон
+ */
+public class MultiPartyDocumentTest {
+
+    private static final long NOON = 12 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetClock() {
+        WorkflowClock.setClock(null);
+    }
+
+    /**
+     * Подписать документ компаниями одного типа: подпись определяется номером стороны, а не типом компании
+     */
+    @Test
+    public void signByPartyIndex() {
+
+        Company1 company1 = new Company1();
+        Company1 company2 = new Company1();
+
+        Document document = company1.createDocument(company2);
+        document.sign(company1);
+
+        Assert.assertTrue(document.isSigning(company1));
+        Assert.assertFalse(document.isSigning(company2));
+        Assert.assertTrue(document.isPartiallySigned());
+        Assert.assertFalse(document.isSigning());
+
+        company1.transferDocument(document, company2);
+        document.sign(company2);
+
+        Assert.assertTrue(document.isSigning());
+        Assert.assertFalse(document.isPartiallySigned());
+
+        //компания, не являющаяся стороной, не подписывает документ
+        Company2 other = new Company2();
+        Document another = company1.createDocument(company2);
+        company1.transferDocument(another, other);
+        another.sign(other);
+        Assert.assertFalse(another.isSigning(other));
+        Assert.assertFalse(another.isPartiallySigned());
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "23:59",
+                true, 10,
+                false, 10, 1,
+                true, 10)
+        );
+        Assert.assertTrue(systemWorkflow.addDocument1(new Company2().createDocument(new Company2())));
+    }
+
+    /**
+     * Добавить документ трех сторон: стороны подписывают документ по порядку,
+     * а неподписанный документ учитывается в ограничениях всех сторон
+     */
+    @Test
+    public void admitThreePartyDocument() {
+
+        SystemWorkflow systemWorkflow = SystemWorkflow.createConcurrentSystemWorkflow(64, new ColumnarDocumentRepository());
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "23:59",
+                true, 10,
+                false, 10, 1,
+                true, 1)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+        Company2 company3 = new Company2();
+
+        Document document = company1.createDocument(company2, company3);
+        Assert.assertEquals(3, document.getPartyCount());
+        Assert.assertEquals(2, document.getPartyIndex(company3));
+        Assert.assertTrue(systemWorkflow.addDocument1(document));
+
+        Document stored = systemWorkflow.getDocument(document.getId());
+        Assert.assertEquals(3, stored.getPartyCount());
+        Assert.assertSame(company3, stored.getParty(2));
+        Assert.assertTrue(stored.isSigning(company3));
+        Assert.assertTrue(company3.isContainsDocument(stored));
+        Assert.assertFalse(company2.isContainsDocument(stored));
+
+        //документы, созданные в ограниченное время, остаются неподписанными
+        WorkflowClock.setClock(new ManualClock(NOON, ZoneOffset.UTC));
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 10,
+                false, 10, 1,
+                true, 1)
+        );
+
+        Document unsigned = company1.createDocument(company2, company3);
+        Assert.assertFalse(systemWorkflow.addDocument1(unsigned));
+        Assert.assertTrue(systemWorkflow.isContainsDocument(unsigned));
+        Assert.assertFalse(systemWorkflow.getDocument(unsigned.getId()).isPartiallySigned());
+
+        //пара 3 и 1 сторон уже ведет неподписанный документ
+        Document rejected = company3.createDocument(company1);
+        Assert.assertFalse(systemWorkflow.addDocument1(rejected));
+        Assert.assertFalse(systemWorkflow.isContainsDocument(rejected));
+
+        try {
+            new Document(company1, company2, new Company[Document.MAX_PARTIES - 1]);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //маска подписей вмещает не больше MAX_PARTIES сторон
+        }
+
+        try (ShardedSystemWorkflow sharded = new ShardedSystemWorkflow(2)) {
+            Assert.assertEquals(AdmissionStatus.REJECTED_INVALID_DOCUMENT,
+                    (byte) sharded.addDocumentAsync(company1.createDocument(company2, company3)).join());
+        }
+    }
+
+    /**
+     * Найти документ трех сторон по каждой стороне и по каждой паре сторон
+     */
+    @Test
+    public void queryThreePartyDocument() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "23:59",
+                true, 10,
+                false, 10, 1,
+                true, 10)
+        );
+        systemWorkflow.enableIndexes();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+        Company2 company3 = new Company2();
+        Company2 other = new Company2();
+
+        Document document = company1.createDocument(company2, company3);
+        Assert.assertTrue(systemWorkflow.addDocument1(document));
+        Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(other)));
+
+        Assert.assertEquals(1, systemWorkflow.query().company(company3).stream().count());
+        Assert.assertEquals(document.getId(), systemWorkflow.query().company(company3).stream()
+                .findFirst().get().getId());
+        Assert.assertEquals(1, systemWorkflow.query().between(company1, company3).stream().count());
+        Assert.assertEquals(1, systemWorkflow.query().between(company3, company2).stream().count());
+        Assert.assertEquals(2, systemWorkflow.query().company(company1).stream().count());
+        Assert.assertEquals(0, systemWorkflow.query().between(company3, other).stream().count());
+    }
+
+    /**
+     * Восстановить документ трех сторон из журнала
+     */
+    @Test
+    public void restoreThreePartyDocumentFromJournal() throws Exception {
+
+        Path directory = folder.getRoot().toPath();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+        Company2 company3 = new Company2();
+
+        Document document = company1.createDocument(company2, company3);
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 256, 1, 0L)) {
+            SystemWorkflow systemWorkflow = new SystemWorkflow();
+            journal.attach(systemWorkflow, id -> null);
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    false, "00:00", "23:59",
+                    true, 10,
+                    false, 10, 1,
+                    true, 10)
+            );
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+        }
+
+        Company1 restored1 = new Company1(company1.getId());
+        Company2 restored2 = new Company2(company2.getId());
+        Company2 restored3 = new Company2(company3.getId());
+
+        SystemWorkflow restored = new SystemWorkflow();
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 256, 1, 0L)) {
+            journal.attach(restored, id -> id == restored1.getId() ? restored1
+                    : id == restored2.getId() ? restored2 : restored3);
+        }
+
+        Document restoredDocument = restored.getDocument(document.getId());
+        Assert.assertEquals(3, restoredDocument.getPartyCount());
+        Assert.assertSame(restored3, restoredDocument.getParty(2));
+        Assert.assertTrue(restoredDocument.isSigning());
+        Assert.assertTrue(restored3.isContainsDocument(restoredDocument));
+    }
+
+}
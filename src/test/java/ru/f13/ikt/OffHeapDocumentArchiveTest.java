@@ -0,0 +1,174 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.f13.ikt.logic.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Тесты архива документов вне кучи
+ */
+public class OffHeapDocumentArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Найти по идентификатору документы, добавленные не по порядку, и прочитать все записи обходом
+     */
+    @Test
+    public void findDocumentsAddedOutOfOrder() throws Exception {
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Document document = i % 2 == 0 ? company1.createDocument(company2) : new Document(company2, company1);
+            if (i % 3 != 0) {
+                document.sign(document.getCompany1());
+            }
+            documents.add(document);
+        }
+        Collections.shuffle(documents, new Random(13));
+
+        try (OffHeapDocumentArchive archive = new OffHeapDocumentArchive(folder.newFile().toPath())) {
+
+            for (Document document : documents) {
+                Assert.assertTrue(archive.add(document));
+            }
+            Assert.assertFalse(archive.add(documents.get(0)));
+            Assert.assertEquals(documents.size(), archive.size());
+
+            for (Document document : documents) {
+                Document archived = archive.get(document.getId());
+                Assert.assertEquals(document, archived);
+                Assert.assertSame(document.getCompany1(), archived.getCompany1());
+                Assert.assertSame(document.getCompany2(), archived.getCompany2());
+                Assert.assertEquals(document.isSigning(document.getCompany1()), archived.isSigning(archived.getCompany1()));
+                Assert.assertEquals(document.isSigning(document.getCompany2()), archived.isSigning(archived.getCompany2()));
+            }
+            Assert.assertNull(archive.get(-1L));
+
+            AtomicInteger count = new AtomicInteger();
+            archive.scan((id, company1Id, company2Id, creatorId, createdMillis, signatures) -> {
+                Assert.assertTrue(company1Id == company1.getId() || company1Id == company2.getId());
+                count.incrementAndGet();
+            });
+            Assert.assertEquals(documents.size(), count.get());
+        }
+    }
+
+    /**
+     * Открыть файл архива повторно: документы заполненных и заполняемого блоков и дополнительные стороны
+     * остаются в архиве, а новые документы дописываются к ним
+     */
+    @Test
+    public void reopenArchiveFile() throws Exception {
+
+        Path file = folder.newFile().toPath();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+        Company2 company3 = new Company2();
+
+        List<Document> documents = new ArrayList<>();
+        try (OffHeapDocumentArchive archive = new OffHeapDocumentArchive(file)) {
+            for (int i = 0; i < 1000; i++) {
+                Document document = i % 100 == 0 ? company1.createDocument(company2, company3) : company1.createDocument(company2);
+                document.sign(company1);
+                Assert.assertTrue(archive.add(document));
+                documents.add(document);
+            }
+        }
+
+        Company1 restored1 = new Company1(company1.getId());
+        Company2 restored2 = new Company2(company2.getId());
+        Company2 restored3 = new Company2(company3.getId());
+
+        try (OffHeapDocumentArchive archive = new OffHeapDocumentArchive(file, id -> id == restored1.getId() ? restored1
+                : id == restored2.getId() ? restored2 : restored3)) {
+
+            Assert.assertEquals(documents.size(), archive.size());
+            Assert.assertFalse(archive.add(documents.get(999)));
+
+            for (int i = 0; i < 300; i++) {
+                Document document = restored1.createDocument(restored2);
+                document.sign(restored1);
+                Assert.assertTrue(archive.add(document));
+                documents.add(document);
+            }
+        }
+
+        try (OffHeapDocumentArchive archive = new OffHeapDocumentArchive(file, id -> id == restored1.getId() ? restored1
+                : id == restored2.getId() ? restored2 : restored3)) {
+
+            Assert.assertEquals(documents.size(), archive.size());
+
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                Document archived = archive.get(document.getId());
+                Assert.assertEquals(document, archived);
+                Assert.assertSame(restored1, archived.getCompany1());
+                Assert.assertEquals(document.getPartyCount(), archived.getPartyCount());
+                Assert.assertTrue(archived.isSigning(archived.getCompany1()));
+                Assert.assertEquals(document.isSigning(), archived.isSigning());
+                Assert.assertEquals(document.getDate(), archived.getDate());
+            }
+            Assert.assertSame(restored3, archive.get(documents.get(100).getId()).getParty(2));
+
+            AtomicInteger count = new AtomicInteger();
+            archive.scan((id, company1Id, company2Id, creatorId, createdMillis, signatures) -> count.incrementAndGet());
+            Assert.assertEquals(documents.size(), count.get());
+        }
+    }
+
+    /**
+     * Переносить подписанные документы системы в архив вне кучи
+     */
+    @Test
+    public void retainSignedDocumentsOffHeap() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 1000,
+                false, 1000, 1,
+                true, 1000)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        DocumentRetention retention = new DocumentRetention(systemWorkflow, new OffHeapDocumentArchive(),
+                0L, Integer.MAX_VALUE, 1000);
+
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Document document = company1.createDocument(company2);
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+            documents.add(document);
+        }
+
+        Assert.assertEquals(documents.size(), retention.archive());
+
+        for (Document document : documents) {
+            Assert.assertFalse(systemWorkflow.isContainsDocument(document));
+            Document archived = systemWorkflow.getDocument(document.getId());
+            Assert.assertEquals(document, archived);
+            Assert.assertSame(company2, archived.getCompany2());
+            Assert.assertTrue(archived.isSigning());
+        }
+
+        retention.close();
+    }
+
+}
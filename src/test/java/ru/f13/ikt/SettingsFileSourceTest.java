@@ -0,0 +1,106 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.f13.ikt.logic.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты загрузки настроек из отслеживаемого файла
+ */
+public class SettingsFileSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Изменить ограничения файлом настроек без остановки системы и сохранить настройки при ошибке в файле
+     */
+    @Test
+    public void reloadSettingsOnFileChange() throws Exception {
+
+        Path file = folder.getRoot().toPath().resolve("workflow.properties");
+        write(file, 2);
+
+        SystemWorkflow systemWorkflow = SystemWorkflow.createConcurrentSystemWorkflow();
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        try (SettingsFileSource source = new SettingsFileSource(file, systemWorkflow::setSettings)) {
+
+            Assert.assertSame(source.getSettings(), systemWorkflow.getSettings());
+            Assert.assertEquals(2, systemWorkflow.getSettings().getWorkflowLimitValue());
+
+            for (int i = 0; i < 2; i++) {
+                Document document = company1.createDocument(company2);
+                systemWorkflow.addDocument1(document);
+                document.resetSigning();
+            }
+            Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+            write(file, 5);
+            awaitReloads(source, 1L);
+            Assert.assertEquals(5, systemWorkflow.getSettings().getWorkflowLimitValue());
+            Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+            //файл без значения ограничения не загружается
+            Path broken = folder.getRoot().toPath().resolve("broken.tmp");
+            Files.write(broken, "limitedTime=false\n".getBytes(StandardCharsets.UTF_8));
+            Files.move(broken, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (source.getFailureCount() == 0L && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(1L, source.getFailureCount());
+            Assert.assertTrue(source.getLastError() instanceof IllegalArgumentException);
+            Assert.assertEquals(5, systemWorkflow.getSettings().getWorkflowLimitValue());
+        }
+    }
+
+    /**
+     * Записать файл настроек атомарным перемещением
+     * @param file файл настроек
+     * @param workflowLimit значение ограничения на документооборот между компаниями
+     */
+    private void write(Path file, int workflowLimit) throws Exception {
+
+        String text = "limitedTime=false\n"
+                + "startLimitedTime=07:00\n"
+                + "endLimitedTime=21:00\n"
+                + "companyWorkflowLimit=false\n"
+                + "companyWorkflowLimitValue=10\n"
+                + "companyCreateDocumentLimit=false\n"
+                + "companyCreateDocumentLimitValue=10\n"
+                + "companyCreateDocumentLimitedTime=1\n"
+                + "workflowLimit=true\n"
+                + "workflowLimitValue=" + workflowLimit + "\n";
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, text.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Дождаться загрузки настроек
+     * @param source источник настроек
+     * @param count количество загрузок
+     */
+    private static void awaitReloads(SettingsFileSource source, long count) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (source.getReloadCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        Assert.assertEquals(count, source.getReloadCount());
+    }
+
+}
@@ -0,0 +1,166 @@
+package ru.f13.ikt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Тесты системы документооборота, разделенной на шарды
+ */
+public class ShardedSystemWorkflowTest {
+
+    private static final long NOON = 12 * 60 * 60 * 1000L;
+
+    @After
+    public void resetClock() {
+        WorkflowClock.setClock(null);
+    }
+
+    /**
+     * Не превысить ограничение на участие компании в документообороте при добавлении документов в разных шардах
+     */
+    @Test
+    public void doNotExceedCompanyWorkflowLimitAcrossShards() {
+
+        int limit = 20;
+
+        //документы созданы в ограниченное время, поэтому не подписываются и остаются неподписанными
+        WorkflowClock.setClock(new ManualClock(NOON, ZoneOffset.UTC));
+        try (ShardedSystemWorkflow systemWorkflow = new ShardedSystemWorkflow(4)) {
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    true, "00:00", "23:59",
+                    true, limit,
+                    false, 10, 1,
+                    true, 10000)
+            );
+
+            //часть компаний создана раньше общей компании, часть - позже, поэтому документы принадлежат разным шардам
+            List<Company> partners = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                partners.add(new Company2());
+            }
+            Company company = new Company1();
+            for (int i = 0; i < 16; i++) {
+                partners.add(new Company2());
+            }
+
+            Assert.assertTrue(partners.stream()
+                    .anyMatch(partner -> systemWorkflow.getShardIndex(partner) != systemWorkflow.getShardIndex(company)));
+
+            List<CompletableFuture<Byte>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                Company partner = partners.get(i % partners.size());
+                Document document = i % 2 == 0 ? company.createDocument(partner) : partner.createDocument(company);
+                results.add(systemWorkflow.addDocumentAsync(document));
+            }
+
+            long added = results.stream().map(CompletableFuture::join).filter(s -> s == AdmissionStatus.ADDED).count();
+
+            Assert.assertEquals(limit, added);
+            Assert.assertEquals(limit, systemWorkflow.getDocumentCount());
+            Assert.assertEquals(limit, systemWorkflow.getUnsignedDocumentCount(company));
+        }
+    }
+
+    /**
+     * Не превысить ограничение на документооборот между компаниями разных шардов и освободить место при удалении
+     */
+    @Test
+    public void doNotExceedWorkflowLimitForPairAcrossShards() {
+
+        int limit = 5;
+
+        WorkflowClock.setClock(new ManualClock(NOON, ZoneOffset.UTC));
+        try (ShardedSystemWorkflow systemWorkflow = new ShardedSystemWorkflow(4)) {
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    true, "00:00", "23:59",
+                    true, 1000,
+                    false, 10, 1,
+                    true, limit)
+            );
+
+            Company company1 = new Company1();
+            Company company2 = new Company2();
+            while (systemWorkflow.getShardIndex(company2) == systemWorkflow.getShardIndex(company1)) {
+                company2 = new Company2();
+            }
+
+            List<Document> documents = new ArrayList<>();
+            List<CompletableFuture<Byte>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Document document = i % 2 == 0 ? company1.createDocument(company2) : company2.createDocument(company1);
+                documents.add(document);
+                results.add(systemWorkflow.addDocumentAsync(document));
+            }
+
+            List<Document> added = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                byte status = results.get(i).join();
+                if (status == AdmissionStatus.ADDED) {
+                    added.add(documents.get(i));
+                } else {
+                    Assert.assertEquals(AdmissionStatus.REJECTED_WORKFLOW_LIMIT, status);
+                }
+            }
+
+            Assert.assertEquals(limit, added.size());
+            Assert.assertEquals(limit, systemWorkflow.getUnsignedDocumentCount(company1));
+            Assert.assertEquals(limit, systemWorkflow.getUnsignedDocumentCount(company2));
+
+            systemWorkflow.removeDocument(added.get(0));
+
+            Assert.assertFalse(systemWorkflow.isContainsDocument(added.get(0)));
+            Assert.assertEquals(limit - 1, systemWorkflow.getUnsignedDocumentCount(company1));
+            Assert.assertEquals(limit - 1, systemWorkflow.getUnsignedDocumentCount(company2));
+            Assert.assertEquals(AdmissionStatus.ADDED,
+                    (byte) systemWorkflow.addDocumentAsync(company1.createDocument(company2)).join());
+        }
+    }
+
+    /**
+     * Подписать и передать документы компаний разных шардов
+     */
+    @Test
+    public void signAndTransferDocumentsAcrossShards() {
+
+        try (ShardedSystemWorkflow systemWorkflow = new ShardedSystemWorkflow(8)) {
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    false, "00:00", "00:01",
+                    true, 10,
+                    false, 10, 1,
+                    true, 10)
+            );
+
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                Company1 company1 = new Company1();
+                Company2 company2 = new Company2();
+                Document document = company1.createDocument(company2);
+
+                Assert.assertTrue(systemWorkflow.addDocument1(document));
+                Assert.assertTrue(company2.isContainsDocument(document));
+
+                systemWorkflow.transferDocument(document, company2, company1);
+                Assert.assertTrue(company1.isContainsDocument(document));
+                Assert.assertFalse(company2.isContainsDocument(document));
+
+                Assert.assertEquals(0, systemWorkflow.getUnsignedDocumentCount(company1));
+                Assert.assertEquals(0, systemWorkflow.getUnsignedDocumentCount(company2));
+                documents.add(document);
+            }
+
+            Assert.assertEquals(documents.size(), systemWorkflow.getDocumentCount());
+            for (Document document : documents) {
+                Assert.assertSame(document, systemWorkflow.getDocument(document.getId()));
+                Assert.assertFalse(systemWorkflow.signingDocument(document, document.getCompany1()));
+            }
+        }
+    }
+
+}
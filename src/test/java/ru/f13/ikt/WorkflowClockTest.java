@@ -0,0 +1,81 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты часов системы документооборота
+ */
+public class WorkflowClockTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2019, 3, 1, 10, 0);
+
+    /**
+     * Проверить ограничения по времени по часам, установленным вручную
+     */
+    @Test
+    public void validateLimitsByManualClock() {
+
+        ManualClock clock = new ManualClock(START.toInstant(ZoneOffset.UTC).toEpochMilli(), ZoneOffset.UTC);
+        WorkflowClock.setClock(clock);
+        try {
+
+            SystemWorkflow systemWorkflow = new SystemWorkflow();
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    false, "00:00", "00:01",
+                    false, 100,
+                    true, 1, 1,
+                    false, 100)
+            );
+
+            Company1 company1 = new Company1();
+            Company2 company2 = new Company2();
+
+            Document first = company1.createDocument(company2);
+            Assert.assertEquals(START, first.getDate());
+            Assert.assertTrue(systemWorkflow.addDocument1(first));
+
+            //ограничение на создание документов действует в течение часа, отклоненный документ тоже учитывается
+            clock.advance(TimeUnit.MINUTES.toMillis(59));
+            Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+            clock.advance(TimeUnit.MINUTES.toMillis(61));
+            Document next = company1.createDocument(company2);
+            Assert.assertEquals(START.plusHours(2), next.getDate());
+            Assert.assertTrue(systemWorkflow.addDocument1(next));
+
+            //документ создан в 12:00, внутри ограниченного времени с 09:00 до 18:00
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    true, "09:00", "18:00",
+                    false, 100,
+                    false, 1, 1,
+                    false, 100)
+            );
+            Document limited = company1.createDocument(company2);
+            Assert.assertFalse(systemWorkflow.addDocument1(limited));
+            Assert.assertFalse(limited.isSigning(company1));
+
+            //ограниченное время через полночь с 22:00 до 06:00: документ создан в 00:00
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    true, "22:00", "06:00",
+                    false, 100,
+                    false, 1, 1,
+                    false, 100)
+            );
+            clock.advance(TimeUnit.HOURS.toMillis(12));
+            Assert.assertFalse(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+            clock.advance(TimeUnit.HOURS.toMillis(8));
+            Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(company2)));
+
+        } finally {
+            WorkflowClock.setClock(null);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тесты потока событий жизненного цикла документов
+ */
+public class WorkflowEventStreamTest {
+
+    /**
+     * Получить события добавления, подписания и передачи документа в порядке публикации
+     */
+    @Test
+    public void receiveDocumentLifecycleEvents() throws Exception {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 10, 1,
+                true, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Byte> types = new ArrayList<>();
+        List<Long> documentIds = new ArrayList<>();
+        CountDownLatch removed = new CountDownLatch(1);
+
+        try (WorkflowEventStream stream = new WorkflowEventStream(64, WorkflowEventStream.BackpressurePolicy.BLOCK)) {
+
+            stream.attach(systemWorkflow);
+            stream.subscribe((event, endOfBatch) -> {
+                types.add(event.getType());
+                documentIds.add(event.getDocumentId());
+                if (event.getType() == WorkflowEventType.REMOVED) {
+                    removed.countDown();
+                }
+            });
+
+            Document document = company1.createDocument(company2);
+            Assert.assertTrue(systemWorkflow.addDocument1(document));
+            document.resetSigning();
+            systemWorkflow.removeDocument(document);
+
+            Assert.assertTrue(removed.await(10, TimeUnit.SECONDS));
+
+            Assert.assertEquals(Arrays.asList(
+                    WorkflowEventType.ADMITTED,
+                    WorkflowEventType.SIGNED,
+                    WorkflowEventType.TRANSFERRED,
+                    WorkflowEventType.SIGNED,
+                    WorkflowEventType.FULLY_SIGNED,
+                    WorkflowEventType.RESET,
+                    WorkflowEventType.REMOVED), types);
+            for (long id : documentIds) {
+                Assert.assertEquals(document.getId(), id);
+            }
+        }
+    }
+
+    /**
+     * Пропускать события, не ожидая отставшего подписчика
+     */
+    @Test
+    public void dropEventsForSlowConsumer() throws Exception {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                false, 10,
+                false, 10, 1,
+                false, 10)
+        );
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> sequences = new ArrayList<>();
+
+        try (WorkflowEventStream stream = new WorkflowEventStream(8, WorkflowEventStream.BackpressurePolicy.DROP)) {
+
+            stream.attach(systemWorkflow);
+            stream.subscribe((event, endOfBatch) -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sequences.add(event.getSequence());
+            });
+
+            for (int i = 0; i < 100; i++) {
+                systemWorkflow.addDocument1(company1.createDocument(company2));
+            }
+
+            Assert.assertTrue(stream.getDroppedCount() > 0);
+
+            release.countDown();
+        }
+
+        //доставлены события без пропусков номеров, не более размера буфера
+        Assert.assertTrue(sequences.size() <= 8);
+        for (int i = 0; i < sequences.size(); i++) {
+            Assert.assertEquals(i, (long) sequences.get(i));
+        }
+    }
+
+}
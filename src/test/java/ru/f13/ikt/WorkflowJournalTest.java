@@ -0,0 +1,271 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.f13.ikt.logic.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тесты восстановления системы документооборота из журнала изменений
+ */
+public class WorkflowJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Восстановить документы, подписи и наличие документов у компаний из журнала
+     */
+    @Test
+    public void restoreWorkflowFromJournal() throws Exception {
+
+        Path directory = folder.getRoot().toPath();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        Document signed;
+        Document changed;
+        Document removed;
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 256, 1, 0L)) {
+
+            journal.attach(systemWorkflow, id -> null);
+
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    false, "00:00", "00:01",
+                    true, 10,
+                    true, 10, 1,
+                    true, 10)
+            );
+            signed = company1.createDocument(company2);
+            Assert.assertTrue(systemWorkflow.addDocument1(signed));
+
+            //документы остаются неподписанными в ограниченное время
+            systemWorkflow.setSettings(Settings.createCustomSettings(
+                    true, "00:00", "23:59",
+                    true, 10,
+                    true, 10, 1,
+                    true, 10)
+            );
+            changed = company1.createDocument(company2);
+            systemWorkflow.addDocument1(changed);
+            company2.changeDocument(changed);
+
+            removed = company1.createDocument(company2);
+            systemWorkflow.addDocument1(removed);
+            systemWorkflow.removeDocument(removed);
+        }
+
+        Company1 restored1 = new Company1(company1.getId());
+        Company2 restored2 = new Company2(company2.getId());
+
+        SystemWorkflow restored = new SystemWorkflow();
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 256, 1, 0L)) {
+            journal.attach(restored, id -> id == restored1.getId() ? restored1 : restored2);
+        }
+
+        Document restoredSigned = restored.getDocument(signed.getId());
+        Assert.assertTrue(restoredSigned.isSigning());
+        Assert.assertSame(restored1, restoredSigned.getCompany1());
+        Assert.assertEquals(company1.isContainsDocument(signed), restored1.isContainsDocument(restoredSigned));
+        Assert.assertEquals(company2.isContainsDocument(signed), restored2.isContainsDocument(restoredSigned));
+
+        Document restoredChanged = restored.getDocument(changed.getId());
+        Assert.assertFalse(restoredChanged.isSigning());
+        Assert.assertSame(restored2, restoredChanged.getCompany1());
+        Assert.assertSame(restored1, restoredChanged.getCompany2());
+        Assert.assertEquals(company1.isContainsDocument(changed), restored1.isContainsDocument(restoredChanged));
+        Assert.assertEquals(company2.isContainsDocument(changed), restored2.isContainsDocument(restoredChanged));
+
+        Assert.assertNull(restored.getDocument(removed.getId()));
+        Assert.assertEquals(company1.isContainsDocument(removed), restored1.isContainsDocument(removed));
+    }
+
+    /**
+     * Восстановить лимит документооборотов между компаниями из журнала, записанного в несколько сегментов
+     */
+    @Test
+    public void restoreWorkflowLimitFromSegments() throws Exception {
+
+        int limit = 10;
+        Settings settings = Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 100,
+                false, 100, 1,
+                true, limit);
+
+        Path directory = folder.getRoot().toPath();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(settings);
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 64, 0, 0L)) {
+            journal.attach(systemWorkflow, id -> null);
+            for (int i = 0; i < limit; i++) {
+                systemWorkflow.addDocument1(company1.createDocument(company2));
+            }
+        }
+
+        Company1 restored1 = new Company1(company1.getId());
+        Company2 restored2 = new Company2(company2.getId());
+
+        SystemWorkflow restored = new SystemWorkflow();
+        restored.setSettings(settings);
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 64, 0, 0L)) {
+            journal.attach(restored, id -> id == restored1.getId() ? restored1 : restored2);
+
+            Assert.assertEquals(limit, restored1.getDocuments().size());
+            Assert.assertFalse(restored.addDocument1(restored1.createDocument(restored2)));
+        }
+    }
+
+    /**
+     * Восстановить систему из снимка и записей журнала после него, удалив сегменты до снимка
+     */
+    @Test
+    public void restoreWorkflowFromSnapshotAndJournalTail() throws Exception {
+
+        int limit = 8;
+        Settings settings = Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 100,
+                true, limit, 1,
+                true, 100);
+
+        Path directory = folder.getRoot().toPath();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(settings);
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 64, 0, 0L)) {
+            journal.attach(systemWorkflow, id -> null);
+
+            for (int i = 0; i < limit / 2; i++) {
+                Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(company2)));
+            }
+
+            journal.snapshot().get();
+
+            for (int i = 0; i < limit / 2; i++) {
+                Assert.assertTrue(systemWorkflow.addDocument1(company1.createDocument(company2)));
+            }
+        }
+
+        Assert.assertFalse(Files.exists(directory.resolve("segment-0000000000000001.journal")));
+
+        Company1 restored1 = new Company1(company1.getId());
+        Company2 restored2 = new Company2(company2.getId());
+
+        SystemWorkflow restored = new SystemWorkflow();
+        restored.setSettings(settings);
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 64, 0, 0L)) {
+            journal.attach(restored, id -> id == restored1.getId() ? restored1 : restored2);
+
+            //документы в наличии восстановлены в порядке получения
+            Assert.assertEquals(documentIds(company2), documentIds(restored2));
+            Assert.assertEquals(documentIds(company1), documentIds(restored1));
+
+            //документы, созданные до и после снимка, учитываются в ограничении на создание документов
+            Assert.assertFalse(restored.addDocument1(restored1.createDocument(restored2)));
+        }
+    }
+
+    /**
+     * Восстановить архив из журнала архива: снимок хранит только длину журнала архива,
+     * а документы, перенесенные в архив до и после снимка, восстанавливаются без повторной записи в снимок
+     */
+    @Test
+    public void restoreArchiveFromArchiveLog() throws Exception {
+
+        Settings settings = Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 1000,
+                false, 1000, 1,
+                true, 1000);
+
+        Path directory = folder.getRoot().toPath();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        List<Document> documents = new ArrayList<>();
+        long snapshotSize;
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(settings);
+        DocumentRetention retention = new DocumentRetention(systemWorkflow, new HeapDocumentArchive(),
+                0L, Integer.MAX_VALUE, 200);
+        try (WorkflowJournal journal = WorkflowJournal.open(directory, 4096, 0, 0L)) {
+            journal.attach(systemWorkflow, id -> null);
+
+            for (int i = 0; i < 300; i++) {
+                Document document = company1.createDocument(company2);
+                Assert.assertTrue(systemWorkflow.addDocument1(document));
+                documents.add(document);
+            }
+            Assert.assertEquals(200, retention.archive());
+
+            Path snapshot = journal.snapshot().get();
+            snapshotSize = Files.size(snapshot);
+
+            Assert.assertEquals(100, retention.archive());
+        } finally {
+            retention.close();
+        }
+
+        //документы архива не копируются в снимок: снимок меньше записей всех 300 документов
+        Assert.assertTrue(snapshotSize < 300L * 30);
+
+        Company1 restored1 = new Company1(company1.getId());
+        Company2 restored2 = new Company2(company2.getId());
+
+        for (int restart = 0; restart < 2; restart++) {
+
+            SystemWorkflow restored = new SystemWorkflow();
+            restored.setSettings(settings);
+            DocumentRetention restoredRetention = new DocumentRetention(restored, new HeapDocumentArchive(),
+                    0L, Integer.MAX_VALUE, 1000);
+            try (WorkflowJournal journal = WorkflowJournal.open(directory, 4096, 0, 0L)) {
+                journal.attach(restored, id -> id == restored1.getId() ? restored1 : restored2);
+
+                for (Document document : documents) {
+                    Assert.assertFalse(restored.isContainsDocument(document));
+                    Document archived = restored.getDocument(document.getId());
+                    Assert.assertEquals(document, archived);
+                    Assert.assertSame(restored2, archived.getCompany2());
+                    Assert.assertTrue(archived.isSigning());
+                }
+                Assert.assertTrue(restored1.getDocuments().isEmpty());
+
+                //следующий снимок ссылается на тот же журнал архива
+                journal.snapshot().get();
+            } finally {
+                restoredRetention.close();
+            }
+        }
+    }
+
+    /**
+     * Получить идентификаторы документов компании в порядке получения
+     * @param company компания
+     * @return идентификаторы документов
+     */
+    private static List<Long> documentIds(Company company) {
+        List<Long> ids = new ArrayList<>();
+        for (Document document : company.getDocuments()) {
+            ids.add(document.getId());
+        }
+        return ids;
+    }
+
+}
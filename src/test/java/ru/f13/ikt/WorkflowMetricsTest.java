@@ -0,0 +1,89 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.logic.*;
+
+/**
+ * Тесты метрик системы документооборота
+ */
+public class WorkflowMetricsTest {
+
+    /**
+     * Учесть результаты добавления документов, отказы по компаниям и задержки
+     */
+    @Test
+    public void countAdmissionsAndRejectionsByCompany() throws Exception {
+
+        int limit = 5;
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                true, "00:00", "23:59",
+                true, 100,
+                false, 100, 1,
+                true, limit)
+        );
+        WorkflowMetrics metrics = systemWorkflow.enableMetrics();
+
+        Company1 company1 = new Company1();
+        Company2 company2 = new Company2();
+
+        for (int i = 0; i < limit + 3; i++) {
+            systemWorkflow.addDocument1(company1.createDocument(company2));
+        }
+
+        WorkflowMetrics.Snapshot snapshot = metrics.snapshot();
+
+        Assert.assertEquals(limit, snapshot.getAdmissionCount(AdmissionStatus.ADDED));
+        Assert.assertEquals(3, snapshot.getAdmissionCount(AdmissionStatus.REJECTED_WORKFLOW_LIMIT));
+        Assert.assertEquals(3, snapshot.getCompanyRejectionCount(company1.getId(), AdmissionStatus.REJECTED_WORKFLOW_LIMIT));
+        Assert.assertEquals(0, snapshot.getCompanyRejectionCount(company2.getId(), AdmissionStatus.REJECTED_WORKFLOW_LIMIT));
+
+        Assert.assertEquals(limit, snapshot.getDocumentCount());
+        Assert.assertEquals(limit, snapshot.getUnsignedDocumentCount());
+
+        Assert.assertEquals(limit + 3, snapshot.getAdmissionLatency().getCount());
+        Assert.assertEquals(limit + 3, snapshot.getValidatorLatency(WorkflowMetrics.VALIDATOR_WORKFLOW_LIMIT).getCount());
+        Assert.assertEquals(limit, snapshot.getSigningLatency().getCount());
+        Assert.assertEquals(limit, snapshot.getSigningCount(false));
+
+        StringBuilder text = new StringBuilder();
+        snapshot.export(text);
+        Assert.assertTrue(text.toString().contains("workflow_admissions_total{status=\"rejected_workflow_limit\"} 3"));
+        Assert.assertTrue(text.toString().contains("workflow_company_rejections_total{company=\"" + company1.getId()
+                + "\",status=\"rejected_workflow_limit\"} 3"));
+        Assert.assertTrue(text.toString().contains("workflow_unsigned_documents " + limit));
+    }
+
+    /**
+     * Вычислить процентили задержек с ограниченной относительной погрешностью
+     */
+    @Test
+    public void computeLatencyPercentiles() {
+
+        SystemWorkflow systemWorkflow = new SystemWorkflow();
+        systemWorkflow.setSettings(Settings.createCustomSettings(
+                false, "00:00", "00:01",
+                true, 10,
+                true, 10, 1,
+                true, 10)
+        );
+        WorkflowMetrics metrics = systemWorkflow.enableMetrics();
+
+        Assert.assertSame(metrics, systemWorkflow.enableMetrics());
+
+        systemWorkflow.addDocument1(new Company1().createDocument(new Company2()));
+
+        LatencyHistogram.Snapshot latency = metrics.snapshot().getAdmissionLatency();
+
+        Assert.assertEquals(1, latency.getCount());
+        Assert.assertTrue(latency.getPercentile(0.5) >= latency.getSum());
+        Assert.assertTrue(latency.getPercentile(0.5) <= latency.getSum() + latency.getSum() / 16 + 1);
+        Assert.assertEquals(latency.getPercentile(0.5), latency.getMax());
+
+        systemWorkflow.disableMetrics();
+        Assert.assertNull(systemWorkflow.getMetrics());
+    }
+
+}
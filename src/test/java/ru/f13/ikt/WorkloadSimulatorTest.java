@@ -0,0 +1,62 @@
+package ru.f13.ikt;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ru.f13.ikt.app.WorkloadOptions;
+import ru.f13.ikt.app.WorkloadReport;
+import ru.f13.ikt.app.WorkloadSimulator;
+import ru.f13.ikt.logic.*;
+
+/**
+ * Тесты нагрузки на систему документооборота
+ */
+public class WorkloadSimulatorTest {
+
+    /**
+     * Подать нагрузку со встречными предложениями на популярные компании и подписать все документы
+     */
+    @Test
+    public void runSkewedWorkloadWithoutLimits() throws Exception {
+
+        WorkloadOptions options = WorkloadOptions.parse(
+                "--companies=20", "--threads=4", "--duration=0.3", "--warmup=0.1",
+                "--distribution=zipf", "--counter-offers=0.5", "--rounds=2");
+
+        WorkloadSimulator simulator = new WorkloadSimulator(options);
+        WorkloadReport report = simulator.run();
+
+        Assert.assertTrue(report.getDirectFlowCount() > 0L);
+        Assert.assertTrue(report.getCounterOfferFlowCount() > 0L);
+        Assert.assertEquals(report.getFlowCount(), report.getSignedFlowCount());
+        Assert.assertEquals(report.getFlowCount(), report.getDirectLatency().getCount()
+                + report.getCounterOfferLatency().getCount());
+        Assert.assertEquals(0.0, report.getRejectionRate(), 0.0);
+
+        //обработанные документы удаляются из системы
+        Assert.assertEquals(0L, simulator.getWorkflow().getMetrics().snapshot().getDocumentCount());
+    }
+
+    /**
+     * Подавать документы с заданной интенсивностью и учитывать отказы по ограничениям
+     */
+    @Test
+    public void limitRateAndCountRejections() throws Exception {
+
+        WorkloadReport report = new WorkloadSimulator(WorkloadOptions.parse(
+                "--companies=2", "--threads=2", "--duration=0.5", "--warmup=0",
+                "--rate=200", "--arrival=poisson", "--limits=default", "--retain=true")).run();
+
+        Assert.assertTrue(report.getFlowCount() > 0L);
+        Assert.assertTrue(report.getFlowCount() < 200L);
+        Assert.assertTrue(report.getRejectionRate() > 0.0);
+        Assert.assertEquals(0L, report.getAdmissionCount(AdmissionStatus.REJECTED_INVALID_DOCUMENT));
+
+        try {
+            WorkloadOptions.parse("--distribution=normal");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //неизвестное распределение
+        }
+    }
+
+}